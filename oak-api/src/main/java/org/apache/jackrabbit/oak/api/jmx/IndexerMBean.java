@@ -43,4 +43,8 @@ public interface IndexerMBean {
                     " might not be available")
                     boolean ignoreLocalLock
             ) throws IOException, CommitFailedException;
+
+    @Description("The progress of the async indexing lanes that currently index subtrees in parallel, " +
+            "one entry per lane")
+    String[] getParallelIndexingProgress();
 }
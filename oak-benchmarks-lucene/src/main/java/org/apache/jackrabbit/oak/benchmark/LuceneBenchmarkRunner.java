@@ -50,6 +50,7 @@ public class LuceneBenchmarkRunner extends BenchmarkRunner {
                                 benchmarkOptions.getFlatStructure().value(options),
                                 benchmarkOptions.getReport().value(options),
                                 benchmarkOptions.getWithStorage().value(options)),
+                        new LuceneTermLookupTest(),
                         new LuceneFacetSearchTest(benchmarkOptions.getWithStorage().value(options)),
                         new LuceneInsecureFacetSearchTest(benchmarkOptions.getWithStorage().value(options)),
                         new LuceneStatisticalFacetSearchTest(benchmarkOptions.getWithStorage().value(options))
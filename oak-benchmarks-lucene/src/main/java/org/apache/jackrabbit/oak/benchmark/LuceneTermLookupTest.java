@@ -0,0 +1,126 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.benchmark;
+
+import static org.apache.jackrabbit.guava.common.collect.ImmutableSet.of;
+
+import java.util.Random;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.Repository;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.fixture.JcrCreator;
+import org.apache.jackrabbit.oak.fixture.OakRepositoryFixture;
+import org.apache.jackrabbit.oak.fixture.RepositoryFixture;
+import org.apache.jackrabbit.oak.jcr.Jcr;
+import org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexConstants;
+import org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexEditorProvider;
+import org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexProvider;
+import org.apache.jackrabbit.oak.plugins.index.lucene.directory.BlockCache;
+import org.apache.jackrabbit.oak.spi.commit.Observer;
+import org.apache.jackrabbit.oak.spi.query.QueryIndexProvider;
+
+/**
+ * Runs term lookups (property equality queries) against a Lucene index that
+ * is read directly from the repository (without copy-on-read). The index
+ * files are read in blocks; with the shared block cache enabled
+ * ({@code -Doak.lucene.blockCacheSizeMB=<size>}), blocks are only loaded
+ * once. The cache is only used for blocks that are stored in a blob store,
+ * so a fixture with a data store should be used (e.g. Oak-Segment-Tar-DS).
+ */
+public class LuceneTermLookupTest extends AbstractTest {
+
+    private static final String ROOT_NODE_NAME = "termLookup" + TEST_ID;
+
+    private static final int NODE_COUNT = Integer.getInteger("nodeCount", 100_000);
+
+    private static final int LOOKUP_COUNT = 1000;
+
+    private final Random random = new Random(42);
+
+    private Session session;
+
+    @Override
+    protected Repository[] createRepository(RepositoryFixture fixture) throws Exception {
+        if (fixture instanceof OakRepositoryFixture) {
+            return ((OakRepositoryFixture) fixture).setUpCluster(1, new JcrCreator() {
+                @Override
+                public Jcr customize(Oak oak) {
+                    LuceneIndexProvider provider = new LuceneIndexProvider();
+                    oak.with((QueryIndexProvider) provider)
+                            .with((Observer) provider)
+                            .with(new LuceneIndexEditorProvider())
+                            .with(new PropertyFullTextTest.FullTextPropertyInitialiser("luceneTermLookup",
+                                    of("termLookupId"), LuceneIndexConstants.TYPE_LUCENE));
+                    return new Jcr(oak);
+                }
+            });
+        }
+        return super.createRepository(fixture);
+    }
+
+    @Override
+    public void beforeSuite() throws Exception {
+        session = loginWriter();
+        Node root = session.getRootNode().addNode(ROOT_NODE_NAME, "nt:unstructured");
+        for (int i = 0; i < NODE_COUNT; i++) {
+            Node n = root.addNode("node" + i, "nt:unstructured");
+            n.setProperty("termLookupId", "id" + i);
+            if (i % 1000 == 0) {
+                session.save();
+            }
+        }
+        session.save();
+    }
+
+    @Override
+    public void runTest() throws Exception {
+        QueryManager manager = session.getWorkspace().getQueryManager();
+        for (int i = 0; i < LOOKUP_COUNT; i++) {
+            Query query = manager.createQuery(
+                    "select [jcr:path] from [nt:base] where [termLookupId] = 'id" +
+                            random.nextInt(NODE_COUNT) + "'",
+                    Query.JCR_SQL2);
+            NodeIterator it = query.execute().getNodes();
+            if (!it.hasNext()) {
+                throw new Exception("Invalid test result: no rows");
+            }
+            it.nextNode();
+        }
+    }
+
+    @Override
+    protected String comment() {
+        BlockCache cache = BlockCache.getInstance();
+        return cache == null ? "blockCache disabled"
+                : String.format("blockCache hitRate %.3f", cache.getHitRate());
+    }
+
+    @Override
+    public void afterSuite() throws Exception {
+        session.getRootNode().getNode(ROOT_NODE_NAME).remove();
+        session.save();
+        session.logout();
+    }
+}
@@ -201,6 +201,7 @@ public class BenchmarkRunner {
             new ConcurrentWriteReadTest(),
             new ConcurrentWriteTest(),
             new SimpleSearchTest(),
+            new FirstPageSearchTest(),
             new UUIDLookupTest(),
             new SQL2SearchTest(),
             new DescendantSearchTest(),
@@ -208,6 +209,7 @@ public class BenchmarkRunner {
             new FlatTreeUpdateTest(),
             new CreateManyChildNodesTest(),
             new CompareManyChildNodesTest(),
+            new GetNodesOnLargeFolderTest(),
             new CreateManyNodesTest(),
                         new UpdateManyChildNodesTest(),
                         new TransientManyChildNodesTest(),
@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.benchmark;
+
+import javax.jcr.InvalidItemStateException;
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+import javax.jcr.query.Query;
+import javax.jcr.query.QueryManager;
+
+import org.apache.jackrabbit.oak.benchmark.util.OakIndexUtils;
+
+/**
+ * Runs "first page" queries: a query that matches many nodes, of which only
+ * the first page (using a limit, and optionally an offset) is read. The
+ * limit and offset are passed to the index as a hint, so that the index
+ * cursor (and the prefetching of nodes, see {@code -Doak.prefetchCount})
+ * only reads as many rows as needed. The page size and offset can be set
+ * with {@code -DpageSize} and {@code -DpageOffset}.
+ */
+public class FirstPageSearchTest extends AbstractTest {
+
+    private static final String ROOT_NODE_NAME = "firstPage" + TEST_ID;
+
+    private static final int NODE_COUNT = Integer.getInteger("nodeCount", 10_000);
+
+    private static final int PAGE_SIZE = Integer.getInteger("pageSize", 10);
+
+    private static final int PAGE_OFFSET = Integer.getInteger("pageOffset", 0);
+
+    private static final int QUERY_COUNT = 100;
+
+    private Session session;
+
+    @Override
+    public void beforeSuite() throws Exception {
+        session = getRepository().login(getCredentials());
+        try {
+            ensurePropertyIndex();
+        } catch (InvalidItemStateException e) {
+            // some other oak instance probably created the same
+            // index definition concurrently. refresh and try again
+            session.refresh(false);
+            ensurePropertyIndex();
+        }
+        Node root = session.getRootNode().addNode(ROOT_NODE_NAME, "nt:unstructured");
+        for (int i = 0; i < NODE_COUNT; i++) {
+            Node n = root.addNode("node" + i, "nt:unstructured");
+            n.setProperty("pageStatus", "active");
+            n.setProperty("title", "node" + i);
+            if (i % 1000 == 0) {
+                session.save();
+            }
+        }
+        session.save();
+    }
+
+    @Override
+    public void runTest() throws Exception {
+        QueryManager manager = session.getWorkspace().getQueryManager();
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            Query query = manager.createQuery(
+                    "select [jcr:path] from [nt:unstructured] where [pageStatus] = 'active'",
+                    Query.JCR_SQL2);
+            query.setLimit(PAGE_SIZE);
+            query.setOffset(PAGE_OFFSET);
+            NodeIterator it = query.execute().getNodes();
+            int count = 0;
+            while (it.hasNext()) {
+                it.nextNode().getProperty("title").getString();
+                count++;
+            }
+            if (count != Math.min(PAGE_SIZE, Math.max(0, NODE_COUNT - PAGE_OFFSET))) {
+                throw new Exception("Invalid test result: " + count + " rows");
+            }
+        }
+    }
+
+    @Override
+    public void afterSuite() throws RepositoryException {
+        session.getRootNode().getNode(ROOT_NODE_NAME).remove();
+        session.save();
+        session.logout();
+    }
+
+    private void ensurePropertyIndex() throws RepositoryException {
+        new OakIndexUtils.PropertyIndex().
+                property("pageStatus").
+                create(session);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.benchmark;
+
+import java.util.List;
+
+import javax.jcr.Node;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.Session;
+
+import org.apache.jackrabbit.oak.fixture.OakRepositoryFixture;
+import org.apache.jackrabbit.oak.fixture.RepositoryFixture;
+import org.apache.jackrabbit.oak.plugins.document.DocumentNodeStore;
+
+/**
+ * Measures iterating over all children of a large folder with
+ * {@link Node#getNodes()} and reading a property of each child. With a
+ * DocumentNodeStore based fixture the node cache is cleared before each
+ * iteration, which makes the benchmark sensitive to read-ahead of child
+ * documents. Compare runs with and without
+ * {@code -Doak.documentstore.prefetch=true}.
+ */
+public class GetNodesOnLargeFolderTest extends AbstractTest {
+
+    private static final String ROOT_NODE_NAME = "getNodes" + TEST_ID;
+
+    private static final int CHILD_COUNT = Integer.getInteger("childCount", 10_000);
+
+    private Session session;
+
+    private DocumentNodeStore store;
+
+    @Override
+    public void beforeSuite() throws Exception {
+        session = getRepository().login(getCredentials());
+        Node folder = session.getRootNode().addNode(ROOT_NODE_NAME, "nt:unstructured");
+        for (int i = 0; i < CHILD_COUNT; i++) {
+            Node n = folder.addNode("node" + i, "nt:unstructured");
+            n.setProperty("title", "node" + i);
+            n.addNode("jcr:content", "nt:unstructured").setProperty("data", i);
+            if (i % 1000 == 0) {
+                session.save();
+            }
+        }
+        session.save();
+        store = getDocumentNodeStore();
+    }
+
+    @Override
+    public void beforeTest() throws Exception {
+        if (store != null) {
+            store.getNodeCache().invalidateAll();
+        }
+        session.refresh(false);
+    }
+
+    @Override
+    public void runTest() throws Exception {
+        NodeIterator it = session.getRootNode().getNode(ROOT_NODE_NAME).getNodes();
+        while (it.hasNext()) {
+            it.nextNode().getProperty("title").getString();
+        }
+    }
+
+    @Override
+    public void afterSuite() throws RepositoryException {
+        session.getRootNode().getNode(ROOT_NODE_NAME).remove();
+        session.save();
+        session.logout();
+    }
+
+    private DocumentNodeStore getDocumentNodeStore() {
+        RepositoryFixture fixture = getCurrentFixture();
+        if (fixture instanceof OakRepositoryFixture) {
+            List<DocumentNodeStore> stores = ((OakRepositoryFixture) fixture).getOakFixture().getDocumentNodeStores();
+            if (!stores.isEmpty()) {
+                return stores.get(0);
+            }
+        }
+        // other fixtures: measure without cache invalidation
+        return null;
+    }
+}
@@ -44,6 +44,7 @@ import org.apache.jackrabbit.oak.commons.LazyValue;
 import org.apache.jackrabbit.oak.commons.PathUtils;
 import org.apache.jackrabbit.oak.commons.properties.SystemPropertySupplier;
 import org.apache.jackrabbit.oak.plugins.index.diffindex.UUIDDiffIndexProviderWrapper;
+import org.apache.jackrabbit.oak.plugins.tree.factories.TreeFactory;
 import org.apache.jackrabbit.oak.query.ExecutionContext;
 import org.apache.jackrabbit.oak.query.QueryEngineImpl;
 import org.apache.jackrabbit.oak.query.QueryEngineSettings;
@@ -65,6 +66,7 @@ import org.apache.jackrabbit.oak.spi.security.SecurityProvider;
 import org.apache.jackrabbit.oak.spi.security.authorization.AuthorizationConfiguration;
 import org.apache.jackrabbit.oak.spi.security.authorization.permission.PermissionAware;
 import org.apache.jackrabbit.oak.spi.security.authorization.permission.PermissionProvider;
+import org.apache.jackrabbit.oak.spi.security.authorization.permission.TreePermission;
 import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
 import org.apache.jackrabbit.oak.spi.state.NodeStore;
@@ -322,20 +324,29 @@ class MutableRoot implements Root, PermissionAware {
             @Override
             protected ExecutionContext getExecutionContext() {
                 QueryIndexProvider provider = indexProvider;
-                if (hasPendingChanges()) {
+                boolean pendingChanges = hasPendingChanges();
+                if (pendingChanges) {
                     provider = new UUIDDiffIndexProviderWrapper(
                             provider, getBaseState(), getRootState());
                 }
+                PrefetchNodeStore prefetchStore = store instanceof PrefetchNodeStore ?
+                        (PrefetchNodeStore) store :
+                        PrefetchNodeStore.NOOP;
                 return new ExecutionContext(
                         getBaseState(),
                         MutableRoot.this,
                         queryEngineSettings,
                         provider,
                         permissionProvider.get(),
-                        store instanceof PrefetchNodeStore ?
-                                (PrefetchNodeStore) store :
-                                PrefetchNodeStore.NOOP
-                );
+                        prefetchStore
+                ) {
+                    @Override
+                    public ExecutionContext newSnapshotContext() {
+                        // the transient changes are only visible in this root
+                        return pendingChanges ? null :
+                                createSnapshotContext(getBaseState(), getIndexProvider(), prefetchStore);
+                    }
+                };
             }
         };
     }
@@ -381,6 +392,30 @@ class MutableRoot implements Root, PermissionAware {
         return builder.getNodeState();
     }
 
+    /**
+     * Create a query execution context that reads the given base state with
+     * a new permission provider. It doesn't share any state with this root,
+     * and can therefore be used by other threads.
+     */
+    @NotNull
+    private ExecutionContext createSnapshotContext(@NotNull NodeState base,
+                                                   @NotNull QueryIndexProvider provider,
+                                                   @NotNull PrefetchNodeStore prefetchStore) {
+        PermissionProvider snapshotPermissionProvider = getAcConfig().getPermissionProvider(
+                new ImmutableRoot(base),
+                getContentSession().getWorkspaceName(),
+                subject.getPrincipals());
+        TreePermission rootPermission = snapshotPermissionProvider.getTreePermission(
+                TreeFactory.createReadOnlyTree(base), TreePermission.EMPTY);
+        return new ExecutionContext(
+                base,
+                new ImmutableRoot(new SecureNodeState(base, rootPermission)),
+                queryEngineSettings,
+                provider,
+                snapshotPermissionProvider,
+                prefetchStore);
+    }
+
     @NotNull
     private AuthorizationConfiguration getAcConfig() {
         return securityProvider.getConfiguration(AuthorizationConfiguration.class);
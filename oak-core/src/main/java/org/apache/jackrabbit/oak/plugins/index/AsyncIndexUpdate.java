@@ -29,6 +29,7 @@ import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.REINDEX_PRO
 import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.MISSING_NODE;
 
 import java.io.Closeable;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.HashSet;
@@ -216,6 +217,18 @@ public class AsyncIndexUpdate implements Runnable, Closeable {
 
     private final StatisticsProvider statisticsProvider;
 
+    /**
+     * The number of threads used to index the changed top-level subtrees of
+     * a cycle concurrently. Defaults to 1 (disabled). See
+     * {@link ParallelIndexUpdate}.
+     */
+    private int parallelThreads = Integer.getInteger("oak.async.parallelThreads", 1);
+
+    /**
+     * The parallel update of the running cycle, if any.
+     */
+    private volatile ParallelIndexUpdate parallelUpdate;
+
     public AsyncIndexUpdate(@NotNull String name, @NotNull NodeStore store,
                             @NotNull IndexEditorProvider provider, boolean switchOnSync) {
         this(name, store, provider, StatisticsProvider.NOOP, switchOnSync);
@@ -799,7 +812,7 @@ public class AsyncIndexUpdate implements Runnable, Closeable {
         // sure to not delete the reference checkpoint, as the other index
         // task will take care of it
         taskSplitter.maybeSplit(beforeCheckpoint, callback.lease);
-        IndexUpdate indexUpdate = null;
+        List<IndexUpdate> indexUpdates = null;
         boolean indexingFailed = true;
         try {
             NodeBuilder builder = store.getRoot().builder();
@@ -808,22 +821,36 @@ public class AsyncIndexUpdate implements Runnable, Closeable {
 
             CommitInfo info = new CommitInfo(CommitInfo.OAK_UNKNOWN, CommitInfo.OAK_UNKNOWN,
                     ImmutableMap.of(IndexConstants.CHECKPOINT_CREATION_TIME, afterTime));
-            indexUpdate =
-                    new IndexUpdate(provider, name, after, builder, callback, callback, info, corruptIndexHandler)
-                            .withMissingProviderStrategy(missingStrategy);
-            configureRateEstimator(indexUpdate);
-            CommitFailedException exception =
-                    EditorDiff.process(VisibleEditor.wrap(indexUpdate), before, after);
-            if (exception != null) {
-                throw exception;
+            if (parallelThreads > 1) {
+                parallelUpdate = new ParallelIndexUpdate(name, provider, missingStrategy,
+                        corruptIndexHandler, parallelThreads, this::configureRateEstimator);
+                try {
+                    indexUpdates = parallelUpdate.update(before, after, builder, callback, callback, info);
+                } finally {
+                    parallelUpdate = null;
+                }
+            }
+            if (indexUpdates == null) {
+                IndexUpdate indexUpdate =
+                        new IndexUpdate(provider, name, after, builder, callback, callback, info, corruptIndexHandler)
+                                .withMissingProviderStrategy(missingStrategy);
+                indexUpdates = Collections.singletonList(indexUpdate);
+                configureRateEstimator(indexUpdate);
+                CommitFailedException exception =
+                        EditorDiff.process(VisibleEditor.wrap(indexUpdate), before, after);
+                if (exception != null) {
+                    throw exception;
+                }
             }
 
             builder.child(ASYNC).setProperty(name, afterCheckpoint);
             builder.child(ASYNC).setProperty(PropertyStates.createProperty(lastIndexedTo, afterTime, Type.DATE));
             if (callback.isDirty() || before == MISSING_NODE) {
                 if (switchOnSync) {
-                    reindexedDefinitions.addAll(indexUpdate
-                            .getReindexedDefinitions());
+                    for (IndexUpdate indexUpdate : indexUpdates) {
+                        reindexedDefinitions.addAll(indexUpdate
+                                .getReindexedDefinitions());
+                    }
                     updatePostRunStatus = false;
                 } else {
                     updatePostRunStatus = true;
@@ -861,20 +888,24 @@ public class AsyncIndexUpdate implements Runnable, Closeable {
             checkpointToReleaseRef.set(beforeCheckpoint);
             indexingFailed = false;
 
-            if (indexUpdate.isReindexingPerformed()) {
-                log.info("[{}] Reindexing completed for indexes: {} in {} ({} ms)",
-                        name, indexUpdate.getReindexStats(),
-                        watch, watch.elapsed(TimeUnit.MILLISECONDS));
-                progressLogged = true;
-            }
+            for (IndexUpdate indexUpdate : indexUpdates) {
+                if (indexUpdate.isReindexingPerformed()) {
+                    log.info("[{}] Reindexing completed for indexes: {} in {} ({} ms)",
+                            name, indexUpdate.getReindexStats(),
+                            watch, watch.elapsed(TimeUnit.MILLISECONDS));
+                    progressLogged = true;
+                }
 
-            corruptIndexHandler.markWorkingIndexes(indexUpdate.getUpdatedIndexPaths());
+                corruptIndexHandler.markWorkingIndexes(indexUpdate.getUpdatedIndexPaths());
+            }
         } finally {
-            if (indexUpdate != null) {
-                if ( !indexingFailed ) {
-                    indexUpdate.commitProgress(IndexCommitCallback.IndexProgress.COMMIT_SUCCEDED);
-                } else {
-                    indexUpdate.commitProgress(IndexCommitCallback.IndexProgress.COMMIT_FAILED);
+            if (indexUpdates != null) {
+                for (IndexUpdate indexUpdate : indexUpdates) {
+                    if ( !indexingFailed ) {
+                        indexUpdate.commitProgress(IndexCommitCallback.IndexProgress.COMMIT_SUCCEDED);
+                    } else {
+                        indexUpdate.commitProgress(IndexCommitCallback.IndexProgress.COMMIT_FAILED);
+                    }
                 }
             }
             callback.close();
@@ -882,11 +913,15 @@ public class AsyncIndexUpdate implements Runnable, Closeable {
 
         if (!progressLogged) {
             String msg = "[{}] AsyncIndex update run completed in {}. Indexed {} nodes, {}";
+            List<String> indexingStats = new ArrayList<>();
+            for (IndexUpdate indexUpdate : indexUpdates) {
+                indexingStats.add(indexUpdate.getIndexingStats());
+            }
             //Log at info level if time taken is more than 5 min
             if (watch.elapsed(TimeUnit.MINUTES) >= 5) {
-                log.info(msg, name, watch, indexStats.getUpdates(), indexUpdate.getIndexingStats());
+                log.info(msg, name, watch, indexStats.getUpdates(), String.join(", ", indexingStats));
             } else {
-                log.debug(msg, name, watch, indexStats.getUpdates(), indexUpdate.getIndexingStats());
+                log.debug(msg, name, watch, indexStats.getUpdates(), String.join(", ", indexingStats));
             }
         }
 
@@ -976,6 +1011,11 @@ public class AsyncIndexUpdate implements Runnable, Closeable {
         return leaseTimeOut;
     }
 
+    protected AsyncIndexUpdate setParallelThreads(int parallelThreads) {
+        this.parallelThreads = parallelThreads;
+        return this;
+    }
+
     protected AsyncIndexUpdate setCloseTimeOut(int timeOutInSec) {
         this.softTimeOutSecs = timeOutInSec;
         return this;
@@ -1233,6 +1273,17 @@ public class AsyncIndexUpdate implements Runnable, Closeable {
             return nodesRead;
         }
 
+        /**
+         * The progress of the parallel indexing of the running cycle.
+         *
+         * @return the progress, or an empty string if the lane is currently
+         *         not indexing subtrees in parallel
+         */
+        String getParallelIndexingProgress() {
+            ParallelIndexUpdate p = parallelUpdate;
+            return p == null ? "" : p.getProgress();
+        }
+
         void setReferenceCheckpoint(String checkpoint) {
             this.referenceCp = checkpoint;
         }
@@ -78,6 +78,20 @@ public interface IndexConstants {
      */
     String UNIQUE_PROPERTY_NAME = "unique";
 
+    /**
+     * How the content of a (non-unique) property index is stored. If set to
+     * {@link #INDEX_STORAGE_SORTED}, the entries are stored in sorted pages;
+     * by default, the index content mirrors the content structure. Changing
+     * this property requires a reindex.
+     */
+    String INDEX_STORAGE = "indexStorage";
+
+    /**
+     * Store the entries of a property index in sorted pages, which allows
+     * range queries and cheap cost estimates for large indexes.
+     */
+    String INDEX_STORAGE_SORTED = "sorted";
+
     /**
      * Defines the names of the properties that are covered by a specific
      * property index definition.
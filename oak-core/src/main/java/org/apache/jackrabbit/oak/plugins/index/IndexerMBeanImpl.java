@@ -21,6 +21,8 @@ package org.apache.jackrabbit.oak.plugins.index;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.jackrabbit.oak.api.CommitFailedException;
 import org.apache.jackrabbit.oak.api.jmx.IndexerMBean;
@@ -83,6 +85,22 @@ public class IndexerMBeanImpl extends AnnotatedStandardMBean implements IndexerM
         return true;
     }
 
+    @Override
+    public String[] getParallelIndexingProgress() {
+        List<String> result = new ArrayList<>();
+        for (String lane : asyncIndexInfoService.getAsyncLanes()) {
+            AsyncIndexInfo info = asyncIndexInfoService.getInfo(lane);
+            if (info != null && info.getStatsMBean() instanceof AsyncIndexUpdate.AsyncIndexStats) {
+                String progress = ((AsyncIndexUpdate.AsyncIndexStats) info.getStatsMBean())
+                        .getParallelIndexingProgress();
+                if (!progress.isEmpty()) {
+                    result.add(lane + ": " + progress);
+                }
+            }
+        }
+        return result.toArray(new String[0]);
+    }
+
     private AsyncIndexerLock createLock(boolean ignoreLocalLock) {
         if (nodeStore instanceof Clusterable) {
             return new ClusterNodeStoreLock(nodeStore);
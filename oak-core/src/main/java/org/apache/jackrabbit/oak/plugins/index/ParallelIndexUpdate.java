@@ -0,0 +1,539 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index;
+
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.ASYNC_PROPERTY_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_DEFINITIONS_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_STORAGE;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_STORAGE_SORTED;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.REINDEX_PROPERTY_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.TYPE_DISABLED;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.TYPE_PROPERTY_NAME;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.apache.jackrabbit.guava.common.base.Splitter;
+import org.apache.jackrabbit.guava.common.collect.ImmutableSet;
+import org.apache.jackrabbit.guava.common.collect.Iterables;
+import org.apache.jackrabbit.guava.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.jackrabbit.oak.api.CommitFailedException;
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.plugins.index.IndexUpdate.MissingIndexProviderStrategy;
+import org.apache.jackrabbit.oak.plugins.index.counter.NodeCounterEditor;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyStatistics;
+import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeBuilder;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EditorDiff;
+import org.apache.jackrabbit.oak.spi.commit.VisibleEditor;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.state.NodeStateDiff;
+import org.apache.jackrabbit.oak.spi.state.NodeStateUtils;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Indexes the changes of an async indexing cycle concurrently, by splitting
+ * the diff between the two checkpoints by top-level subtree.
+ * <p>
+ * Each group of top-level subtrees is indexed by its own {@link IndexUpdate},
+ * on its own builder, in a separate thread. The resulting changes are then
+ * merged into the builder of the lane. This is only done if all index
+ * definitions of the lane directly below "/oak:index" are of a type whose
+ * index content can be merged (by default, the content mirror property index
+ * and the node counter index); indexes defined within a subtree are only
+ * updated by the thread that indexes this subtree. The value statistics of
+ * property indexes are combined, and the changes of the approximate counters
+ * are added up. If the index definitions themselves changed, or a
+ * reindex is pending, or the changes of two threads conflict, nothing is
+ * changed and the caller is expected to index the changes sequentially.
+ * <p>
+ * The content of Lucene and Elastic indexes can not be merged. A lane that
+ * contains such an index (as the default "async" lane usually does) is
+ * always indexed sequentially; property indexes need to be in a separate
+ * lane to be indexed in parallel.
+ */
+class ParallelIndexUpdate {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelIndexUpdate.class);
+
+    /**
+     * The index types that may be updated concurrently.
+     */
+    static final Set<String> INDEX_TYPES = ImmutableSet.copyOf(Splitter.on(',').trimResults().omitEmptyStrings()
+            .split(System.getProperty("oak.async.parallelIndexTypes", "property,counter")));
+
+    /**
+     * The approximate counters of the node counter index. Each thread changes
+     * the counters of the common ancestors, so the changes are added up.
+     */
+    private static final Set<String> COUNTER_PROPERTIES = ImmutableSet.of(
+            NodeCounterEditor.COUNT_PROPERTY_NAME, NodeCounterEditor.COUNT_HASH_PROPERTY_NAME);
+
+    private final String name;
+
+    private final IndexEditorProvider provider;
+
+    private final MissingIndexProviderStrategy missingStrategy;
+
+    private final CorruptIndexHandler corruptIndexHandler;
+
+    private final int threads;
+
+    private final Consumer<IndexUpdate> configurer;
+
+    private volatile String progress = "";
+
+    /**
+     * @param configurer called for each index update before it is used (for
+     *            example to set the progress estimators)
+     */
+    ParallelIndexUpdate(String name, IndexEditorProvider provider,
+            MissingIndexProviderStrategy missingStrategy,
+            CorruptIndexHandler corruptIndexHandler, int threads,
+            Consumer<IndexUpdate> configurer) {
+        this.name = name;
+        this.provider = provider;
+        this.missingStrategy = missingStrategy;
+        this.corruptIndexHandler = corruptIndexHandler;
+        this.threads = threads;
+        this.configurer = configurer;
+    }
+
+    /**
+     * Index the changes between the given states, and apply the resulting
+     * index changes to the builder.
+     *
+     * @param before the last indexed state
+     * @param after the state to index
+     * @param builder the builder of the lane (based on the current root)
+     * @param updateCallback the callback of the lane
+     * @param traversalCallback the traversal callback of the lane
+     * @param info the commit info
+     * @return the index updates that were used, or null if the changes can not
+     *         be indexed concurrently (the builder is unchanged in this case)
+     */
+    @Nullable
+    List<IndexUpdate> update(NodeState before, NodeState after, NodeBuilder builder,
+            IndexUpdateCallback updateCallback, NodeTraversalCallback traversalCallback,
+            CommitInfo info) throws CommitFailedException {
+        if (!before.exists() || !canUpdateConcurrently(after)) {
+            return null;
+        }
+        List<List<String>> groups = split(before, after);
+        if (groups == null || groups.size() < 2) {
+            return null;
+        }
+        NodeState base = builder.getNodeState();
+        SynchronizedCallback callback = new SynchronizedCallback(updateCallback, traversalCallback);
+        List<IndexUpdate> updates = new ArrayList<>();
+        List<Future<NodeState>> futures = new ArrayList<>();
+        AtomicInteger done = new AtomicInteger();
+        ThreadFactory tf = new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("async-index-update-" + name + "-%d").build();
+        ExecutorService executor = Executors.newFixedThreadPool(groups.size(), tf);
+        log.debug("[{}] Indexing {} groups of subtrees in parallel: {}", name, groups.size(), groups);
+        setProgress(groups, done.get());
+        List<NodeState> states = new ArrayList<>();
+        Throwable failure = null;
+        try {
+            for (List<String> group : groups) {
+                NodeState groupAfter = apply(before, after, group);
+                NodeBuilder groupBuilder = base.builder();
+                IndexUpdate indexUpdate = new IndexUpdate(provider, name, after, groupBuilder,
+                        callback, callback, info, corruptIndexHandler)
+                        .withMissingProviderStrategy(missingStrategy);
+                configurer.accept(indexUpdate);
+                updates.add(indexUpdate);
+                futures.add(executor.submit(() -> {
+                    CommitFailedException e = EditorDiff.process(
+                            VisibleEditor.wrap(indexUpdate), before, groupAfter);
+                    if (e != null) {
+                        throw e;
+                    }
+                    NodeState result = groupBuilder.getNodeState();
+                    setProgress(groups, done.incrementAndGet());
+                    return result;
+                }));
+            }
+            // wait for all threads, even if one failed
+            for (Future<NodeState> f : futures) {
+                try {
+                    states.add(f.get());
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    if (failure == null) {
+                        failure = new CommitFailedException("Async", 1, "Indexing was interrupted", e);
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            progress = "";
+        }
+        if (failure != null) {
+            commitFailed(updates);
+            throw asCommitFailedException(failure);
+        }
+
+        // first merge into a temporary builder, so that the builder
+        // of the lane is unchanged if there is a conflict
+        NodeBuilder merged = new MemoryNodeBuilder(base);
+        for (NodeState state : states) {
+            if (!state.compareAgainstBaseState(base, new MergeDiff(merged))) {
+                log.info("[{}] Conflicting index changes in parallel indexing; indexing sequentially", name);
+                commitFailed(updates);
+                return null;
+            }
+        }
+        merged.getNodeState().compareAgainstBaseState(base, new MergeDiff(builder));
+        return updates;
+    }
+
+    /**
+     * The progress of the running parallel update, or an empty string if
+     * there is none.
+     *
+     * @return the progress
+     */
+    String getProgress() {
+        return progress;
+    }
+
+    private void setProgress(List<List<String>> groups, int done) {
+        progress = String.format("%d of %d subtree groups indexed: %s", done, groups.size(), groups);
+    }
+
+    private boolean canUpdateConcurrently(NodeState after) {
+        for (ChildNodeEntry e : after.getChildNode(INDEX_DEFINITIONS_NAME).getChildNodeEntries()) {
+            NodeState definition = e.getNodeState();
+            String type = definition.getString(TYPE_PROPERTY_NAME);
+            PropertyState async = definition.getProperty(ASYNC_PROPERTY_NAME);
+            if (type == null || TYPE_DISABLED.equals(type) || async == null
+                    || !Iterables.contains(async.getValue(Type.STRINGS), name)) {
+                continue;
+            }
+            if (definition.getBoolean(REINDEX_PROPERTY_NAME)) {
+                return false;
+            }
+            if (!INDEX_TYPES.contains(type)) {
+                return false;
+            }
+            // sorted pages are shared by all paths
+            if (INDEX_STORAGE_SORTED.equals(definition.getString(INDEX_STORAGE))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Split the changed top-level child nodes into groups.
+     *
+     * @return the groups, or null if the changes can not be split
+     */
+    @Nullable
+    private List<List<String>> split(NodeState before, NodeState after) {
+        ChangedChildren changed = new ChangedChildren();
+        after.compareAgainstBaseState(before, changed);
+        if (changed.propertiesChanged || changed.names.contains(INDEX_DEFINITIONS_NAME)) {
+            return null;
+        }
+        int count = Math.min(threads, changed.names.size());
+        List<List<String>> groups = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            groups.add(new ArrayList<>());
+        }
+        for (int i = 0; i < changed.names.size(); i++) {
+            groups.get(i % count).add(changed.names.get(i));
+        }
+        return groups;
+    }
+
+    /**
+     * Apply the changes of the given top-level child nodes to the before
+     * state.
+     */
+    private static NodeState apply(NodeState before, NodeState after, List<String> names) {
+        NodeBuilder builder = new MemoryNodeBuilder(before);
+        for (String n : names) {
+            NodeState child = after.getChildNode(n);
+            if (child.exists()) {
+                builder.setChildNode(n, child);
+            } else {
+                builder.getChildNode(n).remove();
+            }
+        }
+        return builder.getNodeState();
+    }
+
+    private static void commitFailed(List<IndexUpdate> updates) {
+        for (IndexUpdate u : updates) {
+            u.commitProgress(IndexCommitCallback.IndexProgress.COMMIT_FAILED);
+        }
+    }
+
+    /**
+     * Get the exception to throw for the failure of a thread. Runtime
+     * exceptions and errors are thrown as they are.
+     */
+    private static CommitFailedException asCommitFailedException(Throwable t) {
+        if (t instanceof CommitFailedException) {
+            return (CommitFailedException) t;
+        }
+        if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        }
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        return new CommitFailedException("Async", 2, "Parallel indexing failed", (Exception) t);
+    }
+
+    /**
+     * Collects the names of the changed (visible) top-level child nodes.
+     */
+    private static class ChangedChildren implements NodeStateDiff {
+
+        final List<String> names = new ArrayList<>();
+
+        boolean propertiesChanged;
+
+        @Override
+        public boolean propertyAdded(PropertyState after) {
+            return propertyChanged(after.getName());
+        }
+
+        @Override
+        public boolean propertyChanged(PropertyState before, PropertyState after) {
+            return propertyChanged(after.getName());
+        }
+
+        @Override
+        public boolean propertyDeleted(PropertyState before) {
+            return propertyChanged(before.getName());
+        }
+
+        private boolean propertyChanged(String name) {
+            if (!NodeStateUtils.isHidden(name)) {
+                propertiesChanged = true;
+            }
+            return true;
+        }
+
+        @Override
+        public boolean childNodeAdded(String name, NodeState after) {
+            return childNodeChanged(name);
+        }
+
+        @Override
+        public boolean childNodeChanged(String name, NodeState before, NodeState after) {
+            return childNodeChanged(name);
+        }
+
+        @Override
+        public boolean childNodeDeleted(String name, NodeState before) {
+            return childNodeChanged(name);
+        }
+
+        private boolean childNodeChanged(String name) {
+            if (!NodeStateUtils.isHidden(name)) {
+                names.add(name);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Applies changes to a builder, failing if the builder was changed
+     * differently (by a previously applied diff against the same base).
+     */
+    private static class MergeDiff implements NodeStateDiff {
+
+        private final NodeBuilder target;
+
+        MergeDiff(NodeBuilder target) {
+            this.target = target;
+        }
+
+        @Override
+        public boolean propertyAdded(PropertyState after) {
+            PropertyState p = target.getProperty(after.getName());
+            if (p != null && !p.equals(after)) {
+                return addCount(null, after, p);
+            }
+            target.setProperty(after);
+            return true;
+        }
+
+        @Override
+        public boolean propertyChanged(PropertyState before, PropertyState after) {
+            PropertyState p = target.getProperty(after.getName());
+            if (!before.equals(p) && !after.equals(p)) {
+                return addCount(before, after, p);
+            }
+            target.setProperty(after);
+            return true;
+        }
+
+        @Override
+        public boolean propertyDeleted(PropertyState before) {
+            PropertyState p = target.getProperty(before.getName());
+            if (p != null && !p.equals(before)) {
+                return addCount(before, null, p);
+            }
+            target.removeProperty(before.getName());
+            return true;
+        }
+
+        /**
+         * Apply the change of an approximate counter that was also changed by
+         * another thread.
+         *
+         * @param before the value before the change, or null if added
+         * @param after the value after the change, or null if removed
+         * @param current the current value of the target, or null if removed
+         * @return false if this is not a counter
+         */
+        private boolean addCount(@Nullable PropertyState before, @Nullable PropertyState after,
+                @Nullable PropertyState current) {
+            String propertyName = before != null ? before.getName() : after.getName();
+            if (!COUNTER_PROPERTIES.contains(propertyName)) {
+                return false;
+            }
+            long count = getCount(current) + getCount(after) - getCount(before);
+            if (count == 0) {
+                target.removeProperty(propertyName);
+            } else {
+                target.setProperty(propertyName, count);
+            }
+            return true;
+        }
+
+        private static long getCount(@Nullable PropertyState p) {
+            return p == null || p.getType() != Type.LONG ? 0 : p.getValue(Type.LONG);
+        }
+
+        @Override
+        public boolean childNodeAdded(String name, NodeState after) {
+            if (!target.hasChildNode(name)) {
+                target.setChildNode(name, after);
+                return true;
+            }
+            return after.compareAgainstBaseState(EMPTY_NODE, new MergeDiff(target.getChildNode(name)));
+        }
+
+        @Override
+        public boolean childNodeChanged(String name, NodeState before, NodeState after) {
+            NodeBuilder child = target.getChildNode(name);
+            if (!child.exists()) {
+                return false;
+            }
+            if (PropertyStatistics.STATISTICS_NODE_NAME.equals(name)) {
+                // combine the distinct value sketches of the property index
+                PropertyStatistics s = PropertyStatistics.read(child.getNodeState());
+                PropertyStatistics a = PropertyStatistics.read(after);
+                if (s != null && a != null) {
+                    s.merge(a);
+                    s.write(child);
+                    return true;
+                }
+            }
+            return after.compareAgainstBaseState(before, new MergeDiff(child));
+        }
+
+        @Override
+        public boolean childNodeDeleted(String name, NodeState before) {
+            if (!target.hasChildNode(name)) {
+                return true;
+            }
+            NodeBuilder child = target.getChildNode(name);
+            if (!child.getNodeState().equals(before)) {
+                return false;
+            }
+            child.remove();
+            return true;
+        }
+    }
+
+    /**
+     * Serializes the callbacks of the threads. Once a callback failed (for
+     * example because the lane was stopped, or the lease was lost), the
+     * callbacks of all threads fail.
+     */
+    private static class SynchronizedCallback implements IndexUpdateCallback, NodeTraversalCallback {
+
+        private final IndexUpdateCallback updateCallback;
+
+        private final NodeTraversalCallback traversalCallback;
+
+        private CommitFailedException failure;
+
+        SynchronizedCallback(IndexUpdateCallback updateCallback, NodeTraversalCallback traversalCallback) {
+            this.updateCallback = updateCallback;
+            this.traversalCallback = traversalCallback;
+        }
+
+        @Override
+        public synchronized void indexUpdate() throws CommitFailedException {
+            checkFailure();
+            try {
+                updateCallback.indexUpdate();
+            } catch (CommitFailedException e) {
+                failure = e;
+                throw e;
+            }
+        }
+
+        @Override
+        public synchronized void traversedNode(PathSource pathSource) throws CommitFailedException {
+            checkFailure();
+            try {
+                traversalCallback.traversedNode(pathSource);
+            } catch (CommitFailedException e) {
+                failure = e;
+                throw e;
+            }
+        }
+
+        private void checkFailure() throws CommitFailedException {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+}
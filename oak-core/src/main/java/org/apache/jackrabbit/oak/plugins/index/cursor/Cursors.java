@@ -17,6 +17,7 @@
 package org.apache.jackrabbit.oak.plugins.index.cursor;
 
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import org.apache.jackrabbit.oak.query.FilterIterators;
 import org.apache.jackrabbit.oak.spi.query.Cursor;
@@ -24,6 +25,7 @@ import org.apache.jackrabbit.oak.spi.query.Filter;
 import org.apache.jackrabbit.oak.spi.query.QueryLimits;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
 import org.apache.jackrabbit.oak.spi.state.PrefetchNodeStore;
+import org.jetbrains.annotations.Nullable;
 
 import static org.apache.jackrabbit.guava.common.base.Preconditions.checkArgument;
 import static org.apache.jackrabbit.guava.common.base.Preconditions.checkNotNull;
@@ -58,6 +60,18 @@ public class Cursors {
         return new PrefetchCursor(cursor, store, prefetchCount, rootState, prefetchRelative);
     }
 
+    /**
+     * Creates a {@link Cursor} that prefetches the nodes of the next rows in
+     * the background, while the current rows are processed.
+     *
+     * @param executor the executor to prefetch in the background, or null to
+     *            prefetch synchronously
+     */
+    public static Cursor newPrefetchCursor(Cursor cursor, PrefetchNodeStore store, int prefetchCount,
+            NodeState rootState, List<String> prefetchRelative, @Nullable Executor executor) {
+        return new PrefetchCursor(cursor, store, prefetchCount, rootState, prefetchRelative, executor);
+    }
+
     /**
      * Creates a {@link Cursor} over paths.
      *
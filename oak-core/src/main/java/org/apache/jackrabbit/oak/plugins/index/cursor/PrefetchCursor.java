@@ -22,6 +22,11 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -32,11 +37,16 @@ import org.apache.jackrabbit.oak.spi.query.Cursor;
 import org.apache.jackrabbit.oak.spi.query.IndexRow;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
 import org.apache.jackrabbit.oak.spi.state.PrefetchNodeStore;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * A cursor that is able to prefetch nodes from the node store.
+ * <p>
+ * The rows are read in windows of the prefetch count. If an executor is set,
+ * the next window is read ahead, and its nodes are prefetched in the
+ * background while the rows of the current window are processed.
  */
 public class PrefetchCursor extends AbstractCursor {
 
@@ -52,14 +62,27 @@ public class PrefetchCursor extends AbstractCursor {
     private final NodeState rootState;
     private Iterator<IndexRow> prefetched;
     private final List<String> prefetchRelative;
+    private final Executor executor;
+
+    /**
+     * The next window of rows, which is prefetched in the background while the
+     * current window is read (only used if there is an executor).
+     */
+    private Window next;
 
     PrefetchCursor(Cursor cursor, PrefetchNodeStore store, int prefetchCount, NodeState rootState, List<String> prefetchRelative) {
+        this(cursor, store, prefetchCount, rootState, prefetchRelative, null);
+    }
+
+    PrefetchCursor(Cursor cursor, PrefetchNodeStore store, int prefetchCount, NodeState rootState,
+            List<String> prefetchRelative, @Nullable Executor executor) {
         this.cursor = cursor;
         this.store = store;
         this.prefetchCount = prefetchCount;
         this.rootState = rootState;
         this.prefetched = Collections.emptyIterator();
         this.prefetchRelative = prefetchRelative;
+        this.executor = executor;
     }
 
     @Override
@@ -70,34 +93,49 @@ public class PrefetchCursor extends AbstractCursor {
     @Override
     public IndexRow next() {
         if (!prefetched.hasNext()) {
-            ArrayList<IndexRow> rows = new ArrayList<>();
-            TreeSet<String> paths = new TreeSet<>();
-            for (int i = 0; i < prefetchCount && cursor.hasNext(); i++) {
-                IndexRow row = cursor.next();
-                rows.add(row);
-                if (row.isVirtualRow()) {
-                    continue;
-                }
-                String p = row.getPath();
-                if (!PathUtils.isAbsolute(p)) {
-                    LOG.warn("Unexpected relative path {}", p);
-                    continue;
-                }
-                prefetchRelative(paths, p);
-                do {
-                    paths.add(p);
-                    p = PathUtils.getParentPath(p);
-                } while (!PathUtils.denotesRoot(p));
+            Window current = next;
+            next = null;
+            if (current == null) {
+                current = readWindow();
             }
-            store.prefetch(paths, rootState);
-            prefetched = rows.iterator();
+            current.awaitPrefetch();
+            if (executor != null && cursor.hasNext()) {
+                // read the next window, and prefetch it
+                // while the rows of the current window are processed
+                next = readWindow();
+                next.prefetchAsync();
+            }
+            prefetched = current.rows.iterator();
         }
         return prefetched.next();
     }
 
     @Override
     public boolean hasNext() {
-        return prefetched.hasNext() || cursor.hasNext();
+        return prefetched.hasNext() || next != null || cursor.hasNext();
+    }
+
+    private Window readWindow() {
+        ArrayList<IndexRow> rows = new ArrayList<>();
+        TreeSet<String> paths = new TreeSet<>();
+        for (int i = 0; i < prefetchCount && cursor.hasNext(); i++) {
+            IndexRow row = cursor.next();
+            rows.add(row);
+            if (row.isVirtualRow()) {
+                continue;
+            }
+            String p = row.getPath();
+            if (!PathUtils.isAbsolute(p)) {
+                LOG.warn("Unexpected relative path {}", p);
+                continue;
+            }
+            prefetchRelative(paths, p);
+            do {
+                paths.add(p);
+                p = PathUtils.getParentPath(p);
+            } while (!PathUtils.denotesRoot(p));
+        }
+        return new Window(rows, paths);
     }
 
     private void prefetchRelative(Set<String> target, String p) {
@@ -113,6 +151,45 @@ public class PrefetchCursor extends AbstractCursor {
         }
     }
     
+    /**
+     * A window of rows, and the paths to prefetch for them.
+     */
+    private class Window {
+
+        private final List<IndexRow> rows;
+        private final Set<String> paths;
+        private Future<?> prefetch;
+
+        Window(List<IndexRow> rows, Set<String> paths) {
+            this.rows = rows;
+            this.paths = paths;
+        }
+
+        void prefetchAsync() {
+            try {
+                prefetch = CompletableFuture.runAsync(() -> store.prefetch(paths, rootState), executor);
+            } catch (RejectedExecutionException e) {
+                // all threads are busy: prefetch when needed
+                LOG.debug("Prefetch rejected", e);
+            }
+        }
+
+        void awaitPrefetch() {
+            if (prefetch == null) {
+                store.prefetch(paths, rootState);
+                return;
+            }
+            try {
+                prefetch.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // prefetching is an optimization only: the nodes are read when needed
+                LOG.warn("Prefetch failed", e.getCause());
+            }
+        }
+    }
+
     /**
      * Try to compute an absolute path using a relative path specification.
      * 
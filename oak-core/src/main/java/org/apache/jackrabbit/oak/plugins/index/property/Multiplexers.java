@@ -19,6 +19,8 @@
 package org.apache.jackrabbit.oak.plugins.index.property;
 
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_CONTENT_NODE_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_STORAGE;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_STORAGE_SORTED;
 
 import java.util.HashSet;
 import java.util.Set;
@@ -26,6 +28,7 @@ import java.util.Set;
 import org.apache.jackrabbit.oak.plugins.index.property.strategy.ContentMirrorStoreStrategy;
 import org.apache.jackrabbit.oak.plugins.index.property.strategy.FilteringIndexStoreStrategy;
 import org.apache.jackrabbit.oak.plugins.index.property.strategy.IndexStoreStrategy;
+import org.apache.jackrabbit.oak.plugins.index.property.strategy.SortedPageStoreStrategy;
 import org.apache.jackrabbit.oak.plugins.index.property.strategy.UniqueEntryStoreStrategy;
 import org.apache.jackrabbit.oak.spi.mount.Mount;
 import org.apache.jackrabbit.oak.spi.mount.MountInfoProvider;
@@ -58,23 +61,31 @@ public class Multiplexers {
     private static final IndexStoreStrategy MIRROR = new ContentMirrorStoreStrategy(
             INDEX_CONTENT_NODE_NAME);
 
+    /** Index storage strategy */
+    private static final IndexStoreStrategy SORTED = new SortedPageStoreStrategy(
+            INDEX_CONTENT_NODE_NAME);
+
     public static Set<IndexStoreStrategy> getStrategies(boolean unique,
             MountInfoProvider mountInfoProvider, NodeBuilder definition,
             String defaultName) {
         Iterable<String> children = definition.getChildNodeNames();
-        return getStrategies(unique, mountInfoProvider, children, defaultName);
+        boolean sorted = INDEX_STORAGE_SORTED.equals(definition.getString(INDEX_STORAGE));
+        return getStrategies(unique, sorted, mountInfoProvider, children, defaultName);
     }
 
     public static Set<IndexStoreStrategy> getStrategies(boolean unique,
             MountInfoProvider mountInfoProvider, NodeState definition,
             String defaultName) {
         Iterable<String> children = definition.getChildNodeNames();
-        return getStrategies(unique, mountInfoProvider, children, defaultName);
+        boolean sorted = INDEX_STORAGE_SORTED.equals(definition.getString(INDEX_STORAGE));
+        return getStrategies(unique, sorted, mountInfoProvider, children, defaultName);
     }
 
     private static Set<IndexStoreStrategy> getStrategies(boolean unique,
-            MountInfoProvider mountInfoProvider, Iterable<String> children,
-            String defaultName) {
+            boolean sorted, MountInfoProvider mountInfoProvider,
+            Iterable<String> children, String defaultName) {
+        // unique indexes always use the unique entry strategy
+        sorted &= !unique;
         if (mountInfoProvider.hasNonDefaultMounts()) {
             Set<String> names = new HashSet<String>();
             // TODO should this be collected from the index def?
@@ -88,20 +99,23 @@ public class Multiplexers {
             for (Mount m : mountInfoProvider.getNonDefaultMounts()) {
                 String n = getNodeForMount(m, defaultName);
                 names.remove(n);
-                strategies.add(newStrategy(unique, false, n, m));
+                strategies.add(newStrategy(unique, sorted, n, m));
             }
 
             Mount defMount = mountInfoProvider.getDefaultMount();
             // TODO what to do with non-default names that are not covered by
             // the mount?
             for (String n : names) {
-                strategies.add(newStrategy(unique, true, n, defMount));
+                strategies.add(newStrategy(unique, sorted, n, defMount));
             }
             // default mount
-            strategies.add(newStrategy(unique, true, defaultName, defMount));
+            strategies.add(newStrategy(unique, sorted, defaultName, defMount));
             return strategies;
         } else {
-            return unique ? ImmutableSet.of(newUniqueStrategy(defaultName))
+            if (unique) {
+                return ImmutableSet.of(newUniqueStrategy(defaultName));
+            }
+            return sorted ? ImmutableSet.of(newSortedStrategy(defaultName))
                     : ImmutableSet.of(newMirrorStrategy(defaultName));
         }
     }
@@ -122,14 +136,25 @@ public class Multiplexers {
         }
     }
 
+    private static IndexStoreStrategy newSortedStrategy(String defaultName) {
+        if (INDEX_CONTENT_NODE_NAME.equals(defaultName)) {
+            return SORTED;
+        } else {
+            return new SortedPageStoreStrategy(defaultName);
+        }
+    }
+
     private static IndexStoreStrategy newStrategy(boolean unique,
-            boolean defaultMount, String name, Mount m) {
+            boolean sorted, String name, Mount m) {
         Predicate<String> filter = newFilter(m);
         boolean readOnly = unique && !m.isDefault() && RO_PRIVATE_UNIQUE_INDEX;
-        return unique ? new FilteringIndexStoreStrategy(
-                new UniqueEntryStoreStrategy(name), filter, readOnly)
-                : new FilteringIndexStoreStrategy(
-                        new ContentMirrorStoreStrategy(name), filter);
+        if (unique) {
+            return new FilteringIndexStoreStrategy(
+                    new UniqueEntryStoreStrategy(name), filter, readOnly);
+        }
+        return new FilteringIndexStoreStrategy(sorted
+                ? new SortedPageStoreStrategy(name)
+                : new ContentMirrorStoreStrategy(name), filter);
     }
 
     private static Predicate<String> newFilter(final Mount m) {
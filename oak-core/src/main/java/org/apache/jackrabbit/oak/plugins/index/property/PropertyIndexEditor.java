@@ -41,6 +41,7 @@ import javax.jcr.PropertyType;
 import org.apache.jackrabbit.guava.common.base.Supplier;
 import org.apache.jackrabbit.oak.api.CommitFailedException;
 import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.api.Type;
 import org.apache.jackrabbit.oak.plugins.index.IndexConstants;
 import org.apache.jackrabbit.oak.plugins.index.IndexEditor;
 import org.apache.jackrabbit.oak.plugins.index.IndexUpdateCallback;
@@ -90,6 +91,19 @@ class PropertyIndexEditor implements IndexEditor {
      */
     private final Set<String> keysToCheckForUniqueness;
 
+    /**
+     * The statistics of the indexed values, shared by all editors and loaded
+     * lazily. The supplier returns {@code null} for indexes that were built
+     * before statistics were maintained, and for synchronous indexes unless
+     * they are rebuilt: otherwise every commit would change the same node.
+     */
+    private final Supplier<PropertyStatistics> statistics;
+
+    /**
+     * Whether the index is being rebuilt (only set for the root editor).
+     */
+    private boolean reindex;
+
     /**
      * Flag to indicate whether the type of this node may have changed.
      */
@@ -150,6 +164,7 @@ class PropertyIndexEditor implements IndexEditor {
         } else {
             this.keysToCheckForUniqueness = null;
         }
+        this.statistics = memoize(this::loadStatistics);
         this.updateCallback = updateCallback;
         this.mountInfoProvider = mountInfoProvider;
     }
@@ -164,6 +179,7 @@ class PropertyIndexEditor implements IndexEditor {
         this.valuePattern = parent.valuePattern;
         this.typePredicate = parent.typePredicate;
         this.keysToCheckForUniqueness = parent.keysToCheckForUniqueness;
+        this.statistics = parent.statistics;
         this.updateCallback = parent.updateCallback;
         this.pathFilter = parent.pathFilter;
         this.pathFilterResult = pathFilterResult;
@@ -228,8 +244,37 @@ class PropertyIndexEditor implements IndexEditor {
                 definition, INDEX_CONTENT_NODE_NAME);
     }
 
+    private PropertyStatistics loadStatistics() {
+        if (!reindex && !isAsync(definition)) {
+            return null;
+        }
+        NodeBuilder node = definition.getChildNode(PropertyStatistics.STATISTICS_NODE_NAME);
+        if (node.exists()) {
+            return PropertyStatistics.read(node.getNodeState());
+        }
+        return reindex ? PropertyStatistics.create(false) : null;
+    }
+
+    private static boolean isAsync(NodeBuilder definition) {
+        PropertyState async = definition.getProperty(IndexConstants.ASYNC_PROPERTY_NAME);
+        if (async == null || async.count() == 0) {
+            return false;
+        }
+        for (String lane : async.getValue(Type.STRINGS)) {
+            if (IndexConstants.INDEXING_MODE_SYNC.equals(lane)
+                    || IndexConstants.INDEXING_MODE_NRT.equals(lane)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     public void enter(NodeState before, NodeState after) {
+        if (parent == null) {
+            // the before state is missing when reindexing
+            reindex = !before.exists();
+        }
         // disables property name checks
         typeChanged = typePredicate == null; 
         
@@ -306,6 +351,12 @@ class PropertyIndexEditor implements IndexEditor {
                     strategy.update(index, getPath(), properties, definition,
                             beforeKeys, afterKeys);
                 }
+                PropertyStatistics s = statistics.get();
+                if (s != null) {
+                    for (String key : afterKeys) {
+                        s.add(key);
+                    }
+                }
             }
         }
 
@@ -317,6 +368,11 @@ class PropertyIndexEditor implements IndexEditor {
             // make sure that the index node exist, even with no content
             definition.child(INDEX_CONTENT_NODE_NAME);
 
+            PropertyStatistics s = statistics.get();
+            if (s != null && (s.isModified() || reindex)) {
+                s.write(definition.child(PropertyStatistics.STATISTICS_NODE_NAME));
+            }
+
             boolean uniqueIndex = keysToCheckForUniqueness != null;
             // check uniqueness constraints when leaving the root
             if (uniqueIndex &&
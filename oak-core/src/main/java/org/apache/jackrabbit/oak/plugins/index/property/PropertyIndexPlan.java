@@ -27,11 +27,16 @@ import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.PROPERTY_NA
 import java.util.List;
 import java.util.Set;
 
+import javax.jcr.PropertyType;
+
+import org.apache.jackrabbit.oak.api.PropertyValue;
+import org.apache.jackrabbit.oak.api.Type;
 import org.apache.jackrabbit.oak.commons.PathUtils;
 import org.apache.jackrabbit.oak.plugins.index.IndexConstants;
 import org.apache.jackrabbit.oak.plugins.index.IndexUtils;
 import org.apache.jackrabbit.oak.plugins.index.cursor.Cursors;
 import org.apache.jackrabbit.oak.plugins.index.property.strategy.IndexStoreStrategy;
+import org.apache.jackrabbit.oak.plugins.index.property.strategy.SortedPageStoreStrategy;
 import org.apache.jackrabbit.oak.query.SQL2Parser;
 import org.apache.jackrabbit.oak.spi.filter.PathFilter;
 import org.apache.jackrabbit.oak.spi.mount.MountInfoProvider;
@@ -44,6 +49,7 @@ import org.apache.jackrabbit.oak.spi.state.NodeState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.apache.jackrabbit.guava.common.collect.ImmutableSet;
 import org.apache.jackrabbit.guava.common.collect.Iterables;
 import org.apache.jackrabbit.guava.common.collect.Lists;
 
@@ -84,6 +90,14 @@ public class PropertyIndexPlan {
 
     private final int depth;
 
+    /**
+     * The encoded bounds of a range condition that is read from sorted index
+     * storage (null if there is no such bound), if {@link #range} is set.
+     */
+    private final String rangeFirst, rangeLast;
+
+    private final boolean range;
+
     private final PathFilter pathFilter;
 
     private final boolean unique;
@@ -117,6 +131,9 @@ public class PropertyIndexPlan {
         double bestCost = Double.POSITIVE_INFINITY;
         Set<String> bestValues = emptySet();
         int bestDepth = 1;
+        String bestFirst = null, bestLast = null;
+        boolean bestRange = false;
+        SortedPageStoreStrategy sorted = getSortedStrategy();
 
         if (matchesNodeTypes &&
                 pathFilter.areAllDescendantsIncluded(filter.getPath())) {
@@ -151,6 +168,23 @@ public class PropertyIndexPlan {
                         continue;
                     }
                     Set<String> values = ValuePatternUtil.getValues(restriction, new ValuePattern());
+                    String[] range = values == null && sorted != null && valuePattern.matchesAll()
+                            ? getStringRange(restriction.propertyName) : null;
+                    if (range != null) {
+                        // "[property] > $value" and similar: read the range
+                        String first = range[0];
+                        String last = range[1];
+                        double cost = sorted.countRange(definition, first, last, MAX_COST);
+                        if (cost < bestCost) {
+                            bestDepth = depth;
+                            bestValues = null;
+                            bestFirst = first;
+                            bestLast = last;
+                            bestRange = true;
+                            bestCost = cost;
+                        }
+                        continue;
+                    }
                     if (valuePattern.matchesAll()) {
                         // matches all values: not a problem
                     } else if (values == null) {
@@ -183,6 +217,7 @@ public class PropertyIndexPlan {
                     if (cost < bestCost) {
                         bestDepth = depth;
                         bestValues = values;
+                        bestRange = false;
                         bestCost = cost;
                         if (bestCost == 0) {
                             // shortcut: not possible to top this
@@ -195,9 +230,71 @@ public class PropertyIndexPlan {
 
         this.depth = bestDepth;
         this.values = bestValues;
+        this.range = bestRange;
+        this.rangeFirst = bestFirst;
+        this.rangeLast = bestLast;
         this.cost = COST_OVERHEAD + bestCost;
     }
 
+    /**
+     * Get the bounds of the range conditions on the given property, if all
+     * matching values are strings, so that the (string) order of the sorted
+     * index storage can be used. For other property types, the query engine
+     * compares the values in the order of their type (for example as numbers).
+     *
+     * @param propertyName the property name
+     * @return the encoded lower and upper bound (each may be null), or null if
+     *         there is no such condition
+     */
+    private String[] getStringRange(String propertyName) {
+        String first = null;
+        String last = null;
+        for (PropertyRestriction r : filter.getPropertyRestrictions(propertyName)) {
+            if (r.propertyType != PropertyType.STRING || r.list != null
+                    || r.isLike || r.isNot) {
+                continue;
+            }
+            String f = getString(r.first);
+            if (f != null && (first == null || f.compareTo(first) > 0)) {
+                first = f;
+            }
+            String l = getString(r.last);
+            if (l != null && (last == null || l.compareTo(last) < 0)) {
+                last = l;
+            }
+        }
+        if (first == null && last == null) {
+            return null;
+        }
+        return new String[] {encodeBound(first), encodeBound(last)};
+    }
+
+    private static String getString(PropertyValue value) {
+        return value == null ? null : value.getValue(Type.STRING);
+    }
+
+    private static String encodeBound(String value) {
+        if (value == null) {
+            return null;
+        }
+        // the bounds are inclusive, and truncating keeps the order
+        return PropertyIndexUtil.encode(ImmutableSet.of(value)).iterator().next();
+    }
+
+    /**
+     * Get the strategy if the index uses sorted storage (and only one storage
+     * node).
+     */
+    private SortedPageStoreStrategy getSortedStrategy() {
+        if (strategies.size() == 1) {
+            IndexStoreStrategy s = strategies.iterator().next();
+            if (s instanceof SortedPageStoreStrategy) {
+                return (SortedPageStoreStrategy) s;
+            }
+        }
+        return null;
+    }
+
     String getName() {
         return name;
     }
@@ -214,8 +311,13 @@ public class PropertyIndexPlan {
                     "Please change the query or the index definitions.", name, filter, caller);
         }
         List<Iterable<String>> iterables = Lists.newArrayList();
-        for (IndexStoreStrategy s : strategies) {
-            iterables.add(s.query(filter, name, definition, values));
+        if (range) {
+            iterables.add(getSortedStrategy().queryRange(filter, name, definition,
+                    rangeFirst, rangeLast));
+        } else {
+            for (IndexStoreStrategy s : strategies) {
+                iterables.add(s.query(filter, name, definition, values));
+            }
         }
         Cursor cursor = Cursors.newPathCursor(Iterables.concat(iterables),
                 settings);
@@ -245,7 +347,12 @@ public class PropertyIndexPlan {
         buffer.append(IndexConstants.INDEX_DEFINITIONS_NAME);
         buffer.append("/").append(name).append("\n");
         buffer.append("    values: ");
-        if (values == null) {
+        if (range) {
+            buffer.append("range from ");
+            buffer.append(rangeFirst == null ? "(start)" : SQL2Parser.escapeStringLiteral(rangeFirst));
+            buffer.append(" to ");
+            buffer.append(rangeLast == null ? "(end)" : SQL2Parser.escapeStringLiteral(rangeLast));
+        } else if (values == null) {
             buffer.append("all values in the index (warning: may be slow)");
         } else if (values.isEmpty()) {
             buffer.append("not applicable");
@@ -0,0 +1,374 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.property;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Statistics about the values of an indexed property, used to estimate the
+ * selectivity of conditions when planning queries. The statistics consist of a
+ * HyperLogLog sketch to estimate the number of distinct values, and optionally
+ * an equi-depth histogram.
+ * <p>
+ * The statistics are maintained by the index editors, and stored in the hidden
+ * child node {@link #STATISTICS_NODE_NAME} of the index definition. That node is
+ * removed when reindexing, so that statistics are rebuilt from scratch. After
+ * that, they are only updated by asynchronous indexing lanes, never when
+ * committing to a synchronous index, so that concurrent commits don't conflict
+ * on that node; for synchronous indexes they reflect the last reindex. Values
+ * that are removed from the index are not removed from the sketch, so the
+ * distinct count is an upper bound until the next reindex. The histogram is
+ * only built while reindexing, from a random sample of the values, and is not
+ * updated afterwards.
+ * <p>
+ * Instances are not thread-safe while being updated.
+ */
+public class PropertyStatistics {
+
+    /**
+     * The name of the hidden child node of the index definition that contains
+     * the statistics.
+     */
+    public static final String STATISTICS_NODE_NAME = ":statistics";
+
+    /**
+     * The registers of the HyperLogLog sketch, as a hex string.
+     */
+    static final String DISTINCT = "distinct";
+
+    /**
+     * The bucket boundaries of the histogram.
+     */
+    static final String HISTOGRAM = "histogram";
+
+    /**
+     * Whether all values in the histogram are numbers.
+     */
+    static final String NUMERIC = "numeric";
+
+    /**
+     * The number of registers. The standard error of the estimate is about
+     * 1.04 / sqrt(registers), that is 6.5%.
+     */
+    static final int REGISTERS = 256;
+
+    static final int HISTOGRAM_BUCKETS = 16;
+
+    static final int SAMPLE_SIZE = 1000;
+
+    private final byte[] registers;
+
+    private List<String> histogram;
+
+    private boolean numeric;
+
+    private boolean modified;
+
+    private String[] sample;
+
+    private long sampled;
+
+    private PropertyStatistics(byte[] registers, List<String> histogram, boolean numeric) {
+        this.registers = registers;
+        this.histogram = histogram;
+        this.numeric = numeric;
+    }
+
+    /**
+     * Create empty statistics.
+     *
+     * @param collectSample whether a sample of the values is kept, to build the
+     *            histogram when writing
+     * @return the statistics
+     */
+    public static PropertyStatistics create(boolean collectSample) {
+        PropertyStatistics s = new PropertyStatistics(new byte[REGISTERS], null, false);
+        if (collectSample) {
+            s.sample = new String[SAMPLE_SIZE];
+        }
+        return s;
+    }
+
+    /**
+     * Read the statistics from the given node.
+     *
+     * @param node the node (may not exist)
+     * @return the statistics, or null if the node does not contain statistics
+     */
+    @Nullable
+    public static PropertyStatistics read(NodeState node) {
+        PropertyState d = node.getProperty(DISTINCT);
+        if (d == null) {
+            return null;
+        }
+        String hex = d.getValue(Type.STRING);
+        if (hex.length() != 2 * REGISTERS) {
+            return null;
+        }
+        byte[] registers = new byte[REGISTERS];
+        for (int i = 0; i < REGISTERS; i++) {
+            registers[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        List<String> histogram = null;
+        PropertyState h = node.getProperty(HISTOGRAM);
+        if (h != null && h.count() > 1) {
+            histogram = new ArrayList<>();
+            for (String s : h.getValue(Type.STRINGS)) {
+                histogram.add(s);
+            }
+        }
+        return new PropertyStatistics(registers, histogram, node.getBoolean(NUMERIC));
+    }
+
+    /**
+     * Add a value.
+     *
+     * @param value the value
+     */
+    public void add(String value) {
+        long hash = hash64(fnv1a64(value.getBytes(StandardCharsets.UTF_8)));
+        int i = (int) (hash & (REGISTERS - 1));
+        byte x = (byte) (1 + Long.numberOfLeadingZeros(hash));
+        if (x > registers[i]) {
+            registers[i] = x;
+            modified = true;
+        }
+        if (sample != null) {
+            // reservoir sampling
+            if (sampled < SAMPLE_SIZE) {
+                sample[(int) sampled] = value;
+            } else {
+                long r = ThreadLocalRandom.current().nextLong(sampled + 1);
+                if (r < SAMPLE_SIZE) {
+                    sample[(int) r] = value;
+                }
+            }
+            sampled++;
+            modified = true;
+        }
+    }
+
+    /**
+     * Merge the distinct value sketch of other statistics (for example
+     * collected concurrently for other paths) into these statistics.
+     *
+     * @param other the other statistics
+     */
+    public void merge(PropertyStatistics other) {
+        for (int i = 0; i < REGISTERS; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+                modified = true;
+            }
+        }
+    }
+
+    /**
+     * Whether the statistics were changed since they were read or created.
+     *
+     * @return true if changed
+     */
+    public boolean isModified() {
+        return modified;
+    }
+
+    /**
+     * Write the statistics (including the histogram, if a sample was collected).
+     *
+     * @param node the target node
+     */
+    public void write(NodeBuilder node) {
+        StringBuilder buff = new StringBuilder(2 * REGISTERS);
+        for (byte b : registers) {
+            buff.append(Character.forDigit((b >> 4) & 15, 16)).append(Character.forDigit(b & 15, 16));
+        }
+        node.setProperty(DISTINCT, buff.toString());
+        if (sample != null) {
+            buildHistogram();
+            if (histogram == null) {
+                node.removeProperty(HISTOGRAM);
+                node.removeProperty(NUMERIC);
+            } else {
+                node.setProperty(HISTOGRAM, histogram, Type.STRINGS);
+                node.setProperty(NUMERIC, numeric);
+            }
+        }
+        modified = false;
+    }
+
+    private void buildHistogram() {
+        int n = (int) Math.min(sampled, SAMPLE_SIZE);
+        if (n < 2) {
+            histogram = null;
+            return;
+        }
+        String[] values = Arrays.copyOf(sample, n);
+        numeric = true;
+        for (String v : values) {
+            if (parseDouble(v) == null) {
+                numeric = false;
+                break;
+            }
+        }
+        Arrays.sort(values, comparator());
+        histogram = new ArrayList<>();
+        for (int i = 0; i <= HISTOGRAM_BUCKETS; i++) {
+            histogram.add(values[(int) ((long) i * (n - 1) / HISTOGRAM_BUCKETS)]);
+        }
+    }
+
+    /**
+     * Get the estimated number of distinct values.
+     *
+     * @return the estimated number of distinct values
+     */
+    public long getDistinctCount() {
+        int m = REGISTERS;
+        double sum = 0;
+        int countZero = 0;
+        for (byte c : registers) {
+            countZero += c == 0 ? 1 : 0;
+            sum += 1. / (1L << (c & 0xff));
+        }
+        double am = 0.7213 / (1.0 + 1.079 / m);
+        long est = (long) (am * m * m / sum);
+        if (est <= 5 * m && countZero > 0) {
+            // linear counting
+            est = (long) (m * Math.log((double) m / countZero));
+        }
+        return est;
+    }
+
+    /**
+     * Get the estimated fraction of entries that match an equality condition
+     * with the given number of values.
+     *
+     * @param valueCount the number of values (1 for "=", more for "in")
+     * @return the selectivity (between 0 and 1), or -1 if unknown
+     */
+    public double getEqualitySelectivity(int valueCount) {
+        long distinct = getDistinctCount();
+        if (distinct <= 0) {
+            return -1;
+        }
+        return Math.min(1.0, (double) valueCount / distinct);
+    }
+
+    /**
+     * Get the estimated fraction of entries that match a range condition. The
+     * values are compared as numbers if all values of the histogram are
+     * numbers, and as strings otherwise.
+     *
+     * @param first the lower bound, or null if there is none
+     * @param last the upper bound, or null if there is none
+     * @return the selectivity (between 0 and 1), or -1 if unknown
+     */
+    public double getRangeSelectivity(@Nullable String first, @Nullable String last) {
+        if (histogram == null) {
+            return -1;
+        }
+        if (numeric && ((first != null && parseDouble(first) == null)
+                || (last != null && parseDouble(last) == null))) {
+            return -1;
+        }
+        double low = first == null ? 0 : position(first);
+        double high = last == null ? 1 : position(last);
+        // at least one value in a bucket is assumed to match
+        double min = 1.0 / (2 * (histogram.size() - 1));
+        return Math.min(1.0, Math.max(min, high - low));
+    }
+
+    /**
+     * The estimated fraction of values that are smaller than the given value.
+     */
+    private double position(String value) {
+        Comparator<String> comp = comparator();
+        int buckets = histogram.size() - 1;
+        if (comp.compare(value, histogram.get(0)) <= 0) {
+            return 0;
+        }
+        for (int i = 0; i < buckets; i++) {
+            String high = histogram.get(i + 1);
+            if (comp.compare(value, high) <= 0) {
+                double offset = 0.5;
+                if (numeric) {
+                    double l = parseDouble(histogram.get(i));
+                    double h = parseDouble(high);
+                    if (h > l) {
+                        offset = (parseDouble(value) - l) / (h - l);
+                    }
+                }
+                return (i + offset) / buckets;
+            }
+        }
+        return 1;
+    }
+
+    private Comparator<String> comparator() {
+        if (numeric) {
+            return (a, b) -> Double.compare(parseDouble(a), parseDouble(b));
+        }
+        return Comparator.naturalOrder();
+    }
+
+    private static Double parseDouble(String s) {
+        try {
+            return Double.parseDouble(s);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The 64-bit FNV-1a hash of all the bytes, so that (unlike
+     * {@link String#hashCode()}) distinct values rarely collide.
+     */
+    private static long fnv1a64(byte[] bytes) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    /**
+     * The murmur3 finalizer, which is a reversible mapping of 64-bit values.
+     */
+    private static long hash64(long x) {
+        x = (x ^ (x >>> 33)) * 0xff51afd7ed558ccdL;
+        x = (x ^ (x >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return x ^ (x >>> 33);
+    }
+
+    @Override
+    public String toString() {
+        return "distinct: " + getDistinctCount() + (histogram == null ? "" : " histogram: " + histogram);
+    }
+
+}
@@ -32,6 +32,7 @@ import org.apache.jackrabbit.oak.plugins.index.IndexUtils;
 import org.apache.jackrabbit.oak.plugins.index.counter.ApproximateCounter;
 import org.apache.jackrabbit.oak.plugins.index.counter.NodeCounterEditor;
 import org.apache.jackrabbit.oak.plugins.index.counter.jmx.NodeCounter;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyStatistics;
 import org.apache.jackrabbit.oak.plugins.memory.MemoryChildNodeEntry;
 import org.apache.jackrabbit.oak.query.FilterIterators;
 import org.apache.jackrabbit.oak.spi.query.Filter;
@@ -263,6 +264,13 @@ public class ContentMirrorStoreStrategy implements IndexStoreStrategy {
                 if (approxCount != -1) {
                     // approximate count is available for the index:
                     // check approximate counts for each value
+                    long missingKeyCount = 10 * NodeCounterEditor.DEFAULT_RESOLUTION;
+                    long distinct = getDistinctKeyCount(indexMeta);
+                    if (distinct > 0) {
+                        // keys without approximate count are small,
+                        // so at most the average number of entries per key
+                        missingKeyCount = Math.max(1, Math.min(missingKeyCount, approxCount / distinct));
+                    }
                     for (String p : values) {
                         NodeState s = index.getChildNode(p);
                         if (s.exists()) {
@@ -271,7 +279,7 @@ public class ContentMirrorStoreStrategy implements IndexStoreStrategy {
                                 approxMax += a;
                             } else if (approxMax > 0) {
                                 // in absence of approx count for a key we should be conservative
-                                approxMax += 10 * NodeCounterEditor.DEFAULT_RESOLUTION;
+                                approxMax += missingKeyCount;
                             }
                         }
                     }
@@ -332,6 +340,19 @@ public class ContentMirrorStoreStrategy implements IndexStoreStrategy {
         return count;
     }
 
+    /**
+     * Get the estimated number of distinct keys of the index, from the
+     * statistics maintained by the index editor.
+     *
+     * @param indexMeta the index definition
+     * @return the number of distinct keys, or -1 if unknown
+     */
+    private static long getDistinctKeyCount(NodeState indexMeta) {
+        PropertyStatistics stats = PropertyStatistics.read(
+                indexMeta.getChildNode(PropertyStatistics.STATISTICS_NODE_NAME));
+        return stats == null ? -1 : stats.getDistinctCount();
+    }
+
     /**
      * An iterator over paths within an index node.
      */
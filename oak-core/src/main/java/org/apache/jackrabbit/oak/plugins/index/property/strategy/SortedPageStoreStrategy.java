@@ -0,0 +1,728 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.property.strategy;
+
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.ENTRY_COUNT_PROPERTY_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_CONTENT_NODE_NAME;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.jackrabbit.guava.common.base.Charsets;
+import org.apache.jackrabbit.guava.common.base.Supplier;
+import org.apache.jackrabbit.guava.common.collect.AbstractIterator;
+import org.apache.jackrabbit.guava.common.collect.Iterators;
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.apache.jackrabbit.oak.query.FilterIterators;
+import org.apache.jackrabbit.oak.spi.query.Filter;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An IndexStoreStrategy implementation that stores the index entries in sorted
+ * pages, similar to a B+ tree.
+ * <p>
+ * Each entry is a pair of the (decoded) property value and the path. The pages
+ * are child nodes of the index node, and the name of the root page is stored
+ * in the {@link #ROOT} property of the index node. A leaf page contains the
+ * sorted entries in the parallel multi-valued properties {@link #KEYS} and
+ * {@link #PATHS}. An inner page additionally contains the names of the child
+ * pages in the property {@link #CHILDREN}; its entries are the fence keys, that
+ * is, the lower bounds of the entries of the child pages. The fence key of the
+ * first child is empty, as this child also contains all smaller entries.
+ * <p>
+ * For example, the index structure of a small index could be:
+ * <pre>
+ * :index
+ *   - root = "9f0c4e"
+ *   + 9f0c4e
+ *     - keys = ["", "m"]
+ *     - paths = ["", "/content/y"]
+ *     - children = ["1b2a77", "c3d410"]
+ *   + 1b2a77
+ *     - keys = ["a", "b", "b"]
+ *     - paths = ["/content/x", "/content/x", "/content/z"]
+ *   + c3d410
+ *     - keys = ["m", "x"]
+ *     - paths = ["/content/y", "/content/y"]
+ * </pre>
+ * Compared to the {@link ContentMirrorStoreStrategy}, this supports reading the
+ * entries in the order of the values, reading a range of values, and
+ * estimating the number of entries (also of a range) by reading one page per
+ * level. Pages are split when they get too large, and removed when they are
+ * empty; they are not merged. Because updates modify the same pages, concurrent
+ * changes of entries with similar values are more likely to conflict than with
+ * the content mirror strategy.
+ */
+public class SortedPageStoreStrategy implements IndexStoreStrategy {
+
+    static final Logger LOG = LoggerFactory.getLogger(SortedPageStoreStrategy.class);
+
+    /**
+     * The property of the index node that contains the name of the root page.
+     */
+    public static final String ROOT = "root";
+
+    /**
+     * The property of a page that contains the (sorted) property values.
+     */
+    public static final String KEYS = "keys";
+
+    /**
+     * The property of a page that contains the paths.
+     */
+    public static final String PATHS = "paths";
+
+    /**
+     * The property of an inner page that contains the names of the child
+     * pages.
+     */
+    public static final String CHILDREN = "children";
+
+    /**
+     * The maximum number of entries per page.
+     */
+    static final int MAX_PAGE_SIZE = Integer.getInteger("oak.sortedIndex.maxPageSize", 500);
+
+    private final String indexName;
+
+    private final int maxPageSize;
+
+    public SortedPageStoreStrategy() {
+        this(INDEX_CONTENT_NODE_NAME);
+    }
+
+    public SortedPageStoreStrategy(String indexName) {
+        this(indexName, MAX_PAGE_SIZE);
+    }
+
+    SortedPageStoreStrategy(String indexName, int maxPageSize) {
+        this.indexName = indexName;
+        this.maxPageSize = Math.max(4, maxPageSize);
+    }
+
+    @Override
+    public void update(
+            Supplier<NodeBuilder> index, String path,
+            @Nullable final String indexName,
+            @Nullable final NodeBuilder indexMeta,
+            Set<String> beforeKeys, Set<String> afterKeys) {
+        for (String key : beforeKeys) {
+            remove(index.get(), decode(key), path);
+        }
+        for (String key : afterKeys) {
+            insert(index.get(), decode(key), path);
+        }
+    }
+
+    private void insert(NodeBuilder index, String key, String path) {
+        String rootName = index.getString(ROOT);
+        if (rootName == null) {
+            Page leaf = new Page(newPageName(index), false);
+            leaf.add(0, key, path, null);
+            leaf.write(index.child(leaf.name));
+            index.setProperty(ROOT, leaf.name);
+            return;
+        }
+        Page right = insert(index, rootName, key, path);
+        if (right != null) {
+            // the root page was split: add a level
+            Page left = Page.read(rootName, index.getChildNode(rootName));
+            Page root = new Page(newPageName(index), true);
+            root.add(0, left.keys.get(0), left.paths.get(0), left.name);
+            root.add(1, right.keys.get(0), right.paths.get(0), right.name);
+            root.write(index.child(root.name));
+            index.setProperty(ROOT, root.name);
+        }
+    }
+
+    /**
+     * Insert an entry into the given page or one of its descendants.
+     *
+     * @return the new right sibling if the page was split, or null
+     */
+    private Page insert(NodeBuilder index, String name, String key, String path) {
+        NodeBuilder node = index.getChildNode(name);
+        Page page = Page.read(name, node);
+        int pos = page.find(key, path);
+        if (page.isLeaf()) {
+            if (pos >= 0) {
+                // already indexed
+                return null;
+            }
+            page.add(-pos - 1, key, path, null);
+        } else {
+            int child = Page.getChildIndex(pos);
+            Page right = insert(index, page.children.get(child), key, path);
+            if (right == null) {
+                return null;
+            }
+            page.add(child + 1, right.keys.get(0), right.paths.get(0), right.name);
+        }
+        if (page.size() <= maxPageSize) {
+            page.write(node);
+            return null;
+        }
+        Page right = page.split(newPageName(index));
+        page.write(node);
+        right.write(index.child(right.name));
+        return right;
+    }
+
+    private static void remove(NodeBuilder index, String key, String path) {
+        String rootName = index.getString(ROOT);
+        if (rootName == null) {
+            return;
+        }
+        if (remove(index, rootName, key, path)) {
+            index.getChildNode(rootName).remove();
+            index.removeProperty(ROOT);
+            return;
+        }
+        // remove levels that only have one child
+        while (true) {
+            Page root = Page.read(rootName, index.getChildNode(rootName));
+            if (root.isLeaf() || root.size() != 1) {
+                break;
+            }
+            index.getChildNode(rootName).remove();
+            rootName = root.children.get(0);
+            index.setProperty(ROOT, rootName);
+        }
+    }
+
+    /**
+     * Remove an entry from the given page or one of its descendants.
+     *
+     * @return true if the page is now empty (and needs to be removed)
+     */
+    private static boolean remove(NodeBuilder index, String name, String key, String path) {
+        NodeBuilder node = index.getChildNode(name);
+        Page page = Page.read(name, node);
+        int pos = page.find(key, path);
+        if (page.isLeaf()) {
+            if (pos < 0) {
+                return false;
+            }
+            page.remove(pos);
+        } else {
+            int child = Page.getChildIndex(pos);
+            String childName = page.children.get(child);
+            if (!remove(index, childName, key, path)) {
+                return false;
+            }
+            index.getChildNode(childName).remove();
+            page.remove(child);
+        }
+        if (page.size() == 0) {
+            return true;
+        }
+        page.write(node);
+        return false;
+    }
+
+    private static String newPageName(NodeBuilder index) {
+        while (true) {
+            String name = Long.toHexString(ThreadLocalRandom.current().nextLong());
+            if (!index.hasChildNode(name)) {
+                return name;
+            }
+        }
+    }
+
+    @Override
+    public Iterable<String> query(final Filter filter, final String indexName,
+            final NodeState indexMeta, final Iterable<String> values) {
+        final NodeState index = indexMeta.getChildNode(getIndexNodeName());
+        return new Iterable<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                if (values == null) {
+                    return new PathIterator(filter, indexName,
+                            new EntryIterator(index, null, null));
+                }
+                List<Iterator<IndexEntry>> list = new ArrayList<>();
+                for (String v : values) {
+                    String key = decode(v);
+                    list.add(new EntryIterator(index, key, key));
+                }
+                return new PathIterator(filter, indexName, Iterators.concat(list.iterator()));
+            }
+        };
+    }
+
+    /**
+     * Search for a range of values, in the order of the values.
+     *
+     * @param filter the filter (can optionally be used for optimized query execution)
+     * @param indexName the name of the index (for logging)
+     * @param indexMeta the index metadata node (may not be null)
+     * @param first the encoded lower bound (inclusive), or null for no lower bound
+     * @param last the encoded upper bound (inclusive), or null for no upper bound
+     * @return an iterator of paths
+     */
+    public Iterable<String> queryRange(final Filter filter, final String indexName,
+            final NodeState indexMeta, @Nullable final String first, @Nullable final String last) {
+        final NodeState index = indexMeta.getChildNode(getIndexNodeName());
+        return () -> new PathIterator(filter, indexName,
+                new EntryIterator(index, first == null ? null : decode(first),
+                        last == null ? null : decode(last)));
+    }
+
+    /**
+     * Search for a range of values, returning the index entries in the order
+     * of the values.
+     *
+     * @param indexMeta the index metadata node (may not be null)
+     * @param first the encoded lower bound (inclusive), or null for no lower bound
+     * @param last the encoded upper bound (inclusive), or null for no upper bound
+     * @return an iterator of index entries (with decoded property values)
+     */
+    public Iterable<IndexEntry> queryEntries(NodeState indexMeta,
+            @Nullable final String first, @Nullable final String last) {
+        final NodeState index = indexMeta.getChildNode(getIndexNodeName());
+        return () -> new EntryIterator(index, first == null ? null : decode(first),
+                last == null ? null : decode(last));
+    }
+
+    @Override
+    public boolean exists(Supplier<NodeBuilder> index, String key) {
+        String k = decode(key);
+        return new EntryIterator(index.get().getNodeState(), k, k).hasNext();
+    }
+
+    @Override
+    public long count(NodeState root, NodeState indexMeta, Set<String> values, int max) {
+        if (values == null) {
+            PropertyState ec = indexMeta.getProperty(ENTRY_COUNT_PROPERTY_NAME);
+            if (ec != null) {
+                long count = ec.getValue(Type.LONG);
+                if (count >= 0) {
+                    return count;
+                }
+            }
+            return countRange(indexMeta, null, null, max);
+        }
+        long count = 0;
+        for (String v : values) {
+            count += countRange(indexMeta, v, v, max);
+            if (count >= max) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public long count(Filter filter, NodeState root, NodeState indexMeta, Set<String> values, int max) {
+        return count(root, indexMeta, values, max);
+    }
+
+    /**
+     * Count the entries with a value in the given range. Up to the given
+     * maximum, the entries are counted; above that, the count is estimated
+     * from the positions of the bounds in the pages read when searching them,
+     * and the sizes of those pages.
+     *
+     * @param indexMeta the index metadata node (may not be null)
+     * @param first the encoded lower bound (inclusive), or null for no lower bound
+     * @param last the encoded upper bound (inclusive), or null for no upper bound
+     * @param max the number of entries up to which the result is exact
+     * @return the (estimated) number of entries
+     */
+    public long countRange(NodeState indexMeta, @Nullable String first, @Nullable String last, int max) {
+        NodeState index = indexMeta.getChildNode(getIndexNodeName());
+        String firstKey = first == null ? null : decode(first);
+        String lastKey = last == null ? null : decode(last);
+        EntryIterator it = new EntryIterator(index, firstKey, lastKey);
+        long count = 0;
+        while (count < max && it.hasNext()) {
+            it.next();
+            count++;
+        }
+        if (count < max) {
+            return count;
+        }
+        // the first entry if there is no lower bound, to also use the size
+        // of the first pages for the estimate
+        double[] low = estimatePosition(index, firstKey == null ? "" : firstKey, "");
+        double[] high = estimatePosition(index, lastKey, null);
+        double total = (low[1] + high[1]) / 2;
+        return Math.max(max, (long) ((high[0] - low[0]) * total));
+    }
+
+    /**
+     * Estimate the position of the given entry, as a fraction of the number
+     * of entries, assuming sibling pages have the same number of entries.
+     *
+     * @param key the key, or null for after the last entry
+     * @param path the path, or null for after the last path of the key
+     * @return the estimated fraction of entries that are smaller (between 0
+     *         and 1), and the estimated number of entries
+     */
+    static double[] estimatePosition(NodeState index, @Nullable String key, @Nullable String path) {
+        String name = index.getString(ROOT);
+        double fraction = 0;
+        double scale = 1;
+        double size = 1;
+        while (name != null) {
+            Page page = Page.read(name, index.getChildNode(name));
+            int pos = page.find(key, path);
+            size *= Math.max(1, page.size());
+            if (page.isLeaf()) {
+                pos = pos >= 0 ? pos : -pos - 1;
+                name = null;
+            } else {
+                pos = Page.getChildIndex(pos);
+                name = page.children.get(pos);
+            }
+            fraction += scale * pos / Math.max(1, page.size());
+            scale /= Math.max(1, page.size());
+        }
+        return new double[] {fraction, size};
+    }
+
+    @Override
+    public String getIndexNodeName() {
+        return indexName;
+    }
+
+    static String decode(String key) {
+        if (":".equals(key)) {
+            // empty string
+            return "";
+        }
+        try {
+            return URLDecoder.decode(key, Charsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException("UTF-8 is unsupported", e);
+        } catch (IllegalArgumentException e) {
+            // not encoded
+            return key;
+        }
+    }
+
+    /**
+     * A page (a leaf or an inner page).
+     */
+    static class Page {
+
+        final String name;
+
+        final List<String> keys;
+
+        final List<String> paths;
+
+        /**
+         * The names of the child pages, or null for a leaf page.
+         */
+        final List<String> children;
+
+        /**
+         * The current position, when iterating.
+         */
+        int pos;
+
+        Page(String name, boolean inner) {
+            this(name, new ArrayList<>(), new ArrayList<>(), inner ? new ArrayList<>() : null);
+        }
+
+        private Page(String name, List<String> keys, List<String> paths, List<String> children) {
+            this.name = name;
+            this.keys = keys;
+            this.paths = paths;
+            this.children = children;
+        }
+
+        static Page read(String name, NodeState node) {
+            return read(name, node.getProperty(KEYS), node.getProperty(PATHS),
+                    node.getProperty(CHILDREN));
+        }
+
+        static Page read(String name, NodeBuilder node) {
+            return read(name, node.getProperty(KEYS), node.getProperty(PATHS),
+                    node.getProperty(CHILDREN));
+        }
+
+        private static Page read(String name, PropertyState keys, PropertyState paths,
+                PropertyState children) {
+            if (keys == null || paths == null || keys.count() != paths.count()
+                    || (children != null && children.count() != keys.count())) {
+                LOG.warn("Missing or corrupt index page {}", name);
+                return new Page(name, false);
+            }
+            return new Page(name, toList(keys), toList(paths),
+                    children == null ? null : toList(children));
+        }
+
+        private static List<String> toList(PropertyState p) {
+            ArrayList<String> list = new ArrayList<>(p.count() + 1);
+            for (String s : p.getValue(Type.STRINGS)) {
+                list.add(s);
+            }
+            return list;
+        }
+
+        boolean isLeaf() {
+            return children == null;
+        }
+
+        int size() {
+            return keys.size();
+        }
+
+        /**
+         * Search the given entry.
+         *
+         * @param key the key, or null for after the last entry
+         * @param path the path, or null for after the last path of the key
+         * @return the index of the entry, if found, otherwise
+         *         (-(insertion point) - 1)
+         */
+        int find(@Nullable String key, @Nullable String path) {
+            if (key == null) {
+                return -size() - 1;
+            }
+            int low = 0, high = size() - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int comp = keys.get(mid).compareTo(key);
+                if (comp == 0) {
+                    comp = path == null ? -1 : paths.get(mid).compareTo(path);
+                }
+                if (comp < 0) {
+                    low = mid + 1;
+                } else if (comp > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        /**
+         * Get the index of the child page that contains the searched entry.
+         *
+         * @param found the result of {@link #find(String, String)}
+         * @return the index of the child page
+         */
+        static int getChildIndex(int found) {
+            return found >= 0 ? found : Math.max(0, -found - 2);
+        }
+
+        void add(int index, String key, String path, String child) {
+            keys.add(index, key);
+            paths.add(index, path);
+            if (children != null) {
+                children.add(index, child);
+            }
+        }
+
+        void remove(int index) {
+            keys.remove(index);
+            paths.remove(index);
+            if (children != null) {
+                children.remove(index);
+            }
+        }
+
+        /**
+         * Move the upper half of the entries to a new page.
+         *
+         * @param newName the name of the new page
+         * @return the new page
+         */
+        Page split(String newName) {
+            int half = size() / 2;
+            Page right = new Page(newName,
+                    new ArrayList<>(keys.subList(half, size())),
+                    new ArrayList<>(paths.subList(half, size())),
+                    children == null ? null : new ArrayList<>(children.subList(half, size())));
+            keys.subList(half, keys.size()).clear();
+            paths.subList(half, paths.size()).clear();
+            if (children != null) {
+                children.subList(half, children.size()).clear();
+            }
+            return right;
+        }
+
+        void write(NodeBuilder node) {
+            List<String> k = keys;
+            List<String> p = paths;
+            if (children != null) {
+                // the first child also contains all smaller entries
+                k = new ArrayList<>(keys);
+                k.set(0, "");
+                p = new ArrayList<>(paths);
+                p.set(0, "");
+            }
+            node.setProperty(KEYS, k, Type.STRINGS);
+            node.setProperty(PATHS, p, Type.STRINGS);
+            if (children == null) {
+                node.removeProperty(CHILDREN);
+            } else {
+                node.setProperty(CHILDREN, children, Type.STRINGS);
+            }
+        }
+
+    }
+
+    /**
+     * An iterator over the entries of a range, in sorted order. It keeps the
+     * pages from the root to the current leaf.
+     */
+    static class EntryIterator extends AbstractIterator<IndexEntry> {
+
+        private final NodeState index;
+
+        private final String last;
+
+        private final Deque<Page> pages = new ArrayDeque<>();
+
+        /**
+         * Create an iterator.
+         *
+         * @param index the index node
+         * @param first the first key (inclusive), or null to start with the
+         *            first entry
+         * @param last the last key (inclusive), or null to read until the end
+         */
+        EntryIterator(NodeState index, @Nullable String first, @Nullable String last) {
+            this.index = index;
+            this.last = last;
+            String name = index.getString(ROOT);
+            if (name == null) {
+                return;
+            }
+            if (first == null) {
+                descendFirst(name);
+                return;
+            }
+            while (true) {
+                Page page = Page.read(name, index.getChildNode(name));
+                pages.addLast(page);
+                int pos = page.find(first, "");
+                if (page.isLeaf()) {
+                    page.pos = pos >= 0 ? pos : -pos - 1;
+                    break;
+                }
+                page.pos = Page.getChildIndex(pos);
+                name = page.children.get(page.pos);
+            }
+        }
+
+        private void descendFirst(String name) {
+            while (true) {
+                Page page = Page.read(name, index.getChildNode(name));
+                page.pos = 0;
+                pages.addLast(page);
+                if (page.isLeaf() || page.size() == 0) {
+                    break;
+                }
+                name = page.children.get(0);
+            }
+        }
+
+        @Override
+        protected IndexEntry computeNext() {
+            while (!pages.isEmpty()) {
+                Page page = pages.getLast();
+                if (page.isLeaf()) {
+                    if (page.pos < page.size()) {
+                        String key = page.keys.get(page.pos);
+                        if (last != null && key.compareTo(last) > 0) {
+                            pages.clear();
+                            break;
+                        }
+                        String path = page.paths.get(page.pos++);
+                        return new IndexEntry(path, key);
+                    }
+                    pages.removeLast();
+                    continue;
+                }
+                // the subtree of the current child was read
+                page.pos++;
+                if (page.pos < page.size()) {
+                    descendFirst(page.children.get(page.pos));
+                } else {
+                    pages.removeLast();
+                }
+            }
+            return endOfData();
+        }
+
+    }
+
+    /**
+     * An iterator over the paths of index entries, filtered by the path of the
+     * filter.
+     */
+    static class PathIterator extends AbstractIterator<String> {
+
+        private final Filter filter;
+
+        private final String indexName;
+
+        private final String filterPath;
+
+        private final Iterator<IndexEntry> entries;
+
+        private long readCount;
+
+        PathIterator(@Nullable Filter filter, String indexName, Iterator<IndexEntry> entries) {
+            this.filter = filter;
+            this.indexName = indexName;
+            this.filterPath = filter == null ? "/" : filter.getPath();
+            this.entries = entries;
+        }
+
+        @Override
+        protected String computeNext() {
+            while (entries.hasNext()) {
+                String path = entries.next().getPath();
+                readCount++;
+                if (filter != null && readCount % ContentMirrorStoreStrategy.TRAVERSING_WARN == 0) {
+                    FilterIterators.checkReadLimit(readCount, filter.getQueryLimits());
+                    LOG.warn("Index-Traversed {} index entries using index {} with filter {}",
+                            readCount, indexName, filter);
+                }
+                if (PathUtils.denotesRoot(filterPath) || filterPath.equals(path)
+                        || PathUtils.isAncestor(filterPath, path)) {
+                    return path;
+                }
+            }
+            return endOfData();
+        }
+
+    }
+
+}
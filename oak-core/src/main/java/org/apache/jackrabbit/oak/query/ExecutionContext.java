@@ -116,4 +116,17 @@ public class ExecutionContext {
     public PermissionProvider getPermissionProvider() {
         return permissionProvider;
     }
+
+    /**
+     * Create a context that reads an immutable snapshot of the base state,
+     * with its own permission provider, so that the content can be read by
+     * another thread than the one that uses this context.
+     *
+     * @return the new context, or null if not supported (for example because
+     *         the query needs to see transient changes)
+     */
+    @Nullable
+    public ExecutionContext newSnapshotContext() {
+        return null;
+    }
 }
@@ -13,25 +13,58 @@
  */
 package org.apache.jackrabbit.oak.query;
 
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.lang.ref.Cleaner;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.function.Function;
 
+import org.apache.jackrabbit.guava.common.collect.Iterators;
+import org.apache.jackrabbit.oak.commons.json.JsopBuilder;
+import org.apache.jackrabbit.oak.commons.json.JsopReader;
+import org.apache.jackrabbit.oak.commons.json.JsopTokenizer;
+import org.apache.jackrabbit.oak.commons.sort.ExternalSort;
 import org.apache.jackrabbit.oak.spi.query.QueryLimits;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Filtering iterators that are useful for queries with limit, offset, order by,
  * or distinct.
+ * <p>
+ * If there are more entries to sort or to make distinct than can be kept in
+ * memory (see {@link QueryLimits#getLimitInMemory()}), the entries are spilled
+ * to temporary files if a {@link Spiller} is available, otherwise the query
+ * fails. Iterators that may read from temporary files are {@link Closeable};
+ * the files are deleted when the iterator is closed, when all entries were
+ * read, or when the iterator is no longer referenced.
  */
 public class FilterIterators {
     
     private static final Logger LOG = LoggerFactory.getLogger(FilterIterators.class);
 
+    private static final Charset CHARSET = StandardCharsets.UTF_8;
+
+    /**
+     * Deletes the temporary files of spilled iterators that are no longer
+     * referenced.
+     */
+    private static final Cleaner CLEANER = Cleaner.create();
+
     private FilterIterators() {
     }
 
@@ -78,15 +111,37 @@ public class FilterIterators {
     public static <K> Iterator<K> newCombinedFilter(
             Iterator<K> it, boolean distinct, long limit, long offset, 
             Comparator<K> orderBy, QueryLimits settings) {
+        return newCombinedFilter(it, distinct, limit, offset, orderBy, settings, null);
+    }
+
+    /**
+     * Close an iterator if it is {@link Closeable}, for example to delete the
+     * temporary files of spilled entries.
+     *
+     * @param it the iterator (may be null)
+     */
+    public static void close(@Nullable Iterator<?> it) {
+        if (it instanceof Closeable) {
+            try {
+                ((Closeable) it).close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    public static <K> Iterator<K> newCombinedFilter(
+            Iterator<K> it, boolean distinct, long limit, long offset, 
+            Comparator<K> orderBy, QueryLimits settings, @Nullable Spiller<K> spiller) {
         if (distinct) {
-            it = FilterIterators.newDistinct(it, settings);
+            it = FilterIterators.newDistinct(it, settings, spiller);
         }
         if (orderBy != null) {
             // avoid overflow (both offset and limit could be Long.MAX_VALUE)
             int max = (int) Math.min(Integer.MAX_VALUE, 
                     Math.min(Integer.MAX_VALUE, offset) + 
                     Math.min(Integer.MAX_VALUE, limit));
-            it = FilterIterators.newSort(it, orderBy, max, settings);
+            it = FilterIterators.newSort(it, orderBy, max, settings, spiller);
         }
         if (offset != 0) {
             it = FilterIterators.newOffset(it, offset);
@@ -98,7 +153,12 @@ public class FilterIterators {
     }
     
     public static <K> DistinctIterator<K> newDistinct(Iterator<K> it, QueryLimits settings) {
-        return new DistinctIterator<K>(it, settings);
+        return newDistinct(it, settings, null);
+    }
+
+    public static <K> DistinctIterator<K> newDistinct(Iterator<K> it, QueryLimits settings,
+            @Nullable Spiller<K> spiller) {
+        return new DistinctIterator<K>(it, settings, spiller);
     }
     
     public static <K> Iterator<K> newLimit(Iterator<K> it, long limit) {
@@ -110,7 +170,55 @@ public class FilterIterators {
     }
     
     public static <K> Iterator<K> newSort(Iterator<K> it, Comparator<K> orderBy, int max, QueryLimits settings) {
-        return new SortIterator<K>(it, orderBy, max, settings);
+        return newSort(it, orderBy, max, settings, null);
+    }
+
+    public static <K> Iterator<K> newSort(Iterator<K> it, Comparator<K> orderBy, int max, QueryLimits settings,
+            @Nullable Spiller<K> spiller) {
+        return new SortIterator<K>(it, orderBy, max, settings, spiller);
+    }
+
+    /**
+     * Converts entries to a line of text and back, so that entries can be
+     * spilled to disk.
+     *
+     * @param <K> the entry type
+     */
+    public interface Spiller<K> {
+
+        /**
+         * Convert an entry to a line of text.
+         *
+         * @param entry the entry
+         * @return the text (without line breaks), or null if the entry can
+         *         not be spilled
+         */
+        @Nullable
+        String toLine(K entry);
+
+        /**
+         * Convert a line of text back to an entry.
+         *
+         * @param line the text
+         * @return the entry
+         */
+        K fromLine(String line);
+
+        /**
+         * Get the key of an entry. Entries that are equal have the same key.
+         *
+         * @param entry the entry
+         * @return the key
+         */
+        String getKey(K entry);
+
+        /**
+         * Called when entries were written to disk.
+         *
+         * @param bytes the number of bytes written
+         */
+        void spilled(long bytes);
+
     }
 
     /**
@@ -120,17 +228,21 @@ public class FilterIterators {
      * 
      * @param <K> the entry type
      */
-    static class DistinctIterator<K> implements Iterator<K> {
+    static class DistinctIterator<K> implements Iterator<K>, Closeable {
 
         private final Iterator<K> source;
         private final QueryLimits settings;
-        private final HashSet<K> distinctSet;
+        private final Spiller<K> spiller;
+        private HashSet<K> distinctSet;
+        private Iterator<SpillEntry<K>> spilledEntries;
+        private Iterator<K> spilled;
         private K current;
         private boolean end;
 
-        DistinctIterator(Iterator<K> source, QueryLimits settings) {
+        DistinctIterator(Iterator<K> source, QueryLimits settings, @Nullable Spiller<K> spiller) {
             this.source = source;
             this.settings = settings;
+            this.spiller = spiller;
             distinctSet = new HashSet<K>();
         }
 
@@ -138,17 +250,94 @@ public class FilterIterators {
             if (end) {
                 return;
             }
-            while (source.hasNext()) {
-                current = source.next();
-                if (distinctSet.add(current)) {
-                    checkMemoryLimit(distinctSet.size(), settings);
+            if (spilled != null) {
+                if (spilled.hasNext()) {
+                    current = spilled.next();
                     return;
                 }
+            } else {
+                while (source.hasNext()) {
+                    current = source.next();
+                    if (distinctSet.add(current)) {
+                        if (spiller != null && distinctSet.size() > settings.getLimitInMemory()) {
+                            spilled = spillRemaining();
+                        } else {
+                            checkMemoryLimit(distinctSet.size(), settings);
+                        }
+                        return;
+                    }
+                }
             }
             current = null;
             end = true;
         }
 
+        /**
+         * Read the remaining entries of the source, and remove the duplicates
+         * using temporary files: the entries are sorted by key (and position),
+         * the first entry of each key is kept, and then sorted by position
+         * again.
+         *
+         * @return the remaining distinct entries, in the original order
+         */
+        private Iterator<K> spillRemaining() {
+            HashSet<String> returned = new HashSet<String>();
+            for (K x : distinctSet) {
+                returned.add(spiller.getKey(x));
+            }
+            distinctSet = null;
+            long limit = settings.getLimitInMemory();
+            SortedRuns byKey = new SortedRuns(SpillEntry.BY_KEY, spiller, null);
+            ArrayList<SpillEntry<K>> list = new ArrayList<SpillEntry<K>>();
+            long pos = 0;
+            while (source.hasNext()) {
+                K x = source.next();
+                String key = spiller.getKey(x);
+                if (returned.contains(key)) {
+                    continue;
+                }
+                String line = spiller.toLine(x);
+                if (line == null) {
+                    byKey.delete();
+                    checkMemoryLimit(limit + 1, settings);
+                }
+                list.add(new SpillEntry<K>(pos++, key, line, null));
+                if (list.size() >= limit) {
+                    byKey.save(list);
+                    list.clear();
+                }
+            }
+            byKey.save(list);
+            list.clear();
+            SortedRuns byPosition = new SortedRuns(SpillEntry.BY_POSITION, spiller, null);
+            Iterator<SpillEntry<K>> it = byKey.merge(Long.MAX_VALUE);
+            String lastKey = null;
+            while (it.hasNext()) {
+                SpillEntry<K> e = it.next();
+                if (e.key.equals(lastKey)) {
+                    // a duplicate
+                    continue;
+                }
+                lastKey = e.key;
+                list.add(new SpillEntry<K>(e.pos, null, e.line, null));
+                if (list.size() >= limit) {
+                    byPosition.save(list);
+                    list.clear();
+                }
+            }
+            byPosition.save(list);
+            spilledEntries = byPosition.merge(Long.MAX_VALUE);
+            return Iterators.transform(spilledEntries, e -> spiller.fromLine(e.line));
+        }
+
+        @Override
+        public void close() {
+            end = true;
+            current = null;
+            FilterIterators.close(spilledEntries);
+            FilterIterators.close(source);
+        }
+
         @Override
         public boolean hasNext() {
             if (current == null) {
@@ -179,24 +368,30 @@ public class FilterIterators {
     
     /**
      * An iterator that returns entries in sorted order. The internal list of
-     * sorted entries can be limited to a given number of entries, and the
-     * entries are only read when needed (on demand).
+     * sorted entries can be limited to a given number of entries (in which
+     * case a heap of the first entries is kept), and the entries are only
+     * read when needed (on demand). Entries that compare equal are returned in
+     * the order they were read.
      * 
      * @param <K> the entry type
      */
-    static class SortIterator<K> implements Iterator<K> {
+    static class SortIterator<K> implements Iterator<K>, Closeable {
 
         private final Iterator<K> source;
         private final QueryLimits settings;
         private final Comparator<K> orderBy;
+        private final Spiller<K> spiller;
+        private Iterator<SpillEntry<K>> spilledEntries;
         private Iterator<K> result;
         private final int max;
 
-        SortIterator(Iterator<K> source, Comparator<K> orderBy, int max, QueryLimits settings) {
+        SortIterator(Iterator<K> source, Comparator<K> orderBy, int max, QueryLimits settings,
+                @Nullable Spiller<K> spiller) {
             this.source = source;
             this.orderBy = orderBy;
             this.max = max;
             this.settings = settings;
+            this.spiller = spiller;
         }
         
         private void init() {
@@ -204,38 +399,58 @@ public class FilterIterators {
                 return;
             }
             ArrayList<K> list = new ArrayList<K>();
+            TopEntries<K> top = null;
+            SortedRuns runs = null;
+            long pos = 0;
             while (source.hasNext()) {
                 K x = source.next();
+                if (top != null) {
+                    top.add(x);
+                    continue;
+                }
                 list.add(x);
-                checkMemoryLimit(list.size(), settings);
-                // from time to time, sort and truncate
-                // this should need less than O(n*log(3*keep)) operations,
-                // which is close to the optimum O(n*log(keep))
-                if (list.size() > (long) max * 2) {
-                    // remove tail entries right now, to save memory
-                    Collections.sort(list, orderBy);
-                    keepFirst(list, max);
+                if (list.size() > max) {
+                    // only the first entries are needed:
+                    // this needs less than O(n*log(keep)) operations
+                    top = new TopEntries<K>(list, max, orderBy);
+                    list = null;
+                } else if (list.size() > settings.getLimitInMemory()) {
+                    if (spiller == null) {
+                        checkMemoryLimit(list.size(), settings);
+                    }
+                    if (runs == null) {
+                        runs = new SortedRuns(SpillEntry.byValue(orderBy), spiller, spiller);
+                    }
+                    spill(runs, list, pos);
+                    pos += list.size();
+                    list.clear();
                 }
             }
-            Collections.sort(list, orderBy);
-            keepFirst(list, max);
-            result = list.iterator();
-        }
-        
-        /**
-         * Truncate a list.
-         * 
-         * @param list the list
-         * @param keep the maximum number of entries to keep
-         */
-        private static <K> void keepFirst(ArrayList<K> list, int keep) {
-            while (list.size() > keep) {
-                // remove the entries starting at the end, 
-                // to avoid n^2 performance
-                list.remove(list.size() - 1);
-            }        
+            if (top != null) {
+                result = top.getSorted().iterator();
+            } else if (runs == null) {
+                Collections.sort(list, orderBy);
+                result = list.iterator();
+            } else {
+                spill(runs, list, pos);
+                spilledEntries = runs.merge(max);
+                result = Iterators.transform(spilledEntries, e -> e.value);
+            }
         }
 
+        private void spill(SortedRuns runs, List<K> list, long pos) {
+            ArrayList<SpillEntry<K>> entries = new ArrayList<SpillEntry<K>>(list.size());
+            for (K x : list) {
+                String line = spiller.toLine(x);
+                if (line == null) {
+                    runs.delete();
+                    checkMemoryLimit(settings.getLimitInMemory() + 1, settings);
+                }
+                entries.add(new SpillEntry<K>(pos++, null, line, x));
+            }
+            runs.save(entries);
+        }
+        
         @Override
         public boolean hasNext() {
             init();
@@ -252,7 +467,14 @@ public class FilterIterators {
         public void remove() {
             throw new UnsupportedOperationException();
         }
-        
+
+        @Override
+        public void close() {
+            result = Collections.emptyIterator();
+            FilterIterators.close(spilledEntries);
+            FilterIterators.close(source);
+        }
+
     }
     
     /**
@@ -261,7 +483,7 @@ public class FilterIterators {
      * 
      * @param <K> the entry type
      */
-    static class OffsetIterator<K> implements Iterator<K> {
+    static class OffsetIterator<K> implements Iterator<K>, Closeable {
 
         private final Iterator<K> source;
         private final long offset;
@@ -298,16 +520,22 @@ public class FilterIterators {
         public void remove() {
             throw new UnsupportedOperationException();
         }
-        
+
+        @Override
+        public void close() {
+            FilterIterators.close(source);
+        }
+
     }
     
     /**
      * An iterator that limits the number of returned entries. Entries are only
-     * read when needed (on demand).
+     * read when needed (on demand). The source is closed once the limit is
+     * reached.
      * 
      * @param <K> the entry type
      */
-    static class LimitIterator<K> implements Iterator<K> {
+    static class LimitIterator<K> implements Iterator<K>, Closeable {
 
         private final Iterator<K> source;
         private final long limit;
@@ -328,15 +556,360 @@ public class FilterIterators {
             if (!hasNext()) {
                 throw new NoSuchElementException();
             }
-            count++;
-            return source.next();
+            K result = source.next();
+            if (++count == limit) {
+                close();
+            }
+            return result;
         }
 
         @Override
         public void remove() {
             throw new UnsupportedOperationException();
         }
-        
+
+        @Override
+        public void close() {
+            count = limit;
+            FilterIterators.close(source);
+        }
+
+    }
+
+    /**
+     * Keeps the first entries (according to the comparator) in a max-heap,
+     * so that an entry that is not among the first needs just one comparison.
+     * Entries that compare equal are kept in the order they were added.
+     *
+     * @param <K> the entry type
+     */
+    static class TopEntries<K> {
+
+        private final int keep;
+        private final Comparator<SpillEntry<K>> comparator;
+        private final ArrayList<SpillEntry<K>> heap;
+        private long pos;
+
+        /**
+         * Create the heap from the first entries.
+         *
+         * @param list the first entries (more than keep)
+         * @param keep the number of entries to keep
+         * @param orderBy the comparator
+         */
+        TopEntries(List<K> list, int keep, Comparator<K> orderBy) {
+            this.keep = keep;
+            this.comparator = SpillEntry.byValue(orderBy);
+            heap = new ArrayList<SpillEntry<K>>(list.size());
+            for (K x : list) {
+                heap.add(new SpillEntry<K>(pos++, null, null, x));
+            }
+            Collections.sort(heap, comparator);
+            while (heap.size() > keep) {
+                heap.remove(heap.size() - 1);
+            }
+            // in descending order, the list is a max-heap
+            Collections.reverse(heap);
+        }
+
+        void add(K x) {
+            SpillEntry<K> e = new SpillEntry<K>(pos++, null, null, x);
+            if (keep == 0 || comparator.compare(e, heap.get(0)) >= 0) {
+                return;
+            }
+            // replace the largest entry
+            heap.set(0, e);
+            int size = heap.size();
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && comparator.compare(heap.get(child + 1), heap.get(child)) > 0) {
+                    child++;
+                }
+                if (comparator.compare(e, heap.get(child)) >= 0) {
+                    break;
+                }
+                heap.set(i, heap.get(child));
+                heap.set(child, e);
+                i = child;
+            }
+        }
+
+        List<K> getSorted() {
+            Collections.sort(heap, comparator);
+            ArrayList<K> list = new ArrayList<K>(heap.size());
+            for (SpillEntry<K> e : heap) {
+                list.add(e.value);
+            }
+            return list;
+        }
+
+    }
+
+    /**
+     * An entry that is (or may be) spilled to disk.
+     *
+     * @param <K> the entry type
+     */
+    static class SpillEntry<K> {
+
+        static final Comparator<SpillEntry<?>> BY_POSITION = new Comparator<SpillEntry<?>>() {
+            @Override
+            public int compare(SpillEntry<?> a, SpillEntry<?> b) {
+                return Long.compare(a.pos, b.pos);
+            }
+        };
+
+        static final Comparator<SpillEntry<?>> BY_KEY = new Comparator<SpillEntry<?>>() {
+            @Override
+            public int compare(SpillEntry<?> a, SpillEntry<?> b) {
+                int comp = a.key.compareTo(b.key);
+                return comp != 0 ? comp : Long.compare(a.pos, b.pos);
+            }
+        };
+
+        /**
+         * The position in the source.
+         */
+        final long pos;
+
+        /**
+         * The key, for distinct.
+         */
+        final String key;
+
+        /**
+         * The entry as a line of text (if spilled).
+         */
+        final String line;
+
+        /**
+         * The entry (if needed for sorting).
+         */
+        final K value;
+
+        SpillEntry(long pos, String key, String line, K value) {
+            this.pos = pos;
+            this.key = key;
+            this.line = line;
+            this.value = value;
+        }
+
+        static <K> Comparator<SpillEntry<K>> byValue(Comparator<K> orderBy) {
+            return new Comparator<SpillEntry<K>>() {
+                @Override
+                public int compare(SpillEntry<K> a, SpillEntry<K> b) {
+                    int comp = orderBy.compare(a.value, b.value);
+                    return comp != 0 ? comp : Long.compare(a.pos, b.pos);
+                }
+            };
+        }
+
+        String toLine() {
+            return new JsopBuilder().array().
+                    value(pos).value(key).value(line).
+                    endArray().toString();
+        }
+
+        static <K> SpillEntry<K> fromLine(String s, @Nullable Spiller<K> spiller) {
+            JsopTokenizer t = new JsopTokenizer(s);
+            t.read('[');
+            long pos = Long.parseLong(t.read(JsopReader.NUMBER));
+            t.read(',');
+            String key = t.matches(JsopReader.NULL) ? null : t.readString();
+            t.read(',');
+            String line = t.readString();
+            t.read(']');
+            K value = spiller == null ? null : spiller.fromLine(line);
+            return new SpillEntry<K>(pos, key, line, value);
+        }
+
+    }
+
+    /**
+     * Sorted runs of entries in temporary files, which are merged when
+     * reading.
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    static class SortedRuns {
+
+        private final Comparator comparator;
+        private final Spiller<?> spiller;
+        private final Spiller<?> valueReader;
+        private final ArrayList<File> files = new ArrayList<File>();
+
+        /**
+         * @param comparator the comparator for the entries
+         * @param spiller the spiller (to record the spilled bytes)
+         * @param valueReader the spiller to read the values when merging,
+         *            or null if the comparator doesn't need the values
+         */
+        SortedRuns(Comparator<? extends SpillEntry<?>> comparator, Spiller<?> spiller,
+                @Nullable Spiller<?> valueReader) {
+            this.comparator = comparator;
+            this.spiller = spiller;
+            this.valueReader = valueReader;
+        }
+
+        void save(List<? extends SpillEntry<?>> list) {
+            if (list.isEmpty()) {
+                return;
+            }
+            try {
+                File f = ExternalSort.sortAndSave((List) list, comparator, CHARSET, null,
+                        false, false, toLine());
+                files.add(f);
+                spiller.spilled(f.length());
+            } catch (IOException e) {
+                delete();
+                throw new UncheckedIOException("Could not spill query results to disk", e);
+            }
+        }
+
+        /**
+         * Merge the runs.
+         *
+         * @param max the maximum number of entries to read
+         * @return the sorted entries
+         */
+        <K> Iterator<SpillEntry<K>> merge(long max) {
+            File f;
+            try {
+                if (files.isEmpty()) {
+                    return Collections.emptyIterator();
+                } else if (files.size() == 1) {
+                    f = files.get(0);
+                } else {
+                    f = File.createTempFile("oakQuery", ".spill");
+                    ExternalSort.mergeSortedFiles(files, f, comparator, CHARSET,
+                            false, false, false, toLine(), fromLine());
+                    spiller.spilled(f.length());
+                }
+                files.clear();
+                LOG.debug("Reading spilled query results from {} ({} bytes)", f, f.length());
+                return new SpilledIterator<SpillEntry<K>>(f, fromLine(), max);
+            } catch (IOException e) {
+                delete();
+                throw new UncheckedIOException("Could not read spilled query results", e);
+            }
+        }
+
+        void delete() {
+            for (File f : files) {
+                f.delete();
+            }
+            files.clear();
+        }
+
+        private static Function toLine() {
+            return (Function<SpillEntry<?>, String>) SpillEntry::toLine;
+        }
+
+        private Function fromLine() {
+            // returns null at the end of the file
+            return (Function<String, SpillEntry<?>>) s -> s == null ? null : SpillEntry.fromLine(s, valueReader);
+        }
+
+    }
+
+    /**
+     * An iterator over the entries of a temporary file. The file is closed and
+     * deleted when all entries (or the maximum number of entries) were read,
+     * when the iterator is closed, or when it is no longer referenced.
+     *
+     * @param <T> the entry type
+     */
+    static class SpilledIterator<T> implements Iterator<T>, Closeable {
+
+        private final Function<String, T> fromLine;
+        private final SpillFile spillFile;
+        private final Cleaner.Cleanable cleanable;
+        private long remaining;
+        private T next;
+
+        SpilledIterator(File file, Function<String, T> fromLine, long max) throws IOException {
+            this.fromLine = fromLine;
+            this.remaining = max;
+            BufferedReader reader;
+            try {
+                reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), CHARSET));
+            } catch (IOException e) {
+                file.delete();
+                throw e;
+            }
+            spillFile = new SpillFile(file, reader);
+            cleanable = CLEANER.register(this, spillFile);
+            fetchNext();
+        }
+
+        private void fetchNext() {
+            try {
+                String line = remaining-- > 0 ? spillFile.reader.readLine() : null;
+                if (line != null) {
+                    next = fromLine.apply(line);
+                    return;
+                }
+                close();
+            } catch (IOException e) {
+                close();
+                throw new UncheckedIOException("Could not read spilled query results", e);
+            }
+        }
+
+        @Override
+        public void close() {
+            next = null;
+            remaining = 0;
+            cleanable.clean();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public T next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            T result = next;
+            fetchNext();
+            return result;
+        }
+
+    }
+
+    /**
+     * The temporary file of a {@link SpilledIterator}, which is closed and
+     * deleted at most once. It must not reference the iterator, so that it can
+     * be cleaned when the iterator is no longer referenced.
+     */
+    private static class SpillFile implements Runnable {
+
+        private final File file;
+        private final BufferedReader reader;
+
+        SpillFile(File file, BufferedReader reader) {
+            this.file = file;
+            this.reader = reader;
+        }
+
+        @Override
+        public void run() {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                LOG.debug("Could not close {}", file, e);
+            }
+            if (!file.delete()) {
+                LOG.debug("Could not delete {}", file);
+            }
+        }
+
     }
 
 }
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import static org.apache.jackrabbit.oak.commons.PathUtils.denotesRoot;
+import static org.apache.jackrabbit.oak.commons.PathUtils.getName;
+import static org.apache.jackrabbit.oak.commons.PathUtils.getParentPath;
+import static org.apache.jackrabbit.oak.commons.PathUtils.isAbsolute;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.jackrabbit.oak.api.Root;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Resolves the trees of query result rows, caching the trees of the parent
+ * nodes.
+ * <p>
+ * The rows of a query are typically close to each other (for example, the
+ * rows of one prefetched window of an index), so that many rows share the
+ * same ancestors. Resolving a tree from the root creates a new tree (and
+ * evaluates the read permissions) for each ancestor; with this cache, the
+ * permissions of a common ancestor are evaluated once, and the tree of a row
+ * is a child of the cached parent.
+ * <p>
+ * Cached trees are verified to still have the expected path (the node may
+ * have been moved while the result was read). This class is not thread-safe.
+ */
+class ParentTreeCache {
+
+    static final String OAK_QUERY_PARENT_TREE_CACHE_SIZE = "oak.query.parentTreeCacheSize";
+
+    /**
+     * The maximum number of cached parent trees, 0 to disable the cache.
+     */
+    static final int DEFAULT_SIZE = Integer.getInteger(OAK_QUERY_PARENT_TREE_CACHE_SIZE, 1000);
+
+    private final Root root;
+
+    private final int size;
+
+    private final Map<String, Tree> parents;
+
+    ParentTreeCache(@NotNull Root root, int size) {
+        this.root = root;
+        this.size = size;
+        this.parents = new LinkedHashMap<String, Tree>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Tree> eldest) {
+                return size() > ParentTreeCache.this.size;
+            }
+
+        };
+    }
+
+    /**
+     * Get the tree at the given path.
+     *
+     * @param path the absolute path
+     * @return the tree (possibly not existing)
+     */
+    @NotNull
+    Tree getTree(@NotNull String path) {
+        if (size <= 0 || !isAbsolute(path) || denotesRoot(path)) {
+            return root.getTree(path);
+        }
+        return getParent(getParentPath(path)).getChild(getName(path));
+    }
+
+    private Tree getParent(String path) {
+        Tree tree = parents.get(path);
+        if (tree == null || !path.equals(tree.getPath())) {
+            if (denotesRoot(path)) {
+                tree = root.getTree(path);
+            } else {
+                tree = getParent(getParentPath(path)).getChild(getName(path));
+            }
+            parents.put(path, tree);
+        }
+        return tree;
+    }
+
+}
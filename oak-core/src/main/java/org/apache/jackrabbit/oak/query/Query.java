@@ -85,6 +85,14 @@ public interface Query {
 
     void setMeasure(boolean measure);
 
+    /**
+     * Run the query, and instead of the result, return the runtime statistics
+     * of each operator ("explain analyze").
+     *
+     * @param analyze whether to analyze
+     */
+    void setAnalyze(boolean analyze);
+
     void setOrderings(OrderingImpl[] orderings);
     
     /**
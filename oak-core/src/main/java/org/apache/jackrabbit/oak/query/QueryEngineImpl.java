@@ -190,8 +190,13 @@ public abstract class QueryEngineImpl implements QueryEngine {
             parser.setSupportSQL1(true);
             q = parser.parse(statement, false);
         } else if (XPATH.equals(language)) {
-            XPathToSQL2Converter converter = new XPathToSQL2Converter(settings);
-            String sql2 = converter.convert(statement);
+            QueryPlanCache planCache = settings.getQueryPlanCache();
+            String sql2 = planCache.getSQL2(statement);
+            if (sql2 == null) {
+                XPathToSQL2Converter converter = new XPathToSQL2Converter(settings);
+                sql2 = converter.convert(statement);
+                planCache.putSQL2(statement, sql2);
+            }
             LOG.debug("XPath > SQL2: {}", sql2);
             try {
                 // OAK-874: No artificial XPath selector name in wildcards
@@ -264,6 +269,7 @@ public abstract class QueryEngineImpl implements QueryEngine {
         }
 
         ExecutionContext context = getExecutionContext();
+        long parseStart = System.nanoTime();
         List<Query> queries = parseQuery(statement, language, context, mappings);
 
         long actualLimit = getValue(queries, limit, Query::getLimit, Long.MAX_VALUE);
@@ -285,7 +291,9 @@ public abstract class QueryEngineImpl implements QueryEngine {
         try {
             long start = System.nanoTime();
             Query query = prepareAndSelect(queries);
-            query.getQueryExecutionStats().execute(System.nanoTime() - start);
+            long end = System.nanoTime();
+            query.getQueryExecutionStats().execute(end - start);
+            context.getSettings().getQueryPlanCache().planned(end - parseStart);
             mdc = setupMDC(query);
             return query.executeQuery();
         } finally {
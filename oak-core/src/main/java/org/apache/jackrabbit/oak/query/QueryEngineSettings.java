@@ -19,6 +19,12 @@
 package org.apache.jackrabbit.oak.query;
 
 import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.jackrabbit.oak.api.StrictPathRestriction;
 import org.apache.jackrabbit.oak.api.jmx.QueryEngineSettingsMBean;
@@ -65,6 +71,14 @@ public class QueryEngineSettings implements QueryEngineSettingsMBean, QueryLimit
 
     public static final int DEFAULT_PREFETCH_COUNT = Integer.getInteger(OAK_QUERY_PREFETCH_COUNT, -1);
 
+    public static final String OAK_QUERY_PREFETCH_THREADS = "oak.query.prefetchThreads";
+
+    /**
+     * The number of threads that prefetch the next window of rows while the
+     * current window is read, 0 to prefetch synchronously.
+     */
+    public static final int DEFAULT_PREFETCH_THREADS = Integer.getInteger(OAK_QUERY_PREFETCH_THREADS, 0);
+
     public static final String OAK_QUERY_FAIL_TRAVERSAL = "oak.queryFailTraversal";
     private static final boolean DEFAULT_FAIL_TRAVERSAL =
             Boolean.getBoolean(OAK_QUERY_FAIL_TRAVERSAL);
@@ -78,6 +92,10 @@ public class QueryEngineSettings implements QueryEngineSettingsMBean, QueryLimit
 
     private int prefetchCount = DEFAULT_PREFETCH_COUNT;
 
+    private volatile int prefetchThreads = DEFAULT_PREFETCH_THREADS;
+
+    private ThreadPoolExecutor prefetchExecutor;
+
     private boolean failTraversal = DEFAULT_FAIL_TRAVERSAL;
     
     private boolean fullTextComparisonWithoutIndex = 
@@ -101,6 +119,10 @@ public class QueryEngineSettings implements QueryEngineSettingsMBean, QueryLimit
 
     private final QueryValidator queryValidator = new QueryValidator();
 
+    private final QueryPlanCache queryPlanCache = new QueryPlanCache();
+
+    private final UnionBranchExecutor unionBranchExecutor = new UnionBranchExecutor();
+
     private String[] classNamesIgnoredInCallTrace = new String[] {};
 
 
@@ -169,10 +191,57 @@ public class QueryEngineSettings implements QueryEngineSettingsMBean, QueryLimit
         return prefetchCount;
     }
 
+    public int getPrefetchThreads() {
+        return prefetchThreads;
+    }
+
+    public synchronized void setPrefetchThreads(int prefetchThreads) {
+        this.prefetchThreads = prefetchThreads;
+        if (prefetchExecutor != null && prefetchThreads > 0) {
+            if (prefetchThreads > prefetchExecutor.getMaximumPoolSize()) {
+                prefetchExecutor.setMaximumPoolSize(prefetchThreads);
+                prefetchExecutor.setCorePoolSize(prefetchThreads);
+            } else {
+                prefetchExecutor.setCorePoolSize(prefetchThreads);
+                prefetchExecutor.setMaximumPoolSize(prefetchThreads);
+            }
+        }
+    }
+
+    /**
+     * Get the executor to prefetch nodes in the background. Tasks are rejected
+     * if all threads are busy.
+     *
+     * @return the executor, or null if prefetching in the background is disabled
+     */
+    @Nullable
+    public synchronized Executor getPrefetchExecutor() {
+        if (prefetchThreads <= 0) {
+            return null;
+        }
+        if (prefetchExecutor == null) {
+            prefetchExecutor = new ThreadPoolExecutor(prefetchThreads, prefetchThreads, 60L, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger counter = new AtomicInteger();
+
+                @Override
+                public Thread newThread(@NotNull Runnable r) {
+                    Thread thread = new Thread(r, "oak-query-prefetch-" + counter.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            prefetchExecutor.allowCoreThreadTimeOut(true);
+        }
+        return prefetchExecutor;
+    }
+
     @Override
     public void setAutoOptionsMappingJson(String json) {
         autoOptionsMappingJson = json;
         autoOptionsMapping = new QueryOptions.AutomaticQueryOptionsMapping(json);
+        // the options are added when converting XPath statements
+        queryPlanCache.invalidateAll();
     }
 
     @Override
@@ -233,6 +302,14 @@ public class QueryEngineSettings implements QueryEngineSettingsMBean, QueryLimit
         return queryStats;
     }
 
+    public QueryPlanCache getQueryPlanCache() {
+        return queryPlanCache;
+    }
+
+    public UnionBranchExecutor getUnionBranchExecutor() {
+        return unionBranchExecutor;
+    }
+
     public StatisticsProvider getStatisticsProvider() {
         return statisticsProvider;
     }
@@ -269,6 +346,8 @@ public class QueryEngineSettings implements QueryEngineSettingsMBean, QueryLimit
                 ", sql2Optimisation=" + sql2Optimisation +
                 ", fastQuerySize=" + fastQuerySize +
                 ", prefetchCount=" + prefetchCount +
+                ", prefetchThreads=" + prefetchThreads +
+                ", unionParallelism=" + unionBranchExecutor.getParallelism() +
                 ", classNamesIgnoredInCallTrace=" + Arrays.toString(classNamesIgnoredInCallTrace) +
                 '}';
     }
@@ -50,6 +50,9 @@ public class QueryFormatter {
         // explain queries
         if (query.startsWith("explain")) {
             query = query.substring("explain".length()).trim();
+            if (query.startsWith("analyze")) {
+                query = query.substring("analyze".length()).trim();
+            }
             if (query.startsWith("measure")) {
                 query = query.substring("measure".length()).trim();
             }
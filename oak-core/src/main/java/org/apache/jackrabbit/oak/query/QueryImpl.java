@@ -28,8 +28,10 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.jackrabbit.oak.api.PropertyValue;
 import org.apache.jackrabbit.oak.api.Result.SizePrecision;
@@ -67,6 +69,7 @@ import org.apache.jackrabbit.oak.query.ast.NativeFunctionImpl;
 import org.apache.jackrabbit.oak.query.ast.NodeLocalNameImpl;
 import org.apache.jackrabbit.oak.query.ast.NodeNameImpl;
 import org.apache.jackrabbit.oak.query.ast.NotImpl;
+import org.apache.jackrabbit.oak.query.ast.OperatorStatistics;
 import org.apache.jackrabbit.oak.query.ast.OrImpl;
 import org.apache.jackrabbit.oak.query.ast.OrderingImpl;
 import org.apache.jackrabbit.oak.query.ast.PathImpl;
@@ -101,11 +104,13 @@ import org.apache.jackrabbit.oak.stats.HistogramStats;
 import org.apache.jackrabbit.oak.stats.StatisticsProvider;
 import org.apache.jackrabbit.oak.stats.StatsOptions;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.apache.jackrabbit.guava.common.base.Strings;
 import org.apache.jackrabbit.guava.common.collect.AbstractIterator;
+import org.apache.jackrabbit.guava.common.collect.Iterables;
 import org.apache.jackrabbit.guava.common.collect.Lists;
 import org.apache.jackrabbit.guava.common.collect.Maps;
 import org.apache.jackrabbit.guava.common.collect.Ordering;
@@ -119,6 +124,12 @@ public class QueryImpl implements Query {
             new UnsupportedOperationException("Too many union queries");
     public final static int MAX_UNION = Integer.getInteger("oak.sql2MaxUnion", 1000);
 
+    /**
+     * Whether sorting and distinct may spill rows to temporary files if
+     * there are more rows than the in-memory limit.
+     */
+    private static final boolean SPILL_DISABLED = Boolean.getBoolean("oak.query.spillDisabled");
+
     private static final Logger LOG = LoggerFactory.getLogger(QueryImpl.class);
 
     private static final String INDEX_UNAVAILABLE = "INDEX-UNAVAILABLE";
@@ -171,7 +182,12 @@ public class QueryImpl implements Query {
      */
     private boolean[] distinctColumns;
     
-    private boolean explain, measure;
+    private boolean explain, measure, analyze;
+
+    /**
+     * The runtime statistics of the query constraint (for "explain analyze").
+     */
+    private final OperatorStatistics filterStatistics = new OperatorStatistics("filter");
     private boolean distinct;
     private Optional<Long> limit = Optional.empty();
     private Optional<Long> offset = Optional.empty();
@@ -194,6 +210,28 @@ public class QueryImpl implements Query {
 
     private boolean warnedHidden;
 
+    /**
+     * Resolves the trees of the rows, created lazily.
+     */
+    private ParentTreeCache parentTreeCache;
+
+    /**
+     * The query whose rows the current thread reads with the snapshot
+     * context, see {@link #getRows(ExecutionContext)}.
+     */
+    private static final ThreadLocal<QueryImpl> READING_SNAPSHOT = new ThreadLocal<>();
+
+    /**
+     * The context to read the rows with, if they are read from another thread
+     * (as a branch of a union query).
+     */
+    private ExecutionContext snapshotContext;
+
+    /**
+     * Resolves the trees of the rows read with the snapshot context.
+     */
+    private ParentTreeCache snapshotTreeCache;
+
     private boolean isInternal;
 
     private boolean potentiallySlowTraversalQuery;
@@ -263,6 +301,12 @@ public class QueryImpl implements Query {
                 return true;
             }
 
+            @Override
+            public boolean visit(JoinImpl node) {
+                node.setQuery(query);
+                return super.visit(node);
+            }
+
             @Override
             public boolean visit(DescendantNodeImpl node) {
                 node.setQuery(query);
@@ -516,6 +560,21 @@ public class QueryImpl implements Query {
     public void setMeasure(boolean measure) {
         this.measure = measure;
     }
+
+    @Override
+    public void setAnalyze(boolean analyze) {
+        this.analyze = analyze;
+    }
+
+    /**
+     * Whether runtime statistics of each operator are collected while
+     * executing the query ("explain analyze").
+     *
+     * @return true if yes
+     */
+    public boolean isAnalyze() {
+        return analyze;
+    }
     
     public void setDistinct(boolean distinct) {
         this.distinct = distinct;
@@ -626,8 +685,10 @@ public class QueryImpl implements Query {
         }
         long localLimit = limit.orElse(Long.MAX_VALUE);
         long localOffset = offset.orElse(0L);
+        ResultRowImpl.Spiller spiller = SPILL_DISABLED ? null :
+                new ResultRowImpl.Spiller(this, distinctColumns, stats);
         Iterator<ResultRowImpl> it =
-                FilterIterators.newCombinedFilter(rowIt, distinct, localLimit, localOffset, orderBy, settings);
+                FilterIterators.newCombinedFilter(rowIt, distinct, localLimit, localOffset, orderBy, settings, spiller);
         if (orderBy != null) {
             // this will force the rows to be read, so that the size is known
             it.hasNext();
@@ -640,7 +701,20 @@ public class QueryImpl implements Query {
             read = Math.max(0, read - localOffset);
             size = read;
         }
-        if (measure) {
+        if (analyze) {
+            // run the query, and return the statistics of each operator
+            it = new AnalyzingIterator(this, it) {
+                @Override
+                protected void setColumns(ColumnImpl[] col) {
+                    columns = col;
+                }
+
+                @Override
+                protected void collectStatistics(List<OperatorStatistics> list) {
+                    QueryImpl.this.collectStatistics(list);
+                }
+            };
+        } else if (measure) {
             // return the measuring iterator delegating the readCounts to the rowIterator
             it = new MeasuringIterator(this, it) {
                 @Override
@@ -666,11 +740,42 @@ public class QueryImpl implements Query {
         return it;
     }
 
+    /**
+     * Add the runtime statistics of the query constraint and of the sources
+     * to the list.
+     *
+     * @param list the list
+     */
+    void collectStatistics(List<OperatorStatistics> list) {
+        filterStatistics.setPlan(constraint == null ? "" : constraint.toString());
+        list.add(filterStatistics);
+        source.collectStatistics(context.getBaseState(), list);
+    }
+
     @Override
     public boolean isSortedByIndex() {
         return isSortedByIndex;
     }
 
+    /**
+     * Get the number of rows that are read from the cursor of the given
+     * selector if all of them match, that is, the limit plus the offset. This
+     * is only known if there is a single selector, and the rows don't need to
+     * be sorted in memory.
+     *
+     * @param selector the selector
+     * @return the number of rows, or Long.MAX_VALUE if unknown
+     */
+    public long getLimitHint(SelectorImpl selector) {
+        if (selectors.size() != 1 || selectors.get(0) != selector) {
+            return Long.MAX_VALUE;
+        }
+        if (orderings != null && !isSortedByIndex) {
+            return Long.MAX_VALUE;
+        }
+        return saturatedAdd(offset.orElse(0L), limit.orElse(Long.MAX_VALUE));
+    }
+
     private boolean canSortByIndex() {
         boolean canSortByIndex = false;
         // TODO add issue about order by optimization for multiple selectors
@@ -903,6 +1008,98 @@ public class QueryImpl implements Query {
         }
     }
 
+    /**
+     * Decorating iterator for "explain analyze" queries. The underlying
+     * query iterator is read fully, and then one row is returned for each
+     * operator, with the row counts and the time spent.
+     */
+    abstract static class AnalyzingIterator extends AbstractIterator<ResultRowImpl> {
+        private final Iterator<ResultRowImpl> delegate;
+        private final Query query;
+        private List<ResultRowImpl> results;
+
+        AnalyzingIterator(Query query, Iterator<ResultRowImpl> delegate) {
+            this.query = query;
+            this.delegate = delegate;
+        }
+
+        @Override
+        protected ResultRowImpl computeNext() {
+            if (results == null) {
+                getRows();
+            }
+            if (!results.isEmpty()) {
+                return results.remove(0);
+            }
+            return endOfData();
+        }
+
+        void getRows() {
+            OperatorStatistics total = new OperatorStatistics("query");
+            total.setPlan(query.getStatement().replaceFirst("(?i)\\bexplain\\s+analyze\\s+", ""));
+            total.executed();
+            long start = System.nanoTime();
+            // run the query
+            while (delegate.hasNext()) {
+                delegate.next();
+                total.row();
+            }
+            total.addNanos(System.nanoTime() - start);
+            List<OperatorStatistics> list = Lists.newArrayList();
+            list.add(total);
+            collectStatistics(list);
+
+            setColumns(new ColumnImpl[] {
+                new ColumnImpl("analyze", "operator", "operator"),
+                new ColumnImpl("analyze", "plan", "plan"),
+                new ColumnImpl("analyze", "executions", "executions"),
+                new ColumnImpl("analyze", "rows", "rows"),
+                new ColumnImpl("analyze", "scanCount", "scanCount"),
+                new ColumnImpl("analyze", "filtered", "filtered"),
+                new ColumnImpl("analyze", "denied", "denied"),
+                new ColumnImpl("analyze", "timeMicros", "timeMicros"),
+                new ColumnImpl("analyze", "cursorTimeMicros", "cursorTimeMicros")
+            });
+            results = Lists.newArrayList();
+            for (OperatorStatistics s : list) {
+                results.add(new ResultRowImpl(query,
+                    Tree.EMPTY_ARRAY,
+                    new PropertyValue[] {
+                        PropertyValues.newString(s.getOperator()),
+                        PropertyValues.newString(s.getPlan()),
+                        PropertyValues.newLong(s.getExecutions()),
+                        PropertyValues.newLong(s.getRows()),
+                        PropertyValues.newLong(s.getScanCount()),
+                        PropertyValues.newLong(s.getFiltered()),
+                        PropertyValues.newLong(s.getDenied()),
+                        PropertyValues.newLong(TimeUnit.NANOSECONDS.toMicros(s.getNanos())),
+                        PropertyValues.newLong(TimeUnit.NANOSECONDS.toMicros(s.getCursorNanos()))
+                    },
+                    null, null));
+            }
+        }
+
+        /**
+         * Set the analyze specific columns in the query object
+         * @param columns the analyze specific columns
+         */
+        protected abstract void setColumns(ColumnImpl[] columns);
+
+        /**
+         * Add the statistics of the operators (except for the query itself)
+         * @param list the list
+         */
+        protected abstract void collectStatistics(List<OperatorStatistics> list);
+
+        /**
+         * Retrieves the actual query iterator
+         * @return the delegate
+         */
+        protected Iterator<ResultRowImpl> getDelegate() {
+            return delegate;
+        }
+    }
+
     /**
      * An iterator over result rows.
      */
@@ -930,14 +1127,17 @@ public class QueryImpl implements Query {
             if (!started) {
                 source.execute(rootState);
                 started = true;
+                filterStatistics.executed();
             }
             while (true) {
                 if (source.next()) {
                     if (constraint == null || constraint.evaluate()) {
                         current = currentRow();
                         rowIndex++;
+                        filterStatistics.row();
                         break;
                     }
+                    filterStatistics.filtered();
                     if (constraint != null && constraint.evaluateStop()) {
                         current = null;
                         end = true;
@@ -951,6 +1151,7 @@ public class QueryImpl implements Query {
             }
             nanos = System.nanoTime() - nanos;
             stats.read(rowIndex - oldIndex, rowIndex, nanos);
+            filterStatistics.addNanos(nanos);
         }
 
         @Override
@@ -1071,13 +1272,86 @@ public class QueryImpl implements Query {
     }
 
     public SelectorExecutionPlan getBestSelectorExecutionPlan(FilterImpl filter) {
-        return getBestSelectorExecutionPlan(context.getBaseState(), filter,
-                context.getIndexProvider(), traversalEnabled);
+        NodeState rootState = context.getBaseState();
+        QueryPlanCache planCache = getSettings().getQueryPlanCache();
+        if (!planCache.isEnabled() || !(source instanceof SelectorImpl)) {
+            // with joins, the filter of a selector depends on the join order
+            return getBestSelectorExecutionPlan(rootState, filter,
+                    context.getIndexProvider(), traversalEnabled, null, null, false);
+        }
+        String key = QueryPlanCache.getKey(statement, toString(),
+                filter.getSelector().getSelectorName(), bindVariableMap);
+        if (key == null) {
+            return getBestSelectorExecutionPlan(rootState, filter,
+                    context.getIndexProvider(), traversalEnabled, null, null, false);
+        }
+        // the indexes are only read once
+        List<? extends QueryIndex> indexes = context.getIndexProvider().getQueryIndexes(rootState);
+        QueryIndexProvider indexProvider = state -> indexes;
+        Set<String> available = new HashSet<String>();
+        for (QueryIndex index : indexes) {
+            available.add(index.getIndexName());
+        }
+        String path = filter.getPath();
+        Set<String> candidates = planCache.getIndexNames(key, rootState, path, available);
+        if (candidates != null) {
+            Set<String> stillUsable = new HashSet<String>();
+            SelectorExecutionPlan plan = getBestSelectorExecutionPlan(rootState, filter,
+                    indexProvider, traversalEnabled, candidates, stillUsable, false);
+            if (!stillUsable.isEmpty()) {
+                return plan;
+            }
+            // none of the indexes can serve the query anymore
+            planCache.removeIndexNames(key);
+        }
+        Set<String> usable = new HashSet<String>();
+        SelectorExecutionPlan plan = getBestSelectorExecutionPlan(rootState, filter,
+                indexProvider, traversalEnabled, null, usable, false);
+        planCache.putIndexNames(key, rootState, path, available, usable);
+        return plan;
+    }
+
+    /**
+     * Get the best plan for a selector that uses an index (not traversal) to
+     * read all rows, without changing the state of this query. This is used
+     * to plan the build side of a hash join.
+     *
+     * @param filter the filter
+     * @return the plan, or null if no index can serve the filter
+     */
+    @Nullable
+    public SelectorExecutionPlan getBestIndexedSelectorExecutionPlan(FilterImpl filter) {
+        boolean wasPotentiallySlow = potentiallySlowTraversalQuery;
+        try {
+            SelectorExecutionPlan plan = getBestSelectorExecutionPlan(context.getBaseState(), filter,
+                    context.getIndexProvider(), false, null, null, true);
+            return plan.getIndex() == null ? null : plan;
+        } finally {
+            potentiallySlowTraversalQuery = wasPotentiallySlow;
+        }
     }
 
+    /**
+     * Get the best plan for a selector.
+     *
+     * @param rootState the root state
+     * @param filter the filter
+     * @param indexProvider the index provider
+     * @param traversalEnabled whether traversal is enabled
+     * @param candidates if set, only the indexes with those names are
+     *            considered
+     * @param usable if set, the names of the indexes that can serve the query
+     *            are added
+     * @param buildSide whether the plan is for the build side of a hash join
+     *            (all rows are read, and no warnings are logged if no index
+     *            was found)
+     * @return the plan
+     */
     private SelectorExecutionPlan getBestSelectorExecutionPlan(
             NodeState rootState, FilterImpl filter,
-            QueryIndexProvider indexProvider, boolean traversalEnabled) {
+            QueryIndexProvider indexProvider, boolean traversalEnabled,
+            @Nullable Set<String> candidates, @Nullable Set<String> usable,
+            boolean buildSide) {
         QueryIndex bestIndex = null;
         if (LOG.isDebugEnabled()) {
             logDebug("cost using filter " + filter);
@@ -1091,12 +1365,17 @@ public class QueryImpl implements Query {
         double almostBestCost = Double.POSITIVE_INFINITY;
         IndexPlan almostBestPlan = null;
 
-        long maxEntryCount = saturatedAdd(offset.orElse(0L), limit.orElse(Long.MAX_VALUE));
+        long maxEntryCount = buildSide ? Long.MAX_VALUE
+                : saturatedAdd(offset.orElse(0L), limit.orElse(Long.MAX_VALUE));
 
         // Sort the indexes according to their minimum cost to be able to skip the remaining indexes if the cost of the
         // current index is below the minimum cost of the next index.
         List<? extends QueryIndex> queryIndexes = MINIMAL_COST_ORDERING
                 .sortedCopy(indexProvider.getQueryIndexes(rootState));
+        if (candidates != null) {
+            queryIndexes = newArrayList(Iterables.filter(queryIndexes,
+                    index -> candidates.contains(index.getIndexName())));
+        }
         List<OrderEntry> sortOrder = getSortOrder(filter); 
         for (int i = 0; i < queryIndexes.size(); i++) {
             QueryIndex index = queryIndexes.get(i);
@@ -1134,6 +1413,9 @@ public class QueryImpl implements Query {
                         entryCount = Math.min(maxEntryCount, entryCount);
                     }
                     double c = p.getCostPerExecution() + entryCount * p.getCostPerEntry();
+                    if (usable != null && c < Double.POSITIVE_INFINITY) {
+                        usable.add(indexName);
+                    }
 
                     if (LOG.isDebugEnabled()) {
                         String plan = advIndex.getPlanDescription(p, rootState);
@@ -1156,6 +1438,9 @@ public class QueryImpl implements Query {
                 }
             } else {
                 cost = index.getCost(filter, rootState);
+                if (usable != null && cost < Double.POSITIVE_INFINITY) {
+                    usable.add(indexName);
+                }
             }
             if (LOG.isDebugEnabled()) {
                 logDebug("cost for " + indexName + " is " + cost);
@@ -1203,7 +1488,7 @@ public class QueryImpl implements Query {
             }
         }
 
-        if (potentiallySlowTraversalQuery || bestIndex == null) {
+        if (!buildSide && (potentiallySlowTraversalQuery || bestIndex == null)) {
             // Log warning for fulltext queries without index, since these cannot return results
             if(!filter.getFulltextConditions().isEmpty()) { 
                 LOG.warn("Fulltext query without index for filter {}; no results will be returned", filter);
@@ -1345,12 +1630,72 @@ public class QueryImpl implements Query {
             }
             return null;
         }
-        return context.getRoot().getTree(path);
+        if (isReadingSnapshot()) {
+            if (snapshotTreeCache == null) {
+                snapshotTreeCache = new ParentTreeCache(snapshotContext.getRoot(), ParentTreeCache.DEFAULT_SIZE);
+            }
+            return snapshotTreeCache.getTree(path);
+        }
+        if (parentTreeCache == null) {
+            parentTreeCache = new ParentTreeCache(context.getRoot(), ParentTreeCache.DEFAULT_SIZE);
+        }
+        return parentTreeCache.getTree(path);
+    }
+
+    /**
+     * Get the rows, read with the given snapshot context. Reading the rows
+     * then doesn't access the root of the query, so that the returned
+     * iterator can be used by another thread, while this thread uses the
+     * query (for example to read the values of the rows). The iterator must
+     * only be used by one thread at a time.
+     *
+     * @param snapshot the context (see
+     *            {@link ExecutionContext#newSnapshotContext()})
+     * @return the rows, read when first needed
+     */
+    Iterator<ResultRowImpl> getRows(ExecutionContext snapshot) {
+        this.snapshotContext = snapshot;
+        return new Iterator<ResultRowImpl>() {
+
+            private Iterator<ResultRowImpl> rows;
+
+            @Override
+            public boolean hasNext() {
+                QueryImpl old = READING_SNAPSHOT.get();
+                READING_SNAPSHOT.set(QueryImpl.this);
+                try {
+                    if (rows == null) {
+                        rows = getRows();
+                    }
+                    return rows.hasNext();
+                } finally {
+                    READING_SNAPSHOT.set(old);
+                }
+            }
+
+            @Override
+            public ResultRowImpl next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                QueryImpl old = READING_SNAPSHOT.get();
+                READING_SNAPSHOT.set(QueryImpl.this);
+                try {
+                    return rows.next();
+                } finally {
+                    READING_SNAPSHOT.set(old);
+                }
+            }
+        };
+    }
+
+    private boolean isReadingSnapshot() {
+        return snapshotContext != null && READING_SNAPSHOT.get() == this;
     }
 
     @Override
     public boolean isMeasureOrExplainEnabled() {
-        return explain || measure;
+        return explain || measure || analyze;
     }
 
     /**
@@ -1432,7 +1777,7 @@ public class QueryImpl implements Query {
     }
 
     public ExecutionContext getExecutionContext() {
-        return context;
+        return isReadingSnapshot() ? snapshotContext : context;
     }
     
     /**
@@ -1530,6 +1875,7 @@ public class QueryImpl implements Query {
             this.settings);
         u.setExplain(explain);
         u.setMeasure(measure);
+        u.setAnalyze(analyze);
         u.setInternal(isInternal);
         u.setQueryOptions(queryOptions);
         u.setOrderings(orderings);
@@ -1557,6 +1903,7 @@ public class QueryImpl implements Query {
             this.stats);
         copy.explain = this.explain;
         copy.measure = this.measure;
+        copy.analyze = this.analyze;
         copy.isInternal = this.isInternal;
         copy.distinct = this.distinct;
         copy.queryOptions = this.queryOptions;
@@ -0,0 +1,416 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_DEFINITIONS_NAME;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.jackrabbit.oak.api.PropertyState;
+import org.apache.jackrabbit.oak.api.PropertyValue;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.cache.CacheLIRS;
+import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.apache.jackrabbit.oak.spi.state.EqualsDiff;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.state.NodeStateUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A cache for the planning phase of queries.
+ * <p>
+ * It keeps the SQL-2 statements converted from XPath, and, for each selector
+ * of a query without joins, the names of the query indexes that were able to
+ * serve the query. When a query with the same statement and the same values
+ * of the bind variables is planned again, only those indexes are asked for
+ * plans (the cost is still computed). Whether an index can serve a query can
+ * depend on the values of the bind variables, therefore other values are
+ * planned with all indexes. If none of the cached indexes can serve the
+ * query anymore, all indexes are asked again. If no index could serve the
+ * query, nothing is cached, as an index might just not be available yet.
+ * <p>
+ * The indexes are cleared when the index definitions below "/oak:index"
+ * change, and all entries are cleared when the settings that are used to
+ * convert XPath statements change. An entry is not used if the nested index
+ * definitions ("oak:index" nodes) along the path of the query changed, or if
+ * the index providers now return an index that was not available when the
+ * entry was cached.
+ */
+public class QueryPlanCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(QueryPlanCache.class);
+
+    /**
+     * The maximum number of entries of each cache, 0 to disable the caches.
+     */
+    public static final String OAK_QUERY_PLAN_CACHE_SIZE = "oak.query.planCacheSize";
+
+    public static final int DEFAULT_PLAN_CACHE_SIZE =
+            Integer.getInteger(OAK_QUERY_PLAN_CACHE_SIZE, 1000);
+
+    private final int size;
+
+    private final CacheLIRS<String, String> sql2Statements;
+
+    private final CacheLIRS<String, Entry> indexNames;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong invalidationCount = new AtomicLong();
+    private final AtomicLong planningCount = new AtomicLong();
+    private final AtomicLong planningTimeNanos = new AtomicLong();
+
+    /**
+     * The index definitions ("/oak:index") that were last checked.
+     */
+    private volatile NodeState lastIndexDefinitions;
+
+    public QueryPlanCache() {
+        this(DEFAULT_PLAN_CACHE_SIZE);
+    }
+
+    public QueryPlanCache(int size) {
+        this.size = size;
+        int s = Math.max(size, 1);
+        this.sql2Statements = CacheLIRS.<String, String>newBuilder()
+                .module("QueryPlanCache").maximumSize(s).build();
+        this.indexNames = CacheLIRS.<String, Entry>newBuilder()
+                .module("QueryPlanCache").maximumSize(s).build();
+    }
+
+    public boolean isEnabled() {
+        return size > 0;
+    }
+
+    /**
+     * Get the SQL-2 statement for a converted XPath statement.
+     *
+     * @param xpath the XPath statement
+     * @return the SQL-2 statement, or null if not cached
+     */
+    @Nullable
+    String getSQL2(@NotNull String xpath) {
+        if (!isEnabled()) {
+            return null;
+        }
+        return sql2Statements.getIfPresent(xpath);
+    }
+
+    void putSQL2(@NotNull String xpath, @NotNull String sql2) {
+        if (isEnabled()) {
+            sql2Statements.put(xpath, sql2);
+        }
+    }
+
+    /**
+     * Get the names of the indexes that were able to serve a selector the
+     * last time the query was planned.
+     *
+     * @param key the key, see {@link #getKey}
+     * @param rootState the root state the query is planned against
+     * @param path the path of the filter of the selector
+     * @param available the names of all indexes of the index providers
+     * @return the index names, or null if not cached
+     */
+    @Nullable
+    Set<String> getIndexNames(@NotNull String key, @NotNull NodeState rootState,
+            @NotNull String path, @NotNull Set<String> available) {
+        if (!isEnabled()) {
+            return null;
+        }
+        checkIndexDefinitions(rootState);
+        Entry entry = indexNames.getIfPresent(key);
+        if (entry != null && !entry.isValid(rootState, path, available)) {
+            LOG.debug("Nested index definitions or index providers changed for {}", key);
+            invalidationCount.incrementAndGet();
+            indexNames.invalidate(key);
+            entry = null;
+        }
+        if (entry == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        return entry.usable;
+    }
+
+    /**
+     * Remember the names of the indexes that were able to serve a selector.
+     * Nothing is cached if there are none.
+     *
+     * @param key the key, see {@link #getKey}
+     * @param rootState the root state the query was planned against
+     * @param path the path of the filter of the selector
+     * @param available the names of all indexes of the index providers
+     * @param usable the names of the indexes that can serve the query
+     */
+    void putIndexNames(@NotNull String key, @NotNull NodeState rootState,
+            @NotNull String path, @NotNull Set<String> available,
+            @NotNull Set<String> usable) {
+        if (isEnabled() && !usable.isEmpty()) {
+            indexNames.put(key, new Entry(available, usable,
+                    getNestedDefinitions(rootState, path)));
+        }
+    }
+
+    void removeIndexNames(@NotNull String key) {
+        indexNames.invalidate(key);
+    }
+
+    /**
+     * Record the time it took to parse and prepare a query.
+     *
+     * @param nanos the time in nanoseconds
+     */
+    void planned(long nanos) {
+        planningCount.incrementAndGet();
+        planningTimeNanos.addAndGet(nanos);
+    }
+
+    /**
+     * Build the key for a selector of a query.
+     *
+     * @param statement the statement
+     * @param query the normalized query
+     * @param selectorName the selector name
+     * @param bindings the bind variables
+     * @return the key, or null if the indexes of the query should not be
+     *         cached (because a bind variable is binary)
+     */
+    @Nullable
+    static String getKey(String statement, String query, String selectorName,
+            Map<String, PropertyValue> bindings) {
+        StringBuilder buff = new StringBuilder();
+        buff.append(statement).append('\n').append(query).append('\n').append(selectorName);
+        // the bind variables, sorted by name
+        for (Map.Entry<String, PropertyValue> e : new TreeMap<>(bindings).entrySet()) {
+            PropertyValue v = e.getValue();
+            buff.append('\n').append(e.getKey()).append('=');
+            if (v == null) {
+                continue;
+            }
+            if (v.getType().tag() == Type.BINARY.tag()) {
+                return null;
+            }
+            buff.append(v.getType());
+            for (int i = 0; i < v.count(); i++) {
+                // with the length, so that the values can't be ambiguous
+                String s = v.getValue(Type.STRING, i);
+                buff.append(' ').append(s.length()).append(':').append(s);
+            }
+        }
+        return buff.toString();
+    }
+
+    /**
+     * Clear the cached indexes if the index definitions changed since the
+     * last check.
+     *
+     * @param rootState the root state
+     */
+    void checkIndexDefinitions(@NotNull NodeState rootState) {
+        NodeState definitions = rootState.getChildNode(INDEX_DEFINITIONS_NAME);
+        NodeState last = lastIndexDefinitions;
+        if (definitions == last) {
+            return;
+        }
+        // only the changes are compared, so that the definitions that didn't
+        // change are not read again
+        boolean changed = last != null && !DefinitionDiff.equals(last, definitions);
+        synchronized (this) {
+            if (changed) {
+                LOG.debug("Index definitions changed, clearing the query plan cache");
+                invalidateIndexNames();
+            }
+            lastIndexDefinitions = definitions;
+        }
+    }
+
+    /**
+     * Get the nested index definitions that can be used for queries with the
+     * given path: the "oak:index" nodes of the node and its ancestors, except
+     * for the root node. Nodes that don't exist are included as well, so
+     * that new index definitions are detected.
+     *
+     * @param rootState the root state
+     * @param path the path
+     * @return the definitions, starting with the topmost
+     */
+    private static NodeState[] getNestedDefinitions(NodeState rootState, String path) {
+        List<NodeState> list = new ArrayList<>();
+        NodeState node = rootState;
+        for (String name : PathUtils.elements(path)) {
+            node = node.getChildNode(name);
+            list.add(node.getChildNode(INDEX_DEFINITIONS_NAME));
+        }
+        return list.toArray(new NodeState[0]);
+    }
+
+    /**
+     * Remove all entries, including the converted XPath statements. This is
+     * needed when the settings that are used to convert them change.
+     */
+    public void invalidateAll() {
+        sql2Statements.invalidateAll();
+        invalidateIndexNames();
+    }
+
+    /**
+     * Remove the cached indexes.
+     */
+    private void invalidateIndexNames() {
+        invalidationCount.incrementAndGet();
+        indexNames.invalidateAll();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getInvalidationCount() {
+        return invalidationCount.get();
+    }
+
+    public long getPlanningCount() {
+        return planningCount.get();
+    }
+
+    public long getPlanningTimeNanos() {
+        return planningTimeNanos.get();
+    }
+
+    public long getSize() {
+        return indexNames.size();
+    }
+
+    /**
+     * Reset the statistics (not the cached entries).
+     */
+    public void resetStats() {
+        hitCount.set(0);
+        missCount.set(0);
+        invalidationCount.set(0);
+        planningCount.set(0);
+        planningTimeNanos.set(0);
+    }
+
+    /**
+     * The cached indexes of a selector.
+     */
+    private static class Entry {
+
+        /**
+         * The names of all indexes of the index providers.
+         */
+        final Set<String> available;
+
+        /**
+         * The names of the indexes that were able to serve the selector.
+         */
+        final Set<String> usable;
+
+        /**
+         * The nested index definitions, see {@link #getNestedDefinitions}.
+         * Replaced with the current state after checking, so that only the
+         * new changes need to be compared the next time.
+         */
+        volatile NodeState[] nestedDefinitions;
+
+        Entry(Set<String> available, Set<String> usable, NodeState[] nestedDefinitions) {
+            this.available = available;
+            this.usable = usable;
+            this.nestedDefinitions = nestedDefinitions;
+        }
+
+        boolean isValid(NodeState rootState, String path, Set<String> currentlyAvailable) {
+            if (!available.containsAll(currentlyAvailable)) {
+                // a new index (provider) was added
+                return false;
+            }
+            NodeState[] last = nestedDefinitions;
+            NodeState[] current = getNestedDefinitions(rootState, path);
+            if (last.length != current.length) {
+                return false;
+            }
+            for (int i = 0; i < current.length; i++) {
+                if (last[i] != current[i] && !DefinitionDiff.equals(last[i], current[i])) {
+                    return false;
+                }
+            }
+            nestedDefinitions = current;
+            return true;
+        }
+    }
+
+    /**
+     * Compares index definitions, including their child nodes (for example
+     * index rules and properties). Index data is stored in hidden nodes and
+     * properties, and is ignored.
+     */
+    private static class DefinitionDiff extends EqualsDiff {
+
+        public static boolean equals(NodeState before, NodeState after) {
+            return before.exists() == after.exists()
+                    && after.compareAgainstBaseState(before, new DefinitionDiff());
+        }
+
+        @Override
+        public boolean propertyAdded(PropertyState after) {
+            return NodeStateUtils.isHidden(after.getName());
+        }
+
+        @Override
+        public boolean propertyChanged(PropertyState before, PropertyState after) {
+            return NodeStateUtils.isHidden(after.getName());
+        }
+
+        @Override
+        public boolean propertyDeleted(PropertyState before) {
+            return NodeStateUtils.isHidden(before.getName());
+        }
+
+        @Override
+        public boolean childNodeAdded(String name, NodeState after) {
+            return NodeStateUtils.isHidden(name);
+        }
+
+        @Override
+        public boolean childNodeChanged(String name, NodeState before, NodeState after) {
+            return NodeStateUtils.isHidden(name) || super.childNodeChanged(name, before, after);
+        }
+
+        @Override
+        public boolean childNodeDeleted(String name, NodeState before) {
+            return NodeStateUtils.isHidden(name);
+        }
+    }
+
+}
@@ -16,16 +16,24 @@
  */
 package org.apache.jackrabbit.oak.query;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Map;
 
 import org.apache.jackrabbit.JcrConstants;
+import org.apache.jackrabbit.oak.api.PropertyState;
 import org.apache.jackrabbit.oak.api.PropertyValue;
 import org.apache.jackrabbit.oak.api.ResultRow;
 import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.commons.json.JsopBuilder;
+import org.apache.jackrabbit.oak.commons.json.JsopReader;
+import org.apache.jackrabbit.oak.commons.json.JsopTokenizer;
 import org.apache.jackrabbit.oak.query.ast.ColumnImpl;
 import org.apache.jackrabbit.oak.query.ast.OrderingImpl;
+import org.apache.jackrabbit.oak.query.stats.QueryStatsData.QueryExecutionStats;
+import org.apache.jackrabbit.oak.plugins.memory.PropertyStates;
 import org.apache.jackrabbit.oak.plugins.memory.PropertyValues;
 import org.apache.jackrabbit.oak.spi.query.QueryConstants;
 
@@ -65,6 +73,21 @@ public class ResultRowImpl implements ResultRow {
         return orderValues;
     }
 
+    /**
+     * Get a copy of this row whose trees are resolved again by the query, for
+     * rows that were read with another root (see
+     * {@link QueryImpl#getRows(ExecutionContext)}).
+     *
+     * @return the copy
+     */
+    ResultRowImpl withQueryTrees() {
+        Tree[] list = new Tree[trees.length];
+        for (int i = 0; i < trees.length; i++) {
+            list[i] = trees[i] == null ? null : query.getTree(trees[i].getPath());
+        }
+        return new ResultRowImpl(query, list, values, distinctValues, orderValues);
+    }
+
     @Override
     public String getPath() {
         return getPath(null);
@@ -277,4 +300,154 @@ public class ResultRowImpl implements ResultRow {
         return new ResultRowImpl(delegate.query, delegate.trees, mappedVals,
                 delegate.distinctValues, delegate.orderValues);
     }
-}
\ No newline at end of file
+
+    /**
+     * Converts rows to a line of text and back, so that they can be spilled
+     * to disk when sorting or for distinct. The line contains the paths, the
+     * column values, and the values used for ordering. Rows with binary
+     * values can not be spilled.
+     */
+    static class Spiller implements FilterIterators.Spiller<ResultRowImpl> {
+
+        private final Query query;
+        private final boolean[] distinctValues;
+        private final QueryExecutionStats stats;
+
+        Spiller(Query query, boolean[] distinctValues, QueryExecutionStats stats) {
+            this.query = query;
+            this.distinctValues = distinctValues;
+            this.stats = stats;
+        }
+
+        @Override
+        public String toLine(ResultRowImpl row) {
+            JsopBuilder buff = new JsopBuilder();
+            buff.array().array();
+            for (String p : row.getPaths()) {
+                buff.value(p);
+            }
+            buff.endArray();
+            if (!appendValues(buff, row.values) || !appendValues(buff, row.orderValues)) {
+                return null;
+            }
+            return buff.endArray().toString();
+        }
+
+        @Override
+        public ResultRowImpl fromLine(String line) {
+            JsopTokenizer t = new JsopTokenizer(line);
+            t.read('[');
+            t.read('[');
+            ArrayList<Tree> trees = new ArrayList<Tree>();
+            if (!t.matches(']')) {
+                do {
+                    trees.add(t.matches(JsopReader.NULL) ? null : query.getTree(t.readString()));
+                } while (t.matches(','));
+                t.read(']');
+            }
+            t.read(',');
+            PropertyValue[] values = readValues(t);
+            t.read(',');
+            PropertyValue[] orderValues = readValues(t);
+            t.read(']');
+            return new ResultRowImpl(query, trees.toArray(new Tree[0]), values,
+                    distinctValues, orderValues);
+        }
+
+        @Override
+        public String getKey(ResultRowImpl row) {
+            JsopBuilder buff = new JsopBuilder();
+            buff.array();
+            for (String p : row.getPaths()) {
+                buff.value(p);
+            }
+            for (int i = 0; i < row.values.length; i++) {
+                if (distinctValues == null || distinctValues[i]) {
+                    appendValue(buff, row.values[i]);
+                }
+            }
+            return buff.endArray().toString();
+        }
+
+        @Override
+        public void spilled(long bytes) {
+            if (stats != null) {
+                stats.spill(bytes);
+            }
+        }
+
+        private static boolean appendValues(JsopBuilder buff, PropertyValue[] values) {
+            if (values == null) {
+                buff.value((String) null);
+                return true;
+            }
+            buff.array();
+            for (PropertyValue v : values) {
+                if (v != null && v.getType().tag() == Type.BINARY.tag()) {
+                    return false;
+                }
+                appendValue(buff, v);
+            }
+            buff.endArray();
+            return true;
+        }
+
+        private static void appendValue(JsopBuilder buff, PropertyValue v) {
+            if (v == null) {
+                buff.value((String) null);
+                return;
+            }
+            buff.array().value(v.getType().tag()).value(v.isArray());
+            if (v.isArray()) {
+                for (String s : v.getValue(Type.STRINGS)) {
+                    buff.value(s);
+                }
+            } else {
+                buff.value(v.getValue(Type.STRING));
+            }
+            buff.endArray();
+        }
+
+        private static PropertyValue[] readValues(JsopTokenizer t) {
+            if (t.matches(JsopReader.NULL)) {
+                return null;
+            }
+            t.read('[');
+            ArrayList<PropertyValue> list = new ArrayList<PropertyValue>();
+            if (!t.matches(']')) {
+                do {
+                    list.add(readValue(t));
+                } while (t.matches(','));
+                t.read(']');
+            }
+            return list.toArray(new PropertyValue[0]);
+        }
+
+        private static PropertyValue readValue(JsopTokenizer t) {
+            if (t.matches(JsopReader.NULL)) {
+                return null;
+            }
+            t.read('[');
+            int tag = Integer.parseInt(t.read(JsopReader.NUMBER));
+            t.read(',');
+            boolean isArray = t.matches(JsopReader.TRUE);
+            if (!isArray) {
+                t.read(JsopReader.FALSE);
+            }
+            ArrayList<String> strings = new ArrayList<String>();
+            while (t.matches(',')) {
+                strings.add(t.readString());
+            }
+            t.read(']');
+            PropertyState state;
+            if (isArray) {
+                state = PropertyStates.createProperty("", strings, Type.STRINGS);
+            } else {
+                state = PropertyStates.createProperty("", strings.get(0), Type.STRING);
+            }
+            return PropertyValues.create(PropertyStates.convert(state, Type.fromTag(tag, isArray)));
+        }
+
+    }
+
+}
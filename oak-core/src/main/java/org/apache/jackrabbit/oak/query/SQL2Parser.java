@@ -149,9 +149,13 @@ public class SQL2Parser {
         expected = new ArrayList<String>();
         bindVariables = new HashMap<String, BindVariableValueImpl>();
         read();
-        boolean explain = false, measure = false;
+        boolean explain = false, measure = false, analyze = false;
         if (readIf("EXPLAIN")) {
-            explain = true;
+            if (readIf("ANALYZE")) {
+                analyze = true;
+            } else {
+                explain = true;
+            }
         }
         if (readIf("MEASURE")) {
             measure = true;
@@ -219,6 +223,7 @@ public class SQL2Parser {
         q.setOrderings(orderings);
         q.setExplain(explain);
         q.setMeasure(measure);
+        q.setAnalyze(analyze);
         q.setInternal(isInternal(query));
         q.setQueryOptions(options);
 
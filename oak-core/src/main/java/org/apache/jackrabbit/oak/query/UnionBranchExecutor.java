@@ -0,0 +1,313 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Reads the branches of union queries concurrently.
+ * <p>
+ * Each branch is read in batches by tasks of a shared, bounded thread pool,
+ * so that the branches are executed at the same time while the result is
+ * merged (or concatenated) by the caller. The number of tasks that run at
+ * the same time for a session is limited as well. If no thread is available,
+ * or the limit for the session is reached, the branch is read by the caller
+ * when it needs the rows (as if the feature was disabled).
+ * <p>
+ * The branches are read with a snapshot of the session state (see
+ * {@link ExecutionContext#newSnapshotContext()}), so that the session itself
+ * is only accessed by the caller. Reading is disabled by default.
+ */
+public class UnionBranchExecutor {
+
+    public static final String OAK_QUERY_UNION_PARALLELISM = "oak.query.unionParallelism";
+
+    public static final String OAK_QUERY_UNION_PARALLELISM_PER_SESSION = "oak.query.unionParallelismPerSession";
+
+    /**
+     * The number of threads, 0 to disable.
+     */
+    public static final int DEFAULT_PARALLELISM = Integer.getInteger(OAK_QUERY_UNION_PARALLELISM, 0);
+
+    public static final int DEFAULT_PARALLELISM_PER_SESSION =
+            Integer.getInteger(OAK_QUERY_UNION_PARALLELISM_PER_SESSION, 2);
+
+    /**
+     * The number of rows read by one task.
+     */
+    static final int BATCH_SIZE = 100;
+
+    /**
+     * The maximum number of rows read ahead per branch.
+     */
+    static final int READ_AHEAD = 1000;
+
+    private volatile int parallelism = DEFAULT_PARALLELISM;
+
+    private volatile int parallelismPerSession = DEFAULT_PARALLELISM_PER_SESSION;
+
+    private ThreadPoolExecutor executor;
+
+    /**
+     * The number of running tasks per session.
+     */
+    private final Map<Object, Integer> running = new HashMap<>();
+
+    public boolean isEnabled() {
+        return parallelism > 0 && parallelismPerSession > 0;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public synchronized void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+        if (executor != null && parallelism > 0) {
+            if (parallelism > executor.getMaximumPoolSize()) {
+                executor.setMaximumPoolSize(parallelism);
+                executor.setCorePoolSize(parallelism);
+            } else {
+                executor.setCorePoolSize(parallelism);
+                executor.setMaximumPoolSize(parallelism);
+            }
+        }
+    }
+
+    public int getParallelismPerSession() {
+        return parallelismPerSession;
+    }
+
+    public void setParallelismPerSession(int parallelismPerSession) {
+        this.parallelismPerSession = parallelismPerSession;
+    }
+
+    /**
+     * Read the rows of a branch concurrently.
+     *
+     * @param session the session (to limit the number of concurrent tasks)
+     * @param branch supplies the rows of the branch (called once, by the
+     *            first task)
+     * @return the rows
+     */
+    @NotNull
+    Iterator<ResultRowImpl> read(@NotNull Object session, @NotNull Supplier<Iterator<ResultRowImpl>> branch) {
+        return new BranchIterator(this, session, branch);
+    }
+
+    private synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            int size = Math.max(1, parallelism);
+            executor = new ThreadPoolExecutor(size, size, 60L, TimeUnit.SECONDS,
+                    new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger counter = new AtomicInteger();
+
+                @Override
+                public Thread newThread(@NotNull Runnable r) {
+                    Thread thread = new Thread(r, "oak-query-union-" + counter.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    /**
+     * Start a task for the given session, if possible.
+     *
+     * @param session the session
+     * @param task the task
+     * @return whether the task was started
+     */
+    private boolean tryStart(Object session, Runnable task) {
+        synchronized (running) {
+            Integer count = running.get(session);
+            int c = count == null ? 0 : count;
+            if (c >= parallelismPerSession) {
+                return false;
+            }
+            running.put(session, c + 1);
+        }
+        try {
+            getExecutor().execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            // all threads are busy
+            finished(session);
+            return false;
+        }
+    }
+
+    private void finished(Object session) {
+        synchronized (running) {
+            int c = running.get(session) - 1;
+            if (c == 0) {
+                running.remove(session);
+            } else {
+                running.put(session, c);
+            }
+        }
+    }
+
+    /**
+     * Get the number of running tasks of a session.
+     *
+     * @param session the session
+     * @return the number of tasks
+     */
+    int getRunningCount(Object session) {
+        synchronized (running) {
+            Integer count = running.get(session);
+            return count == null ? 0 : count;
+        }
+    }
+
+    /**
+     * The rows of a branch. Rows are read ahead by tasks of the thread pool.
+     * Only one task reads at any time.
+     */
+    private static class BranchIterator implements Iterator<ResultRowImpl> {
+
+        private final UnionBranchExecutor owner;
+        private final Object session;
+        private final Supplier<Iterator<ResultRowImpl>> branch;
+        private final ArrayDeque<ResultRowImpl> buffer = new ArrayDeque<>();
+        private Iterator<ResultRowImpl> rows;
+        private boolean fetching;
+        private boolean end;
+        private Throwable failure;
+
+        BranchIterator(UnionBranchExecutor owner, Object session, Supplier<Iterator<ResultRowImpl>> branch) {
+            this.owner = owner;
+            this.session = session;
+            this.branch = branch;
+            synchronized (this) {
+                readAhead();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (true) {
+                synchronized (this) {
+                    while (buffer.isEmpty() && !end && failure == null && fetching) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new IllegalStateException("Interrupted while reading a union query", e);
+                        }
+                    }
+                    if (failure != null) {
+                        Throwable t = failure;
+                        failure = null;
+                        end = true;
+                        if (t instanceof Error) {
+                            throw (Error) t;
+                        }
+                        throw (RuntimeException) t;
+                    }
+                    if (!buffer.isEmpty() || end) {
+                        readAhead();
+                        return !buffer.isEmpty();
+                    }
+                    fetching = true;
+                }
+                // no task could be started: read in this thread
+                fetch(false);
+            }
+        }
+
+        @Override
+        public ResultRowImpl next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            synchronized (this) {
+                ResultRowImpl row = buffer.poll();
+                readAhead();
+                return row;
+            }
+        }
+
+        /**
+         * Start a task to read the next batch, if there is space in the
+         * buffer.
+         */
+        private void readAhead() {
+            if (fetching || end || failure != null || buffer.size() + BATCH_SIZE > READ_AHEAD) {
+                return;
+            }
+            fetching = true;
+            if (!owner.tryStart(session, () -> fetch(true))) {
+                fetching = false;
+            }
+        }
+
+        private void fetch(boolean async) {
+            List<ResultRowImpl> list = new ArrayList<>();
+            boolean done = false;
+            Throwable t = null;
+            try {
+                if (rows == null) {
+                    rows = branch.get();
+                }
+                while (list.size() < BATCH_SIZE) {
+                    if (!rows.hasNext()) {
+                        done = true;
+                        break;
+                    }
+                    list.add(rows.next());
+                }
+            } catch (RuntimeException | Error e) {
+                t = e;
+            } finally {
+                if (async) {
+                    owner.finished(session);
+                }
+            }
+            synchronized (this) {
+                buffer.addAll(list);
+                end |= done;
+                if (t != null) {
+                    failure = t;
+                }
+                fetching = false;
+                notifyAll();
+                if (async) {
+                    readAhead();
+                }
+            }
+        }
+
+    }
+
+}
@@ -29,8 +29,10 @@ import org.apache.jackrabbit.oak.api.ResultRow;
 import org.apache.jackrabbit.oak.api.Tree;
 import org.apache.jackrabbit.oak.api.Type;
 import org.apache.jackrabbit.oak.plugins.memory.PropertyValues;
+import org.apache.jackrabbit.oak.query.QueryImpl.AnalyzingIterator;
 import org.apache.jackrabbit.oak.query.QueryImpl.MeasuringIterator;
 import org.apache.jackrabbit.oak.query.ast.ColumnImpl;
+import org.apache.jackrabbit.oak.query.ast.OperatorStatistics;
 import org.apache.jackrabbit.oak.query.ast.OrderingImpl;
 import org.apache.jackrabbit.oak.query.facet.FacetResult;
 import org.apache.jackrabbit.oak.query.stats.QueryStatsData.QueryExecutionStats;
@@ -57,10 +59,12 @@ public class UnionQueryImpl implements Query {
     private OrderingImpl[] orderings;
     private boolean explain;
     private boolean measure;
+    private boolean analyze;
     private Optional<Long> limit = Optional.empty();
     private Optional<Long> offset = Optional.empty();
     private long size = -1;
     private final QueryEngineSettings settings;
+    private ExecutionContext context;
     private boolean isInternal;
     
     UnionQueryImpl(final boolean unionAll, final Query left, final Query right,
@@ -73,6 +77,7 @@ public class UnionQueryImpl implements Query {
 
     @Override
     public void setExecutionContext(ExecutionContext context) {
+        this.context = context;
         left.setExecutionContext(context);
         right.setExecutionContext(context);
     }
@@ -208,6 +213,13 @@ public class UnionQueryImpl implements Query {
         this.measure = measure;
     }
 
+    @Override
+    public void setAnalyze(boolean analyze) {
+        left.setAnalyze(analyze);
+        right.setAnalyze(analyze);
+        this.analyze = analyze;
+    }
+
     @Override
     public void init() {
         left.init();
@@ -271,7 +283,7 @@ public class UnionQueryImpl implements Query {
 
     @Override
     public boolean isMeasureOrExplainEnabled() {
-        return explain || measure;
+        return explain || measure || analyze;
     }
 
     @Override
@@ -311,16 +323,27 @@ public class UnionQueryImpl implements Query {
         boolean distinct = !unionAll;
         Comparator<ResultRowImpl> orderBy = ResultRowImpl.getComparator(orderings);
 
-        FacetMerger facetMerger = new FacetMerger(left, right);
-
         Iterator<ResultRowImpl> it;
-        final Iterator<ResultRowImpl> leftRows = facetMerger.getLeftIterator();;
-        final Iterator<ResultRowImpl> rightRows = facetMerger.getRightIterator();
+        final Iterator<ResultRowImpl> leftRows;
+        final Iterator<ResultRowImpl> rightRows;
+        UnionBranchExecutor executor = settings.getUnionBranchExecutor();
+        if (executor.isEnabled() && !measure && !analyze && context != null && !FacetMerger.hasFacets(getColumns())) {
+            // read the branches concurrently
+            leftRows = readBranch(executor, left);
+            rightRows = readBranch(executor, right);
+        } else {
+            FacetMerger facetMerger = new FacetMerger(left, right);
+            leftRows = facetMerger.getLeftIterator();
+            rightRows = facetMerger.getRightIterator();
+        }
         Iterator<ResultRowImpl> leftIter = leftRows;
         Iterator<ResultRowImpl> rightIter = rightRows;
 
-        // if measure retrieve the backing delegate iterator instead
-        if (measure) {
+        // if measure or analyze retrieve the backing delegate iterator instead
+        if (analyze) {
+            leftIter = ((AnalyzingIterator) leftRows).getDelegate();
+            rightIter = ((AnalyzingIterator) rightRows).getDelegate();
+        } else if (measure) {
             leftIter = ((MeasuringIterator) leftRows).getDelegate();
             rightIter = ((MeasuringIterator) rightRows).getDelegate();
         }
@@ -334,7 +357,26 @@ public class UnionQueryImpl implements Query {
 
         it = FilterIterators.newCombinedFilter(it, distinct, limit.orElse(Long.MAX_VALUE), offset.orElse(0L), null, settings);
 
-        if (measure) {
+        if (analyze) {
+            // return the statistics of both subqueries
+            it = new AnalyzingIterator(this, it) {
+                AnalyzingIterator left = (AnalyzingIterator) leftRows;
+                AnalyzingIterator right = (AnalyzingIterator) rightRows;
+
+                @Override
+                protected void setColumns(ColumnImpl[] cols) {
+                    columns = cols;
+                    left.setColumns(cols);
+                    right.setColumns(cols);
+                }
+
+                @Override
+                protected void collectStatistics(List<OperatorStatistics> list) {
+                    left.collectStatistics(list);
+                    right.collectStatistics(list);
+                }
+            };
+        } else if (measure) {
             // return the measuring iterator for the union
             it = new MeasuringIterator(this, it) {
                 MeasuringIterator left = (MeasuringIterator) leftRows;
@@ -373,6 +415,21 @@ public class UnionQueryImpl implements Query {
         return it;     
     }
 
+    private Iterator<ResultRowImpl> readBranch(UnionBranchExecutor executor, Query branch) {
+        if (branch instanceof UnionQueryImpl) {
+            // the branches of the nested union are read concurrently
+            return branch.getRows();
+        }
+        // the root of the session must only be used by this thread:
+        // each branch reads its own snapshot, with its own permission provider
+        ExecutionContext snapshot = branch instanceof QueryImpl ? context.newSnapshotContext() : null;
+        if (snapshot == null) {
+            return branch.getRows();
+        }
+        Iterator<ResultRowImpl> rows = executor.read(context.getRoot(), () -> ((QueryImpl) branch).getRows(snapshot));
+        return Iterators.transform(rows, ResultRowImpl::withQueryTrees);
+    }
+
     @Override
     public void setInternal(boolean isInternal) {
         this.isInternal = isInternal;
@@ -447,7 +504,7 @@ public class UnionQueryImpl implements Query {
             Iterator<ResultRowImpl> lIter = left.getRows();
             Iterator<ResultRowImpl> rIter = right.getRows();
 
-            if (!hasFacets(columnNames) || !bothHaveRows(lIter, rIter)) {
+            if (!hasFacets(columns) || !bothHaveRows(lIter, rIter)) {
                 this.leftIterator = lIter;
                 this.rightIterator = rIter;
 
@@ -484,9 +541,9 @@ public class UnionQueryImpl implements Query {
             return rightIterator;
         }
 
-        private boolean hasFacets(String[] columnNames) {
-            for (String c : columnNames) {
-                if (c.startsWith(QueryConstants.REP_FACET + "(")) {
+        static boolean hasFacets(ColumnImpl[] columns) {
+            for (ColumnImpl c : columns) {
+                if (c.getColumnName().startsWith(QueryConstants.REP_FACET + "(")) {
                     return true;
                 }
             }
@@ -18,6 +18,8 @@
  */
 package org.apache.jackrabbit.oak.query.ast;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Set;
 
 import org.apache.jackrabbit.oak.commons.PathUtils;
@@ -103,6 +105,24 @@ public class ChildNodeJoinConditionImpl extends JoinConditionImpl {
         return available.contains(childSelector) && available.contains(parentSelector);
     }
 
+    @Override
+    public boolean supportsJoinKeys() {
+        return true;
+    }
+
+    @Override
+    public Collection<String> getJoinKeys(SelectorImpl build, boolean ofBuild) {
+        SelectorImpl s = ofBuild ? build : (build == childSelector ? parentSelector : childSelector);
+        String path = s.currentPath();
+        if (s == childSelector) {
+            if (path == null || PathUtils.denotesRoot(path)) {
+                return Collections.emptyList();
+            }
+            path = PathUtils.getParentPath(path);
+        }
+        return pathKey(path);
+    }
+
     @Override
     public AstElement copyOf() {
         return new ChildNodeJoinConditionImpl(childSelectorName, parentSelectorName);
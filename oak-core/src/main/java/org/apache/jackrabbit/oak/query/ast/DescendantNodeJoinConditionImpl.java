@@ -18,6 +18,7 @@
  */
 package org.apache.jackrabbit.oak.query.ast;
 
+import java.util.Collection;
 import java.util.Set;
 
 import org.apache.jackrabbit.oak.commons.PathUtils;
@@ -97,6 +98,21 @@ public class DescendantNodeJoinConditionImpl extends JoinConditionImpl {
         return available.contains(descendantSelector) && available.contains(ancestorSelector);
     }
 
+    @Override
+    public boolean supportsJoinKeys() {
+        return true;
+    }
+
+    @Override
+    public Collection<String> getJoinKeys(SelectorImpl build, boolean ofBuild) {
+        SelectorImpl s = ofBuild ? build : (build == descendantSelector ? ancestorSelector : descendantSelector);
+        String path = s.currentPath();
+        if (s == descendantSelector) {
+            return ancestorKeys(path);
+        }
+        return pathKey(path);
+    }
+
     @Override
     public AstElement copyOf() {
         return new DescendantNodeJoinConditionImpl(descendantSelectorName, ancestorSelectorName);
@@ -18,9 +18,16 @@
  */
 package org.apache.jackrabbit.oak.query.ast;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
+import javax.jcr.PropertyType;
+
 import org.apache.jackrabbit.oak.api.PropertyValue;
+import org.apache.jackrabbit.oak.api.Type;
 import org.apache.jackrabbit.oak.query.index.FilterImpl;
 import org.apache.jackrabbit.oak.plugins.memory.PropertyValues;
 
@@ -172,6 +179,47 @@ public class EquiJoinConditionImpl extends JoinConditionImpl {
         return available.contains(selector1) && available.contains(selector2);
     }
 
+    @Override
+    public boolean supportsJoinKeys() {
+        return true;
+    }
+
+    @Override
+    public Collection<String> getJoinKeys(SelectorImpl build, boolean ofBuild) {
+        SelectorImpl s = ofBuild ? build : (build == selector1 ? selector2 : selector1);
+        PropertyValue p = s == selector1 ? selector1.currentProperty(property1Name)
+                : selector2.currentProperty(property2Name);
+        if (p == null) {
+            // does not match
+            return Collections.emptyList();
+        }
+        List<String> keys = new ArrayList<String>(p.count());
+        for (int i = 0; i < p.count(); i++) {
+            char keyClass;
+            switch (p.getType().tag()) {
+            case PropertyType.STRING:
+            case PropertyType.REFERENCE:
+            case PropertyType.WEAKREFERENCE:
+            case PropertyType.URI:
+                // converted to each other without changing the value
+                keyClass = 's';
+                break;
+            case PropertyType.LONG:
+            case PropertyType.BOOLEAN:
+            case PropertyType.NAME:
+            case PropertyType.PATH:
+                keyClass = (char) ('0' + p.getType().tag());
+                break;
+            default:
+                // values that are equal may have a different
+                // string representation (dates, decimals,...)
+                return null;
+            }
+            keys.add(keyClass + p.getValue(Type.STRING, i));
+        }
+        return keys;
+    }
+
     @Override
     public AstElement copyOf() {
         return new EquiJoinConditionImpl(selector1Name, property1Name, selector2Name, property2Name);
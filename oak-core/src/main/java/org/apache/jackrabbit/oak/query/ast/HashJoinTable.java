@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query.ast;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.jackrabbit.oak.plugins.index.cursor.AbstractCursor;
+import org.apache.jackrabbit.oak.spi.query.Cursor;
+import org.apache.jackrabbit.oak.spi.query.IndexRow;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The in-memory table of the build side of a hash join. The rows are kept in
+ * the order they were read, and are indexed by the join keys (see
+ * {@link JoinConditionImpl#getJoinKeys(SelectorImpl, boolean)}).
+ */
+class HashJoinTable {
+
+    private final List<IndexRow> rows = new ArrayList<IndexRow>();
+
+    /**
+     * The row numbers by key.
+     */
+    private final Map<String, List<Integer>> rowsByKey = new HashMap<String, List<Integer>>();
+
+    /**
+     * The row numbers of the rows that may match any row of the other side.
+     */
+    private final List<Integer> rowsWithoutKeys = new ArrayList<Integer>();
+
+    /**
+     * The key classes (first character of a key) of the build side.
+     */
+    private final Set<Character> keyClasses = new HashSet<Character>();
+
+    /**
+     * Add a row.
+     *
+     * @param row the row
+     * @param keys the join keys of the row (null if it may match any row)
+     */
+    void add(IndexRow row, @Nullable Collection<String> keys) {
+        if (keys != null && keys.isEmpty()) {
+            // can not match
+            return;
+        }
+        int rowNumber = rows.size();
+        rows.add(row);
+        if (keys == null) {
+            rowsWithoutKeys.add(rowNumber);
+            return;
+        }
+        for (String k : keys) {
+            keyClasses.add(k.charAt(0));
+            List<Integer> list = rowsByKey.get(k);
+            if (list == null) {
+                list = new ArrayList<Integer>(1);
+                rowsByKey.put(k, list);
+            }
+            list.add(rowNumber);
+        }
+    }
+
+    /**
+     * Get the number of rows.
+     *
+     * @return the number of rows
+     */
+    int size() {
+        return rows.size();
+    }
+
+    /**
+     * Get the rows that may match a row of the other side, in the order they
+     * were added.
+     *
+     * @param keys the join keys of the row of the other side (null if it may
+     *            match any row)
+     * @return a cursor over the candidate rows
+     */
+    Cursor probe(@Nullable Collection<String> keys) {
+        if (keys == null) {
+            return new ReplayCursor(rows.iterator());
+        }
+        for (String k : keys) {
+            char keyClass = k.charAt(0);
+            if (keyClasses.size() > 1 || (!keyClasses.isEmpty() && !keyClasses.contains(keyClass))) {
+                // values of different types may still be equal after conversion
+                return new ReplayCursor(rows.iterator());
+            }
+        }
+        TreeSet<Integer> rowNumbers = new TreeSet<Integer>(rowsWithoutKeys);
+        for (String k : keys) {
+            List<Integer> list = rowsByKey.get(k);
+            if (list != null) {
+                rowNumbers.addAll(list);
+            }
+        }
+        List<IndexRow> result = new ArrayList<IndexRow>(rowNumbers.size());
+        for (int r : rowNumbers) {
+            result.add(rows.get(r));
+        }
+        return new ReplayCursor(result.iterator());
+    }
+
+    /**
+     * A cursor over rows that were read before.
+     */
+    private static class ReplayCursor extends AbstractCursor {
+
+        private final Iterator<IndexRow> it;
+
+        ReplayCursor(Iterator<IndexRow> it) {
+            this.it = it;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return it.hasNext();
+        }
+
+        @Override
+        public IndexRow next() {
+            return it.next();
+        }
+
+    }
+
+}
@@ -13,9 +13,16 @@
  */
 package org.apache.jackrabbit.oak.query.ast;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
+import org.apache.jackrabbit.oak.commons.PathUtils;
 import org.apache.jackrabbit.oak.query.index.FilterImpl;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * The base class for join conditions.
@@ -81,4 +88,71 @@ public abstract class JoinConditionImpl extends AstElement {
      */
     public abstract boolean canEvaluate(Set<SourceImpl> available);
 
+    /**
+     * Whether hash join keys can be calculated for this condition, see
+     * {@link #getJoinKeys(SelectorImpl, boolean)}.
+     *
+     * @return true if supported
+     */
+    public boolean supportsJoinKeys() {
+        return false;
+    }
+
+    /**
+     * Get the hash join keys for the current row of one side of the
+     * condition. If the condition matches a row of the given selector and a
+     * row of the other selector, then the keys of the two rows have at least
+     * one key in common. The first character of a key is its class; keys of
+     * different classes may still match.
+     *
+     * @param build the selector that is the build side of the hash join
+     * @param ofBuild whether to get the keys of the current row of the build
+     *            selector (true) or of the other selector (false)
+     * @return the keys (empty if the condition can not match), or null if
+     *         the row may match any row of the other side
+     */
+    @Nullable
+    public Collection<String> getJoinKeys(SelectorImpl build, boolean ofBuild) {
+        return null;
+    }
+
+    /**
+     * Get the path keys of the given path.
+     *
+     * @param path the path, or null
+     * @return the key
+     */
+    @NotNull
+    static Collection<String> pathKey(@Nullable String path) {
+        if (path == null) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList(PATH_KEY + path);
+    }
+
+    /**
+     * Get the path keys of all ancestors of the given path.
+     *
+     * @param path the path, or null
+     * @return the keys
+     */
+    @NotNull
+    static Collection<String> ancestorKeys(@Nullable String path) {
+        if (path == null || PathUtils.denotesRoot(path)) {
+            return Collections.emptyList();
+        }
+        List<String> keys = new ArrayList<String>(PathUtils.getDepth(path));
+        String p = path;
+        while (!PathUtils.denotesRoot(p)) {
+            p = PathUtils.getParentPath(p);
+            keys.add(PATH_KEY + p);
+        }
+        return keys;
+    }
+
+    /**
+     * The class of path keys.
+     */
+    static final char PATH_KEY = 'p';
+
 }
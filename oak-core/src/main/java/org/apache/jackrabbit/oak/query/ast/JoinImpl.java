@@ -21,6 +21,10 @@ import java.util.List;
 import org.apache.jackrabbit.oak.api.Result.SizePrecision;
 import org.apache.jackrabbit.oak.query.plan.ExecutionPlan;
 import org.apache.jackrabbit.oak.query.plan.JoinExecutionPlan;
+import org.apache.jackrabbit.oak.query.plan.SelectorExecutionPlan;
+import org.apache.jackrabbit.oak.spi.query.IndexRow;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex.IndexPlan;
 import org.apache.jackrabbit.oak.spi.query.Filter;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
 
@@ -29,6 +33,19 @@ import org.apache.jackrabbit.oak.spi.state.NodeState;
  * source, the join type, and the join condition.
  */
 public class JoinImpl extends SourceImpl {
+
+    /**
+     * Whether hash joins are disabled (only nested loop joins are used).
+     */
+    private static final boolean HASH_JOIN_DISABLED = Boolean.getBoolean("oak.query.hashJoinDisabled");
+
+    /**
+     * The minimum estimated cost of the left hand side to consider a hash
+     * join. If the left hand side is small, a nested loop join is fast
+     * enough, and keeps the rows of the right hand side out of memory.
+     */
+    static final double HASH_JOIN_MIN_LEFT_COST = 100;
+
     private final JoinConditionImpl joinCondition;
     private JoinType joinType;
     private SourceImpl left;
@@ -42,6 +59,22 @@ public class JoinImpl extends SourceImpl {
     
     private JoinExecutionPlan plan;
 
+    /**
+     * The build side of the hash join (if already read).
+     */
+    private HashJoinTable hashTable;
+
+    /**
+     * Whether the build side of the hash join was too large, in which case
+     * a nested loop join is used.
+     */
+    private boolean hashTableFailed;
+
+    /**
+     * The runtime statistics (for "explain analyze").
+     */
+    private final OperatorStatistics statistics = new OperatorStatistics("join");
+
     public JoinImpl(SourceImpl left, SourceImpl right, JoinType joinType,
             JoinConditionImpl joinCondition) {
         this.left = left;
@@ -107,6 +140,11 @@ public class JoinImpl extends SourceImpl {
             append(right.getPlan(rootState)).
             append(" on ").
             append(joinCondition);
+        if (plan != null && plan.isHashJoin()) {
+            buff.append(" /* hash join, build side: ").
+                append(getPlanName(plan.getBuildPlan())).
+                append(" */");
+        }
         return buff.toString();
     }
 
@@ -191,10 +229,54 @@ public class JoinImpl extends SourceImpl {
         ExecutionPlan leftPlan = left.prepare();
         ExecutionPlan rightPlan = right.prepare();
         double cost = leftPlan.getEstimatedCost() + 2 * rightPlan.getEstimatedCost();
-        plan = new JoinExecutionPlan(this, leftPlan, rightPlan, cost);
+        SelectorExecutionPlan buildPlan = prepareHashJoin(leftPlan, rightPlan);
+        plan = new JoinExecutionPlan(this, leftPlan, rightPlan, cost, buildPlan);
         return plan;
     }
 
+    /**
+     * Check whether a hash join is expected to be faster than a nested loop
+     * join. For a nested loop join, the right hand side is queried once per
+     * row of the left hand side. For a hash join, all rows of the right hand
+     * side are read once (without the join condition) and kept in memory.
+     *
+     * @param leftPlan the plan of the left hand side
+     * @param rightPlan the plan of the right hand side (nested loop join)
+     * @return the plan to read the build side, or null to use a nested loop
+     *         join
+     */
+    private SelectorExecutionPlan prepareHashJoin(ExecutionPlan leftPlan, ExecutionPlan rightPlan) {
+        if (HASH_JOIN_DISABLED || !(right instanceof SelectorImpl) || !joinCondition.supportsJoinKeys()) {
+            return null;
+        }
+        if (leftPlan.getEstimatedCost() < HASH_JOIN_MIN_LEFT_COST) {
+            return null;
+        }
+        SelectorImpl r = (SelectorImpl) right;
+        SelectorExecutionPlan buildPlan = r.prepareWithoutJoinCondition();
+        if (buildPlan == null) {
+            return null;
+        }
+        double buildCost = buildPlan.getEstimatedCost();
+        double nestedLoopCost = leftPlan.getEstimatedCost() * rightPlan.getEstimatedCost();
+        if (buildCost >= nestedLoopCost) {
+            return null;
+        }
+        if (buildCost > r.getQuery().getSettings().getLimitInMemory()) {
+            return null;
+        }
+        return buildPlan;
+    }
+
+    private static String getPlanName(SelectorExecutionPlan p) {
+        IndexPlan indexPlan = p.getIndexPlan();
+        if (indexPlan != null && indexPlan.getPlanName() != null) {
+            return indexPlan.getPlanName();
+        }
+        QueryIndex index = p.getIndex();
+        return index == null ? "traverse" : index.getIndexName();
+    }
+
     @Override
     public SelectorImpl getSelector(String selectorName) {
         SelectorImpl s = left.getSelector(selectorName);
@@ -209,6 +291,9 @@ public class JoinImpl extends SourceImpl {
         this.rootState = rootState;
         leftNeedExecute = true;
         end = false;
+        hashTable = null;
+        hashTableFailed = false;
+        statistics.executed();
     }
 
     @Override
@@ -237,6 +322,18 @@ public class JoinImpl extends SourceImpl {
 
     @Override
     public boolean next() {
+        if (query == null || !query.isAnalyze()) {
+            return nextInternal();
+        }
+        long start = System.nanoTime();
+        try {
+            return nextInternal();
+        } finally {
+            statistics.addNanos(System.nanoTime() - start);
+        }
+    }
+
+    private boolean nextInternal() {
         if (end) {
             return false;
         }
@@ -255,7 +352,7 @@ public class JoinImpl extends SourceImpl {
                 rightNeedExecute = true;
             }
             if (rightNeedExecute) {
-                right.execute(rootState);
+                executeRight();
                 foundJoinedRow = false;
                 rightNeedExecute = false;
             }
@@ -264,17 +361,69 @@ public class JoinImpl extends SourceImpl {
             } else {
                 if (joinCondition.evaluate()) {
                     foundJoinedRow = true;
+                    statistics.row();
                     return true;
                 }
+                statistics.filtered();
             }
             // for an outer join, if no matching result was found,
             // one row returned (with all values set to null)
             if (right.isOuterJoinRightHandSide() && leftNeedNext && !foundJoinedRow) {
+                statistics.row();
                 return true;
             }
         }
     }
     
+    private void executeRight() {
+        if (plan != null && plan.isHashJoin() && !hashTableFailed) {
+            SelectorImpl r = (SelectorImpl) right;
+            if (hashTable == null) {
+                hashTable = buildHashTable(r);
+            }
+            if (hashTable != null) {
+                r.executeReplay(hashTable.probe(joinCondition.getJoinKeys(r, false)));
+                return;
+            }
+            hashTableFailed = true;
+        }
+        right.execute(rootState);
+    }
+
+    /**
+     * Read all rows of the right hand side (ignoring the join condition).
+     *
+     * @param r the right hand side
+     * @return the table, or null if there were too many rows (or rows that
+     *         can not be replayed)
+     */
+    private HashJoinTable buildHashTable(SelectorImpl r) {
+        HashJoinTable table = new HashJoinTable();
+        long limit = r.getQuery().getSettings().getLimitInMemory();
+        r.executeWithoutJoinCondition(plan.getBuildPlan(), rootState);
+        while (r.next()) {
+            if (r.isVirtualRow() || table.size() >= limit) {
+                return null;
+            }
+            IndexRow row = r.currentIndexRow();
+            table.add(row, joinCondition.getJoinKeys(r, true));
+        }
+        return table;
+    }
+
+    @Override
+    public void collectStatistics(NodeState rootState, List<OperatorStatistics> list) {
+        StringBuilder buff = new StringBuilder();
+        buff.append(joinType).append(" on ").append(joinCondition);
+        if (plan != null && plan.isHashJoin()) {
+            buff.append(hashTableFailed ? " /* nested loop join, build side too large */" : " /* hash join */");
+        }
+        statistics.setPlan(buff.toString());
+        list.add(statistics);
+        left.collectStatistics(rootState, list);
+        right.collectStatistics(rootState, list);
+    }
+
     @Override
     public boolean isOuterJoinRightHandSide() {
         return left.isOuterJoinRightHandSide() || right.isOuterJoinRightHandSide();
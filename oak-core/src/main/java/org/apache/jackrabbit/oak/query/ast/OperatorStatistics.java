@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query.ast;
+
+/**
+ * The runtime statistics of one operator (the query, a filter, a join, or a
+ * selector) of one query execution, as returned by "explain analyze".
+ * <p>
+ * The time of an operator includes the time of the nested operators. Timings
+ * are only measured if the query is analyzed.
+ */
+public class OperatorStatistics {
+
+    private final String operator;
+    private String plan = "";
+    private long executions;
+    private long rows;
+    private long scanCount;
+    private long filtered;
+    private long denied;
+    private long nanos;
+    private long cursorNanos;
+
+    public OperatorStatistics(String operator) {
+        this.operator = operator;
+    }
+
+    public String getOperator() {
+        return operator;
+    }
+
+    public String getPlan() {
+        return plan;
+    }
+
+    public void setPlan(String plan) {
+        this.plan = plan;
+    }
+
+    /**
+     * The number of times the operator was executed (for example, the right
+     * hand side of a nested loop join is executed once per row of the left
+     * hand side).
+     *
+     * @return the number of executions
+     */
+    public long getExecutions() {
+        return executions;
+    }
+
+    public void executed() {
+        executions++;
+    }
+
+    /**
+     * The number of rows returned.
+     *
+     * @return the row count
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    public void row() {
+        rows++;
+    }
+
+    /**
+     * The number of rows read from the cursor.
+     *
+     * @return the scan count
+     */
+    public long getScanCount() {
+        return scanCount;
+    }
+
+    public void scanned() {
+        scanCount++;
+    }
+
+    /**
+     * The number of rows that did not match the constraint or join condition.
+     *
+     * @return the number of filtered rows
+     */
+    public long getFiltered() {
+        return filtered;
+    }
+
+    public void filtered() {
+        filtered++;
+    }
+
+    /**
+     * The number of rows that were skipped because they are not readable.
+     *
+     * @return the number of denied rows
+     */
+    public long getDenied() {
+        return denied;
+    }
+
+    public void denied() {
+        denied++;
+    }
+
+    public long getNanos() {
+        return nanos;
+    }
+
+    public void addNanos(long nanos) {
+        this.nanos += nanos;
+    }
+
+    /**
+     * The time spent in the index, that is, to create the cursor and to read
+     * the rows from the cursor.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getCursorNanos() {
+        return cursorNanos;
+    }
+
+    public void addCursorNanos(long nanos) {
+        cursorNanos += nanos;
+    }
+
+    @Override
+    public String toString() {
+        return operator + " " + plan +
+                " executions: " + executions +
+                " rows: " + rows +
+                " scanCount: " + scanCount +
+                " filtered: " + filtered +
+                " denied: " + denied;
+    }
+
+}
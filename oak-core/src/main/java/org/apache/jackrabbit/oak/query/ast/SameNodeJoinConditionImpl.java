@@ -18,6 +18,7 @@
  */
 package org.apache.jackrabbit.oak.query.ast;
 
+import java.util.Collection;
 import java.util.Set;
 
 import org.apache.jackrabbit.oak.commons.PathUtils;
@@ -126,4 +127,19 @@ public class SameNodeJoinConditionImpl extends JoinConditionImpl {
         return available.contains(selector1) && available.contains(selector2);
     }
 
+    @Override
+    public boolean supportsJoinKeys() {
+        return true;
+    }
+
+    @Override
+    public Collection<String> getJoinKeys(SelectorImpl build, boolean ofBuild) {
+        SelectorImpl s = ofBuild ? build : (build == selector1 ? selector2 : selector1);
+        String path = s.currentPath();
+        if (s == selector2 && path != null && !selector2Path.equals(".")) {
+            path = PathUtils.concat(path, normalizePath(selector2Path));
+        }
+        return pathKey(path);
+    }
+
 }
@@ -26,6 +26,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.jackrabbit.oak.api.PropertyState;
@@ -177,8 +178,26 @@ public class SelectorImpl extends SourceImpl {
     
     private Cursor cursor;
     private IndexRow currentRow;
+
+    /**
+     * Whether the join condition is ignored, to read the rows for the build
+     * side of a hash join.
+     */
+    private boolean ignoreJoinCondition;
+
+    /**
+     * Whether the rows of the cursor are replayed from a hash join table,
+     * which means they only need to be checked against the join condition.
+     */
+    private boolean replaying;
+
     private int scanCount;
 
+    /**
+     * The runtime statistics (for "explain analyze").
+     */
+    private final OperatorStatistics statistics;
+
     private String planIndexName;
     private TimerStats timerDuration;
 
@@ -189,6 +208,7 @@ public class SelectorImpl extends SourceImpl {
     public SelectorImpl(NodeTypeInfo nodeTypeInfo, String selectorName) {
         this.nodeTypeInfo = checkNotNull(nodeTypeInfo);
         this.selectorName = checkNotNull(selectorName);
+        this.statistics = new OperatorStatistics("selector " + quote(selectorName));
 
         this.nodeTypeName = nodeTypeInfo.getNodeTypeName();
         this.matchesAllTypes = NT_BASE.equals(nodeTypeName);
@@ -341,23 +361,91 @@ public class SelectorImpl extends SourceImpl {
     
     @Override
     public void execute(NodeState rootState) {
+        ignoreJoinCondition = false;
+        replaying = false;
+        statistics.executed();
+        long start = startTimer();
+        long analyzeStart = startAnalyze();
+        try {
+            executeInternal(plan, rootState);
+        } finally {
+            stopTimer(start, true);
+            stopAnalyze(analyzeStart, true);
+        }
+    }
+
+    /**
+     * Plan reading the rows of this selector for the build side of a hash
+     * join, that is, without the join condition.
+     *
+     * @return the plan, or null if no index can be used
+     */
+    @Nullable
+    public SelectorExecutionPlan prepareWithoutJoinCondition() {
+        ignoreJoinCondition = true;
+        try {
+            return query.getBestIndexedSelectorExecutionPlan(createFilter(true));
+        } finally {
+            ignoreJoinCondition = false;
+        }
+    }
+
+    /**
+     * Execute the given plan, ignoring the join condition, to read the rows
+     * for the build side of a hash join. The join condition is ignored until
+     * the selector is executed again.
+     *
+     * @param buildPlan the plan (see {@link #prepareWithoutJoinCondition()})
+     * @param rootState the root state
+     */
+    public void executeWithoutJoinCondition(SelectorExecutionPlan buildPlan, NodeState rootState) {
+        ignoreJoinCondition = true;
+        replaying = false;
+        statistics.executed();
         long start = startTimer();
+        long analyzeStart = startAnalyze();
         try {
-            executeInternal(rootState);
+            executeInternal(buildPlan, rootState);
         } finally {
             stopTimer(start, true);
+            stopAnalyze(analyzeStart, true);
         }
     }
+
+    /**
+     * Replay rows that were read before (using
+     * {@link #executeWithoutJoinCondition(SelectorExecutionPlan, NodeState)}).
+     * Only the join condition is evaluated for those rows.
+     *
+     * @param rows the rows
+     */
+    public void executeReplay(Cursor rows) {
+        ignoreJoinCondition = false;
+        replaying = true;
+        cursor = rows;
+        currentRow = null;
+        statistics.executed();
+    }
+
+    /**
+     * Get the current row.
+     *
+     * @return the row, or null if none
+     */
+    @Nullable
+    IndexRow currentIndexRow() {
+        return cursor == null ? null : currentRow;
+    }
     
-    private void executeInternal(NodeState rootState) {
-        QueryIndex index = plan.getIndex();
+    private void executeInternal(SelectorExecutionPlan selectorPlan, NodeState rootState) {
+        QueryIndex index = selectorPlan.getIndex();
         timerDuration = null;
         if (index == null) {
             cursor = Cursors.newPathCursor(new ArrayList<String>(), query.getSettings());
             planIndexName = "traverse";
             return;
         }
-        IndexPlan p = plan.getIndexPlan();
+        IndexPlan p = selectorPlan.getIndexPlan();
         if (p != null) {
             planIndexName = p.getPlanName();
             p.setFilter(createFilter(false));
@@ -372,11 +460,62 @@ public class SelectorImpl extends SourceImpl {
                 orElse(query.getExecutionContext().getSettings().getPrefetchCount());
         if (prefetchCount > 0) {
             PrefetchNodeStore store = query.getExecutionContext().getPrefetchNodeStore();
+            // if the query reads fewer rows than one window (due to a
+            // limit), don't prefetch more rows, and don't read ahead
+            long limitHint = query.getLimitHint(this);
+            Executor executor = limitHint <= prefetchCount ? null
+                    : query.getExecutionContext().getSettings().getPrefetchExecutor();
+            prefetchCount = (int) Math.max(1, Math.min(prefetchCount, limitHint));
             cursor = Cursors.newPrefetchCursor(cursor, store, prefetchCount,
-                    rootState, query.getQueryOptions().prefetch);
+                    rootState, query.getQueryOptions().prefetch, executor);
         }
     }
     
+    /**
+     * Start measuring the time for "explain analyze".
+     *
+     * @return the start time, or -1 if the query is not analyzed
+     */
+    private long startAnalyze() {
+        if (!query.isAnalyze()) {
+            return -1;
+        }
+        return System.nanoTime();
+    }
+
+    private void stopAnalyze(long start, boolean cursorTime) {
+        if (start == -1) {
+            return;
+        }
+        long timeNanos = System.nanoTime() - start;
+        statistics.addNanos(timeNanos);
+        if (cursorTime) {
+            statistics.addCursorNanos(timeNanos);
+        }
+    }
+
+    private boolean cursorHasNext() {
+        long start = startAnalyze();
+        try {
+            return cursor.hasNext();
+        } finally {
+            if (start != -1) {
+                statistics.addCursorNanos(System.nanoTime() - start);
+            }
+        }
+    }
+
+    private IndexRow cursorNext() {
+        long start = startAnalyze();
+        try {
+            return cursor.next();
+        } finally {
+            if (start != -1) {
+                statistics.addCursorNanos(System.nanoTime() - start);
+            }
+        }
+    }
+
     private long startTimer() {
         if (TIMER_DISABLED) {
             return -1;
@@ -468,7 +607,10 @@ public class SelectorImpl extends SourceImpl {
     public FilterImpl createFilter(boolean preparing) {
         FilterImpl f = new FilterImpl(this, query.getStatement(), query.getSettings());
         f.setPreparing(preparing);
-        if (joinCondition != null) {
+        if (!preparing) {
+            f.setLimitHint(query.getLimitHint(this));
+        }
+        if (joinCondition != null && !ignoreJoinCondition) {
             joinCondition.restrict(f);
         }
         // rep:excerpt handling: create a (fake) restriction
@@ -521,20 +663,26 @@ public class SelectorImpl extends SourceImpl {
     @Override
     public boolean next() {
         long start = startTimer();
+        long analyzeStart = startAnalyze();
         try {
             return nextInternal();
         } finally {
             stopTimer(start, true);
+            stopAnalyze(analyzeStart, false);
         }
     }
     
     private boolean nextInternal() {
-        while (cursor != null && cursor.hasNext()) {
+        if (replaying) {
+            return nextReplayed();
+        }
+        while (cursor != null && cursorHasNext()) {
             scanCount++;
+            statistics.scanned();
             query.getQueryExecutionStats().scan(1, scanCount);
             try {
                 totalQueryStats(query.getSettings());
-                currentRow = cursor.next();
+                currentRow = cursorNext();
             } catch (RuntimeNodeTraversalException e) {
                 addSlowQueryStats(query.getSettings());
                 LOG.warn(e.getMessage() + " for query " + query.getStatement());
@@ -552,6 +700,7 @@ public class SelectorImpl extends SourceImpl {
                 // correct results
             } else if (currentRow.isVirtualRow()) {
                 // this is a virtual row and should be selected as is
+                statistics.row();
                 return true;
             } else {
                 // we must check whether the _child_ is readable
@@ -564,12 +713,29 @@ public class SelectorImpl extends SourceImpl {
                 // because not checking would reveal existence
                 // of the child node
                 if (!getCachedTree(currentRow.getPath()).exists()) {
+                    statistics.denied();
                     continue;
                 }
             }
             if (evaluateCurrentRow()) {
+                statistics.row();
+                return true;
+            }
+            statistics.filtered();
+        }
+        cursor = null;
+        currentRow = null;
+        return false;
+    }
+
+    private boolean nextReplayed() {
+        while (cursor != null && cursor.hasNext()) {
+            currentRow = cursor.next();
+            if (joinCondition == null || joinCondition.evaluate()) {
+                statistics.row();
                 return true;
             }
+            statistics.filtered();
         }
         cursor = null;
         currentRow = null;
@@ -608,7 +774,7 @@ public class SelectorImpl extends SourceImpl {
                 return false;
             }
         }
-        if (joinCondition != null && !joinCondition.evaluate()) {
+        if (joinCondition != null && !ignoreJoinCondition && !joinCondition.evaluate()) {
             return false;
         }
         return true;
@@ -883,6 +1049,12 @@ public class SelectorImpl extends SourceImpl {
         return scanCount;
     }
 
+    @Override
+    public void collectStatistics(NodeState rootState, List<OperatorStatistics> list) {
+        statistics.setPlan(getPlan(rootState));
+        list.add(statistics);
+    }
+
     public void restrictSelector(ConstraintImpl constraint) {
         selectorConstraints.add(constraint);
     }
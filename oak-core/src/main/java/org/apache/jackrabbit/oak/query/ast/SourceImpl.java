@@ -129,6 +129,15 @@ public abstract class SourceImpl extends AstElement {
      */
     public abstract boolean next();
 
+    /**
+     * Add the runtime statistics of this source, and of the nested sources, to
+     * the list (for "explain analyze").
+     *
+     * @param rootState the root
+     * @param list the list
+     */
+    public abstract void collectStatistics(NodeState rootState, List<OperatorStatistics> list);
+
     /**
      * <b>!Test purpose only! </b>
      * 
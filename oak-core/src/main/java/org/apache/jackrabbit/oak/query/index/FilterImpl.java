@@ -18,6 +18,7 @@
  */
 package org.apache.jackrabbit.oak.query.index;
 
+import java.security.Principal;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -34,6 +35,7 @@ import org.apache.jackrabbit.guava.common.collect.ArrayListMultimap;
 import org.apache.jackrabbit.guava.common.collect.ListMultimap;
 import org.apache.jackrabbit.oak.api.PropertyValue;
 import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.apache.jackrabbit.oak.query.ExecutionContext;
 import org.apache.jackrabbit.oak.spi.query.QueryLimits;
 import org.apache.jackrabbit.oak.query.ast.JoinConditionImpl;
 import org.apache.jackrabbit.oak.query.ast.NativeFunctionImpl;
@@ -110,6 +112,11 @@ public class FilterImpl implements Filter {
      */
     private boolean preparing;
 
+    /**
+     * The number of rows the query reads if all of them match.
+     */
+    private long limitHint = Long.MAX_VALUE;
+
     // TODO support "order by"
 
     /**
@@ -178,6 +185,7 @@ public class FilterImpl implements Filter {
         this.matchesAllTypes = selector != null ? selector.matchesAllTypes()
                 : false;
         this.settings = filter.getQueryLimits();
+        this.limitHint = filter.getLimitHint();
     }
 
     public void setPreparing(boolean preparing) {
@@ -253,6 +261,15 @@ public class FilterImpl implements Filter {
         return alwaysFalse;
     }
 
+    @Override
+    public long getLimitHint() {
+        return limitHint;
+    }
+
+    public void setLimitHint(long limitHint) {
+        this.limitHint = limitHint;
+    }
+
     public SelectorImpl getSelector() {
         return selector;
     }
@@ -638,4 +655,17 @@ public class FilterImpl implements Filter {
         return permissionProvider != null && permissionProvider.isGranted(path, Session.ACTION_READ);
     }
 
+    @Override
+    @Nullable
+    public Set<Principal> getPrincipals() {
+        if (selector == null) {
+            return null;
+        }
+        ExecutionContext context = selector.getQuery().getExecutionContext();
+        if (context.getPermissionProvider() == null) {
+            return null;
+        }
+        return context.getRoot().getContentSession().getAuthInfo().getPrincipals();
+    }
+
 }
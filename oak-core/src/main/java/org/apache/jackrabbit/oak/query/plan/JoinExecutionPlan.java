@@ -17,6 +17,7 @@
 package org.apache.jackrabbit.oak.query.plan;
 
 import org.apache.jackrabbit.oak.query.ast.JoinImpl;
+import org.jetbrains.annotations.Nullable;
 
 
 /**
@@ -27,12 +28,29 @@ public class JoinExecutionPlan implements ExecutionPlan {
     private final JoinImpl join;
     private final ExecutionPlan leftPlan, rightPlan;
     private final double estimatedCost;
+    private final SelectorExecutionPlan buildPlan;
     
     public JoinExecutionPlan(JoinImpl join, ExecutionPlan leftPlan, ExecutionPlan rightPlan, double estimatedCost) {
+        this(join, leftPlan, rightPlan, estimatedCost, null);
+    }
+
+    /**
+     * Create a plan for a join.
+     *
+     * @param join the join
+     * @param leftPlan the plan for the left hand side
+     * @param rightPlan the plan for the right hand side (nested loop join)
+     * @param estimatedCost the estimated cost
+     * @param buildPlan the plan to read all rows of the right hand side, if a
+     *            hash join is used, or null for a nested loop join
+     */
+    public JoinExecutionPlan(JoinImpl join, ExecutionPlan leftPlan, ExecutionPlan rightPlan,
+            double estimatedCost, @Nullable SelectorExecutionPlan buildPlan) {
         this.join = join;
         this.leftPlan = leftPlan;
         this.rightPlan = rightPlan;
         this.estimatedCost = estimatedCost;
+        this.buildPlan = buildPlan;
     }
     
     @Override
@@ -52,4 +70,18 @@ public class JoinExecutionPlan implements ExecutionPlan {
         return rightPlan;
     }
 
+    /**
+     * Get the plan to read all rows of the right hand side for a hash join.
+     *
+     * @return the plan, or null if a nested loop join is used
+     */
+    @Nullable
+    public SelectorExecutionPlan getBuildPlan() {
+        return buildPlan;
+    }
+
+    public boolean isHashJoin() {
+        return buildPlan != null;
+    }
+
 }
@@ -39,6 +39,12 @@ public class QueryStatsData {
      */
     private long totalRowsScanned;
     private long maxRowsScanned;
+
+    /**
+     * Bytes written to temporary files, for sorting or distinct.
+     */
+    private long totalBytesSpilled;
+    private long maxBytesSpilled;
     private long planNanos;
     private long readNanos;
     private long maxTimeNanos;
@@ -74,6 +80,10 @@ public class QueryStatsData {
         return maxRowsScanned;
     }
     
+    public long getMaxBytesSpilled() {
+        return maxBytesSpilled;
+    }
+    
     public void setCaptureStackTraces(boolean captureStackTraces) {
         this.captureStackTraces = captureStackTraces;
     }
@@ -95,6 +105,10 @@ public class QueryStatsData {
         return totalRowsScanned;
     }
 
+    public long getTotalBytesSpilled() {
+        return totalBytesSpilled;
+    }
+
     public String getLanguage() {
         return language;
     }
@@ -125,6 +139,8 @@ public class QueryStatsData {
             key("maxRowsRead").value(maxRowsRead).
             key("totalRowsScanned").value(totalRowsScanned).
             key("maxRowsScanned").value(maxRowsScanned).
+            key("totalBytesSpilled").value(totalBytesSpilled).
+            key("maxBytesSpilled").value(maxBytesSpilled).
             key("planNanos").value(planNanos).
             key("readNanos").value(readNanos).
             key("maxTimeNanos").value(maxTimeNanos).
@@ -142,6 +158,8 @@ public class QueryStatsData {
     public class QueryExecutionStats {
         
         long time;
+
+        long bytesSpilled;
         
         public void execute(long nanos) {
             QueryRecorder.record(query, internal);
@@ -179,6 +197,12 @@ public class QueryStatsData {
             totalRowsScanned += count;
             maxRowsScanned = Math.max(maxRowsScanned, max);
         }
+
+        public void spill(long bytes) {
+            bytesSpilled += bytes;
+            totalBytesSpilled += bytes;
+            maxBytesSpilled = Math.max(maxBytesSpilled, bytesSpilled);
+        }
     }
 
 }
\ No newline at end of file
@@ -54,5 +54,26 @@ public interface QueryStatsMBean {
     void setCaptureStackTraces(boolean captureStackTraces);
     
     boolean getCaptureStackTraces();
+
+    @Description("The number of times the query plan cache contained the indexes for a query.")
+    long getPlanCacheHitCount();
+
+    @Description("The number of times the query plan cache did not contain the indexes for a query.")
+    long getPlanCacheMissCount();
+
+    @Description("The ratio of query plan cache hits to lookups.")
+    double getPlanCacheHitRate();
+
+    @Description("The number of entries in the query plan cache.")
+    long getPlanCacheSize();
+
+    @Description("The number of times the query plan cache was cleared because index definitions changed.")
+    long getPlanCacheInvalidationCount();
+
+    @Description("The average time in microseconds to parse and plan a query.")
+    long getAveragePlanningTimeMicros();
+
+    @Description("The total time in milliseconds spent to parse and plan queries.")
+    long getTotalPlanningTimeMillis();
     
 }
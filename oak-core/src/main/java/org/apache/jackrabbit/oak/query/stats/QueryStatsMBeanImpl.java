@@ -32,6 +32,7 @@ import javax.management.openmbean.TabularType;
 
 import org.apache.jackrabbit.oak.commons.jmx.AnnotatedStandardMBean;
 import org.apache.jackrabbit.oak.query.QueryEngineSettings;
+import org.apache.jackrabbit.oak.query.QueryPlanCache;
 import org.apache.jackrabbit.oak.query.stats.QueryStatsData.QueryExecutionStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -95,6 +96,7 @@ public class QueryStatsMBeanImpl extends AnnotatedStandardMBean
     @Override
     public void resetStats() {
         statistics.clear();
+        settings.getQueryPlanCache().resetStats();
     }
     
     @Override
@@ -107,6 +109,46 @@ public class QueryStatsMBeanImpl extends AnnotatedStandardMBean
         return captureStackTraces;
     }
     
+    @Override
+    public long getPlanCacheHitCount() {
+        return settings.getQueryPlanCache().getHitCount();
+    }
+
+    @Override
+    public long getPlanCacheMissCount() {
+        return settings.getQueryPlanCache().getMissCount();
+    }
+
+    @Override
+    public double getPlanCacheHitRate() {
+        QueryPlanCache cache = settings.getQueryPlanCache();
+        long hits = cache.getHitCount();
+        long lookups = hits + cache.getMissCount();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public long getPlanCacheSize() {
+        return settings.getQueryPlanCache().getSize();
+    }
+
+    @Override
+    public long getPlanCacheInvalidationCount() {
+        return settings.getQueryPlanCache().getInvalidationCount();
+    }
+
+    @Override
+    public long getAveragePlanningTimeMicros() {
+        QueryPlanCache cache = settings.getQueryPlanCache();
+        long count = cache.getPlanningCount();
+        return count == 0 ? 0 : cache.getPlanningTimeNanos() / count / 1000;
+    }
+
+    @Override
+    public long getTotalPlanningTimeMillis() {
+        return settings.getQueryPlanCache().getPlanningTimeNanos() / 1000000;
+    }
+
     @Override
     public String asJson() {
         ArrayList<QueryStatsData> list = new ArrayList<QueryStatsData>(statistics.values());
@@ -41,6 +41,7 @@ public class Statement {
 
     boolean explain;
     boolean measure;
+    boolean analyze;
     
     /**
      * The selector to get the columns from (the selector used in the select
@@ -98,6 +99,7 @@ public class Statement {
         union.xpathQuery = xpathQuery;
         union.measure = measure;
         union.explain = explain;
+        union.analyze = analyze;
         union.queryOptions = queryOptions;
 
         return union;
@@ -165,10 +167,12 @@ public class Statement {
     public String toString() {
         StringBuilder buff = new StringBuilder();
         
-        // explain | measure ...
+        // explain | explain analyze | measure ...
         if (explain) {
             buff.append("explain ");
-        } 
+        } else if (analyze) {
+            buff.append("explain analyze ");
+        }
         if (measure) {
             buff.append("measure ");
         }
@@ -267,6 +271,10 @@ public class Statement {
         this.measure = measure;
     }
 
+    public void setAnalyze(boolean analyze) {
+        this.analyze = analyze;
+    }
+
     public void addSelectColumn(Property p) {
         columnList.add(p);
     }
@@ -317,6 +325,7 @@ public class Statement {
             UnionStatement union = new UnionStatement(s1b, s2b);
             union.explain = explain;
             union.measure = measure;
+            union.analyze = analyze;
             union.orderList = orderList;
             union.queryOptions = queryOptions;
             union.xpathQuery = xpathQuery;
@@ -326,10 +335,12 @@ public class Statement {
         @Override
         public String toString() {
             StringBuilder buff = new StringBuilder();
-            // explain | measure ...
+            // explain | explain analyze | measure ...
             if (explain) {
                 buff.append("explain ");
-            } 
+            } else if (analyze) {
+                buff.append("explain analyze ");
+            }
             if (measure) {
                 buff.append("measure ");
             }
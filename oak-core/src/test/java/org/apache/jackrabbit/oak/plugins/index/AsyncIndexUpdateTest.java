@@ -22,8 +22,10 @@ import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.ASYNC_PROPE
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.DISABLE_INDEXES_ON_NEXT_CYCLE;
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_CONTENT_NODE_NAME;
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_DEFINITIONS_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_DEFINITIONS_NODE_TYPE;
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.REINDEX_PROPERTY_NAME;
 import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.SUPERSEDED_INDEX_PATHS;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.TYPE_PROPERTY_NAME;
 import static org.apache.jackrabbit.oak.plugins.index.IndexUtils.createIndexDefinition;
 import static org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexEditorProvider.TYPE;
 import static org.hamcrest.CoreMatchers.containsString;
@@ -45,6 +47,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.Semaphore;
@@ -55,6 +58,7 @@ import java.util.concurrent.atomic.AtomicReference;
 
 import javax.management.openmbean.CompositeData;
 
+import org.apache.jackrabbit.JcrConstants;
 import org.apache.jackrabbit.oak.api.CommitFailedException;
 import org.apache.jackrabbit.oak.api.PropertyState;
 import org.apache.jackrabbit.oak.api.Type;
@@ -65,6 +69,8 @@ import org.apache.jackrabbit.oak.commons.junit.LogCustomizer;
 import org.apache.jackrabbit.oak.plugins.index.AsyncIndexUpdate.AsyncIndexStats;
 import org.apache.jackrabbit.oak.plugins.index.AsyncIndexUpdate.IndexTaskSpliter;
 import org.apache.jackrabbit.oak.plugins.index.TrackingCorruptIndexHandler.CorruptIndexInfo;
+import org.apache.jackrabbit.oak.plugins.index.counter.NodeCounterEditor;
+import org.apache.jackrabbit.oak.plugins.index.counter.NodeCounterEditorProvider;
 import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexEditorProvider;
 import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexLookup;
 import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeStore;
@@ -272,6 +278,130 @@ public class AsyncIndexUpdateTest {
                 find(lookupChild, "foo", "abc"));
     }
 
+    @Test
+    public void parallelSubtrees() throws Exception {
+        NodeStore store = new MemoryNodeStore();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        IndexEditorProvider provider = recordThreads(new PropertyIndexEditorProvider(), threads);
+
+        NodeBuilder builder = store.getRoot().builder();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME),
+                "rootIndex", true, false, ImmutableSet.of("foo"), null)
+                .setProperty(ASYNC_PROPERTY_NAME, "async");
+        builder.child("a").child("x").setProperty("foo", "abc");
+        builder.child("b").child("x").setProperty("foo", "def");
+        builder.child("c").child("x").setProperty("foo", "ghi");
+        store.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+
+        AsyncIndexUpdate async = new AsyncIndexUpdate("async", store, provider)
+                .setParallelThreads(4);
+        async.run();
+
+        // changes in independent subtrees, some of them with the same value
+        builder = store.getRoot().builder();
+        builder.child("a").child("y").setProperty("foo", "abc");
+        builder.child("b").child("x").remove();
+        builder.child("c").child("y").setProperty("foo", "abc");
+        builder.child("d").setProperty("foo", "jkl");
+        store.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        threads.clear();
+        async.run();
+        assertFalse(async.getIndexStats().isFailing());
+        assertTrue(threads.toString(), isParallel(threads));
+        assertFalse(threads.toString(), threads.contains(Thread.currentThread().getName()));
+
+        PropertyIndexLookup lookup = new PropertyIndexLookup(store.getRoot());
+        assertEquals(ImmutableSet.of("a/x", "a/y", "c/y"), find(lookup, "foo", "abc"));
+        assertEquals(ImmutableSet.<String> of(), find(lookup, "foo", "def"));
+        assertEquals(ImmutableSet.of("c/x"), find(lookup, "foo", "ghi"));
+        assertEquals(ImmutableSet.of("d"), find(lookup, "foo", "jkl"));
+
+        // conflicting changes: the key node "ghi" is removed by one thread,
+        // and extended by another one; the lane falls back to sequential indexing
+        builder = store.getRoot().builder();
+        builder.child("c").child("x").remove();
+        builder.child("d").child("z").setProperty("foo", "ghi");
+        store.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        threads.clear();
+        async.run();
+        assertFalse(async.getIndexStats().isFailing());
+        assertTrue(threads.toString(), isParallel(threads));
+        assertTrue(threads.toString(), threads.contains(Thread.currentThread().getName()));
+
+        lookup = new PropertyIndexLookup(store.getRoot());
+        assertEquals(ImmutableSet.of("d/z"), find(lookup, "foo", "ghi"));
+        assertEquals(ImmutableSet.of("a/x", "a/y", "c/y"), find(lookup, "foo", "abc"));
+        assertEquals("", async.getIndexStats().getParallelIndexingProgress());
+    }
+
+    @Test
+    public void parallelSubtreesWithCounter() throws Exception {
+        // the same changes, indexed sequentially and in parallel,
+        // result in the same approximate counts
+        NodeStore sequentialStore = new MemoryNodeStore();
+        NodeStore parallelStore = new MemoryNodeStore();
+        IndexEditorProvider sequentialProvider = CompositeIndexEditorProvider.compose(ImmutableList.of(
+                new PropertyIndexEditorProvider(), new NodeCounterEditorProvider()));
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        IndexEditorProvider parallelProvider = recordThreads(sequentialProvider, threads);
+        AsyncIndexUpdate sequential = new AsyncIndexUpdate("async", sequentialStore, sequentialProvider);
+        AsyncIndexUpdate parallel = new AsyncIndexUpdate("async", parallelStore, parallelProvider)
+                .setParallelThreads(4);
+
+        for (NodeStore store : ImmutableList.of(sequentialStore, parallelStore)) {
+            NodeBuilder builder = store.getRoot().builder();
+            NodeBuilder index = builder.child(INDEX_DEFINITIONS_NAME);
+            createIndexDefinition(index, "rootIndex", true, false, ImmutableSet.of("foo"), null)
+                    .setProperty(ASYNC_PROPERTY_NAME, "async");
+            index.child("counter")
+                    .setProperty(JcrConstants.JCR_PRIMARYTYPE, INDEX_DEFINITIONS_NODE_TYPE, Type.NAME)
+                    .setProperty(TYPE_PROPERTY_NAME, NodeCounterEditorProvider.TYPE)
+                    .setProperty(ASYNC_PROPERTY_NAME, "async")
+                    .setProperty(NodeCounterEditorProvider.RESOLUTION, 1L)
+                    .setProperty(NodeCounterEditorProvider.SEED, 1L);
+            builder.child("a").child("x").setProperty("foo", "abc");
+            store.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        }
+        sequential.run();
+        parallel.run();
+
+        for (NodeStore store : ImmutableList.of(sequentialStore, parallelStore)) {
+            NodeBuilder builder = store.getRoot().builder();
+            for (String name : ImmutableList.of("a", "b", "c", "d")) {
+                for (int i = 0; i < 20; i++) {
+                    builder.child(name).child("n" + i).setProperty("foo", "v" + i);
+                }
+            }
+            store.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        }
+        threads.clear();
+        sequential.run();
+        parallel.run();
+        assertFalse(parallel.getIndexStats().isFailing());
+        assertTrue(threads.toString(), isParallel(threads));
+        assertFalse(threads.toString(), threads.contains(Thread.currentThread().getName()));
+
+        NodeState sequentialIndex = sequentialStore.getRoot().getChildNode(INDEX_DEFINITIONS_NAME);
+        NodeState parallelIndex = parallelStore.getRoot().getChildNode(INDEX_DEFINITIONS_NAME);
+        assertTrue(sequentialIndex.getChildNode("counter").getChildNode(":index")
+                .hasProperty(NodeCounterEditor.COUNT_HASH_PROPERTY_NAME));
+        assertEquals(sequentialIndex.getChildNode("counter").getChildNode(":index"),
+                parallelIndex.getChildNode("counter").getChildNode(":index"));
+        assertEquals(sequentialIndex.getChildNode("rootIndex").getChildNode(INDEX_CONTENT_NODE_NAME),
+                parallelIndex.getChildNode("rootIndex").getChildNode(INDEX_CONTENT_NODE_NAME));
+    }
+
+    private static IndexEditorProvider recordThreads(IndexEditorProvider provider, Set<String> threads) {
+        return (type, definition, root, callback) -> {
+            threads.add(Thread.currentThread().getName());
+            return provider.getIndexEditor(type, definition, root, callback);
+        };
+    }
+
+    private static boolean isParallel(Set<String> threads) {
+        return threads.stream().anyMatch(t -> t.startsWith("async-index-update-async-"));
+    }
+
     @Test
     public void testAsyncPause() throws Exception {
         NodeStore store = new MemoryNodeStore();
@@ -23,7 +23,14 @@ import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.jackrabbit.oak.api.Result.SizePrecision;
 import org.apache.jackrabbit.oak.spi.query.Cursor;
@@ -199,4 +206,72 @@ public class PrefetchCursorTest {
         assertFalse(pc.hasNext());
     }
 
+    @Test
+    public void cursorWithExecutor() throws Exception {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            paths.add("/test/n" + i);
+        }
+        Iterator<String> it = paths.iterator();
+        AtomicInteger read = new AtomicInteger();
+        TestCursor cursor = new TestCursor(new Iterator<String>() {
+
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public String next() {
+                read.incrementAndGet();
+                return it.next();
+            }
+
+        });
+        TestPrefetchNodeStore ns = new TestPrefetchNodeStore();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            PrefetchCursor pc = new PrefetchCursor(cursor, ns, 10, null,
+                    Collections.emptyList(), executor);
+            assertEquals("/test/n0", pc.next().getPath());
+            // the next window was read ahead
+            assertEquals(20, read.get());
+            for (int i = 1; i < 25; i++) {
+                assertTrue(pc.hasNext());
+                assertEquals("/test/n" + i, pc.next().getPath());
+            }
+            assertFalse(pc.hasNext());
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+            assertTrue(ns.toString(), prefetched(ns).containsAll(paths));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void cursorWithBusyExecutor() {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            paths.add("/test/n" + i);
+        }
+        TestCursor cursor = new TestCursor(paths.iterator());
+        TestPrefetchNodeStore ns = new TestPrefetchNodeStore();
+        PrefetchCursor pc = new PrefetchCursor(cursor, ns, 10, null,
+                Collections.emptyList(), r -> {
+                    throw new RejectedExecutionException();
+                });
+        for (int i = 0; i < 25; i++) {
+            assertEquals("/test/n" + i, pc.next().getPath());
+        }
+        assertFalse(pc.hasNext());
+        // prefetched synchronously
+        assertTrue(ns.toString(), prefetched(ns).containsAll(paths));
+    }
+
+    private static List<String> prefetched(TestPrefetchNodeStore ns) {
+        String s = ns.toString();
+        return Arrays.asList(s.substring(1, s.length() - 1).split(", "));
+    }
+
 }
@@ -27,15 +27,15 @@ public class TestPrefetchNodeStore implements PrefetchNodeStore {
     private final TreeSet<String> prefetched = new TreeSet<String>();
 
     @Override
-    public void prefetch(Collection<String> paths, NodeState rootState) {
+    public synchronized void prefetch(Collection<String> paths, NodeState rootState) {
         prefetched.addAll(paths);
     }
     
-    public void reset() {
+    public synchronized void reset() {
         prefetched.clear();
     }
     
-    public String toString() {
+    public synchronized String toString() {
         return prefetched.toString();
     }
 
@@ -40,6 +40,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Set;
 
+import javax.jcr.PropertyType;
+
 import org.apache.jackrabbit.oak.api.CommitFailedException;
 import org.apache.jackrabbit.oak.api.PropertyState;
 import org.apache.jackrabbit.oak.api.PropertyValue;
@@ -50,6 +52,7 @@ import org.apache.jackrabbit.oak.plugins.index.IndexConstants;
 import org.apache.jackrabbit.oak.plugins.index.IndexUpdate;
 import org.apache.jackrabbit.oak.plugins.index.IndexUpdateProvider;
 import org.apache.jackrabbit.oak.plugins.index.property.strategy.ContentMirrorStoreStrategy;
+import org.apache.jackrabbit.oak.plugins.index.property.strategy.SortedPageStoreStrategy;
 import org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState;
 import org.apache.jackrabbit.oak.plugins.memory.PropertyStates;
 import org.apache.jackrabbit.oak.plugins.memory.PropertyValues;
@@ -70,6 +73,7 @@ import org.apache.jackrabbit.oak.spi.commit.ValidatorProvider;
 import org.apache.jackrabbit.oak.spi.mount.Mount;
 import org.apache.jackrabbit.oak.spi.mount.MountInfoProvider;
 import org.apache.jackrabbit.oak.spi.mount.Mounts;
+import org.apache.jackrabbit.oak.spi.query.Cursor;
 import org.apache.jackrabbit.oak.spi.query.Filter;
 import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
@@ -1154,6 +1158,60 @@ public class PropertyIndexTest {
         }
     }
 
+    @Test
+    public void sortedStorage() throws Exception {
+        NodeState root = INITIAL_CONTENT;
+        NodeBuilder builder = root.builder();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME), "foo",
+                true, false, ImmutableSet.of("foo"), null)
+                .setProperty(IndexConstants.INDEX_STORAGE, IndexConstants.INDEX_STORAGE_SORTED);
+        NodeState before = builder.getNodeState();
+        for (int i = 0; i < MANY; i++) {
+            builder.child("n" + i).setProperty("foo", "x" + i % 20);
+        }
+        NodeState indexed = HOOK.processCommit(before, builder.getNodeState(), CommitInfo.EMPTY);
+        NodeState definition = indexed.getChildNode(INDEX_DEFINITIONS_NAME).getChildNode("foo");
+        assertTrue(definition.getChildNode(INDEX_CONTENT_NODE_NAME)
+                .hasProperty(SortedPageStoreStrategy.ROOT));
+
+        FilterImpl f = createFilter(indexed, NT_BASE);
+        PropertyIndexLookup lookup = new PropertyIndexLookup(indexed);
+        assertEquals(MANY / 20, find(lookup, "foo", "x1", f).size());
+
+        // a range condition on string values
+        f.restrictProperty("foo", Operator.GREATER_OR_EQUAL, PropertyValues.newString("x10"), PropertyType.STRING);
+        f.restrictProperty("foo", Operator.LESS_THAN, PropertyValues.newString("x12"), PropertyType.STRING);
+        PropertyIndexPlan plan = new PropertyIndexPlan("foo", indexed, definition, f);
+        assertTrue(plan.toString(), plan.toString().contains("range from 'x10' to 'x12'"));
+        Set<String> paths = Sets.newHashSet();
+        Cursor c = plan.execute();
+        while (c.hasNext()) {
+            paths.add(c.next().getPath());
+        }
+        // the upper bound is inclusive in the index
+        assertEquals(3 * MANY / 20, paths.size());
+        assertTrue(paths.contains("/n10"));
+        assertTrue(paths.contains("/n32"));
+
+        // the query engine compares untyped conditions in the order of the
+        // property type: the range can not be used
+        f = createFilter(indexed, NT_BASE);
+        f.restrictProperty("foo", Operator.GREATER_OR_EQUAL, PropertyValues.newString("x10"));
+        plan = new PropertyIndexPlan("foo", indexed, definition, f);
+        assertFalse(plan.toString().contains("range"));
+
+        // removing entries
+        builder = indexed.builder();
+        for (int i = 0; i < MANY; i++) {
+            builder.child("n" + i).remove();
+        }
+        indexed = HOOK.processCommit(indexed, builder.getNodeState(), CommitInfo.EMPTY);
+        lookup = new PropertyIndexLookup(indexed);
+        assertTrue(find(lookup, "foo", "x1", f).isEmpty());
+        assertFalse(indexed.getChildNode(INDEX_DEFINITIONS_NAME).getChildNode("foo")
+                .getChildNode(INDEX_CONTENT_NODE_NAME).hasProperty(SortedPageStoreStrategy.ROOT));
+    }
+
     private class PrivateStoreValidator extends DefaultValidator {
         private final String path;
         private final MountInfoProvider mountInfoProvider;
@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.property;
+
+import static org.apache.jackrabbit.oak.InitialContentHelper.INITIAL_CONTENT;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.ASYNC_PROPERTY_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_DEFINITIONS_NAME;
+import static org.apache.jackrabbit.oak.plugins.index.IndexUtils.createIndexDefinition;
+import static org.apache.jackrabbit.oak.plugins.index.property.PropertyStatistics.STATISTICS_NODE_NAME;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.jackrabbit.oak.plugins.index.IndexUpdateProvider;
+import org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EditorHook;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.junit.Test;
+
+import org.apache.jackrabbit.guava.common.collect.ImmutableSet;
+
+public class PropertyStatisticsTest {
+
+    private static final EditorHook HOOK = new EditorHook(
+            new IndexUpdateProvider(new PropertyIndexEditorProvider()));
+
+    @Test
+    public void distinctCount() {
+        for (int distinct : new int[] {0, 1, 10, 100, 1000, 100000}) {
+            PropertyStatistics stats = PropertyStatistics.create(false);
+            for (int i = 0; i < 3 * distinct; i++) {
+                stats.add("value" + (i % distinct));
+            }
+            long est = stats.getDistinctCount();
+            assertTrue(distinct + " estimated " + est,
+                    est >= distinct * 0.8 && est <= distinct * 1.2 + 1);
+        }
+    }
+
+    @Test
+    public void readWrite() {
+        PropertyStatistics stats = PropertyStatistics.create(true);
+        assertFalse(stats.isModified());
+        for (int i = 0; i < 10000; i++) {
+            stats.add(Integer.toString(i));
+        }
+        assertTrue(stats.isModified());
+        NodeBuilder builder = EmptyNodeState.EMPTY_NODE.builder();
+        stats.write(builder);
+        assertFalse(stats.isModified());
+
+        assertNull(PropertyStatistics.read(EmptyNodeState.MISSING_NODE));
+        PropertyStatistics read = PropertyStatistics.read(builder.getNodeState());
+        assertNotNull(read);
+        assertEquals(stats.getDistinctCount(), read.getDistinctCount());
+        assertEquals(0.0001, read.getEqualitySelectivity(1), 0.00003);
+
+        // values are compared as numbers
+        assertEquals(0.1, read.getRangeSelectivity(null, "1000"), 0.05);
+        assertEquals(0.5, read.getRangeSelectivity("2500", "7500"), 0.1);
+        assertEquals(0.2, read.getRangeSelectivity("8000", null), 0.05);
+        // at least half a bucket
+        assertTrue(read.getRangeSelectivity("20000", null) > 0);
+        // not a number
+        assertEquals(-1, read.getRangeSelectivity("x", null), 0);
+
+        // no histogram
+        PropertyStatistics noSample = PropertyStatistics.create(false);
+        noSample.add("x");
+        assertEquals(-1, noSample.getRangeSelectivity("a", "b"), 0);
+    }
+
+    @Test
+    public void strings() {
+        PropertyStatistics stats = PropertyStatistics.create(true);
+        for (char c = 'a'; c <= 'z'; c++) {
+            for (int i = 0; i < 10; i++) {
+                stats.add(c + "" + i);
+            }
+        }
+        NodeBuilder builder = EmptyNodeState.EMPTY_NODE.builder();
+        stats.write(builder);
+        PropertyStatistics read = PropertyStatistics.read(builder.getNodeState());
+        assertEquals(0.5, read.getRangeSelectivity("a", "n"), 0.1);
+    }
+
+    @Test
+    public void propertyIndex() throws Exception {
+        NodeBuilder builder = INITIAL_CONTENT.builder();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME), "foo",
+                true, false, ImmutableSet.of("foo"), null);
+        NodeState before = builder.getNodeState();
+        for (int i = 0; i < 100; i++) {
+            builder.child("n" + i).setProperty("foo", "x" + i % 20);
+        }
+        NodeState indexed = HOOK.processCommit(before, builder.getNodeState(), CommitInfo.EMPTY);
+        NodeState definition = indexed.getChildNode(INDEX_DEFINITIONS_NAME).getChildNode("foo");
+        PropertyStatistics stats = PropertyStatistics.read(definition.getChildNode(STATISTICS_NODE_NAME));
+        assertNotNull(stats);
+        assertEquals(20, stats.getDistinctCount(), 2);
+
+        // not changed when committing to a synchronous index
+        NodeState statsNode = definition.getChildNode(STATISTICS_NODE_NAME);
+        builder = indexed.builder();
+        for (int i = 0; i < 100; i++) {
+            builder.child("m" + i).setProperty("foo", "y" + i);
+        }
+        indexed = HOOK.processCommit(indexed, builder.getNodeState(), CommitInfo.EMPTY);
+        definition = indexed.getChildNode(INDEX_DEFINITIONS_NAME).getChildNode("foo");
+        assertEquals(statsNode, definition.getChildNode(STATISTICS_NODE_NAME));
+    }
+
+    @Test
+    public void asyncPropertyIndex() throws Exception {
+        EditorHook asyncHook = new EditorHook(
+                new IndexUpdateProvider(new PropertyIndexEditorProvider(), "async", false));
+        NodeBuilder builder = INITIAL_CONTENT.builder();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME), "foo",
+                true, false, ImmutableSet.of("foo"), null)
+                .setProperty(ASYNC_PROPERTY_NAME, "async");
+        NodeState before = builder.getNodeState();
+        for (int i = 0; i < 100; i++) {
+            builder.child("n" + i).setProperty("foo", "x" + i % 20);
+        }
+        NodeState indexed = asyncHook.processCommit(before, builder.getNodeState(), CommitInfo.EMPTY);
+        NodeState definition = indexed.getChildNode(INDEX_DEFINITIONS_NAME).getChildNode("foo");
+        PropertyStatistics stats = PropertyStatistics.read(definition.getChildNode(STATISTICS_NODE_NAME));
+        assertEquals(20, stats.getDistinctCount(), 2);
+
+        // updated with new values by the indexing lane
+        builder = indexed.builder();
+        for (int i = 0; i < 100; i++) {
+            builder.child("m" + i).setProperty("foo", "y" + i);
+        }
+        indexed = asyncHook.processCommit(indexed, builder.getNodeState(), CommitInfo.EMPTY);
+        definition = indexed.getChildNode(INDEX_DEFINITIONS_NAME).getChildNode("foo");
+        stats = PropertyStatistics.read(definition.getChildNode(STATISTICS_NODE_NAME));
+        assertEquals(120, stats.getDistinctCount(), 15);
+    }
+
+    @Test
+    public void notMaintainedForOldIndexes() throws Exception {
+        NodeBuilder builder = INITIAL_CONTENT.builder();
+        createIndexDefinition(builder.child(INDEX_DEFINITIONS_NAME), "foo",
+                true, false, ImmutableSet.of("foo"), null);
+        NodeState indexed = HOOK.processCommit(INITIAL_CONTENT, builder.getNodeState(), CommitInfo.EMPTY);
+        // simulate an index that was built before statistics were maintained
+        builder = indexed.builder();
+        builder.child(INDEX_DEFINITIONS_NAME).child("foo").child(STATISTICS_NODE_NAME).remove();
+        NodeState before = builder.getNodeState();
+        builder.child("n").setProperty("foo", "x");
+        indexed = HOOK.processCommit(before, builder.getNodeState(), CommitInfo.EMPTY);
+        assertFalse(indexed.getChildNode(INDEX_DEFINITIONS_NAME).getChildNode("foo")
+                .hasChildNode(STATISTICS_NODE_NAME));
+    }
+
+}
@@ -0,0 +1,191 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.property.strategy;
+
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_CONTENT_NODE_NAME;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.jackrabbit.guava.common.base.Supplier;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexUtil;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.junit.Test;
+
+import org.apache.jackrabbit.guava.common.collect.ImmutableSet;
+import org.apache.jackrabbit.guava.common.collect.Lists;
+
+/**
+ * Test the sorted page strategy
+ */
+public class SortedPageStoreStrategyTest {
+
+    private static final Set<String> EMPTY = Collections.emptySet();
+
+    @Test
+    public void randomOperations() throws Exception {
+        SortedPageStoreStrategy store = new SortedPageStoreStrategy(INDEX_CONTENT_NODE_NAME, 4);
+        NodeBuilder definition = EMPTY_NODE.builder();
+        Supplier<NodeBuilder> index = () -> definition.child(INDEX_CONTENT_NODE_NAME);
+        // entries in the form "key/path"
+        TreeSet<String> model = new TreeSet<>();
+        Random r = new Random(1);
+        for (int i = 0; i < 2000; i++) {
+            String key = "k" + r.nextInt(30);
+            String path = "/n" + r.nextInt(20);
+            if (r.nextInt(3) == 0) {
+                store.update(index, path, null, null, encode(key), EMPTY);
+                model.remove(key + path);
+            } else {
+                store.update(index, path, null, null, EMPTY, encode(key));
+                model.add(key + path);
+            }
+            if (i % 100 == 0) {
+                verify(store, definition.getNodeState(), model, r);
+            }
+        }
+        verify(store, definition.getNodeState(), model, r);
+
+        // remove all entries
+        for (String e : new ArrayList<>(model)) {
+            int slash = e.indexOf('/');
+            store.update(index, e.substring(slash), null, null,
+                    encode(e.substring(0, slash)), EMPTY);
+        }
+        NodeState indexNode = definition.getNodeState().getChildNode(INDEX_CONTENT_NODE_NAME);
+        assertEquals(0, indexNode.getChildNodeCount(1));
+        assertFalse(indexNode.hasProperty(SortedPageStoreStrategy.ROOT));
+    }
+
+    private static void verify(SortedPageStoreStrategy store, NodeState definition,
+            TreeSet<String> model, Random r) {
+        NodeState index = definition.getChildNode(INDEX_CONTENT_NODE_NAME);
+        for (ChildNodeEntry e : index.getChildNodeEntries()) {
+            assertTrue(e.getNodeState().getProperty(SortedPageStoreStrategy.KEYS).count() <= 4);
+        }
+        List<String> all = new ArrayList<>();
+        for (IndexEntry e : store.queryEntries(definition, null, null)) {
+            all.add(e.getPropertyValue() + e.getPath());
+        }
+        assertEquals(new ArrayList<>(model), all);
+
+        String first = "k" + r.nextInt(30);
+        String last = "k" + r.nextInt(30);
+        List<String> expected = new ArrayList<>();
+        for (String e : model) {
+            String key = e.substring(0, e.indexOf('/'));
+            if (key.compareTo(first) >= 0 && key.compareTo(last) <= 0) {
+                expected.add(e);
+            }
+        }
+        List<String> range = new ArrayList<>();
+        for (IndexEntry e : store.queryEntries(definition, first, last)) {
+            range.add(e.getPropertyValue() + e.getPath());
+        }
+        assertEquals(expected, range);
+        long count = store.countRange(definition, first, last, 10);
+        if (expected.size() < 10) {
+            assertEquals(expected.size(), count);
+        } else {
+            assertTrue(count >= 10);
+        }
+    }
+
+    @Test
+    public void queryValues() throws Exception {
+        SortedPageStoreStrategy store = new SortedPageStoreStrategy(INDEX_CONTENT_NODE_NAME, 4);
+        NodeBuilder definition = EMPTY_NODE.builder();
+        Supplier<NodeBuilder> index = () -> definition.child(INDEX_CONTENT_NODE_NAME);
+        store.update(index, "/a", null, null, EMPTY, encode("x y", ""));
+        store.update(index, "/b", null, null, EMPTY, encode("x"));
+        store.update(index, "/c/d", null, null, EMPTY, encode("x y"));
+        store.update(index, "/c/e", null, null, EMPTY, encode("%/:"));
+        NodeState def = definition.getNodeState();
+
+        assertEquals(ImmutableSet.of("/a", "/c/d"),
+                ImmutableSet.copyOf(store.query(null, "foo", def, encode("x y"))));
+        assertEquals(ImmutableSet.of("/a"),
+                ImmutableSet.copyOf(store.query(null, "foo", def, encode(""))));
+        assertEquals(ImmutableSet.of("/c/e"),
+                ImmutableSet.copyOf(store.query(null, "foo", def, encode("%/:"))));
+        assertTrue(store.exists(index, encode("x").iterator().next()));
+        assertFalse(store.exists(index, encode("y").iterator().next()));
+        assertEquals(2, store.count(EMPTY_NODE, def, encode("x y"), 10));
+        assertEquals(5, store.count(EMPTY_NODE, def, null, 10));
+
+        // the values are sorted by the decoded value: "x" < "x y"
+        List<String> values = new ArrayList<>();
+        for (IndexEntry e : store.queryEntries(def, null, null)) {
+            values.add(e.getPropertyValue());
+        }
+        assertEquals(Lists.newArrayList("", "%/:", "x", "x y", "x y"), values);
+        assertEquals(Lists.newArrayList("/b", "/a", "/c/d"), Lists.newArrayList(
+                store.queryRange(null, "foo", def, encode("x").iterator().next(), null)));
+    }
+
+    @Test
+    public void estimateCount() throws Exception {
+        SortedPageStoreStrategy store = new SortedPageStoreStrategy(INDEX_CONTENT_NODE_NAME, 50);
+        NodeBuilder definition = EMPTY_NODE.builder();
+        NodeBuilder indexBuilder = definition.child(INDEX_CONTENT_NODE_NAME);
+        Supplier<NodeBuilder> index = () -> indexBuilder;
+        Random r = new Random(1);
+        for (int i = 0; i < 20000; i++) {
+            String key = String.format("%05d", r.nextInt(100000));
+            store.update(index, "/n" + i, null, null, EMPTY, encode(key));
+        }
+        NodeState def = definition.getNodeState();
+        // estimated (within a factor of 2)
+        long total = store.countRange(def, null, null, 100);
+        assertTrue("" + total, total > 10000 && total < 40000);
+        long range = store.countRange(def, "25000", "49999", 100);
+        assertTrue("" + range, range > 2500 && range < 10000);
+        // exact below the maximum
+        long exact = 0;
+        for (Iterator<IndexEntry> it = store.queryEntries(def, "50000", "50100").iterator(); it.hasNext(); it.next()) {
+            exact++;
+        }
+        assertEquals(exact, store.countRange(def, "50000", "50100", 100));
+
+        // the root page is an inner page with a fan-out of at most 50
+        NodeState indexNode = def.getChildNode(INDEX_CONTENT_NODE_NAME);
+        NodeState root = indexNode.getChildNode(indexNode.getString(SortedPageStoreStrategy.ROOT));
+        assertTrue(root.hasProperty(SortedPageStoreStrategy.CHILDREN));
+        assertTrue(root.getProperty(SortedPageStoreStrategy.CHILDREN).count() <= 50);
+        for (String child : root.getStrings(SortedPageStoreStrategy.CHILDREN)) {
+            assertTrue(indexNode.hasChildNode(child));
+        }
+    }
+
+    private static Set<String> encode(String... values) {
+        return PropertyIndexUtil.encode(ImmutableSet.copyOf(values));
+    }
+
+}
@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import static org.apache.jackrabbit.oak.api.QueryEngine.NO_BINDINGS;
+import static org.apache.jackrabbit.oak.api.QueryEngine.NO_MAPPINGS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jackrabbit.oak.InitialContent;
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.api.ContentRepository;
+import org.apache.jackrabbit.oak.api.ResultRow;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.plugins.index.cursor.Cursors;
+import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeStore;
+import org.apache.jackrabbit.oak.spi.query.Cursor;
+import org.apache.jackrabbit.oak.spi.query.Filter;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex;
+import org.apache.jackrabbit.oak.spi.query.QueryIndexProvider;
+import org.apache.jackrabbit.oak.spi.security.OpenSecurityProvider;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.jackrabbit.guava.common.collect.ImmutableList;
+
+/**
+ * Tests the runtime statistics returned by "explain analyze".
+ */
+public class ExplainAnalyzeTest extends AbstractQueryTest {
+
+    private static final int NODES = 20;
+
+    @Override
+    protected ContentRepository createRepository() {
+        return new Oak(new MemoryNodeStore())
+                .with(new OpenSecurityProvider())
+                .with(new InitialContent())
+                .with(new QueryIndexProvider() {
+                    @Override
+                    public @NotNull List<? extends QueryIndex> getQueryIndexes(NodeState nodeState) {
+                        return ImmutableList.of(new TestIndex());
+                    }
+                })
+                .createContentRepository();
+    }
+
+    @Before
+    public void createContent() throws Exception {
+        Tree test = root.getTree("/").addChild("test");
+        for (int i = 0; i < NODES; i++) {
+            Tree n = test.addChild("n" + i);
+            n.setProperty("x", (long) (i % 4));
+            if (i < 5) {
+                n.setProperty("indexed", "yes");
+            }
+            n.addChild("c");
+        }
+        root.commit();
+    }
+
+    @Test
+    public void selector() throws Exception {
+        List<List<String>> result = analyze("explain analyze select [jcr:path] from [nt:base] " +
+                "where isdescendantnode('/test') and [x] = 1", SQL2);
+        assertEquals(3, result.size());
+        List<String> query = result.get(0);
+        assertEquals("query", query.get(0));
+        assertEquals("select [jcr:path] from [nt:base] where isdescendantnode('/test') and [x] = 1",
+                query.get(1));
+        assertEquals("1", query.get(2));
+        assertEquals("5", query.get(3));
+        List<String> filter = result.get(1);
+        assertEquals("filter", filter.get(0));
+        assertEquals("5", filter.get(3));
+        assertEquals("0", filter.get(5));
+        List<String> selector = result.get(2);
+        assertEquals("selector [nt:base]", selector.get(0));
+        assertTrue(selector.get(1), selector.get(1).contains("/* traverse "));
+        assertEquals("1", selector.get(2));
+        assertEquals("5", selector.get(3));
+        // the children were traversed as well
+        assertEquals(String.valueOf(NODES * 2), selector.get(4));
+        assertEquals(String.valueOf(NODES * 2 - 5), selector.get(5));
+        assertEquals("0", selector.get(6));
+    }
+
+    @Test
+    public void denied() throws Exception {
+        // the index returns some paths that don't exist
+        List<List<String>> result = analyze("explain analyze select [jcr:path] from [nt:base] " +
+                "where [indexed] = 'yes'", SQL2);
+        assertEquals(3, result.size());
+        List<String> selector = result.get(2);
+        assertTrue(selector.get(1), selector.get(1).contains("/* test */"));
+        assertEquals("5", selector.get(3));
+        assertEquals("13", selector.get(4));
+        assertEquals("5", selector.get(5));
+        assertEquals("3", selector.get(6));
+    }
+
+    @Test
+    public void join() throws Exception {
+        List<List<String>> result = analyze("explain analyze select [a].[jcr:path], [b].[jcr:path] " +
+                "from [nt:base] as [a] inner join [nt:base] as [b] on ischildnode([b], [a]) " +
+                "where isdescendantnode([a], '/test') and [a].[x] = 2", SQL2);
+        assertEquals(5, result.size());
+        assertEquals("5", result.get(0).get(3));
+        List<String> join = result.get(2);
+        assertEquals("join", join.get(0));
+        assertEquals("inner join on ischildnode([b], [a])", join.get(1).replaceAll(" /\\*.*", ""));
+        assertEquals("5", join.get(3));
+        List<String> left = result.get(3);
+        assertEquals("selector [a]", left.get(0));
+        assertEquals("5", left.get(3));
+        assertEquals("selector [b]", result.get(4).get(0));
+    }
+
+    @Test
+    public void union() throws Exception {
+        List<List<String>> result = analyze("explain analyze select [jcr:path] from [nt:base] " +
+                "where isdescendantnode('/test') and [x] = 1 " +
+                "union select [jcr:path] from [nt:base] where [indexed] = 'yes'", SQL2);
+        assertEquals(5, result.size());
+        // n1 is returned by both subqueries
+        assertEquals("9", result.get(0).get(3));
+        assertEquals("filter", result.get(1).get(0));
+        assertEquals("5", result.get(1).get(3));
+        assertEquals("filter", result.get(3).get(0));
+        assertEquals("5", result.get(3).get(3));
+    }
+
+    @Test
+    public void xpath() throws Exception {
+        List<List<String>> result = analyze("explain analyze /jcr:root/test/*[@x = 3]", XPATH);
+        assertEquals("query", result.get(0).get(0));
+        assertEquals("5", result.get(0).get(3));
+        assertEquals("selector [a]", result.get(2).get(0));
+    }
+
+    private List<List<String>> analyze(String query, String language) throws Exception {
+        List<List<String>> list = new ArrayList<List<String>>();
+        for (ResultRow row : qe.executeQuery(query, language, NO_BINDINGS, NO_MAPPINGS).getRows()) {
+            List<String> values = new ArrayList<String>();
+            for (String column : new String[] {"operator", "plan", "executions", "rows",
+                    "scanCount", "filtered", "denied", "timeMicros", "cursorTimeMicros"}) {
+                values.add(row.getValue(column).getValue(Type.STRING));
+            }
+            list.add(values);
+        }
+        return list;
+    }
+
+    /**
+     * An index for the property "indexed", that returns the first 10 nodes,
+     * and 3 paths that don't exist.
+     */
+    private static class TestIndex implements QueryIndex {
+
+        @Override
+        public double getMinimumCost() {
+            return 1;
+        }
+
+        @Override
+        public double getCost(Filter filter, NodeState rootState) {
+            return filter.getPropertyRestriction("indexed") == null ? Double.POSITIVE_INFINITY : 1;
+        }
+
+        @Override
+        public Cursor query(Filter filter, NodeState rootState) {
+            List<String> paths = new ArrayList<String>();
+            for (int i = 0; i < 10; i++) {
+                paths.add("/test/n" + i);
+            }
+            for (int i = 0; i < 3; i++) {
+                paths.add("/test/missing" + i);
+            }
+            return Cursors.newPathCursor(paths, filter.getQueryLimits());
+        }
+
+        @Override
+        public String getPlan(Filter filter, NodeState rootState) {
+            return getIndexName();
+        }
+
+        @Override
+        public String getIndexName() {
+            return "test";
+        }
+    }
+}
@@ -21,12 +21,21 @@ import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.Test;
 
@@ -144,6 +153,109 @@ public class IteratorsTest {
         assertTrue(compareCalls.get() <= maxComp);
     }
 
+    @Test
+    public void sortIsStable() {
+        // entries are "value:position", compared by value only
+        Comparator<String> comp = byValue();
+        assertEquals("1:2, 1:4, 2:1, 2:3",
+                toString(FilterIterators.newSort(it("2:1", "1:2", "2:3", "1:4", "3:5"), comp, 4, settings)));
+        assertEquals("1:2, 1:4, 2:1",
+                toString(FilterIterators.newSort(it("2:1", "1:2", "2:3", "1:4", "3:5"), comp, 3, settings)));
+        assertEquals("1:1, 1:2, 1:3",
+                toString(FilterIterators.newSort(it("1:1", "1:2", "1:3", "1:4", "1:5"), comp, 3, settings)));
+    }
+
+    @Test
+    public void spilledSort() {
+        QueryEngineSettings s = new QueryEngineSettings();
+        s.setLimitInMemory(10);
+        TestSpiller spiller = new TestSpiller();
+        Random r = new Random(1);
+        List<String> list = new ArrayList<String>();
+        for (int i = 0; i < 1000; i++) {
+            list.add(r.nextInt(50) + ":" + i);
+        }
+        List<String> expected = new ArrayList<String>(list);
+        Collections.sort(expected, byValue());
+        assertEquals(expected, toList(FilterIterators.newSort(list.iterator(), byValue(), Integer.MAX_VALUE, s, spiller)));
+        assertTrue(spiller.bytes.get() > 0);
+
+        assertEquals(expected.subList(0, 100), toList(FilterIterators.newSort(list.iterator(), byValue(), 100, s, spiller)));
+
+        // the top entries fit in memory
+        long spilled = spiller.bytes.get();
+        assertEquals(expected.subList(0, 5), toList(FilterIterators.newSort(list.iterator(), byValue(), 5, s, spiller)));
+        assertEquals(spilled, spiller.bytes.get());
+
+        // without spiller
+        try {
+            toList(FilterIterators.newSort(list.iterator(), byValue(), 100, s));
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void spilledDistinct() {
+        QueryEngineSettings s = new QueryEngineSettings();
+        s.setLimitInMemory(10);
+        TestSpiller spiller = new TestSpiller();
+        Random r = new Random(1);
+        List<String> list = new ArrayList<String>();
+        for (int i = 0; i < 1000; i++) {
+            list.add(r.nextInt(100) + ":x");
+        }
+        List<String> expected = new ArrayList<String>(new LinkedHashSet<String>(list));
+        assertEquals(expected, toList(FilterIterators.newDistinct(list.iterator(), s, spiller)));
+        assertTrue(spiller.bytes.get() > 0);
+
+        List<String> sorted = new ArrayList<String>(expected);
+        Collections.sort(sorted, byValue());
+        assertEquals(sorted.subList(5, 25), toList(FilterIterators.newCombinedFilter(
+                list.iterator(), true, 20, 5, byValue(), s, spiller)));
+    }
+
+    @Test
+    public void spilledFileDeletedWhenClosed() throws IOException {
+        File file = File.createTempFile("oakQuery", ".spill");
+        Files.write(file.toPath(), Arrays.asList("1", "2", "3"), StandardCharsets.UTF_8);
+        FilterIterators.SpilledIterator<String> spilled =
+                new FilterIterators.SpilledIterator<String>(file, x -> x, Long.MAX_VALUE);
+        Iterator<String> it = FilterIterators.newLimit(FilterIterators.newOffset(spilled, 0), 10);
+        assertEquals("1", it.next());
+        assertTrue(file.exists());
+        FilterIterators.close(it);
+        assertFalse(file.exists());
+        assertFalse(it.hasNext());
+
+        // also deleted once the limit is reached
+        file = File.createTempFile("oakQuery", ".spill");
+        Files.write(file.toPath(), Arrays.asList("1", "2", "3"), StandardCharsets.UTF_8);
+        it = FilterIterators.newLimit(new FilterIterators.SpilledIterator<String>(file, x -> x, Long.MAX_VALUE), 1);
+        assertEquals("1", it.next());
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void notSpillable() {
+        QueryEngineSettings s = new QueryEngineSettings();
+        s.setLimitInMemory(2);
+        TestSpiller spiller = new TestSpiller();
+        try {
+            toList(FilterIterators.newSort(it("1:1", "2:2", "-3:3", "4:4"), byValue(), 10, s, spiller));
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            toList(FilterIterators.newDistinct(it("1:1", "2:2", "3:3", "-4:4"), s, spiller));
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
     @Test
     public void combined() {
 
@@ -194,6 +306,58 @@ public class IteratorsTest {
 
 }
 
+    private static Comparator<String> byValue() {
+        return new Comparator<String>() {
+
+            @Override
+            public int compare(String o1, String o2) {
+                return Integer.compare(value(o1), value(o2));
+            }
+
+            private int value(String s) {
+                return Integer.parseInt(s.substring(0, s.indexOf(':')));
+            }
+
+        };
+    }
+
+    private static <K> List<K> toList(Iterator<K> it) {
+        List<K> list = new ArrayList<K>();
+        while (it.hasNext()) {
+            list.add(it.next());
+        }
+        return list;
+    }
+
+    /**
+     * Spills strings as they are, except for negative values.
+     */
+    private static class TestSpiller implements FilterIterators.Spiller<String> {
+
+        final AtomicLong bytes = new AtomicLong();
+
+        @Override
+        public String toLine(String entry) {
+            return entry.startsWith("-") ? null : entry;
+        }
+
+        @Override
+        public String fromLine(String line) {
+            return line;
+        }
+
+        @Override
+        public String getKey(String entry) {
+            return entry;
+        }
+
+        @Override
+        public void spilled(long bytes) {
+            this.bytes.addAndGet(bytes);
+        }
+
+    }
+
     private static <K> Iterator<K> it(K... x) {
         return Collections.unmodifiableCollection(Lists.newArrayList(x)).iterator();
     }
@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jackrabbit.oak.InitialContent;
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.api.ContentRepository;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.plugins.index.cursor.Cursors;
+import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeStore;
+import org.apache.jackrabbit.oak.query.index.FilterImpl;
+import org.apache.jackrabbit.oak.spi.query.Cursor;
+import org.apache.jackrabbit.oak.spi.query.Filter;
+import org.apache.jackrabbit.oak.spi.query.Filter.PathRestriction;
+import org.apache.jackrabbit.oak.spi.query.Filter.PropertyRestriction;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex;
+import org.apache.jackrabbit.oak.spi.query.QueryIndexProvider;
+import org.apache.jackrabbit.oak.spi.security.OpenSecurityProvider;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.whiteboard.DefaultWhiteboard;
+import org.apache.jackrabbit.oak.spi.whiteboard.Whiteboard;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.jackrabbit.guava.common.collect.ImmutableList;
+
+/**
+ * Tests the choice between nested loop and hash joins.
+ */
+public class JoinStrategyTest extends AbstractQueryTest {
+
+    private static final int PARENTS = 120;
+
+    private final QueryEngineSettings settings = new QueryEngineSettings();
+
+    private final TestIndex index = new TestIndex();
+
+    @Override
+    protected ContentRepository createRepository() {
+        Whiteboard wb = new DefaultWhiteboard();
+        wb.register(QueryEngineSettings.class, settings, Collections.emptyMap());
+        return new Oak(new MemoryNodeStore())
+                .with(wb)
+                .with(new OpenSecurityProvider())
+                .with(new InitialContent())
+                .with(new QueryIndexProvider() {
+                    @Override
+                    public @NotNull List<? extends QueryIndex> getQueryIndexes(NodeState nodeState) {
+                        return ImmutableList.of(index);
+                    }
+                })
+                .createContentRepository();
+    }
+
+    @Before
+    public void createContent() throws Exception {
+        Tree test = root.getTree("/").addChild("test");
+        for (int i = 0; i < PARENTS; i++) {
+            Tree p = test.addChild("p" + i);
+            p.setProperty("id", (long) (i % 60));
+            p.addChild("c").setProperty("ref", (long) (i % 60));
+            index.paths.add("/test/p" + i);
+            index.paths.add("/test/p" + i + "/c");
+        }
+        root.commit();
+    }
+
+    @Test
+    public void childNodeHashJoin() throws Exception {
+        String query = "select [a].[jcr:path], [b].[jcr:path] from [nt:base] as [a] " +
+                "inner join [nt:base] as [b] on ischildnode([b], [a]) " +
+                "where isdescendantnode([a], '/test') and isdescendantnode([b], '/test')";
+        assertTrue(explain(query).contains("/* hash join, build side: test */"));
+        List<String> result = executeQuery(query, SQL2);
+        assertEquals(PARENTS, result.size());
+        for (int i = 0; i < PARENTS; i++) {
+            assertTrue(result.contains("/test/p" + i + ", /test/p" + i + "/c"));
+        }
+        // the right hand side was read once
+        assertEquals(1, index.rightQueryCount.get());
+    }
+
+    @Test
+    public void equiHashJoin() throws Exception {
+        String query = "select [a].[jcr:path], [b].[jcr:path] from [nt:base] as [a] " +
+                "inner join [nt:base] as [b] on [a].[id] = [b].[ref] " +
+                "where isdescendantnode([a], '/test') and isdescendantnode([b], '/test')";
+        assertTrue(explain(query).contains("/* hash join, build side: test */"));
+        List<String> result = executeQuery(query, SQL2);
+        // each value is used by two parents and two children
+        assertEquals(PARENTS * 2, result.size());
+        Set<String> expected = new HashSet<String>();
+        for (int i = 0; i < PARENTS; i++) {
+            expected.add("/test/p" + i + ", /test/p" + i + "/c");
+            expected.add("/test/p" + i + ", /test/p" + ((i + 60) % PARENTS) + "/c");
+        }
+        assertEquals(expected, new HashSet<String>(result));
+        assertEquals(1, index.rightQueryCount.get());
+    }
+
+    @Test
+    public void leftOuterHashJoin() throws Exception {
+        String query = "select [a].[jcr:path], [b].[jcr:path] from [nt:base] as [a] " +
+                "left outer join [nt:base] as [b] on ischildnode([b], [a]) " +
+                "where isdescendantnode([a], '/test')";
+        assertTrue(explain(query).contains("/* hash join, build side: test */"));
+        List<String> result = executeQuery(query, SQL2);
+        // the children don't have children
+        assertEquals(PARENTS * 2, result.size());
+        int withoutChild = 0;
+        for (String r : result) {
+            if (r.endsWith(", null")) {
+                withoutChild++;
+            }
+        }
+        assertEquals(PARENTS, withoutChild);
+    }
+
+    @Test
+    public void nestedLoopIfBuildSideIsExpensive() throws Exception {
+        index.unrestrictedCost = 1000000;
+        String query = "select [a].[jcr:path], [b].[jcr:path] from [nt:base] as [a] " +
+                "inner join [nt:base] as [b] on ischildnode([b], [a]) " +
+                "where isdescendantnode([a], '/test') and isdescendantnode([b], '/test')";
+        assertFalse(explain(query).contains("hash join"));
+        assertEquals(PARENTS, executeQuery(query, SQL2).size());
+        // once per row of the left hand side
+        assertEquals(PARENTS * 2, index.rightQueryCount.get());
+    }
+
+    @Test
+    public void fallbackToNestedLoop() throws Exception {
+        // the estimated cost is too low, the build side does not fit
+        index.unrestrictedCost = 10;
+        settings.setLimitInMemory(50);
+        String query = "select [a].[jcr:path], [b].[jcr:path] from [nt:base] as [a] " +
+                "inner join [nt:base] as [b] on ischildnode([b], [a]) " +
+                "where isdescendantnode([a], '/test') and isdescendantnode([b], '/test')";
+        assertTrue(explain(query).contains("/* hash join, build side: test */"));
+        assertEquals(PARENTS, executeQuery(query, SQL2).size());
+        assertEquals(1 + PARENTS * 2, index.rightQueryCount.get());
+    }
+
+    private String explain(String query) {
+        List<String> plan = executeQuery("explain " + query, SQL2);
+        index.rightQueryCount.set(0);
+        return plan.get(0);
+    }
+
+    /**
+     * An index that returns all nodes below /test. The cost of selector [a]
+     * is high, and the cost of selector [b] depends on whether it is
+     * restricted by the join condition.
+     */
+    private static class TestIndex implements QueryIndex {
+
+        final List<String> paths = new ArrayList<String>();
+
+        final AtomicInteger rightQueryCount = new AtomicInteger();
+
+        double unrestrictedCost = 500;
+
+        @Override
+        public double getMinimumCost() {
+            return 1;
+        }
+
+        @Override
+        public double getCost(Filter filter, NodeState rootState) {
+            if (!isRight(filter)) {
+                return 1000;
+            }
+            return isRestrictedByJoin(filter) ? 50 : unrestrictedCost;
+        }
+
+        @Override
+        public Cursor query(Filter filter, NodeState rootState) {
+            if (isRight(filter)) {
+                rightQueryCount.incrementAndGet();
+            }
+            return Cursors.newPathCursor(paths, filter.getQueryLimits());
+        }
+
+        @Override
+        public String getPlan(Filter filter, NodeState rootState) {
+            return getIndexName();
+        }
+
+        @Override
+        public String getIndexName() {
+            return "test";
+        }
+
+        private static boolean isRight(Filter filter) {
+            return ((FilterImpl) filter).getSelector().getSelectorName().equals("b");
+        }
+
+        private static boolean isRestrictedByJoin(Filter filter) {
+            if (filter.getPathRestriction() == PathRestriction.DIRECT_CHILDREN) {
+                return true;
+            }
+            PropertyRestriction pr = filter.getPropertyRestriction("ref");
+            return pr != null && pr.first != null;
+        }
+    }
+}
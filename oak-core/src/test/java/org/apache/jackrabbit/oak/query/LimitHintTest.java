@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import static org.apache.jackrabbit.oak.api.QueryEngine.NO_BINDINGS;
+import static org.apache.jackrabbit.oak.api.QueryEngine.NO_MAPPINGS;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.apache.jackrabbit.oak.InitialContent;
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.api.ContentRepository;
+import org.apache.jackrabbit.oak.api.Result;
+import org.apache.jackrabbit.oak.api.ResultRow;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.plugins.index.cursor.Cursors;
+import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeStore;
+import org.apache.jackrabbit.oak.spi.query.Cursor;
+import org.apache.jackrabbit.oak.spi.query.Filter;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex;
+import org.apache.jackrabbit.oak.spi.query.QueryIndexProvider;
+import org.apache.jackrabbit.oak.spi.security.OpenSecurityProvider;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.jackrabbit.guava.common.collect.ImmutableList;
+
+/**
+ * Tests that the limit and offset of a query are passed to the index cursor
+ * as a hint.
+ */
+public class LimitHintTest extends AbstractQueryTest {
+
+    private final TestIndex index = new TestIndex();
+
+    @Override
+    protected ContentRepository createRepository() {
+        return new Oak(new MemoryNodeStore())
+                .with(new OpenSecurityProvider())
+                .with(new InitialContent())
+                .with(new QueryIndexProvider() {
+                    @Override
+                    public @NotNull List<? extends QueryIndex> getQueryIndexes(NodeState nodeState) {
+                        return ImmutableList.of(index);
+                    }
+                })
+                .createContentRepository();
+    }
+
+    @Before
+    public void createContent() throws Exception {
+        Tree test = root.getTree("/").addChild("test");
+        for (int i = 0; i < 100; i++) {
+            test.addChild("n" + i).setProperty("x", (long) i);
+            index.paths.add("/test/n" + i);
+        }
+        root.commit();
+    }
+
+    @Test
+    public void limitAndOffset() throws Exception {
+        String query = "select [jcr:path] from [nt:base] where isdescendantnode('/test')";
+        assertEquals(100, execute(query, Optional.empty(), Optional.empty()));
+        assertEquals(Long.MAX_VALUE, index.limitHint);
+
+        assertEquals(10, execute(query, Optional.of(10L), Optional.empty()));
+        assertEquals(10, index.limitHint);
+
+        assertEquals(10, execute(query, Optional.of(10L), Optional.of(5L)));
+        assertEquals(15, index.limitHint);
+
+        assertEquals(0, execute(query, Optional.empty(), Optional.of(100L)));
+        assertEquals(Long.MAX_VALUE, index.limitHint);
+    }
+
+    @Test
+    public void sortedInMemory() throws Exception {
+        // all rows need to be read to sort them
+        String query = "select [jcr:path] from [nt:base] where isdescendantnode('/test') order by [x] desc";
+        assertEquals(10, execute(query, Optional.of(10L), Optional.empty()));
+        assertEquals(Long.MAX_VALUE, index.limitHint);
+    }
+
+    @Test
+    public void join() throws Exception {
+        String query = "select [a].[jcr:path] from [nt:base] as [a] " +
+                "inner join [nt:base] as [b] on issamenode([a], [b]) " +
+                "where isdescendantnode([a], '/test')";
+        assertEquals(10, execute(query, Optional.of(10L), Optional.empty()));
+        assertEquals(Long.MAX_VALUE, index.limitHint);
+    }
+
+    private int execute(String query, Optional<Long> limit, Optional<Long> offset) throws Exception {
+        Result result = qe.executeQuery(query, SQL2, limit, offset, NO_BINDINGS, NO_MAPPINGS);
+        int count = 0;
+        for (ResultRow r : result.getRows()) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * An index that returns all nodes below /test, and records the limit hint.
+     */
+    private static class TestIndex implements QueryIndex {
+
+        final List<String> paths = new ArrayList<String>();
+
+        long limitHint;
+
+        @Override
+        public double getMinimumCost() {
+            return 1;
+        }
+
+        @Override
+        public double getCost(Filter filter, NodeState rootState) {
+            return 1;
+        }
+
+        @Override
+        public Cursor query(Filter filter, NodeState rootState) {
+            limitHint = filter.getLimitHint();
+            return Cursors.newPathCursor(paths, filter.getQueryLimits());
+        }
+
+        @Override
+        public String getPlan(Filter filter, NodeState rootState) {
+            return getIndexName();
+        }
+
+        @Override
+        public String getIndexName() {
+            return "test";
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.jackrabbit.oak.InitialContent;
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.api.ContentRepository;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeStore;
+import org.apache.jackrabbit.oak.spi.security.OpenSecurityProvider;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests resolving the trees of result rows with cached parent trees.
+ */
+public class ParentTreeCacheTest extends AbstractQueryTest {
+
+    @Override
+    protected ContentRepository createRepository() {
+        return new Oak(new MemoryNodeStore())
+                .with(new OpenSecurityProvider())
+                .with(new InitialContent())
+                .createContentRepository();
+    }
+
+    @Before
+    public void createContent() throws Exception {
+        Tree a = root.getTree("/").addChild("test").addChild("a");
+        for (int i = 0; i < 3; i++) {
+            a.addChild("x" + i);
+        }
+        root.commit();
+    }
+
+    @Test
+    public void getTree() {
+        ParentTreeCache cache = new ParentTreeCache(root, 10);
+        Tree t = cache.getTree("/test/a/x0");
+        assertTrue(t.exists());
+        assertEquals("/test/a/x0", t.getPath());
+        assertTrue(cache.getTree("/test/a/x1").exists());
+        assertFalse(cache.getTree("/test/a/missing").exists());
+        assertFalse(cache.getTree("/missing/a/x0").exists());
+        assertEquals("/", cache.getTree("/").getPath());
+        assertTrue(cache.getTree("/test").exists());
+    }
+
+    @Test
+    public void moved() {
+        ParentTreeCache cache = new ParentTreeCache(root, 10);
+        assertTrue(cache.getTree("/test/a/x0").exists());
+        assertTrue(root.move("/test/a", "/test/b"));
+        // the cached tree of "/test/a" is now at "/test/b"
+        assertFalse(cache.getTree("/test/a/x1").exists());
+        Tree t = cache.getTree("/test/b/x1");
+        assertTrue(t.exists());
+        assertEquals("/test/b/x1", t.getPath());
+    }
+
+    @Test
+    public void removedAndAdded() {
+        ParentTreeCache cache = new ParentTreeCache(root, 10);
+        assertTrue(cache.getTree("/test/a/x0").exists());
+        root.getTree("/test/a").remove();
+        assertFalse(cache.getTree("/test/a/x0").exists());
+        root.getTree("/test").addChild("a").addChild("x0");
+        assertTrue(cache.getTree("/test/a/x0").exists());
+        assertFalse(cache.getTree("/test/a/x1").exists());
+    }
+
+    @Test
+    public void disabled() {
+        ParentTreeCache cache = new ParentTreeCache(root, 0);
+        assertTrue(cache.getTree("/test/a/x0").exists());
+        assertFalse(cache.getTree("/test/a/missing").exists());
+    }
+
+}
@@ -32,11 +32,13 @@ public class QueryFormatterTest {
         assertFalse(QueryFormatter.isXPath("  select * from [nt:base]", null));
         assertFalse(QueryFormatter.isXPath("EXPLAIN SELECT ...", null));
         assertFalse(QueryFormatter.isXPath("explain measure  SELECT ...", null));
+        assertFalse(QueryFormatter.isXPath("explain analyze select ...", null));
 
         // common xpath
         assertTrue(QueryFormatter.isXPath("/jcr:root//*", null));
         assertTrue(QueryFormatter.isXPath(" /jcr:root//*", null));
         assertTrue(QueryFormatter.isXPath("\nexplain  /jcr:root//element(*,rep:ACE)", null));
+        assertTrue(QueryFormatter.isXPath("explain analyze /jcr:root//*", null));
 
         // xpath union
         assertTrue(QueryFormatter.isXPath("( ( /jcr:root//a | /jcr:root//b ) )", null));
@@ -0,0 +1,305 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import static org.apache.jackrabbit.oak.api.QueryEngine.NO_MAPPINGS;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jackrabbit.oak.InitialContent;
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.api.ContentRepository;
+import org.apache.jackrabbit.oak.api.PropertyValue;
+import org.apache.jackrabbit.oak.plugins.index.cursor.Cursors;
+import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeStore;
+import org.apache.jackrabbit.oak.plugins.memory.PropertyValues;
+import org.apache.jackrabbit.oak.query.stats.QueryStatsMBean;
+import org.apache.jackrabbit.oak.spi.query.Cursor;
+import org.apache.jackrabbit.oak.spi.query.Filter;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex;
+import org.apache.jackrabbit.oak.spi.query.QueryIndexProvider;
+import org.apache.jackrabbit.oak.spi.security.OpenSecurityProvider;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.whiteboard.DefaultWhiteboard;
+import org.apache.jackrabbit.oak.spi.whiteboard.Whiteboard;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import org.apache.jackrabbit.guava.common.collect.ImmutableList;
+
+public class QueryPlanCacheTest extends AbstractQueryTest {
+
+    private static final String QUERY = "select [jcr:path] from [nt:base] where [x] = $x";
+
+    private final QueryEngineSettings settings = new QueryEngineSettings();
+
+    private final TestIndex usable = new TestIndex("usable", 10);
+
+    private final TestIndex unusable = new TestIndex("unusable", Double.POSITIVE_INFINITY);
+
+    private volatile List<TestIndex> indexes = ImmutableList.of(usable, unusable);
+
+    @Override
+    protected ContentRepository createRepository() {
+        Whiteboard wb = new DefaultWhiteboard();
+        wb.register(QueryEngineSettings.class, settings, Collections.emptyMap());
+        return new Oak(new MemoryNodeStore())
+                .with(wb)
+                .with(new OpenSecurityProvider())
+                .with(new InitialContent())
+                .with(new QueryIndexProvider() {
+                    @Override
+                    public @NotNull List<? extends QueryIndex> getQueryIndexes(NodeState nodeState) {
+                        return indexes;
+                    }
+                })
+                .createContentRepository();
+    }
+
+    @Test
+    public void cachedIndexes() throws Exception {
+        QueryPlanCache cache = settings.getQueryPlanCache();
+        query("a");
+        assertEquals(1, usable.count.get());
+        assertEquals(1, unusable.count.get());
+        assertEquals(1, cache.getMissCount());
+
+        // the same values of the bind variables use the cached indexes
+        query("a");
+        query("a");
+        assertEquals(3, usable.count.get());
+        assertEquals(1, unusable.count.get());
+        assertEquals(2, cache.getHitCount());
+
+        // whether an index can be used can depend on the values: all indexes are asked
+        query("b");
+        assertEquals(4, usable.count.get());
+        assertEquals(2, unusable.count.get());
+
+        QueryStatsMBean stats = settings.getQueryStats();
+        assertEquals(2, stats.getPlanCacheHitCount());
+        assertEquals(2, stats.getPlanCacheMissCount());
+        assertEquals(0.5, stats.getPlanCacheHitRate(), 0.001);
+        assertTrue(stats.getPlanCacheSize() > 0);
+        assertEquals(4, cache.getPlanningCount());
+        stats.resetStats();
+        assertEquals(0, stats.getPlanCacheHitCount());
+    }
+
+    @Test
+    public void indexDefinitionChange() throws Exception {
+        QueryPlanCache cache = settings.getQueryPlanCache();
+        query("a");
+        query("a");
+        assertEquals(1, unusable.count.get());
+
+        // content changes do not clear the cache
+        root.getTree("/").addChild("content").setProperty("x", "a");
+        root.commit();
+        query("a");
+        assertEquals(1, unusable.count.get());
+        assertEquals(0, cache.getInvalidationCount());
+
+        root.getTree("/oak:index").addChild("newIndex").setProperty("type", "disabled");
+        root.commit();
+        query("a");
+        assertEquals(2, unusable.count.get());
+        assertEquals(1, cache.getInvalidationCount());
+
+        // index data is hidden, and does not clear the cache
+        root.getTree("/oak:index/newIndex").addChild(":data").setProperty("x", 1L);
+        root.commit();
+        query("a");
+        assertEquals(2, unusable.count.get());
+        assertEquals(1, cache.getInvalidationCount());
+
+        // changes of nested definition nodes clear the cache
+        root.getTree("/oak:index/newIndex").addChild("indexRules").addChild("nt:base")
+                .addChild("properties").addChild("x").setProperty("propertyIndex", true);
+        root.commit();
+        query("a");
+        assertEquals(3, unusable.count.get());
+        assertEquals(2, cache.getInvalidationCount());
+        root.getTree("/oak:index/newIndex/indexRules/nt:base/properties/x").setProperty("propertyIndex", false);
+        root.commit();
+        query("a");
+        assertEquals(4, unusable.count.get());
+        assertEquals(3, cache.getInvalidationCount());
+    }
+
+    @Test
+    public void nestedIndexDefinitionChange() throws Exception {
+        QueryPlanCache cache = settings.getQueryPlanCache();
+        String query = "select [jcr:path] from [nt:base] where isdescendantnode('/content/a') and [x] = $x";
+        root.getTree("/").addChild("content").addChild("a");
+        root.commit();
+        query(query, "a");
+        query(query, "a");
+        assertEquals(1, unusable.count.get());
+
+        root.getTree("/content").addChild("oak:index").addChild("newIndex").setProperty("type", "disabled");
+        root.commit();
+        query(query, "a");
+        assertEquals(2, unusable.count.get());
+        assertEquals(1, cache.getInvalidationCount());
+        query(query, "a");
+        assertEquals(2, unusable.count.get());
+
+        // index data is hidden, and does not clear the cache
+        root.getTree("/content/oak:index/newIndex").addChild(":data").setProperty("x", 1L);
+        root.commit();
+        query(query, "a");
+        assertEquals(2, unusable.count.get());
+
+        root.getTree("/content/oak:index/newIndex").setProperty("x", "y");
+        root.commit();
+        query(query, "a");
+        assertEquals(3, unusable.count.get());
+        assertEquals(2, cache.getInvalidationCount());
+    }
+
+    @Test
+    public void newIndexProvider() throws Exception {
+        query("a");
+        query("a");
+        assertEquals(1, unusable.count.get());
+        TestIndex added = new TestIndex("added", 5);
+        indexes = ImmutableList.of(usable, unusable, added);
+        query("a");
+        assertEquals(2, unusable.count.get());
+        assertEquals(1, added.count.get());
+        // only the usable indexes are cached
+        query("a");
+        assertEquals(2, unusable.count.get());
+        assertEquals(2, added.count.get());
+    }
+
+    @Test
+    public void notCachedIfNoIndexCanServe() throws Exception {
+        QueryPlanCache cache = settings.getQueryPlanCache();
+        usable.cost = Double.POSITIVE_INFINITY;
+        query("a");
+        query("a");
+        assertEquals(2, usable.count.get());
+        assertEquals(2, unusable.count.get());
+        assertEquals(0, cache.getHitCount());
+        // once an index is available, it is used
+        usable.cost = 10;
+        query("a");
+        query("a");
+        assertEquals(4, usable.count.get());
+        assertEquals(3, unusable.count.get());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void fallbackIfNoCachedIndexCanServe() throws Exception {
+        query("a");
+        assertEquals(1, unusable.count.get());
+        usable.cost = Double.POSITIVE_INFINITY;
+        unusable.cost = 5;
+        // the cached index can not serve the query, all indexes are asked
+        query("b");
+        assertEquals(3, usable.count.get());
+        assertEquals(2, unusable.count.get());
+        // now only the other index is cached
+        query("c");
+        assertEquals(3, usable.count.get());
+        assertEquals(3, unusable.count.get());
+    }
+
+    @Test
+    public void xpathConversion() throws Exception {
+        QueryPlanCache cache = settings.getQueryPlanCache();
+        String xpath = "//*[@x = 'a']";
+        assertNull(cache.getSQL2(xpath));
+        executeQuery(xpath, XPATH);
+        String sql2 = cache.getSQL2(xpath);
+        assertNotNull(sql2);
+        executeQuery(xpath, XPATH);
+        assertEquals(sql2, cache.getSQL2(xpath));
+
+        // the automatic query options are added when converting
+        settings.setAutoOptionsMappingJson("{\"//*[@x = 'a']\": {\"prefetches\": 2}}");
+        assertNull(cache.getSQL2(xpath));
+        executeQuery(xpath, XPATH);
+        assertNotNull(cache.getSQL2(xpath));
+    }
+
+    @Test
+    public void disabled() throws Exception {
+        QueryPlanCache cache = new QueryPlanCache(0);
+        cache.putSQL2("a", "b");
+        assertNull(cache.getSQL2("a"));
+        assertNull(cache.getIndexNames("x", EMPTY_NODE, "/", Collections.emptySet()));
+        assertEquals(0, cache.getMissCount());
+    }
+
+    private void query(String value) throws Exception {
+        query(QUERY, value);
+    }
+
+    private void query(String query, String value) throws Exception {
+        Map<String, PropertyValue> bindings = Collections.singletonMap("x", PropertyValues.newString(value));
+        qe.executeQuery(query, SQL2, bindings, NO_MAPPINGS).getRows().iterator().hasNext();
+    }
+
+    private static class TestIndex implements QueryIndex {
+
+        final String name;
+
+        final AtomicInteger count = new AtomicInteger();
+
+        double cost;
+
+        TestIndex(String name, double cost) {
+            this.name = name;
+            this.cost = cost;
+        }
+
+        @Override
+        public double getMinimumCost() {
+            return 1;
+        }
+
+        @Override
+        public double getCost(Filter filter, NodeState rootState) {
+            count.incrementAndGet();
+            return cost;
+        }
+
+        @Override
+        public Cursor query(Filter filter, NodeState rootState) {
+            return Cursors.newPathCursor(Collections.emptyList(), filter.getQueryLimits());
+        }
+
+        @Override
+        public String getPlan(Filter filter, NodeState rootState) {
+            return name;
+        }
+
+        @Override
+        public String getIndexName() {
+            return name;
+        }
+    }
+}
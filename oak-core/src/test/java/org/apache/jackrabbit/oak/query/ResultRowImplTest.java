@@ -19,14 +19,19 @@ package org.apache.jackrabbit.oak.query;
 
 import org.apache.jackrabbit.guava.common.collect.Maps;
 import org.apache.jackrabbit.oak.api.PropertyValue;
+import org.apache.jackrabbit.oak.api.Tree;
 import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.plugins.memory.PropertyValues;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Map;
 
 import static org.apache.jackrabbit.oak.plugins.memory.PropertyValues.newString;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -53,4 +58,52 @@ public class ResultRowImplTest {
         assertEquals("origVal", mappedVals[0].getValue(Type.STRING));
         assertEquals("val1", mappedVals[1].getValue(Type.STRING));
     }
+
+    @Test
+    public void spillRoundTrip() {
+        Query query = mock(Query.class);
+        when(query.getTree(anyString())).thenAnswer(invocation -> tree(invocation.getArgument(0)));
+        ResultRowImpl.Spiller spiller = new ResultRowImpl.Spiller(query, null, null);
+
+        PropertyValue[] values = new PropertyValue[]{
+                newString("a \"quoted\"\nvalue"),
+                PropertyValues.newLong(42L),
+                PropertyValues.newBoolean(true),
+                PropertyValues.newString(Arrays.asList("x", "y")),
+                null};
+        PropertyValue[] orderValues = new PropertyValue[]{PropertyValues.newDouble(1.5), null};
+        ResultRowImpl row = new ResultRowImpl(query, new Tree[]{tree("/a"), null, tree("/b/c")},
+                values, null, orderValues);
+
+        String line = spiller.toLine(row);
+        ResultRowImpl read = spiller.fromLine(line);
+        assertEquals(row, read);
+        assertEquals(spiller.getKey(row), spiller.getKey(read));
+        assertArrayEquals(values, read.getValues());
+        assertArrayEquals(orderValues, read.getOrderValues());
+        assertEquals(Type.LONG, read.getValues()[1].getType());
+        assertEquals(Type.STRINGS, read.getValues()[3].getType());
+        assertEquals(line, spiller.toLine(read));
+
+        ResultRowImpl noOrder = new ResultRowImpl(query, new Tree[]{tree("/a")}, new PropertyValue[0], null, null);
+        ResultRowImpl readNoOrder = spiller.fromLine(spiller.toLine(noOrder));
+        assertEquals(noOrder, readNoOrder);
+        assertNull(readNoOrder.getOrderValues());
+    }
+
+    @Test
+    public void binaryValuesAreNotSpilled() {
+        Query query = mock(Query.class);
+        ResultRowImpl.Spiller spiller = new ResultRowImpl.Spiller(query, null, null);
+        PropertyValue binary = PropertyValues.newBinary(new byte[]{1, 2, 3});
+        ResultRowImpl row = new ResultRowImpl(query, new Tree[]{tree("/a")},
+                new PropertyValue[]{binary}, null, null);
+        assertNull(spiller.toLine(row));
+    }
+
+    private static Tree tree(String path) {
+        Tree tree = mock(Tree.class);
+        when(tree.getPath()).thenReturn(path);
+        return tree;
+    }
 }
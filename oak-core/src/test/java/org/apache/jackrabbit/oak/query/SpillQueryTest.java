@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import static org.apache.jackrabbit.oak.api.QueryEngine.NO_BINDINGS;
+import static org.apache.jackrabbit.oak.api.QueryEngine.NO_MAPPINGS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.jackrabbit.oak.InitialContent;
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.api.ContentRepository;
+import org.apache.jackrabbit.oak.api.ResultRow;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeStore;
+import org.apache.jackrabbit.oak.spi.security.OpenSecurityProvider;
+import org.apache.jackrabbit.oak.spi.whiteboard.DefaultWhiteboard;
+import org.apache.jackrabbit.oak.spi.whiteboard.Whiteboard;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.jackrabbit.guava.common.collect.ImmutableList;
+
+/**
+ * Tests sorting and distinct with more rows than the in-memory limit.
+ */
+public class SpillQueryTest extends AbstractQueryTest {
+
+    private static final int NODES = 100;
+
+    private final QueryEngineSettings settings = new QueryEngineSettings();
+
+    @Override
+    protected ContentRepository createRepository() {
+        Whiteboard wb = new DefaultWhiteboard();
+        wb.register(QueryEngineSettings.class, settings, Collections.emptyMap());
+        return new Oak(new MemoryNodeStore())
+                .with(wb)
+                .with(new OpenSecurityProvider())
+                .with(new InitialContent())
+                .createContentRepository();
+    }
+
+    @Before
+    public void createContent() throws Exception {
+        Tree test = root.getTree("/").addChild("test");
+        for (int i = 0; i < NODES; i++) {
+            Tree n = test.addChild("n" + i);
+            n.setProperty("l", (long) (i % 10));
+            n.setProperty("d", (i * 7919 % NODES) / 3.0);
+            n.setProperty("s", "line\nbreak \"" + i + "\"");
+            n.setProperty("m", ImmutableList.of("a" + (i % 3), "b"), Type.STRINGS);
+            if (i % 4 == 0) {
+                n.setProperty("dt", "2020-01-" + (10 + i % 20) + "T00:00:00.000Z", Type.DATE);
+            }
+        }
+        root.commit();
+    }
+
+    @Test
+    public void orderBy() throws Exception {
+        String query = "select [jcr:path], [l], [d], [s], [m], [dt] from [nt:base] " +
+                "where isdescendantnode('/test') order by [dt] desc, [d]";
+        List<String> expected = executeQuery(query, SQL2);
+        assertEquals(NODES, expected.size());
+        settings.setLimitInMemory(10);
+        assertEquals(expected, executeQuery(query, SQL2));
+        assertTrue(hasSpilled());
+    }
+
+    @Test
+    public void orderByWithLimit() throws Exception {
+        String query = "select [jcr:path], [d] from [nt:base] " +
+                "where isdescendantnode('/test') order by [d]";
+        List<String> expected = executeQuery(query, SQL2).subList(20, 60);
+        settings.setLimitInMemory(10);
+        List<String> result = new ArrayList<String>();
+        for (ResultRow row : qe.executeQuery(query, SQL2, 40, 20, NO_BINDINGS, NO_MAPPINGS).getRows()) {
+            result.add(readRow(row, false));
+        }
+        assertEquals(expected, result);
+    }
+
+    @Test
+    public void distinct() throws Exception {
+        // the path is part of the row, so all rows are distinct
+        String query = "select distinct [jcr:path], [l], [m] from [nt:base] " +
+                "where isdescendantnode('/test')";
+        List<String> expected = executeQuery(query, SQL2);
+        assertEquals(NODES, expected.size());
+        settings.setLimitInMemory(10);
+        assertEquals(expected, executeQuery(query, SQL2));
+        assertTrue(hasSpilled());
+    }
+
+    private boolean hasSpilled() {
+        return settings.getQueryStats().asJson().matches("(?s).*\"totalBytesSpilled\":[1-9].*");
+    }
+
+}
@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements. See the NOTICE file distributed with this
+ * work for additional information regarding copyright ownership. The ASF
+ * licenses this file to You under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0 Unless required by applicable law
+ * or agreed to in writing, software distributed under the License is
+ * distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.apache.jackrabbit.oak.query;
+
+import static org.apache.jackrabbit.oak.api.QueryEngine.NO_BINDINGS;
+import static org.apache.jackrabbit.oak.api.QueryEngine.NO_MAPPINGS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jackrabbit.oak.InitialContent;
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.api.ContentRepository;
+import org.apache.jackrabbit.oak.api.PropertyValue;
+import org.apache.jackrabbit.oak.api.ResultRow;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.plugins.memory.MemoryNodeStore;
+import org.apache.jackrabbit.oak.spi.security.OpenSecurityProvider;
+import org.junit.Test;
+
+/**
+ * Tests reading the branches of union queries concurrently.
+ */
+public class UnionBranchExecutorTest extends AbstractQueryTest {
+
+    private final QueryEngineSettings settings = new QueryEngineSettings();
+
+    @Override
+    protected ContentRepository createRepository() {
+        return new Oak(new MemoryNodeStore())
+                .with(new OpenSecurityProvider())
+                .with(new InitialContent())
+                .with(settings)
+                .createContentRepository();
+    }
+
+    @Test
+    public void concurrentBranches() throws Exception {
+        UnionBranchExecutor executor = new UnionBranchExecutor();
+        executor.setParallelism(2);
+        Object session = new Object();
+        CountDownLatch started = new CountDownLatch(2);
+        List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+        Iterator<ResultRowImpl> a = executor.read(session, () -> rows(started, threads, 250));
+        Iterator<ResultRowImpl> b = executor.read(session, () -> rows(started, threads, 10));
+        assertEquals(250, count(a));
+        assertEquals(10, count(b));
+        // both branches were started before any was read
+        assertEquals(2, threads.size());
+        assertFalse(threads.contains(Thread.currentThread().getName()));
+        assertEquals(0, executor.getRunningCount(session));
+    }
+
+    @Test
+    public void limitPerSession() throws Exception {
+        UnionBranchExecutor executor = new UnionBranchExecutor();
+        executor.setParallelism(4);
+        executor.setParallelismPerSession(1);
+        Object session = new Object();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        List<String> threads = Collections.synchronizedList(new ArrayList<String>());
+        Iterator<ResultRowImpl> a = executor.read(session, () -> {
+            started.countDown();
+            await(blocked);
+            return rows(null, threads, 1);
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        // the session limit is reached: read by this thread
+        Iterator<ResultRowImpl> b = executor.read(session, () -> rows(null, threads, 1));
+        assertEquals(1, count(b));
+        assertEquals(Collections.singletonList(Thread.currentThread().getName()), threads);
+        // other sessions are not affected
+        Iterator<ResultRowImpl> c = executor.read(new Object(), () -> rows(null, threads, 1));
+        assertEquals(1, count(c));
+        blocked.countDown();
+        assertEquals(1, count(a));
+        assertEquals(3, threads.size());
+        assertNotEquals(Thread.currentThread().getName(), threads.get(2));
+    }
+
+    @Test
+    public void failure() throws Exception {
+        UnionBranchExecutor executor = new UnionBranchExecutor();
+        executor.setParallelism(1);
+        Iterator<ResultRowImpl> a = executor.read(new Object(), () -> {
+            throw new IllegalArgumentException("test");
+        });
+        try {
+            a.hasNext();
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("test", e.getMessage());
+        }
+        assertFalse(a.hasNext());
+    }
+
+    @Test
+    public void unionQuery() throws Exception {
+        Tree test = root.getTree("/").addChild("test");
+        for (int i = 0; i < 300; i++) {
+            Tree n = test.addChild("n" + i);
+            n.setProperty(i % 3 == 0 ? "a" : "b", (long) i);
+        }
+        root.commit();
+        String xpath = "/jcr:root/test/*[@a < 200 or @b > 100] order by @a, @b descending";
+        List<String> expected = executeQuery(xpath, XPATH);
+        assertEquals(67 + 133, expected.size());
+        settings.getUnionBranchExecutor().setParallelism(2);
+        assertEquals(expected, executeQuery(xpath, XPATH));
+
+        List<String> result = new ArrayList<String>();
+        for (ResultRow row : qe.executeQuery(xpath, XPATH, 20, 5, NO_BINDINGS, NO_MAPPINGS).getRows()) {
+            result.add(row.getPath());
+        }
+        assertEquals(expected.subList(5, 25), result);
+
+        String sql2 = "select [jcr:path] from [nt:base] where isdescendantnode('/test') and ([a] = 3 or [b] = 4) " +
+                "union select [jcr:path] from [nt:base] where isdescendantnode('/test') and [b] = 4";
+        assertEquals("[/test/n3, /test/n4]", executeQuery(sql2, SQL2).toString());
+    }
+
+    @Test
+    public void rowsUseSessionTrees() throws Exception {
+        Tree test = root.getTree("/").addChild("test");
+        for (int i = 0; i < 10; i++) {
+            test.addChild("n" + i).setProperty(i % 2 == 0 ? "a" : "b", (long) i);
+        }
+        root.commit();
+        settings.getUnionBranchExecutor().setParallelism(2);
+        String xpath = "/jcr:root/test/*[@a = 2 or @b = 3] order by @a, @b";
+        List<String> paths = new ArrayList<String>();
+        for (ResultRow row : qe.executeQuery(xpath, XPATH, NO_BINDINGS, NO_MAPPINGS).getRows()) {
+            paths.add(row.getPath());
+            // the branches are read with a snapshot, but the trees are the ones of the session
+            row.getTree(null).setProperty("c", 1L);
+        }
+        assertEquals(2, paths.size());
+        assertTrue(root.hasPendingChanges());
+
+        // with transient changes, the branches are read by this thread
+        test.addChild("transient").setProperty("a", 2L);
+        assertEquals("[/test/n2, /test/n3, /test/transient]",
+                executeQuery("/jcr:root/test/*[@a = 2 or @b = 3]", XPATH, true).toString());
+    }
+
+    private static Iterator<ResultRowImpl> rows(CountDownLatch started, List<String> threads, int count) {
+        threads.add(Thread.currentThread().getName());
+        if (started != null) {
+            started.countDown();
+            await(started);
+        }
+        List<ResultRowImpl> list = new ArrayList<ResultRowImpl>();
+        for (int i = 0; i < count; i++) {
+            list.add(new ResultRowImpl(null, Tree.EMPTY_ARRAY, new PropertyValue[0], null, null));
+        }
+        return list.iterator();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static int count(Iterator<ResultRowImpl> it) {
+        int count = 0;
+        while (it.hasNext()) {
+            it.next();
+            count++;
+        }
+        return count;
+    }
+
+}
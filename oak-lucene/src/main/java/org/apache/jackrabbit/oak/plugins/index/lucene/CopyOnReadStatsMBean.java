@@ -80,4 +80,16 @@ public interface CopyOnReadStatsMBean {
     String getGarbageCollectedSize();
 
     String getSkippedFromUploadSize();
+
+    boolean isWarmupEnabled();
+
+    int getWarmupPendingCount();
+
+    String getWarmupPendingSize();
+
+    String getWarmupProgress();
+
+    int getResumedCopyCount();
+
+    String getResumedCopySize();
 }
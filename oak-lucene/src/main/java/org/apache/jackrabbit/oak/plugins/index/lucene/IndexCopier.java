@@ -21,16 +21,29 @@ package org.apache.jackrabbit.oak.plugins.index.lucene;
 
 import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
 
 import javax.management.openmbean.CompositeDataSupport;
 import javax.management.openmbean.CompositeType;
@@ -59,6 +72,7 @@ import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.FilterDirectory;
 import org.apache.lucene.store.NoLockFactory;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -76,6 +90,19 @@ public class IndexCopier implements CopyOnReadStatsMBean, Closeable {
     private static final int MAX_FAILURE_ENTRIES = 10000;
     private static final String WORK_DIR_NAME = "indexWriterDir";
 
+    /**
+     * The number of threads that copy the index files when warming up (0 to
+     * disable the warm-up). If enabled, all files of an index are copied in
+     * parallel when it is opened; the files of frequently used indexes are
+     * copied first.
+     */
+    static final int WARMUP_THREADS = Integer.getInteger("oak.lucene.warmupThreads", 0);
+
+    /**
+     * The file that contains the usage counts of indexes of previous runs.
+     */
+    static final String INDEX_USAGE_FILE_NAME = "index-usage.properties";
+
     private static final Logger log = LoggerFactory.getLogger(IndexCopier.class);
     private final Executor executor;
     private final File indexWorkDir;
@@ -99,6 +126,13 @@ public class IndexCopier implements CopyOnReadStatsMBean, Closeable {
     private final AtomicLong skippedFromUploadSize = new AtomicLong();
     private final AtomicLong downloadTime = new AtomicLong();
     private final AtomicLong uploadTime = new AtomicLong();
+    private final AtomicInteger warmupPendingCount = new AtomicInteger();
+    private final AtomicLong warmupPendingSize = new AtomicLong();
+    private final AtomicInteger warmupDoneCount = new AtomicInteger();
+    private final AtomicLong warmupDoneSize = new AtomicLong();
+    private final AtomicLong warmupSequence = new AtomicLong();
+    private final AtomicInteger resumedCopyCount = new AtomicInteger();
+    private final AtomicLong resumedCopySize = new AtomicLong();
 
     private final Monitor copyCompletionMonitor = new Monitor();
 
@@ -109,17 +143,29 @@ public class IndexCopier implements CopyOnReadStatsMBean, Closeable {
     private volatile boolean closed;
     private final IndexRootDirectory indexRootDirectory;
     private final Set<String> validatedIndexPaths = Sets.newConcurrentHashSet();
+    private final ConcurrentMap<String, Set<String>> copiedFileNames = newConcurrentMap();
     private final IndexSanityChecker.IndexSanityStatistics indexSanityStatistics = new IndexSanityChecker.IndexSanityStatistics();
+    private final ThreadPoolExecutor warmupExecutor;
+    private final File indexUsageFile;
+    private final Map<String, Long> previousIndexUsage;
+    private volatile ToLongFunction<String> indexUsage = indexPath -> 0;
 
     public IndexCopier(Executor executor, File indexRootDir) throws IOException {
         this(executor, indexRootDir, false);
     }
 
     public IndexCopier(Executor executor, File indexRootDir, boolean prefetchEnabled) throws IOException {
+        this(executor, indexRootDir, prefetchEnabled, WARMUP_THREADS);
+    }
+
+    public IndexCopier(Executor executor, File indexRootDir, boolean prefetchEnabled, int warmupThreads) throws IOException {
         this.executor = executor;
         this.prefetchEnabled = prefetchEnabled;
         this.indexWorkDir = initializerWorkDir(indexRootDir);
         this.indexRootDirectory = new IndexRootDirectory(indexRootDir);
+        this.indexUsageFile = new File(indexRootDir, INDEX_USAGE_FILE_NAME);
+        this.previousIndexUsage = readIndexUsage(indexUsageFile);
+        this.warmupExecutor = warmupThreads > 0 ? createWarmupExecutor(warmupThreads) : null;
     }
 
     public Directory wrapForRead(String indexPath, LuceneIndexDefinition definition,
@@ -145,6 +191,143 @@ public class IndexCopier implements CopyOnReadStatsMBean, Closeable {
     @Override
     public void close() throws IOException {
         this.closed = true;
+        if (warmupExecutor != null) {
+            // pending tasks check whether the copier is closed
+            warmupExecutor.shutdown();
+        }
+        writeIndexUsage();
+    }
+
+    /**
+     * Set the source of the usage counts of indexes (the number of times an
+     * index was used since startup), used to copy the files of frequently
+     * used indexes first when warming up.
+     *
+     * @param indexUsage the usage count by index path
+     */
+    public void setIndexUsage(@NotNull ToLongFunction<String> indexUsage) {
+        this.indexUsage = indexUsage;
+    }
+
+    /**
+     * Get the names of the index files that were all copied to a local
+     * directory when a revision of the index was opened (the last time this
+     * was recorded since startup).
+     *
+     * @param localDir the absolute path of the local directory
+     * @return the file names, or null if unknown
+     */
+    @Nullable
+    public Set<String> getCopiedFileNames(String localDir) {
+        return copiedFileNames.get(localDir);
+    }
+
+    /**
+     * Record that all the given index files were copied to a local directory.
+     *
+     * @param localDir the absolute path of the local directory
+     * @param names the file names
+     */
+    public void setCopiedFileNames(String localDir, Set<String> names) {
+        copiedFileNames.put(localDir, names);
+    }
+
+    /**
+     * Schedule copying an index file when warming up. Files of frequently used
+     * indexes are copied first, and within an index, larger files first.
+     * If the warm-up is disabled, or the copier is closed, the task is run in
+     * the current thread. The task should check whether the copier is closed.
+     *
+     * @param indexPath the index path
+     * @param size the file size
+     * @param task the task that copies the file
+     * @return the future, which is done once the task and the statistics are
+     *         updated
+     */
+    public Future<?> scheduleWarmup(String indexPath, long size, Runnable task) {
+        warmupPendingCount.incrementAndGet();
+        warmupPendingSize.addAndGet(size);
+        FutureTask<Void> future = new FutureTask<>(() -> {
+            try {
+                task.run();
+            } finally {
+                warmupPendingCount.decrementAndGet();
+                warmupPendingSize.addAndGet(-size);
+                warmupDoneCount.incrementAndGet();
+                warmupDoneSize.addAndGet(size);
+            }
+        }, null);
+        if (warmupExecutor == null) {
+            future.run();
+            return future;
+        }
+        try {
+            warmupExecutor.execute(new WarmupTask(getIndexUsage(indexPath), size,
+                    warmupSequence.incrementAndGet(), future));
+        } catch (RejectedExecutionException e) {
+            future.run();
+        }
+        return future;
+    }
+
+    public void resumedCopy(long skippedSize) {
+        resumedCopyCount.incrementAndGet();
+        resumedCopySize.addAndGet(skippedSize);
+    }
+
+    long getIndexUsage(String indexPath) {
+        return previousIndexUsage.getOrDefault(indexPath, 0L) + indexUsage.applyAsLong(indexPath);
+    }
+
+    private void writeIndexUsage() {
+        Properties props = new Properties();
+        Set<String> paths = Sets.newHashSet(previousIndexUsage.keySet());
+        paths.addAll(validatedIndexPaths);
+        for (String path : paths) {
+            long usage = getIndexUsage(path);
+            if (usage > 0) {
+                props.setProperty(path, String.valueOf(usage));
+            }
+        }
+        try (OutputStream out = new FileOutputStream(indexUsageFile)) {
+            props.store(out, "Index usage counts, used to prioritize the warm-up");
+        } catch (IOException e) {
+            log.warn("Could not write the index usage counts to {}", indexUsageFile, e);
+        }
+    }
+
+    private static Map<String, Long> readIndexUsage(File file) {
+        Map<String, Long> usage = new HashMap<>();
+        if (!file.exists()) {
+            return usage;
+        }
+        Properties props = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            props.load(in);
+            for (String path : props.stringPropertyNames()) {
+                usage.put(path, Long.parseLong(props.getProperty(path)));
+            }
+        } catch (IOException | NumberFormatException e) {
+            log.warn("Could not read the index usage counts from {}", file, e);
+        }
+        return usage;
+    }
+
+    private static ThreadPoolExecutor createWarmupExecutor(int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(), new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+            private final Thread.UncaughtExceptionHandler handler = (t, e) -> log.warn("Error occurred while warming up ", e);
+            @Override
+            public Thread newThread(@NotNull Runnable r) {
+                Thread thread = new Thread(r, "oak-lucene-warmup-" + counter.getAndIncrement());
+                thread.setDaemon(true);
+                thread.setUncaughtExceptionHandler(handler);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
 
     public boolean isClosed() {
@@ -356,6 +539,43 @@ public class IndexCopier implements CopyOnReadStatsMBean, Closeable {
         return System.currentTimeMillis();
     }
 
+    /**
+     * Like {@link #startCopy(LocalIndexFile)}, but only if the file is not
+     * copied already.
+     *
+     * @param file the file
+     * @return the start time, or -1 if the file is being copied
+     */
+    public long tryStartCopy(LocalIndexFile file) {
+        copyCompletionMonitor.enter();
+        try {
+            if (isCopyInProgress(file)) {
+                return -1;
+            }
+            return startCopy(file);
+        } finally {
+            copyCompletionMonitor.leave();
+        }
+    }
+
+    /**
+     * The copy of a file failed.
+     *
+     * @param file the file
+     */
+    public void failedCopy(LocalIndexFile file) {
+        copyCompletionMonitor.enter();
+        try {
+            if (!copyInProgressFiles.remove(file)) {
+                return;
+            }
+        } finally {
+            copyCompletionMonitor.leave();
+        }
+        copyInProgressCount.decrementAndGet();
+        copyInProgressSize.addAndGet(-file.getSize());
+    }
+
     public boolean isCopyInProgress(LocalIndexFile file) {
         return copyInProgressFiles.contains(file);
     }
@@ -465,6 +685,7 @@ public class IndexCopier implements CopyOnReadStatsMBean, Closeable {
             } finally {
                 //Clean out the local dir irrespective of any error occurring upon
                 //close in wrapped directory
+                copiedFileNames.remove(oldIndexDir.getAbsolutePath());
                 try{
                     long totalDeletedSize = FileUtils.sizeOf(oldIndexDir);
                     FileUtils.deleteDirectory(oldIndexDir);
@@ -669,6 +890,41 @@ public class IndexCopier implements CopyOnReadStatsMBean, Closeable {
                 }), String.class);
     }
 
+    @Override
+    public boolean isWarmupEnabled() {
+        return warmupExecutor != null;
+    }
+
+    @Override
+    public int getWarmupPendingCount() {
+        return warmupPendingCount.get();
+    }
+
+    @Override
+    public String getWarmupPendingSize() {
+        return humanReadableByteCount(warmupPendingSize.get());
+    }
+
+    @Override
+    public String getWarmupProgress() {
+        int done = warmupDoneCount.get();
+        long doneSize = warmupDoneSize.get();
+        int total = done + warmupPendingCount.get();
+        long totalSize = doneSize + warmupPendingSize.get();
+        return String.format("%d of %d files, %s of %s", done, total,
+                humanReadableByteCount(doneSize), humanReadableByteCount(totalSize));
+    }
+
+    @Override
+    public int getResumedCopyCount() {
+        return resumedCopyCount.get();
+    }
+
+    @Override
+    public String getResumedCopySize() {
+        return humanReadableByteCount(resumedCopySize.get());
+    }
+
     @Override
     public int getDeletedFilesCount() {
         return deletedFileCount.get();
@@ -714,6 +970,39 @@ public class IndexCopier implements CopyOnReadStatsMBean, Closeable {
         }
     }
 
+    /**
+     * A task of the warm-up, ordered by the usage of the index (most used
+     * first), then by the file size (largest first), then in the order the
+     * tasks were scheduled.
+     */
+    private static final class WarmupTask implements Runnable, Comparable<WarmupTask> {
+        private final long indexUsage;
+        private final long size;
+        private final long sequence;
+        private final Runnable task;
+
+        WarmupTask(long indexUsage, long size, long sequence, Runnable task) {
+            this.indexUsage = indexUsage;
+            this.size = size;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+
+        @Override
+        public int compareTo(WarmupTask o) {
+            int comp = Long.compare(o.indexUsage, indexUsage);
+            if (comp == 0) {
+                comp = Long.compare(o.size, size);
+            }
+            return comp != 0 ? comp : Long.compare(sequence, o.sequence);
+        }
+    }
+
     public interface COWDirectoryTracker {
         void registerOpenedDirectory(@NotNull CopyOnWriteDirectory directory);
         void registerReindexingLocalDirectory(@NotNull File dir);
@@ -20,6 +20,8 @@ import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.jackrabbit.guava.common.collect.ImmutableMap;
 import org.apache.jackrabbit.guava.common.collect.Iterables;
@@ -81,6 +83,7 @@ public class IndexTracker {
     private final LuceneIndexReaderFactory readerFactory;
     private final NRTIndexFactory nrtFactory;
     private final BadIndexTracker badIndexTracker = new BadIndexTracker();
+    private final Map<String, LongAdder> acquireCounts = new ConcurrentHashMap<>();
 
     private NodeState root = EMPTY_NODE;
 
@@ -223,6 +226,7 @@ public class IndexTracker {
      */
     @Nullable
     public LuceneIndexNode acquireIndexNode(String path) {
+        acquireCounts.computeIfAbsent(path, k -> new LongAdder()).increment();
         LuceneIndexNodeManager index = indices.get(path);
         LuceneIndexNode indexNode = index != null ? index.acquire() : null;
         if (indexNode != null) {
@@ -231,6 +235,17 @@ public class IndexTracker {
         return findIndexNode(path);
     }
 
+    /**
+     * Get the number of times an index node was acquired since startup.
+     *
+     * @param path the index path
+     * @return the number of times the index was used
+     */
+    public long getAcquireCount(String path) {
+        LongAdder count = acquireCounts.get(path);
+        return count == null ? 0 : count.sum();
+    }
+
     /**
      * Get the index node, if the index is good.
      *
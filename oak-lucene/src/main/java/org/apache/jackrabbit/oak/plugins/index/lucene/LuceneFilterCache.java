@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.lucene;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.lucene.search.CachingWrapperFilter;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A cache of filters for the non-scoring restrictions of full-text queries
+ * (node type, path, and property restrictions). Queries that only differ in
+ * the full-text term can reuse the matching documents (a bitset per index
+ * segment) of these restrictions, instead of evaluating them for each search.
+ * <p>
+ * There is one cache per index searcher: when the searcher is refreshed, the
+ * cache is discarded with it. A filter is only cached after its restrictions
+ * were used {@link #MIN_USAGE_COUNT} times, so that rarely used restrictions
+ * don't fill the cache; the least recently used filter is removed if the
+ * cache is full.
+ * <p>
+ * The cache is disabled by default; it is enabled by setting the system
+ * property "oak.lucene.filterCacheSize" to the number of filters to cache per
+ * index. The size is read when a searcher is opened. Restrictions don't
+ * contribute to the score if the cache is enabled.
+ */
+public class LuceneFilterCache {
+
+    /**
+     * The maximum number of filters per index (0 to disable).
+     */
+    private static volatile int cacheSize = Integer.getInteger("oak.lucene.filterCacheSize", 0);
+
+    /**
+     * The number of times restrictions need to be used before they are cached.
+     */
+    static final int MIN_USAGE_COUNT = 2;
+
+    private static final LongAdder TOTAL_HIT_COUNT = new LongAdder();
+
+    private static final LongAdder TOTAL_MISS_COUNT = new LongAdder();
+
+    private final Map<Query, Filter> filters;
+
+    private final Map<Query, Integer> usageCounts;
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    LuceneFilterCache(int maxSize) {
+        filters = new LinkedHashMap<Query, Filter>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Query, Filter> eldest) {
+                return size() > maxSize;
+            }
+        };
+        // also remember the usage of restrictions that are not cached
+        usageCounts = new LinkedHashMap<Query, Integer>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Query, Integer> eldest) {
+                return size() > 4 * maxSize;
+            }
+        };
+    }
+
+    /**
+     * Create a cache, if enabled.
+     *
+     * @return the cache, or null if disabled
+     */
+    @Nullable
+    static LuceneFilterCache create() {
+        int size = cacheSize;
+        return size > 0 ? new LuceneFilterCache(size) : null;
+    }
+
+    /** Only set for testing
+     * @param size the maximum number of filters per index (0 to disable)
+     * @return the previous size
+     */
+    static int setCacheSize(int size) {
+        int old = cacheSize;
+        cacheSize = size;
+        return old;
+    }
+
+    /**
+     * Get the filter for the given restrictions. The query must not be
+     * modified afterwards, as it is used as the key.
+     *
+     * @param query the restrictions
+     * @return the (cached, if frequently used) filter
+     */
+    Filter getFilter(Query query) {
+        synchronized (this) {
+            Filter filter = filters.get(query);
+            if (filter != null) {
+                hitCount.increment();
+                TOTAL_HIT_COUNT.increment();
+                return filter;
+            }
+            missCount.increment();
+            TOTAL_MISS_COUNT.increment();
+            int count = usageCounts.merge(query, 1, Integer::sum);
+            if (count >= MIN_USAGE_COUNT) {
+                usageCounts.remove(query);
+                filter = new CachingWrapperFilter(new QueryWrapperFilter(query));
+                filters.put(query, filter);
+                return filter;
+            }
+        }
+        return new QueryWrapperFilter(query);
+    }
+
+    long getHitCount() {
+        return hitCount.sum();
+    }
+
+    long getMissCount() {
+        return missCount.sum();
+    }
+
+    static long getTotalHitCount() {
+        return TOTAL_HIT_COUNT.sum();
+    }
+
+    synchronized int getFilterCount() {
+        return filters.size();
+    }
+
+    /**
+     * Get the statistics of all filter caches.
+     *
+     * @return the statistics, or "disabled"
+     */
+    static String getStats() {
+        if (cacheSize <= 0) {
+            return "disabled";
+        }
+        long hits = TOTAL_HIT_COUNT.sum();
+        long misses = TOTAL_MISS_COUNT.sum();
+        long total = hits + misses;
+        return String.format("hits: %d, misses: %d, hitRate: %.3f",
+                hits, misses, total == 0 ? 0 : (double) hits / total);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "filters: " + filters.size() + ", hits: " + hitCount.sum() + ", misses: " + missCount.sum();
+    }
+
+}
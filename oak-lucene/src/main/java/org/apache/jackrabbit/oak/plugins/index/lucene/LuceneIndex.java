@@ -303,7 +303,7 @@ public class LuceneIndex implements AdvanceFulltextQueryIndex {
             private final Deque<LuceneResultRow> queue = Queues.newArrayDeque();
             private final Set<String> seenPaths = Sets.newHashSet();
             private ScoreDoc lastDoc;
-            private int nextBatchSize = LUCENE_QUERY_BATCH_SIZE;
+            private int nextBatchSize = LucenePropertyIndex.getFirstBatchSize(filter.getLimitHint());
             private boolean noDocs = false;
             private long lastSearchIndexerVersion;
             private int reloadCount;
@@ -384,7 +384,7 @@ public class LuceneIndex implements AdvanceFulltextQueryIndex {
                             }
                             time = System.currentTimeMillis() - time;
                             LOG.debug("... took {} ms", time);
-                            nextBatchSize = (int) Math.min(nextBatchSize * 2L, 100000);
+                            nextBatchSize = (int) Math.min(nextBatchSize * 2L, LucenePropertyIndex.LUCENE_QUERY_MAX_BATCH_SIZE);
 
                             PropertyRestriction restriction = filter.getPropertyRestriction(QueryConstants.REP_EXCERPT);
                             boolean addExcerpt = restriction != null && restriction.isNotNullRestriction();
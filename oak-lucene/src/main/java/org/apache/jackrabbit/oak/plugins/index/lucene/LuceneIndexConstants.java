@@ -137,6 +137,16 @@ public interface LuceneIndexConstants extends FulltextIndexConstants {
      */
     String SAVE_DIR_LISTING = "saveDirectoryListing";
 
+    /**
+     * Boolean property indicating that the names of the files added to the
+     * Lucene directory by the last commit (the new segment files) should be
+     * saved as a multi value property. Other cluster nodes then copy these
+     * files to the local index directory before opening the index. If a node
+     * did not open the previous revision, it copies all files that are
+     * missing locally instead.
+     */
+    String SAVE_NEW_FILES_MANIFEST = "saveNewFilesManifest";
+
     /**
      * Optional  Property to store the path of index in the repository. Path at which index
      * definition is defined is not known to IndexEditor. To make use of CopyOnWrite
@@ -58,6 +58,8 @@ public class LuceneIndexDefinition extends IndexDefinition {
 
     private final boolean saveDirListing;
 
+    private final boolean saveNewFilesManifest;
+
     private final Map<String, Analyzer> analyzers;
     private final Analyzer analyzer;
 
@@ -73,6 +75,7 @@ public class LuceneIndexDefinition extends IndexDefinition {
         super(root, defn, version, uid, indexPath);
 
         this.saveDirListing = getOptionalValue(defn, LuceneIndexConstants.SAVE_DIR_LISTING, true);
+        this.saveNewFilesManifest = getOptionalValue(defn, LuceneIndexConstants.SAVE_NEW_FILES_MANIFEST, false);
         this.maxFieldLength = getOptionalValue(defn, LuceneIndexConstants.MAX_FIELD_LENGTH, DEFAULT_MAX_FIELD_LENGTH);
         this.analyzers = collectAnalyzers(defn);
         this.analyzer = createAnalyzer();
@@ -120,6 +123,10 @@ public class LuceneIndexDefinition extends IndexDefinition {
         return saveDirListing;
     }
 
+    public boolean saveNewFilesManifest() {
+        return saveNewFilesManifest;
+    }
+
     @Nullable
     public Codec getCodec() {
         return codec;
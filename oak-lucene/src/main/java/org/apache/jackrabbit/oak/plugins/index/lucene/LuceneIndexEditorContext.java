@@ -17,11 +17,18 @@
 package org.apache.jackrabbit.oak.plugins.index.lucene;
 
 import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.jackrabbit.oak.plugins.index.IndexUpdateCallback;
 import org.apache.jackrabbit.oak.plugins.index.IndexingContext;
 import org.apache.jackrabbit.oak.plugins.index.lucene.util.FacetHelper;
 import org.apache.jackrabbit.oak.plugins.index.lucene.util.FacetsConfigProvider;
+import org.apache.jackrabbit.oak.plugins.index.lucene.writer.DefaultIndexWriterFactory;
 import org.apache.jackrabbit.oak.plugins.index.lucene.writer.LuceneIndexWriter;
 import org.apache.jackrabbit.oak.plugins.index.search.ExtractedTextCache;
 import org.apache.jackrabbit.oak.plugins.index.search.IndexDefinition;
@@ -31,13 +38,29 @@ import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
 import org.apache.jackrabbit.oak.stats.Clock;
 import org.apache.lucene.facet.FacetsConfig;
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class LuceneIndexEditorContext extends FulltextIndexEditorContext implements FacetsConfigProvider {
+    private static final Logger log = LoggerFactory.getLogger(LuceneIndexEditorContext.class);
+
+    /**
+     * The number of threads that make documents while reindexing (0 to make
+     * them in the indexing thread). The IndexWriter supports concurrent updates,
+     * so this allows text extraction and analysis to use multiple cores.
+     */
+    private static int reindexThreads = Integer.getInteger("oak.lucene.reindexThreads", 0);
+
+    private static ThreadPoolExecutor reindexExecutor;
+
     private FacetsConfig facetsConfig;
 
     private final IndexAugmentorFactory augmentorFactory;
 
+    private final FulltextIndexWriterFactory indexWriterFactory;
+
     LuceneIndexEditorContext(NodeState root, NodeBuilder definition,
                              @Nullable IndexDefinition indexDefinition,
                              IndexUpdateCallback updateCallback,
@@ -48,6 +71,7 @@ public class LuceneIndexEditorContext extends FulltextIndexEditorContext impleme
         super(root, definition, indexDefinition, updateCallback, indexWriterFactory, extractedTextCache,
             indexingContext, asyncIndexing);
         this.augmentorFactory = augmentorFactory;
+        this.indexWriterFactory = indexWriterFactory;
     }
 
     @Override
@@ -63,6 +87,51 @@ public class LuceneIndexEditorContext extends FulltextIndexEditorContext impleme
             definition, rule, path);
     }
 
+    @Override
+    protected Executor getReindexExecutor() {
+        if (reindexThreads <= 0) {
+            return null;
+        }
+        // flushing segments concurrently creates files concurrently, which is
+        // only supported by local directories (copy-on-write included), as the
+        // OakDirectory writes to a NodeBuilder
+        if (!(indexWriterFactory instanceof DefaultIndexWriterFactory)
+                || ((DefaultIndexWriterFactory) indexWriterFactory).remoteDirectory()) {
+            log.debug("[{}] Not making documents concurrently, as the index is not written to a local directory",
+                    getDefinition().getIndexPath());
+            return null;
+        }
+        Executor executor = getSharedReindexExecutor();
+        if (executor != null && isAsyncIndexing()) {
+            // created lazily, so do this before documents are made concurrently
+            getFacetsConfig();
+        }
+        return executor;
+    }
+
+    private static synchronized Executor getSharedReindexExecutor() {
+        if (reindexThreads <= 0) {
+            return null;
+        }
+        if (reindexExecutor == null) {
+            reindexExecutor = new ThreadPoolExecutor(reindexThreads, reindexThreads, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), new ThreadFactory() {
+                private final AtomicInteger counter = new AtomicInteger();
+                private final Thread.UncaughtExceptionHandler handler =
+                        (t, e) -> log.warn("Error occurred while making documents", e);
+                @Override
+                public Thread newThread(@NotNull Runnable r) {
+                    Thread thread = new Thread(r, "oak-lucene-reindex-" + counter.getAndIncrement());
+                    thread.setDaemon(true);
+                    thread.setUncaughtExceptionHandler(handler);
+                    return thread;
+                }
+            });
+            reindexExecutor.allowCoreThreadTimeOut(true);
+        }
+        return reindexExecutor;
+    }
+
     @Override
     public LuceneIndexWriter getWriter() {
         return (LuceneIndexWriter)super.getWriter();
@@ -76,6 +145,24 @@ public class LuceneIndexEditorContext extends FulltextIndexEditorContext impleme
         return facetsConfig;
     }
 
+    /** Only used for testing
+     * @return the number of completed tasks of the shared reindex executor
+     * */
+    static synchronized long getReindexTaskCount() {
+        return reindexExecutor == null ? 0 : reindexExecutor.getCompletedTaskCount();
+    }
+
+    /** Only set for testing
+     * @param threads the number of threads that make documents while reindexing
+     * */
+    static synchronized void setReindexThreads(int threads) {
+        reindexThreads = threads;
+        if (reindexExecutor != null) {
+            reindexExecutor.shutdown();
+            reindexExecutor = null;
+        }
+    }
+
     /** Only set for testing
      * @param c clock
      * */
@@ -158,4 +158,15 @@ public interface LuceneIndexMBean extends IndexMBean {
     @Description("Fetches hybrid property index info as json for index at given path")
     String getHybridIndexInfo(@Name("indexPath") String indexPath);
 
+    @Description("The ratio of index file block reads that were served from the shared block cache " +
+            "(-1 if the block cache is disabled, see the system property oak.lucene.blockCacheSizeMB)")
+    double getBlockCacheHitRate();
+
+    @Description("Statistics of the shared block cache for index files")
+    String getBlockCacheStats();
+
+    @Description("Statistics of the filter caches for the non-full-text constraints of full-text queries " +
+            "(see the system property oak.lucene.filterCacheSize)")
+    String getFilterCacheStats();
+
 }
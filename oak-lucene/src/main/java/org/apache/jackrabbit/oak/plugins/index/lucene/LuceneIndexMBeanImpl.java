@@ -52,6 +52,7 @@ import org.apache.jackrabbit.oak.commons.json.JsopBuilder;
 import org.apache.jackrabbit.oak.json.JsopDiff;
 import org.apache.jackrabbit.oak.plugins.index.IndexConstants;
 import org.apache.jackrabbit.oak.plugins.index.IndexPathService;
+import org.apache.jackrabbit.oak.plugins.index.lucene.directory.BlockCache;
 import org.apache.jackrabbit.oak.plugins.index.lucene.directory.IndexConsistencyChecker;
 import org.apache.jackrabbit.oak.plugins.index.lucene.directory.IndexConsistencyChecker.Level;
 import org.apache.jackrabbit.oak.plugins.index.lucene.directory.IndexConsistencyChecker.Result;
@@ -402,6 +403,23 @@ public class LuceneIndexMBeanImpl extends AnnotatedStandardMBean implements Luce
         return new HybridPropertyIndexInfo(idx).getInfoAsJson();
     }
 
+    @Override
+    public double getBlockCacheHitRate() {
+        BlockCache cache = BlockCache.getInstance();
+        return cache == null ? -1 : cache.getHitRate();
+    }
+
+    @Override
+    public String getBlockCacheStats() {
+        BlockCache cache = BlockCache.getInstance();
+        return cache == null ? "disabled" : cache.toString();
+    }
+
+    @Override
+    public String getFilterCacheStats() {
+        return LuceneFilterCache.getStats();
+    }
+
     @Override
     public String getSize(String indexPath) throws IOException {
         if (!LOAD_INDEX_FOR_STATS) {
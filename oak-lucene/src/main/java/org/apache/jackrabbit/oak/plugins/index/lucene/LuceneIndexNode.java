@@ -40,6 +40,16 @@ public interface LuceneIndexNode extends IndexNode {
     @Nullable
     LuceneIndexStatistics getIndexStatistics();
 
+    /**
+     * The cache of filters for the current searcher.
+     *
+     * @return the cache, or null if disabled
+     */
+    @Nullable
+    default LuceneFilterCache getFilterCache() {
+        return null;
+    }
+
     List<LuceneIndexReader> getPrimaryReaders();
 
     @Nullable
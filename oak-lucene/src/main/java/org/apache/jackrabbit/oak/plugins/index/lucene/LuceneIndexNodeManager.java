@@ -294,6 +294,7 @@ public class LuceneIndexNodeManager {
         final List<LuceneIndexReader> nrtReaders;
         final int searcherId = SEARCHER_ID_COUNTER.incrementAndGet();
         final LuceneIndexStatistics indexStatistics;
+        final LuceneFilterCache filterCache = LuceneFilterCache.create();
 
         public SearcherHolder(IndexSearcher searcher, List<LuceneIndexReader> nrtReaders) {
             this.searcher = searcher;
@@ -336,6 +337,11 @@ public class LuceneIndexNodeManager {
             return holder.getIndexStatistics();
         }
 
+        @Override
+        public LuceneFilterCache getFilterCache() {
+            return holder.filterCache;
+        }
+
         @Override
         public LuceneIndexDefinition getDefinition() {
             return definition;
@@ -558,6 +558,8 @@ public class LuceneIndexProviderService {
                 nrtIndexFactory = new NRTIndexFactory(indexCopier, statisticsProvider);
             }
             tracker = new IndexTracker(new DefaultIndexReaderFactory(mountInfoProvider, indexCopier), nrtIndexFactory);
+            //Copy the files of frequently used indexes first when warming up
+            indexCopier.setIndexUsage(tracker::getAcquireCount);
         } else {
             tracker = new IndexTracker(new DefaultIndexReaderFactory(mountInfoProvider, null));
         }
@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -104,6 +105,7 @@ import org.apache.lucene.queryparser.flexible.standard.StandardQueryParser;
 import org.apache.lucene.queryparser.flexible.standard.config.StandardQueryConfigHandler;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.FilteredQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.NumericRangeQuery;
@@ -220,6 +222,11 @@ public class LucenePropertyIndex extends FulltextIndex {
      */
     public static final int LUCENE_QUERY_BATCH_SIZE = 50;
 
+    /**
+     * The maximum batch size for fetching results from Lucene queries.
+     */
+    static final int LUCENE_QUERY_MAX_BATCH_SIZE = 100000;
+
     protected final IndexTracker tracker;
 
     private final Highlighter highlighter = new Highlighter(new SimpleHTMLFormatter("<strong>", "</strong>"),
@@ -258,6 +265,22 @@ public class LucenePropertyIndex extends FulltextIndex {
         return "lucene-property";
     }
 
+    /**
+     * Get the number of documents to load in the first batch. If the number
+     * of rows the query reads is known (a limit is used), this many documents
+     * are loaded, so that "first page" queries neither load documents that
+     * are not needed, nor search again with growing batches.
+     *
+     * @param limitHint the number of rows the query reads if all match
+     * @return the batch size
+     */
+    static int getFirstBatchSize(long limitHint) {
+        if (limitHint == Long.MAX_VALUE) {
+            return LUCENE_QUERY_BATCH_SIZE;
+        }
+        return (int) Math.max(1, Math.min(limitHint, LUCENE_QUERY_MAX_BATCH_SIZE));
+    }
+
     @Override
     public Cursor query(final IndexPlan plan, NodeState rootState) {
         if (plan.isDeprecated()) {
@@ -272,7 +295,7 @@ public class LucenePropertyIndex extends FulltextIndex {
             private final Deque<FulltextResultRow> queue = Queues.newArrayDeque();
             private final Set<String> seenPaths = Sets.newHashSet();
             private ScoreDoc lastDoc;
-            private int nextBatchSize = LUCENE_QUERY_BATCH_SIZE;
+            private int nextBatchSize = getFirstBatchSize(filter.getLimitHint());
             private boolean noDocs = false;
             private IndexSearcher indexSearcher;
             private int indexNodeId = -1;
@@ -348,7 +371,8 @@ public class LucenePropertyIndex extends FulltextIndex {
                 checkState(indexNode != null);
                 try {
                     IndexSearcher searcher = getCurrentSearcher(indexNode);
-                    LuceneRequestFacade luceneRequestFacade = getLuceneRequest(plan, augmentorFactory, searcher.getIndexReader());
+                    LuceneRequestFacade luceneRequestFacade = getLuceneRequest(plan, augmentorFactory, searcher.getIndexReader(),
+                            indexNode.getFilterCache());
                     if (luceneRequestFacade.getLuceneRequest() instanceof Query) {
                         Query query = (Query) luceneRequestFacade.getLuceneRequest();
 
@@ -382,7 +406,7 @@ public class LucenePropertyIndex extends FulltextIndex {
                                 }
                             }
                             PERF_LOGGER.end(start, -1, "{} ...", docs.scoreDocs.length);
-                            nextBatchSize = (int) Math.min(nextBatchSize * 2L, 100000);
+                            nextBatchSize = (int) Math.min(nextBatchSize * 2L, LUCENE_QUERY_MAX_BATCH_SIZE);
 
                             if (facetProvider == null) {
                                 long f = PERF_LOGGER.start();
@@ -763,7 +787,8 @@ public class LucenePropertyIndex extends FulltextIndex {
             checkState(indexNode != null);
             try {
                 IndexSearcher searcher = indexNode.getSearcher();
-                LuceneRequestFacade luceneRequestFacade = getLuceneRequest(plan, augmentorFactory, searcher.getIndexReader());
+                LuceneRequestFacade luceneRequestFacade = getLuceneRequest(plan, augmentorFactory, searcher.getIndexReader(),
+                        indexNode.getFilterCache());
                 if (luceneRequestFacade.getLuceneRequest() instanceof Query) {
                     Query query = (Query) luceneRequestFacade.getLuceneRequest();
                     TotalHitCountCollector collector = new TotalHitCountCollector();
@@ -789,7 +814,7 @@ public class LucenePropertyIndex extends FulltextIndex {
 
     @Override
     protected String getFulltextRequestString(IndexPlan plan, IndexNode indexNode, NodeState root) {
-        return getLuceneRequest(plan, augmentorFactory, null).toString();
+        return getLuceneRequest(plan, augmentorFactory, null, null).toString();
     }
 
     private static Sort getSort(IndexPlan plan) {
@@ -869,11 +894,15 @@ public class LucenePropertyIndex extends FulltextIndex {
      *
      * @param plan   index plan containing filter details
      * @param reader the Lucene reader
+     * @param filterCache the cache for the non-full-text constraints of
+     *                    full-text queries, or null
      * @return the Lucene query
      */
-    private static LuceneRequestFacade getLuceneRequest(IndexPlan plan, IndexAugmentorFactory augmentorFactory, IndexReader reader) {
+    private static LuceneRequestFacade getLuceneRequest(IndexPlan plan, IndexAugmentorFactory augmentorFactory,
+                                                        IndexReader reader, @Nullable LuceneFilterCache filterCache) {
         FulltextQueryTermsProvider augmentor = getIndexAgumentor(plan, augmentorFactory);
         List<Query> qs = new ArrayList<>();
+        List<Query> filterQs = new ArrayList<>();
         Filter filter = plan.getFilter();
         FullTextExpression ft = filter.getFullTextConstraint();
         PlanResult planResult = getPlanResult(plan);
@@ -934,7 +963,8 @@ public class LucenePropertyIndex extends FulltextIndex {
                 }
             }
         } else if (planResult.evaluateNonFullTextConstraints()) {
-            addNonFullTextConstraints(qs, plan, reader);
+            // the constraints of full-text queries are used as a (cached) filter
+            addNonFullTextConstraints(ft != null && filterCache != null ? filterQs : qs, plan, reader);
         }
 
         if (qs.size() == 0
@@ -970,7 +1000,15 @@ public class LucenePropertyIndex extends FulltextIndex {
 
             throw new IllegalStateException("No query created for filter " + filter);
         }
-        return performAdditionalWraps(qs);
+        LuceneRequestFacade<Query> request = performAdditionalWraps(qs);
+        if (filterQs.isEmpty()) {
+            return request;
+        }
+        // wrap again, in case there are only "must not" clauses
+        Query filterQuery = performAdditionalWraps(
+                Collections.singletonList(performAdditionalWraps(filterQs).getLuceneRequest())).getLuceneRequest();
+        return new LuceneRequestFacade<Query>(
+                new FilteredQuery(request.getLuceneRequest(), filterCache.getFilter(filterQuery)));
     }
 
     /**
@@ -1852,6 +1890,12 @@ public class LucenePropertyIndex extends FulltextIndex {
             return n.getIndexStatistics();
         }
 
+        @Nullable
+        @Override
+        public LuceneFilterCache getFilterCache() {
+            return getIndexNode().getFilterCache();
+        }
+
         @Override
         public IndexSearcher getSearcher() {
             return getIndexNode().getSearcher();
@@ -0,0 +1,295 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.lucene.directory;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A process-wide cache for the blocks of index files that are read from the
+ * repository (without copy-on-read). All index inputs, including their
+ * clones, share this cache, so that a block is not loaded from the blob store
+ * again when a clone seeks to it. Files that are stored as a single blob
+ * (see {@link OakStreamingIndexFile}) are read in blocks of the block size of
+ * the cache. Files that are stored in chunks (see
+ * {@link OakBufferedIndexFile}) are cached per chunk, so files with a chunk
+ * size ("blobSize") larger than the default are not cached.
+ * <p>
+ * The blocks are stored off-heap, in direct buffers that are allocated when
+ * the cache is created. The cache is split into segments; each segment has a
+ * fixed number of slots of the block size, and evicts the least recently used
+ * block if it is full. Blocks that are larger than the slots are not cached.
+ * <p>
+ * The cache is disabled by default; it is enabled by setting the system
+ * property "oak.lucene.blockCacheSizeMB" to the size of the cache.
+ */
+public class BlockCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BlockCache.class);
+
+    /**
+     * The size of the cache in MB (0 to disable).
+     */
+    static final int CACHE_SIZE_MB = Integer.getInteger("oak.lucene.blockCacheSizeMB", 0);
+
+    private static final int SEGMENT_COUNT = 16;
+
+    private static volatile BlockCache instance = CACHE_SIZE_MB <= 0 ? null
+            : new BlockCache((long) CACHE_SIZE_MB * 1024 * 1024, OakBufferedIndexFile.DEFAULT_BLOB_SIZE);
+
+    private final int blockSize;
+
+    private final Segment[] segments;
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder evictionCount = new LongAdder();
+
+    BlockCache(long maxBytes, int blockSize) {
+        this.blockSize = blockSize;
+        long blocks = Math.max(SEGMENT_COUNT, maxBytes / blockSize);
+        int blocksPerSegment = (int) Math.min(Integer.MAX_VALUE / blockSize, blocks / SEGMENT_COUNT);
+        segments = new Segment[SEGMENT_COUNT];
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(blocksPerSegment);
+        }
+        LOG.info("Created the index block cache with {} blocks of {} bytes",
+                (long) blocksPerSegment * SEGMENT_COUNT, blockSize);
+    }
+
+    /**
+     * Get the shared cache.
+     *
+     * @return the cache, or null if the cache is disabled
+     */
+    @Nullable
+    public static BlockCache getInstance() {
+        return instance;
+    }
+
+    static void setInstance(@Nullable BlockCache cache) {
+        instance = cache;
+    }
+
+    /**
+     * Read a block from the cache.
+     *
+     * @param blobId the content identity of the blob that contains the block
+     * @param offset the offset of the block within the file
+     * @param target the target array
+     * @param length the number of bytes to read
+     * @return whether the block was found (if not, the target is unchanged)
+     */
+    boolean get(String blobId, long offset, byte[] target, int length) {
+        if (length > blockSize) {
+            return false;
+        }
+        Key key = new Key(blobId, offset);
+        if (getSegment(key).get(key, target, length)) {
+            hitCount.increment();
+            return true;
+        }
+        missCount.increment();
+        return false;
+    }
+
+    /**
+     * Add a block to the cache.
+     *
+     * @param blobId the content identity of the blob that contains the block
+     * @param offset the offset of the block within the file
+     * @param data the data
+     * @param length the length of the block
+     */
+    void put(String blobId, long offset, byte[] data, int length) {
+        if (length > blockSize) {
+            return;
+        }
+        Key key = new Key(blobId, offset);
+        getSegment(key).put(key, data, length);
+    }
+
+    int getBlockSize() {
+        return blockSize;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Get the ratio of reads that were served from the cache.
+     *
+     * @return the hit rate (between 0 and 1, or 1 if there were no reads)
+     */
+    public double getHitRate() {
+        long hits = getHitCount();
+        long total = hits + getMissCount();
+        return total == 0 ? 1.0 : (double) hits / total;
+    }
+
+    /**
+     * Get the number of blocks that are currently in the cache.
+     *
+     * @return the number of blocks
+     */
+    public long getBlockCount() {
+        long count = 0;
+        for (Segment s : segments) {
+            count += s.size();
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hitCount: %d, missCount: %d, hitRate: %.3f, evictionCount: %d, " +
+                "blockCount: %d, blockSize: %d", getHitCount(), getMissCount(), getHitRate(),
+                getEvictionCount(), getBlockCount(), blockSize);
+    }
+
+    private Segment getSegment(Key key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return segments[(h & Integer.MAX_VALUE) % SEGMENT_COUNT];
+    }
+
+    private static final class Key {
+
+        private final String blobId;
+
+        private final long offset;
+
+        Key(String blobId, long offset) {
+            this.blobId = blobId;
+            this.offset = offset;
+        }
+
+        @Override
+        public int hashCode() {
+            return blobId.hashCode() * 31 + Long.hashCode(offset);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return offset == other.offset && blobId.equals(other.blobId);
+        }
+    }
+
+    /**
+     * The location of a cached block.
+     */
+    private static final class Slot {
+
+        final int index;
+
+        final int length;
+
+        Slot(int index, int length) {
+            this.index = index;
+            this.length = length;
+        }
+    }
+
+    /**
+     * A segment with a fixed number of slots in a direct buffer, and a map
+     * (in access order) of the cached blocks.
+     */
+    private final class Segment {
+
+        private final ByteBuffer buffer;
+
+        private final int[] freeSlots;
+
+        private int freeCount;
+
+        private final LinkedHashMap<Key, Slot> map = new LinkedHashMap<>(16, 0.75f, true);
+
+        Segment(int slots) {
+            buffer = ByteBuffer.allocateDirect(slots * blockSize);
+            freeSlots = new int[slots];
+            for (int i = 0; i < slots; i++) {
+                freeSlots[i] = slots - 1 - i;
+            }
+            freeCount = slots;
+        }
+
+        synchronized boolean get(Key key, byte[] target, int length) {
+            Slot slot = map.get(key);
+            if (slot == null || slot.length < length) {
+                return false;
+            }
+            buffer.position(slot.index * blockSize);
+            buffer.get(target, 0, length);
+            return true;
+        }
+
+        synchronized void put(Key key, byte[] data, int length) {
+            Slot old = map.get(key);
+            if (old != null && old.length >= length) {
+                return;
+            }
+            int index;
+            if (old != null) {
+                index = old.index;
+            } else if (freeCount > 0) {
+                index = freeSlots[--freeCount];
+            } else if (!map.isEmpty()) {
+                Iterator<Map.Entry<Key, Slot>> it = map.entrySet().iterator();
+                index = it.next().getValue().index;
+                it.remove();
+                evictionCount.increment();
+            } else {
+                return;
+            }
+            buffer.position(index * blockSize);
+            buffer.put(data, 0, length);
+            map.put(key, new Slot(index, length));
+        }
+
+        synchronized int size() {
+            return map.size();
+        }
+    }
+
+}
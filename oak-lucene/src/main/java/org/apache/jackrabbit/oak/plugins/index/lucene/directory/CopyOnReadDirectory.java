@@ -19,16 +19,26 @@
 
 package org.apache.jackrabbit.oak.plugins.index.lucene.directory;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 import org.apache.jackrabbit.guava.common.collect.ImmutableSet;
@@ -37,10 +47,12 @@ import org.apache.jackrabbit.guava.common.collect.Sets;
 import org.apache.jackrabbit.oak.commons.PerfLogger;
 import org.apache.jackrabbit.oak.plugins.index.lucene.IndexCopier;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.FilterDirectory;
 import org.apache.lucene.store.IOContext;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -72,6 +84,19 @@ public class CopyOnReadDirectory extends FilterDirectory {
 
     long waitOtherCopyTimeoutMillis = Long.getLong(WAIT_OTHER_COPY_SYSPROP_NAME, TimeUnit.SECONDS.toMillis(30));
 
+    /**
+     * The buffer size when copying to a partial file. When resuming a copy,
+     * the last block of this size of the partial file is compared with the
+     * remote file.
+     */
+    static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The number of bytes after which a partial file is synced, and its
+     * synced length is recorded.
+     */
+    static final long COPY_SYNC_INTERVAL = 16 * 1024 * 1024;
+
     private final ConcurrentMap<String, CORFileReference> files = newConcurrentMap();
 
     public CopyOnReadDirectory(IndexCopier indexCopier, Directory remote, Directory local, boolean prefetch,
@@ -85,7 +110,18 @@ public class CopyOnReadDirectory extends FilterDirectory {
         this.indexPath = indexPath;
 
         if (prefetch) {
-            prefetchIndexFiles();
+            if (indexCopier.isWarmupEnabled()) {
+                copyInParallel(listRemoteFiles(), true);
+            } else {
+                prefetchIndexFiles();
+            }
+        } else {
+            if (remote instanceof OakDirectory && ((OakDirectory) remote).isNewFilesManifestSaved()) {
+                copyMissingFiles((OakDirectory) remote);
+            }
+            if (indexCopier.isWarmupEnabled()) {
+                copyInParallel(listRemoteFiles(), false);
+            }
         }
     }
 
@@ -186,10 +222,130 @@ public class CopyOnReadDirectory extends FilterDirectory {
         PERF_LOGGER.end(start, -1, "[{}] Copied {} files totaling {}", indexPath, copyCount, humanReadableByteCount(totalSize));
     }
 
+    private List<String> listRemoteFiles() throws IOException {
+        return stream(remote.listAll())
+                .filter(name -> !IndexCopier.REMOTE_ONLY.contains(name))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Copy the files that are missing locally before the index is opened. If
+     * all other files were copied when an earlier revision was opened, only
+     * the files added by the last commit (the manifest) are copied. Otherwise,
+     * for example if this node did not open the previous revision, or after a
+     * restart, all remote files are compared with the local files.
+     */
+    private void copyMissingFiles(OakDirectory remote) throws IOException {
+        String localDir = getLocalDirPath(local);
+        List<String> remoteFiles = listRemoteFiles();
+        Set<String> copied = localDir == null ? null : indexCopier.getCopiedFileNames(localDir);
+        Set<String> newFiles = remote.getNewFiles();
+        List<String> toCopy;
+        if (copied != null && remoteFiles.stream()
+                .allMatch(name -> newFiles.contains(name) || copied.contains(name))) {
+            toCopy = remoteFiles.stream()
+                    .filter(name -> newFiles.contains(name) && !copied.contains(name))
+                    .collect(Collectors.toList());
+        } else {
+            toCopy = listMissingLocalFiles(remoteFiles);
+        }
+        if (!toCopy.isEmpty()) {
+            copyInParallel(toCopy, true);
+        }
+        if (localDir != null) {
+            for (String name : toCopy) {
+                if (!local.fileExists(name)) {
+                    // not copied, compare all files the next time
+                    return;
+                }
+            }
+            indexCopier.setCopiedFileNames(localDir, ImmutableSet.copyOf(remoteFiles));
+        }
+    }
+
+    @Nullable
+    private static String getLocalDirPath(Directory dir) {
+        while (dir instanceof FilterDirectory) {
+            dir = ((FilterDirectory) dir).getDelegate();
+        }
+        return dir instanceof FSDirectory ? ((FSDirectory) dir).getDirectory().getAbsolutePath() : null;
+    }
+
+    /**
+     * List the remote files that don't exist locally, or have a different
+     * length.
+     */
+    private List<String> listMissingLocalFiles(List<String> remoteFiles) throws IOException {
+        List<String> missing = Lists.newArrayList();
+        for (String name : remoteFiles) {
+            if (!local.fileExists(name) || local.fileLength(name) != remote.fileLength(name)) {
+                missing.add(name);
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Copy index files in parallel, using the warm-up threads of the index
+     * copier if enabled, and the executor otherwise.
+     *
+     * @param names the names of the files to copy
+     * @param wait whether to wait until all files are copied
+     */
+    private void copyInParallel(Collection<String> names, boolean wait) throws IOException {
+        long start = PERF_LOGGER.start();
+        AtomicLong totalSize = new AtomicLong();
+        AtomicInteger copyCount = new AtomicInteger();
+        List<Future<?>> futures = Lists.newArrayList();
+        for (String name : names) {
+            if (!remote.fileExists(name)) {
+                continue;
+            }
+            long fileSize = remote.fileLength(name);
+            Runnable task = () -> {
+                if (closed.get() || indexCopier.isClosed()) {
+                    return;
+                }
+                CORFileReference fileRef = new CORFileReference(name);
+                // skip files that are already copied or scheduled for copy
+                if (files.putIfAbsent(name, fileRef) == null) {
+                    long copied = copyFilesToLocal(fileRef, true, false);
+                    if (copied > 0) {
+                        copyCount.incrementAndGet();
+                        totalSize.addAndGet(copied);
+                    }
+                }
+            };
+            if (indexCopier.isWarmupEnabled()) {
+                futures.add(indexCopier.scheduleWarmup(indexPath, fileSize, task));
+            } else {
+                FutureTask<Void> future = new FutureTask<>(task, null);
+                futures.add(future);
+                executor.execute(future);
+            }
+        }
+        if (!wait) {
+            return;
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("[{}] Interrupted while waiting for the prefetch of index files", indexPath);
+                break;
+            } catch (ExecutionException e) {
+                log.warn("[{}] Error occurred while prefetching index files", indexPath, e.getCause());
+            }
+        }
+        PERF_LOGGER.end(start, -1, "[{}] Copied {} files totaling {}", indexPath, copyCount.get(),
+                humanReadableByteCount(totalSize.get()));
+    }
+
     private long copyFilesToLocal(CORFileReference reference, boolean sync, boolean logDuration) {
         String name = reference.name;
         boolean success = false;
-        boolean copyAttempted = false;
+        LocalIndexFile copiedFile = null;
         long fileSize = 0;
         try {
             if (!local.fileExists(name)) {
@@ -198,12 +354,24 @@ public class CopyOnReadDirectory extends FilterDirectory {
                     perfStart = PERF_LOGGER.start();
                 }
 
-                fileSize = remote.fileLength(name);
-                LocalIndexFile file = new LocalIndexFile(local, name, fileSize, true);
-                long start = indexCopier.startCopy(file);
-                copyAttempted = true;
+                long remoteLength = remote.fileLength(name);
+                LocalIndexFile file = new LocalIndexFile(local, name, remoteLength, true);
+                long start = indexCopier.tryStartCopy(file);
+                if (start < 0) {
+                    // the file is copied concurrently, for example by the warm-up
+                    indexCopier.waitForCopyCompletion(file, waitOtherCopyTimeoutMillis);
+                    if (local.fileExists(name) && local.fileLength(name) == remoteLength) {
+                        reference.markValid();
+                    } else {
+                        logRemoteAccess("[{}] Found in progress copy of file {}. Would read from remote", indexPath, name);
+                    }
+                    success = true;
+                    return 0;
+                }
+                copiedFile = file;
+                fileSize = remoteLength;
 
-                remote.copy(local, name, name, IOContext.READ);
+                copyFromRemote(name, fileSize);
                 reference.markValid();
 
                 if (sync) {
@@ -249,7 +417,8 @@ public class CopyOnReadDirectory extends FilterDirectory {
             //to download the file. Look into support for retry
             log.warn("[{}] Error occurred while copying file [{}] from {} to {}", indexPath, name, remote, local, e);
         } finally {
-            if (copyAttempted && !success){
+            if (copiedFile != null && !success){
+                // a partial copy is kept, so that the copy can be resumed
                 try {
                     if (local.fileExists(name)) {
                         local.deleteFile(name);
@@ -257,11 +426,97 @@ public class CopyOnReadDirectory extends FilterDirectory {
                 } catch (IOException e) {
                     log.warn("[{}] Error occurred while deleting corrupted file [{}] from [{}]", indexPath, name, local, e);
                 }
+                indexCopier.failedCopy(copiedFile);
             }
         }
         return fileSize;
     }
 
+    /**
+     * Copy a file from the remote directory. If the local directory is a file
+     * system directory, the file is first copied to a partial file, which is
+     * renamed once complete. The partial file is synced periodically, and the
+     * synced length is recorded in a separate file. If a partial file exists
+     * already (because an earlier copy was interrupted), the copy is resumed
+     * after the synced part, if the last block of that part matches the
+     * remote file. Bytes after the synced length may not have reached the
+     * disk, and are copied again.
+     *
+     * The partial file is always synced before it is renamed, as it is not
+     * written using the local directory (which then can't sync it).
+     *
+     * @param name the file name
+     * @param fileSize the file size
+     */
+    private void copyFromRemote(String name, long fileSize) throws IOException {
+        File dir = LocalIndexFile.getFSDir(local);
+        if (dir == null) {
+            remote.copy(local, name, name, IOContext.READ);
+            return;
+        }
+        File partial = new File(dir, name + LocalIndexFile.PARTIAL_COPY_SUFFIX);
+        File syncedLength = new File(dir, name + LocalIndexFile.SYNCED_LENGTH_SUFFIX);
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        try (IndexInput in = remote.openInput(name, IOContext.READ);
+             RandomAccessFile out = new RandomAccessFile(partial, "rw")) {
+            long synced = LocalIndexFile.readSyncedLength(syncedLength);
+            long pos = getResumePosition(in, out, synced, fileSize, buffer);
+            if (pos > 0) {
+                log.debug("[{}] Resuming copy of file {} at {}", indexPath, name, pos);
+                indexCopier.resumedCopy(pos);
+            }
+            out.setLength(pos);
+            out.seek(pos);
+            in.seek(pos);
+            long nextSync = pos + COPY_SYNC_INTERVAL;
+            while (pos < fileSize) {
+                int len = (int) Math.min(buffer.length, fileSize - pos);
+                in.readBytes(buffer, 0, len);
+                out.write(buffer, 0, len);
+                pos += len;
+                if (pos >= nextSync && pos < fileSize) {
+                    out.getFD().sync();
+                    LocalIndexFile.writeSyncedLength(syncedLength, pos);
+                    nextSync = pos + COPY_SYNC_INTERVAL;
+                }
+            }
+            out.getFD().sync();
+        }
+        Files.move(partial.toPath(), new File(dir, name).toPath(), StandardCopyOption.ATOMIC_MOVE);
+        Files.deleteIfExists(syncedLength.toPath());
+    }
+
+    /**
+     * Get the position from where the copy to a partial file can be resumed:
+     * the synced length of the partial file. Lucene files of this version
+     * don't have a checksum, so the last block of the synced part is also
+     * compared with the remote file, to detect a partial file of a different
+     * file with the same name.
+     *
+     * @param synced the synced length of the partial file
+     * @return the number of bytes that don't need to be copied again
+     */
+    static long getResumePosition(IndexInput in, RandomAccessFile out, long synced,
+            long fileSize, byte[] buffer) throws IOException {
+        long length = Math.min(Math.min(out.length(), synced), fileSize);
+        if (length == 0) {
+            return 0;
+        }
+        int len = (int) Math.min(buffer.length, length);
+        long blockStart = length - len;
+        byte[] localBlock = new byte[len];
+        out.seek(blockStart);
+        out.readFully(localBlock);
+        in.seek(blockStart);
+        in.readBytes(buffer, 0, len);
+        for (int i = 0; i < len; i++) {
+            if (buffer[i] != localBlock[i]) {
+                return 0;
+            }
+        }
+        return length;
+    }
+
     /**
      * Close the files _after_ the method returns (asynchronously).
      *
@@ -336,6 +591,8 @@ public class CopyOnReadDirectory extends FilterDirectory {
                 ImmutableSet.copyOf(local.listAll()).stream()
                 // but not in my view
                 .filter(name -> !remoteFiles.contains(name))
+                // and not a partial copy of a file in my view
+                .filter(name -> !remoteFiles.contains(LocalIndexFile.getPartialCopyOf(name)))
                 // and also older than a safe timestamp (deleteBeforeTS)
                 .filter(name -> IndexCopier.isFileModifiedBefore(name, local, deleteBeforeTS))
                 // can be deleted
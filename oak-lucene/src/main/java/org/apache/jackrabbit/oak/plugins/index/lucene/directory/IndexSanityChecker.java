@@ -59,6 +59,11 @@ public class IndexSanityChecker {
         } else {
             //Remove local files which are not found in remote
             for (String fileName : local.listAll()) {
+                String copyOf = LocalIndexFile.getPartialCopyOf(fileName);
+                if (copyOf != null && remote.fileExists(copyOf)) {
+                    //Keep partial copies, so that the copy can be resumed
+                    continue;
+                }
                 if (!remote.fileExists(fileName)) {
                     local.deleteFile(fileName);
                 }
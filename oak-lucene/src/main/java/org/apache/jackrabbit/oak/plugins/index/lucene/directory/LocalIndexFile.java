@@ -19,7 +19,11 @@
 
 package org.apache.jackrabbit.oak.plugins.index.lucene.directory;
 
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.lucene.store.Directory;
@@ -29,6 +33,24 @@ import org.apache.lucene.store.FilterDirectory;
 import static org.apache.jackrabbit.oak.commons.IOUtils.humanReadableByteCount;
 
 public final class LocalIndexFile {
+    /**
+     * The suffix of the file an index file is copied to, before it is
+     * renamed. The copy of such a file can be resumed.
+     */
+    public static final String PARTIAL_COPY_SUFFIX = ".partial";
+
+    /**
+     * The suffix of the file that contains the length of the partial copy
+     * that was synced to disk. Only that part of a partial copy is kept when
+     * the copy is resumed.
+     */
+    public static final String SYNCED_LENGTH_SUFFIX = PARTIAL_COPY_SUFFIX + ".synced";
+
+    /**
+     * Mixed into the stored synced length, to detect corrupt files.
+     */
+    private static final long SYNCED_LENGTH_CHECK = 0x5eed5eed5eed5eedL;
+
     final File dir;
     final String name;
     final long size;
@@ -112,7 +134,61 @@ public final class LocalIndexFile {
     }
 
     public long actualSize(){
-        return dir != null ? new File(dir, name).length() : 0;
+        if (dir == null) {
+            return 0;
+        }
+        return Math.max(new File(dir, name).length(), new File(dir, name + PARTIAL_COPY_SUFFIX).length());
+    }
+
+    /**
+     * Get the name of the index file of a partial copy (or of the file that
+     * contains its synced length).
+     *
+     * @param fileName the file name
+     * @return the name of the index file, or null if the file is not a partial copy
+     */
+    public static String getPartialCopyOf(String fileName) {
+        if (fileName.endsWith(SYNCED_LENGTH_SUFFIX)) {
+            return fileName.substring(0, fileName.length() - SYNCED_LENGTH_SUFFIX.length());
+        }
+        if (!fileName.endsWith(PARTIAL_COPY_SUFFIX)) {
+            return null;
+        }
+        return fileName.substring(0, fileName.length() - PARTIAL_COPY_SUFFIX.length());
+    }
+
+    /**
+     * Read the length of a partial copy that was synced to disk.
+     *
+     * @param file the file that contains the synced length
+     * @return the length, or 0 if the file doesn't exist or is corrupt
+     */
+    public static long readSyncedLength(File file) {
+        if (file.length() != 16) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            long length = in.readLong();
+            return in.readLong() == (length ^ SYNCED_LENGTH_CHECK) ? length : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Write (and sync) the length of a partial copy that was synced to disk.
+     *
+     * @param file the file that contains the synced length
+     * @param length the length
+     */
+    public static void writeSyncedLength(File file, long length) throws IOException {
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            out.seek(0);
+            out.writeLong(length);
+            out.writeLong(length ^ SYNCED_LENGTH_CHECK);
+            out.setLength(16);
+            out.getFD().sync();
+        }
     }
 
     public static File getFSDir(Directory dir) {
@@ -164,11 +164,19 @@ class OakBufferedIndexFile implements OakIndexFile {
             checkState(!blobModified);
 
             int n = (int) Math.min(blobSize, length - (long)i * blobSize);
-            InputStream stream = data.get(i).getNewStream();
-            try {
-                ByteStreams.readFully(stream, blob, 0, n);
-            } finally {
-                stream.close();
+            Blob b = data.get(i);
+            BlockCache cache = BlockCache.getInstance();
+            String id = cache == null ? null : b.getContentIdentity();
+            if (id == null || !cache.get(id, (long)i * blobSize, blob, n)) {
+                InputStream stream = b.getNewStream();
+                try {
+                    ByteStreams.readFully(stream, blob, 0, n);
+                } finally {
+                    stream.close();
+                }
+                if (id != null) {
+                    cache.put(id, (long)i * blobSize, blob, n);
+                }
             }
             index = i;
         }
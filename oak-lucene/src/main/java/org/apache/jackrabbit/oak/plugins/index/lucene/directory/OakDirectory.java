@@ -20,6 +20,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.security.SecureRandom;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Set;
 
 import org.apache.jackrabbit.guava.common.collect.ImmutableSet;
@@ -66,6 +67,7 @@ public class OakDirectory extends Directory {
     static final PerfLogger PERF_LOGGER = new PerfLogger(LoggerFactory.getLogger(OakDirectory.class.getName() + ".perf"));
     static final Logger LOG = LoggerFactory.getLogger(OakDirectory.class.getName());
     public static final String PROP_DIR_LISTING = "dirListing";
+    public static final String PROP_NEW_FILES = "newFiles";
     static final String PROP_BLOB_SIZE = "blobSize";
     static final String PROP_UNIQUE_KEY = "uniqueKey";
     public static final String PROP_UNSAFE_FOR_ACTIVE_DELETION = "unsafeForActiveDeletion";
@@ -265,6 +267,41 @@ public class OakDirectory extends Directory {
                 }
             }
         }
+        if (!readOnly && !fileNamesAtStart.equals(fileNames)
+                && !(directoryBuilder instanceof ReadOnlyBuilder)) {
+            if (definition.saveNewFilesManifest()) {
+                Set<String> newFiles = ImmutableSet.copyOf(Sets.difference(fileNames, fileNamesAtStart));
+                directoryBuilder.setProperty(createProperty(PROP_NEW_FILES, newFiles, STRINGS));
+            } else if (directoryBuilder.hasProperty(PROP_NEW_FILES)) {
+                directoryBuilder.removeProperty(PROP_NEW_FILES);
+            }
+        }
+    }
+
+    /**
+     * Whether the names of the files added by each commit are saved (see
+     * {@link LuceneIndexDefinition#saveNewFilesManifest()}).
+     *
+     * @return true if saved
+     */
+    public boolean isNewFilesManifestSaved() {
+        return definition.saveNewFilesManifest();
+    }
+
+    /**
+     * Get the names of the files that were added by the last commit that
+     * changed the directory, if saved (see
+     * {@link LuceneIndexDefinition#saveNewFilesManifest()}). They are copied
+     * first when opening the index on another cluster node.
+     *
+     * @return the file names, or an empty set if not saved
+     */
+    public Set<String> getNewFiles() {
+        PropertyState newFiles = directoryBuilder.getProperty(PROP_NEW_FILES);
+        if (newFiles == null) {
+            return Collections.emptySet();
+        }
+        return ImmutableSet.copyOf(newFiles.getValue(STRINGS));
     }
 
     @Override
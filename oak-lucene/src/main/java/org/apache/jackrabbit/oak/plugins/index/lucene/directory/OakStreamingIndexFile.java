@@ -40,6 +40,11 @@ import static org.apache.jackrabbit.oak.api.Type.BINARY;
 
 /**
  * A file which streams blob directly off of storage.
+ * <p>
+ * If the {@link BlockCache} is enabled, and the blob has a content identity,
+ * the file is read in blocks of the block size of the cache, and the blocks
+ * are shared with other inputs (and clones) of the same blob. The blob is
+ * then only streamed for blocks that are not in the cache.
  */
 class OakStreamingIndexFile implements OakIndexFile, AutoCloseable {
     private static final Logger LOG = LoggerFactory.getLogger(OakStreamingIndexFile.class.getName());
@@ -91,6 +96,37 @@ class OakStreamingIndexFile implements OakIndexFile, AutoCloseable {
 
     private final BlobFactory blobFactory;
 
+    /**
+     * The block cache, or null if it is disabled (or the blob has no content
+     * identity, or the file is written).
+     */
+    private BlockCache blockCache;
+
+    /**
+     * The content identity of the blob, if the block cache is used.
+     */
+    private String blobId;
+
+    /**
+     * The current block, if the block cache is used.
+     */
+    private byte[] block;
+
+    /**
+     * The position of the current block within the file, or -1.
+     */
+    private long blockStart = -1;
+
+    /**
+     * The length of the current block.
+     */
+    private int blockLength;
+
+    /**
+     * The position of the input stream, if the block cache is used.
+     */
+    private long streamPosition;
+
     OakStreamingIndexFile(String name, NodeBuilder file, String dirDetails,
                           @NotNull BlobFactory blobFactory) {
         this.name = name;
@@ -115,6 +151,12 @@ class OakStreamingIndexFile implements OakIndexFile, AutoCloseable {
             if (uniqueKey != null) {
                 this.length = Math.max(0, this.length - uniqueKey.length);
             }
+            BlockCache cache = BlockCache.getInstance();
+            this.blobId = cache == null ? null : blob.getContentIdentity();
+            if (blobId != null) {
+                this.blockCache = cache;
+                this.block = new byte[cache.getBlockSize()];
+            }
         }
 
         this.blobInputStream = null;
@@ -131,6 +173,9 @@ class OakStreamingIndexFile implements OakIndexFile, AutoCloseable {
         this.blob = that.blob;
         this.blobModified = that.blobModified;
         this.blobFactory = that.blobFactory;
+        this.blockCache = that.blockCache;
+        this.blobId = that.blobId;
+        this.block = that.block == null ? null : new byte[that.block.length];
     }
 
     private void setupInputStream() throws IOException {
@@ -191,6 +236,9 @@ class OakStreamingIndexFile implements OakIndexFile, AutoCloseable {
                     "position: %d, file length: %d", dirDetails, name, pos, length);
             releaseInputStream();
             throw new IOException(msg);
+        } else if (blockCache != null) {
+            // the stream is positioned when a block is loaded
+            position = pos;
         } else {
             if (blobInputStream == null) {
                 position = pos;
@@ -231,6 +279,12 @@ class OakStreamingIndexFile implements OakIndexFile, AutoCloseable {
             throw new IOException(msg);
         }
 
+        if (blockCache != null) {
+            readBlocks(b, offset, len);
+            position += len;
+            return;
+        }
+
         setupInputStream();
         int readCnt = ByteStreams.read(blobInputStream, b, offset, len);
         if (readCnt < len) {
@@ -244,6 +298,40 @@ class OakStreamingIndexFile implements OakIndexFile, AutoCloseable {
         position += len;
     }
 
+    private void readBlocks(byte[] b, int offset, int len) throws IOException {
+        long pos = position;
+        while (len > 0) {
+            loadBlock(pos - pos % block.length);
+            int blockOffset = (int) (pos - blockStart);
+            int n = Math.min(len, blockLength - blockOffset);
+            System.arraycopy(block, blockOffset, b, offset, n);
+            pos += n;
+            offset += n;
+            len -= n;
+        }
+    }
+
+    private void loadBlock(long start) throws IOException {
+        if (start == blockStart) {
+            return;
+        }
+        int n = (int) Math.min(block.length, length - start);
+        blockStart = -1;
+        if (!blockCache.get(blobId, start, block, n)) {
+            if (blobInputStream == null || streamPosition > start) {
+                releaseInputStream();
+                blobInputStream = blob.getNewStream();
+                streamPosition = 0;
+            }
+            ByteStreams.skipFully(blobInputStream, start - streamPosition);
+            ByteStreams.readFully(blobInputStream, block, 0, n);
+            streamPosition = start + n;
+            blockCache.put(blobId, start, block, n);
+        }
+        blockStart = start;
+        blockLength = n;
+    }
+
     @Override
     public void writeBytes(final byte[] b, final int offset, final int len)
             throws IOException {
@@ -334,6 +422,7 @@ class OakStreamingIndexFile implements OakIndexFile, AutoCloseable {
 
         blob = blobFactory.createBlob(in);
         blobModified = true;
+        blockCache = null;
     }
 
     private static byte[] readUniqueKey(NodeBuilder file) {
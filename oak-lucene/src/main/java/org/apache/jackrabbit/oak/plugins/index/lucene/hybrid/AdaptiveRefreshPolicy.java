@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.plugins.index.lucene.hybrid;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.jackrabbit.oak.plugins.index.search.update.IndexUpdateListener;
+import org.apache.jackrabbit.oak.stats.Clock;
+import org.apache.jackrabbit.oak.stats.HistogramStats;
+
+/**
+ * A refresh policy for NRT indexes that adapts the refresh interval to the
+ * cost of refreshing the readers and to the rate of updates.
+ * <p>
+ * The interval is at least {@link #COST_FACTOR} times the (moving average
+ * of the) refresh time, so that refreshing doesn't use more than a fraction
+ * of the time. While updates keep arriving (the last update is more recent
+ * than the minimum interval), updates are batched by waiting at least the
+ * configured refresh delta, as with the timed policy. Once the updates stop,
+ * the readers are refreshed after the minimum interval, so that the last
+ * updates of a burst don't stay invisible for longer than needed.
+ * <p>
+ * The time from the first update that is not yet visible until the
+ * readers are refreshed (the staleness) is recorded in a histogram.
+ */
+class AdaptiveRefreshPolicy implements IndexUpdateListener {
+
+    /**
+     * Whether the adaptive policy is used for NRT indexes (the timed policy
+     * is used otherwise).
+     */
+    static final boolean ENABLED = Boolean.getBoolean("oak.lucene.nrt.adaptiveRefresh");
+
+    /**
+     * The minimum interval between refreshes, in milliseconds.
+     */
+    static final long MIN_INTERVAL_MILLIS = Long.getLong("oak.lucene.nrt.minRefreshMillis", 100);
+
+    /**
+     * The maximum interval between refreshes, in milliseconds.
+     */
+    static final long MAX_INTERVAL_MILLIS = Long.getLong("oak.lucene.nrt.maxRefreshMillis", 5000);
+
+    /**
+     * The minimum ratio of the refresh interval to the refresh time.
+     */
+    static final int COST_FACTOR = 10;
+
+    private final AtomicBoolean dirty = new AtomicBoolean();
+    private final Clock clock;
+    private final long minInterval;
+    private final long burstInterval;
+    private final long maxInterval;
+    private final HistogramStats stalenessHisto;
+
+    private volatile long firstUpdateTime;
+    private volatile long lastUpdateTime;
+    private volatile long lastRefreshTime;
+    private volatile double refreshTime = -1;
+
+    /**
+     * @param clock the clock
+     * @param minInterval the minimum interval in milliseconds
+     * @param burstInterval the minimum interval in milliseconds while updates
+     *            keep arriving
+     * @param maxInterval the maximum interval in milliseconds
+     * @param stalenessHisto the histogram of the staleness in milliseconds
+     */
+    AdaptiveRefreshPolicy(Clock clock, long minInterval, long burstInterval, long maxInterval,
+                          HistogramStats stalenessHisto) {
+        this.clock = clock;
+        this.minInterval = minInterval;
+        this.burstInterval = Math.max(minInterval, burstInterval);
+        this.maxInterval = Math.max(this.burstInterval, maxInterval);
+        this.stalenessHisto = stalenessHisto;
+    }
+
+    @Override
+    public void refreshOnReadIfRequired(Runnable refreshCallback) {
+        refreshIfRequired(refreshCallback);
+    }
+
+    @Override
+    public void refreshOnWriteIfRequired(Runnable refreshCallback) {
+        refreshIfRequired(refreshCallback);
+    }
+
+    @Override
+    public void updated() {
+        long now = clock.getTime();
+        lastUpdateTime = now;
+        if (dirty.compareAndSet(false, true)) {
+            firstUpdateTime = now;
+        }
+    }
+
+    /**
+     * Get the current minimum interval between refreshes.
+     *
+     * @param now the current time
+     * @return the interval in milliseconds
+     */
+    long getRefreshInterval(long now) {
+        double time = refreshTime;
+        long interval = time < 0 ? 0 : (long) (time * COST_FACTOR);
+        long lowerBound = now - lastUpdateTime < minInterval ? burstInterval : minInterval;
+        return Math.min(maxInterval, Math.max(lowerBound, interval));
+    }
+
+    private void refreshIfRequired(Runnable refreshCallback) {
+        if (!dirty.get()) {
+            return;
+        }
+        long now = clock.getTime();
+        long first = firstUpdateTime;
+        if (now - lastRefreshTime > getRefreshInterval(now)
+                && dirty.compareAndSet(true, false)) {
+            lastRefreshTime = now;
+            refreshCallback.run();
+            long end = clock.getTime();
+            double time = refreshTime;
+            // exponential moving average, to smooth out outliers
+            refreshTime = time < 0 ? end - now : time * 0.8 + (end - now) * 0.2;
+            stalenessHisto.update(end - first);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AdaptiveRefreshPolicy(refreshTime: %.1f ms, interval: %d ms)",
+                refreshTime, getRefreshInterval(clock.getTime()));
+    }
+}
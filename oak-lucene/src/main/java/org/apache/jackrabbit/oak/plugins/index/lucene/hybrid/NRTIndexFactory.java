@@ -22,6 +22,7 @@ package org.apache.jackrabbit.oak.plugins.index.lucene.hybrid;
 import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
@@ -33,7 +34,9 @@ import org.apache.jackrabbit.oak.plugins.index.search.IndexDefinition;
 import org.apache.jackrabbit.oak.plugins.index.search.update.IndexUpdateListener;
 import org.apache.jackrabbit.oak.plugins.index.search.update.RefreshOnWritePolicy;
 import org.apache.jackrabbit.oak.plugins.index.search.update.TimedRefreshPolicy;
+import org.apache.jackrabbit.oak.plugins.metric.util.StatsProviderUtil;
 import org.apache.jackrabbit.oak.stats.Clock;
+import org.apache.jackrabbit.oak.stats.HistogramStats;
 import org.apache.jackrabbit.oak.stats.StatisticsProvider;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
@@ -61,6 +64,7 @@ public class NRTIndexFactory implements Closeable{
     private final StatisticsProvider statisticsProvider;
     private NRTDirectoryFactory directoryFactory = DefaultNRTDirFactory.INSTANCE;
     private boolean assertAllResourcesClosed = Boolean.getBoolean("oak.lucene.assertAllResourcesClosed");
+    private boolean adaptiveRefresh = AdaptiveRefreshPolicy.ENABLED;
 
     public NRTIndexFactory(IndexCopier indexCopier, StatisticsProvider statisticsProvider) {
         this(indexCopier, Clock.SIMPLE, REFRESH_DELTA_IN_SECS, statisticsProvider);
@@ -119,6 +123,14 @@ public class NRTIndexFactory implements Closeable{
         this.assertAllResourcesClosed = assertAllResourcesClosed;
     }
 
+    /**
+     * Use a refresh policy that adapts the refresh interval to the refresh
+     * cost and the rate of updates, for NRT (not sync) indexes
+     */
+    public void setAdaptiveRefresh(boolean adaptiveRefresh) {
+        this.adaptiveRefresh = adaptiveRefresh;
+    }
+
     private void closeLast(String indexPath) {
         List<NRTIndex> existing = indexes.get(indexPath);
         if (existing.size() <= MAX_INDEX_COUNT){
@@ -150,6 +162,13 @@ public class NRTIndexFactory implements Closeable{
             return new RefreshOnWritePolicy();
             //return new RefreshOnReadPolicy(clock, TimeUnit.SECONDS, refreshDeltaInSecs);
         }
+        if (adaptiveRefresh) {
+            HistogramStats stalenessHisto = new StatsProviderUtil(statisticsProvider).getHistoStats()
+                    .apply("NRT_STALENESS", Collections.singletonMap("index", definition.getIndexPath()));
+            return new AdaptiveRefreshPolicy(clock, AdaptiveRefreshPolicy.MIN_INTERVAL_MILLIS,
+                    TimeUnit.SECONDS.toMillis(refreshDeltaInSecs), AdaptiveRefreshPolicy.MAX_INTERVAL_MILLIS,
+                    stalenessHisto);
+        }
         return new TimedRefreshPolicy(clock, TimeUnit.SECONDS, refreshDeltaInSecs);
     }
 
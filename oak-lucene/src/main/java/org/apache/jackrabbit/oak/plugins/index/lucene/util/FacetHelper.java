@@ -103,6 +103,10 @@ public class FacetHelper {
                             facets = new StatisticalSortedSetDocValuesFacetCounts(state, facetsCollector, plan.getFilter(),
                                     secureFacetConfiguration);
                             break;
+                        case CACHED:
+                            facets = new SecureSortedSetDocValuesFacetCounts(state, facetsCollector, plan.getFilter(),
+                                    SecureFacetAccessCache.getInstance());
+                            break;
                         case SECURE:
                         default:
                             facets = new SecureSortedSetDocValuesFacetCounts(state, facetsCollector, plan.getFilter());
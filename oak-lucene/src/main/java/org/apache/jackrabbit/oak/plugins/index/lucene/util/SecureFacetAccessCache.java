@@ -0,0 +1,187 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.lucene.util;
+
+import java.security.Principal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.lucene.index.AtomicReader;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Caches the results of the access checks of secure facets, so that facet
+ * counting does not need to load the path of each matching document and
+ * check whether it is readable, if the same facet was counted before.
+ * <p>
+ * For each index segment, set of principals, and facet dimension, there are
+ * two bitsets: the documents that were checked, and the documents that are
+ * readable. They are filled lazily, when counting the facets of the matching
+ * documents. A segment never changes, so the bitsets stay valid until the
+ * segment is merged away, except if the access control of the nodes changes.
+ * That's why the bitsets expire after a while (see
+ * {@link #EXPIRY_SECONDS}).
+ */
+class SecureFacetAccessCache {
+
+    /**
+     * The time in seconds after which the cached access checks are discarded.
+     */
+    static final long EXPIRY_SECONDS = Long.getLong("oak.lucene.secureFacetCacheExpirySeconds", 60);
+
+    /**
+     * The maximum number of bitsets per index segment.
+     */
+    static final int MAX_ENTRIES_PER_SEGMENT = Integer.getInteger("oak.lucene.secureFacetCacheEntries", 100);
+
+    private static final SecureFacetAccessCache INSTANCE =
+            new SecureFacetAccessCache(TimeUnit.SECONDS.toMillis(EXPIRY_SECONDS), MAX_ENTRIES_PER_SEGMENT);
+
+    /**
+     * The bitsets by segment core, which are removed when the segment is
+     * garbage collected.
+     */
+    private final Map<Object, Map<Key, AccessBits>> cache = new WeakHashMap<>();
+
+    private final long expiryMillis;
+
+    private final int maxEntriesPerSegment;
+
+    SecureFacetAccessCache(long expiryMillis, int maxEntriesPerSegment) {
+        this.expiryMillis = expiryMillis;
+        this.maxEntriesPerSegment = maxEntriesPerSegment;
+    }
+
+    static SecureFacetAccessCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the access bits of a segment.
+     *
+     * @param segment the segment reader
+     * @param principals the principals of the session
+     * @param dimension the facet dimension
+     * @return the (possibly empty) access bits
+     */
+    @NotNull
+    AccessBits getAccessBits(AtomicReader segment, Set<Principal> principals, String dimension) {
+        Key key = new Key(principals, dimension);
+        long now = System.currentTimeMillis();
+        synchronized (cache) {
+            Map<Key, AccessBits> map = cache.computeIfAbsent(segment.getCoreCacheKey(),
+                    k -> new LinkedHashMap<Key, AccessBits>(16, 0.75f, true) {
+                        @Override
+                        protected boolean removeEldestEntry(Map.Entry<Key, AccessBits> eldest) {
+                            return size() > maxEntriesPerSegment;
+                        }
+                    });
+            AccessBits bits = map.get(key);
+            if (bits == null || now - bits.created > expiryMillis) {
+                bits = new AccessBits(segment.maxDoc(), now);
+                map.put(key, bits);
+            }
+            return bits;
+        }
+    }
+
+    /**
+     * The access checks of the documents of a segment. Documents may be
+     * checked concurrently.
+     */
+    static class AccessBits {
+
+        private final AtomicLongArray checked;
+
+        private final AtomicLongArray readable;
+
+        private final long created;
+
+        AccessBits(int maxDoc, long created) {
+            int words = (maxDoc + 63) >>> 6;
+            this.checked = new AtomicLongArray(words);
+            this.readable = new AtomicLongArray(words);
+            this.created = created;
+        }
+
+        /**
+         * Get the cached result of the access check of a document.
+         *
+         * @param doc the document id within the segment
+         * @return whether the document is readable, or null if not checked yet
+         */
+        @Nullable
+        Boolean isReadable(int doc) {
+            long mask = 1L << doc;
+            if ((checked.get(doc >>> 6) & mask) == 0) {
+                return null;
+            }
+            return (readable.get(doc >>> 6) & mask) != 0;
+        }
+
+        void setReadable(int doc, boolean isReadable) {
+            long mask = 1L << doc;
+            if (isReadable) {
+                readable.getAndAccumulate(doc >>> 6, mask, (a, b) -> a | b);
+            }
+            // set after the readable bit, so that a concurrent reader
+            // never sees a checked but not yet readable document
+            checked.getAndAccumulate(doc >>> 6, mask, (a, b) -> a | b);
+        }
+    }
+
+    private static final class Key {
+
+        private final Set<Principal> principals;
+
+        private final String dimension;
+
+        private final int hash;
+
+        Key(Set<Principal> principals, String dimension) {
+            this.principals = principals;
+            this.dimension = dimension;
+            this.hash = Objects.hash(principals, dimension);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return dimension.equals(other.dimension) && principals.equals(other.principals);
+        }
+    }
+
+}
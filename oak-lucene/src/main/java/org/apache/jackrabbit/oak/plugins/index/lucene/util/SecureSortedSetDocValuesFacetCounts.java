@@ -19,11 +19,14 @@
 package org.apache.jackrabbit.oak.plugins.index.lucene.util;
 
 import java.io.IOException;
+import java.security.Principal;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.jackrabbit.guava.common.collect.Maps;
+import org.apache.jackrabbit.oak.plugins.index.lucene.util.SecureFacetAccessCache.AccessBits;
 import org.apache.jackrabbit.oak.plugins.index.search.FieldNames;
 import org.apache.jackrabbit.oak.spi.query.Filter;
 import org.apache.lucene.document.Document;
@@ -41,6 +44,7 @@ import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.DocIdSet;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * ACL filtered version of {@link SortedSetDocValuesFacetCounts}
@@ -51,14 +55,25 @@ class SecureSortedSetDocValuesFacetCounts extends SortedSetDocValuesFacetCounts
     private final Filter filter;
     private final IndexReader reader;
     private final SortedSetDocValuesReaderState state;
+    private final SecureFacetAccessCache accessCache;
     private FacetResult facetResult = null;
 
     SecureSortedSetDocValuesFacetCounts(DefaultSortedSetDocValuesReaderState state, FacetsCollector facetsCollector, Filter filter) throws IOException {
+        this(state, facetsCollector, filter, null);
+    }
+
+    /**
+     * @param accessCache the cache for the access checks, or null to check
+     *                    all documents
+     */
+    SecureSortedSetDocValuesFacetCounts(DefaultSortedSetDocValuesReaderState state, FacetsCollector facetsCollector,
+                                        Filter filter, @Nullable SecureFacetAccessCache accessCache) throws IOException {
         super(state, facetsCollector);
         this.reader = state.origReader;
         this.facetsCollector = facetsCollector;
         this.filter = filter;
         this.state = state;
+        this.accessCache = accessCache;
     }
 
     @Override
@@ -78,7 +93,8 @@ class SecureSortedSetDocValuesFacetCounts extends SortedSetDocValuesFacetCounts
         }
 
         InaccessibleFacetCountManager inaccessibleFacetCountManager =
-                new InaccessibleFacetCountManager(dim, reader, filter, state, facetsCollector, topChildren.labelValues);
+                new InaccessibleFacetCountManager(dim, reader, filter, state, facetsCollector, topChildren.labelValues,
+                        accessCache);
         inaccessibleFacetCountManager.filterFacets();
         LabelAndValue[] labelAndValues = inaccessibleFacetCountManager.updateLabelAndValue();
 
@@ -100,11 +116,17 @@ class SecureSortedSetDocValuesFacetCounts extends SortedSetDocValuesFacetCounts
         private final LabelAndValue[] labelAndValues;
         private final Map<String, Integer> labelToIndexMap;
         private final long[] inaccessibleCounts;
+        private final SecureFacetAccessCache accessCache;
+        private final Set<Principal> principals;
 
         InaccessibleFacetCountManager(String dimension,
                                       IndexReader reader, Filter filter, SortedSetDocValuesReaderState state,
-                                      FacetsCollector facetsCollector, LabelAndValue[] labelAndValues) {
+                                      FacetsCollector facetsCollector, LabelAndValue[] labelAndValues,
+                                      @Nullable SecureFacetAccessCache accessCache) {
             this.dimension = dimension;
+            // access checks can only be shared if the principals are known
+            this.principals = accessCache == null ? null : filter.getPrincipals();
+            this.accessCache = principals == null ? null : accessCache;
             this.reader = reader;
             this.filter = filter;
             this.state = state;
@@ -124,22 +146,31 @@ class SecureSortedSetDocValuesFacetCounts extends SortedSetDocValuesFacetCounts
             List<MatchingDocs> matchingDocsList = facetsCollector.getMatchingDocs();
             for (MatchingDocs matchingDocs : matchingDocsList) {
                 DocIdSet bits = matchingDocs.bits;
+                AccessBits accessBits = accessCache == null ? null
+                        : accessCache.getAccessBits(matchingDocs.context.reader(), principals, dimension);
 
                 DocIdSetIterator docIdSetIterator = bits.iterator();
                 int doc = docIdSetIterator.nextDoc();
                 while (doc != DocIdSetIterator.NO_MORE_DOCS) {
                     int docId = matchingDocs.context.docBase + doc;
-                    filterFacet(docId);
+                    filterFacet(docId, doc, accessBits);
                     doc = docIdSetIterator.nextDoc();
                 }
             }
         }
 
-        private void filterFacet(int docId) throws IOException {
-            Document document = reader.document(docId);
+        private void filterFacet(int docId, int segmentDocId, @Nullable AccessBits accessBits) throws IOException {
+            Boolean readable = accessBits == null ? null : accessBits.isReadable(segmentDocId);
+            if (readable == null) {
+                Document document = reader.document(docId);
+                readable = filter.isAccessible(document.getField(FieldNames.PATH).stringValue() + "/" + dimension);
+                if (accessBits != null) {
+                    accessBits.setReadable(segmentDocId, readable);
+                }
+            }
 
             // filter using doc values (avoiding requiring stored values)
-            if (!filter.isAccessible(document.getField(FieldNames.PATH).stringValue() + "/" + dimension)) {
+            if (!readable) {
 
                 SortedSetDocValues docValues = state.getDocValues();
                 docValues.setDocument(docId);
@@ -61,4 +61,12 @@ public class DefaultIndexWriterFactory implements LuceneIndexWriterFactory {
                 FulltextIndexConstants.INDEX_DATA_CHILD_NAME,
                 LuceneIndexConstants.SUGGEST_DATA_CHILD_NAME, reindex, writerConfig);
     }
+
+    /**
+     * Determines if the writers write to a remote directory (see
+     * {@link DirectoryFactory#remoteDirectory()}).
+     */
+    public boolean remoteDirectory() {
+        return directoryFactory.remoteDirectory();
+    }
 }
@@ -53,6 +53,7 @@ import org.apache.jackrabbit.guava.common.util.concurrent.MoreExecutors;
 import org.apache.commons.io.FileUtils;
 import org.apache.jackrabbit.oak.commons.IOUtils;
 import org.apache.jackrabbit.oak.plugins.index.lucene.directory.LocalIndexFile;
+import org.apache.jackrabbit.oak.plugins.index.lucene.directory.OakDirectory;
 import org.apache.jackrabbit.oak.plugins.index.search.IndexDefinition;
 import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
@@ -234,6 +235,121 @@ public class IndexCopierTest {
     }
 
 
+    @Test
+    public void resumePartialCopy() throws Exception{
+        LuceneIndexDefinition defn = new LuceneIndexDefinition(root, builder.getNodeState(), "/foo");
+        IndexCopier c1 = new IndexCopier(newDirectExecutorService(), getWorkDir(), true);
+
+        Directory remote = new RAMDirectory();
+        byte[] t1 = writeFile(remote, "t1", 200 * 1024);
+        byte[] t2 = writeFile(remote, "t2", 200 * 1024);
+        byte[] t3 = writeFile(remote, "t3", 200 * 1024);
+
+        //An interrupted copy of t1 (of which 64 KB were synced), a partial
+        //file of t2 that doesn't match, and a partial file of t3 that was
+        //not synced
+        File indexDir = c1.getIndexDir(defn, "/foo", INDEX_DATA_CHILD_NAME);
+        FileUtils.writeByteArrayToFile(new File(indexDir, "t1" + LocalIndexFile.PARTIAL_COPY_SUFFIX),
+                Arrays.copyOf(t1, 100 * 1024));
+        LocalIndexFile.writeSyncedLength(new File(indexDir, "t1" + LocalIndexFile.SYNCED_LENGTH_SUFFIX), 64 * 1024);
+        FileUtils.writeByteArrayToFile(new File(indexDir, "t2" + LocalIndexFile.PARTIAL_COPY_SUFFIX),
+                randomBytes(100 * 1024));
+        LocalIndexFile.writeSyncedLength(new File(indexDir, "t2" + LocalIndexFile.SYNCED_LENGTH_SUFFIX), 100 * 1024);
+        FileUtils.writeByteArrayToFile(new File(indexDir, "t3" + LocalIndexFile.PARTIAL_COPY_SUFFIX),
+                Arrays.copyOf(t3, 100 * 1024));
+
+        Directory wrapped = c1.wrapForRead("/foo", defn, remote, INDEX_DATA_CHILD_NAME);
+        readAndAssert(wrapped, "t1", t1);
+        readAndAssert(wrapped, "t2", t2);
+        readAndAssert(wrapped, "t3", t3);
+
+        assertArrayEquals(t1, FileUtils.readFileToByteArray(new File(indexDir, "t1")));
+        assertArrayEquals(t2, FileUtils.readFileToByteArray(new File(indexDir, "t2")));
+        assertArrayEquals(t3, FileUtils.readFileToByteArray(new File(indexDir, "t3")));
+        for (String name : new String[] {"t1", "t2", "t3"}) {
+            assertFalse(new File(indexDir, name + LocalIndexFile.PARTIAL_COPY_SUFFIX).exists());
+            assertFalse(new File(indexDir, name + LocalIndexFile.SYNCED_LENGTH_SUFFIX).exists());
+        }
+        assertEquals(1, c1.getResumedCopyCount());
+        assertEquals(0, c1.getCopyInProgressCount());
+    }
+
+    @Test
+    public void parallelWarmup() throws Exception{
+        LuceneIndexDefinition defn = new LuceneIndexDefinition(root, builder.getNodeState(), "/foo");
+        IndexCopier c1 = new IndexCopier(newDirectExecutorService(), getWorkDir(), true, 3);
+        assertTrue(c1.isWarmupEnabled());
+
+        Directory remote = new RAMDirectory();
+        List<byte[]> data = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            data.add(writeFile(remote, "t" + i));
+        }
+
+        //With prefetch, the directory is opened once all files are copied
+        c1.wrapForRead("/foo", defn, remote, INDEX_DATA_CHILD_NAME);
+        File indexDir = c1.getIndexDir(defn, "/foo", INDEX_DATA_CHILD_NAME);
+        for (int i = 0; i < 10; i++) {
+            assertArrayEquals(data.get(i), FileUtils.readFileToByteArray(new File(indexDir, "t" + i)));
+        }
+        assertEquals(0, c1.getWarmupPendingCount());
+        assertTrue(c1.getWarmupProgress().startsWith("10 of 10 files"));
+        assertEquals(10, c1.getDownloadCount());
+
+        //The usage of indexes is kept across restarts
+        c1.setIndexUsage(indexPath -> "/foo".equals(indexPath) ? 7 : 0);
+        c1.close();
+        IndexCopier c2 = new IndexCopier(newDirectExecutorService(), getWorkDir(), true, 0);
+        assertFalse(c2.isWarmupEnabled());
+        assertEquals(7, c2.getIndexUsage("/foo"));
+        assertEquals(0, c2.getIndexUsage("/bar"));
+        c2.close();
+    }
+
+    @Test
+    public void copyNewFilesBeforeOpen() throws Exception{
+        builder.setProperty(LuceneIndexConstants.SAVE_NEW_FILES_MANIFEST, true);
+        LuceneIndexDefinition defn = new LuceneIndexDefinition(root, builder.getNodeState(), "/foo");
+        IndexCopier c1 = new IndexCopier(newDirectExecutorService(), getWorkDir());
+
+        //Two commits of the indexing node
+        Directory writeDir = new OakDirectory(builder, INDEX_DATA_CHILD_NAME, defn, false);
+        writeFile(writeDir, "t1");
+        writeDir.close();
+        writeDir = new OakDirectory(builder, INDEX_DATA_CHILD_NAME, defn, false);
+        byte[] t2 = writeFile(writeDir, "t2");
+        writeDir.close();
+
+        Directory remote = new OakDirectory(builder, INDEX_DATA_CHILD_NAME, defn, true);
+        c1.wrapForRead("/foo", defn, remote, INDEX_DATA_CHILD_NAME);
+
+        //The first revision was not opened: the files of both commits are copied
+        File indexDir = c1.getIndexDir(defn, "/foo", INDEX_DATA_CHILD_NAME);
+        assertTrue(new File(indexDir, "t1").exists());
+        assertArrayEquals(t2, FileUtils.readFileToByteArray(new File(indexDir, "t2")));
+        assertEquals(2, c1.getDownloadCount());
+
+        writeDir = new OakDirectory(builder, INDEX_DATA_CHILD_NAME, defn, false);
+        byte[] t3 = writeFile(writeDir, "t3");
+        writeDir.close();
+
+        //The previous revision was copied: only the new file (the manifest)
+        //is copied, the other files are not compared again
+        new File(indexDir, "t1").delete();
+        remote = new OakDirectory(builder, INDEX_DATA_CHILD_NAME, defn, true);
+        c1.wrapForRead("/foo", defn, remote, INDEX_DATA_CHILD_NAME);
+        assertArrayEquals(t3, FileUtils.readFileToByteArray(new File(indexDir, "t3")));
+        assertFalse(new File(indexDir, "t1").exists());
+        assertEquals(3, c1.getDownloadCount());
+
+        //After a restart, all files are compared
+        IndexCopier c2 = new IndexCopier(newDirectExecutorService(), getWorkDir());
+        remote = new OakDirectory(builder, INDEX_DATA_CHILD_NAME, defn, true);
+        c2.wrapForRead("/foo", defn, remote, INDEX_DATA_CHILD_NAME);
+        assertTrue(new File(indexDir, "t1").exists());
+        assertEquals(1, c2.getDownloadCount());
+    }
+
     @Test
     public void multiDirNames() throws Exception{
         LuceneIndexDefinition defn = new LuceneIndexDefinition(root, builder.getNodeState(), "/foo");
@@ -1112,6 +1228,14 @@ public class IndexCopierTest {
         DelayCopyingSimpleFSDirectory.updateLastModified(dir, name);
     }
 
+    private byte[] writeFile(Directory dir, String name, int size) throws IOException {
+        byte[] data = randomBytes(size);
+        IndexOutput o = dir.createOutput(name, IOContext.DEFAULT);
+        o.writeBytes(data, data.length);
+        o.close();
+        return data;
+    }
+
     private byte[] randomBytes(int size) {
         byte[] data = new byte[size];
         rnd.nextBytes(data);
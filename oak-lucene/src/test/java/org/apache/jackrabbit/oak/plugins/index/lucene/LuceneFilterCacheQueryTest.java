@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.lucene;
+
+import static org.apache.jackrabbit.oak.plugins.index.IndexConstants.INDEX_DEFINITIONS_NAME;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.jackrabbit.oak.InitialContent;
+import org.apache.jackrabbit.oak.Oak;
+import org.apache.jackrabbit.oak.api.ContentRepository;
+import org.apache.jackrabbit.oak.api.Tree;
+import org.apache.jackrabbit.oak.plugins.index.lucene.util.LuceneIndexDefinitionBuilder;
+import org.apache.jackrabbit.oak.query.AbstractQueryTest;
+import org.apache.jackrabbit.oak.spi.commit.Observer;
+import org.apache.jackrabbit.oak.spi.query.QueryIndexProvider;
+import org.apache.jackrabbit.oak.spi.security.OpenSecurityProvider;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+/**
+ * Full-text queries with property and path restrictions return the same
+ * results whether the restrictions are evaluated as a (cached) filter or not.
+ */
+@RunWith(Parameterized.class)
+public class LuceneFilterCacheQueryTest extends AbstractQueryTest {
+
+    private final int cacheSize;
+
+    private int oldCacheSize;
+
+    public LuceneFilterCacheQueryTest(int cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    @Parameterized.Parameters(name = "filterCacheSize = {0}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[] {0}, new Object[] {10});
+    }
+
+    @Override
+    protected ContentRepository createRepository() {
+        // the cache is created when the index is opened
+        oldCacheSize = LuceneFilterCache.setCacheSize(cacheSize);
+        LuceneIndexProvider provider = new LuceneIndexProvider();
+        return new Oak()
+                .with(new InitialContent())
+                .with(new OpenSecurityProvider())
+                .with((QueryIndexProvider) provider)
+                .with((Observer) provider)
+                .with(new LuceneIndexEditorProvider())
+                .createContentRepository();
+    }
+
+    @After
+    public void after() {
+        LuceneFilterCache.setCacheSize(oldCacheSize);
+    }
+
+    @Test
+    public void repeatedFullTextQuery() throws Exception {
+        LuceneIndexDefinitionBuilder defn = new LuceneIndexDefinitionBuilder();
+        defn.noAsync().evaluatePathRestrictions();
+        defn.indexRule("nt:base").property("text").analyzed().nodeScopeIndex();
+        defn.indexRule("nt:base").property("type").propertyIndex();
+        defn.build(root.getTree("/" + INDEX_DEFINITIONS_NAME).addChild("test"));
+        root.commit();
+
+        Tree test = root.getTree("/").addChild("test");
+        for (String parent : new String[] {"x", "y"}) {
+            Tree p = test.addChild(parent);
+            for (int i = 0; i < 10; i++) {
+                Tree n = p.addChild("n" + i);
+                n.setProperty("text", i % 2 == 0 ? "hello world" : "goodbye world");
+                n.setProperty("type", i % 3 == 0 ? "a" : "b");
+            }
+        }
+        root.commit();
+
+        String query = "select [jcr:path] from [nt:base] where contains(*, '%s') " +
+                "and [type] = 'a' and isdescendantnode('/test/x')";
+        assertThat(explain(String.format(query, "world")), containsString("lucene:test"));
+        long hits = LuceneFilterCache.getTotalHitCount();
+        for (int i = 0; i < 3; i++) {
+            assertQuery(String.format(query, "world"),
+                    Arrays.asList("/test/x/n0", "/test/x/n3", "/test/x/n6", "/test/x/n9"));
+            assertQuery(String.format(query, "hello"),
+                    Arrays.asList("/test/x/n0", "/test/x/n6"));
+            assertQuery(String.format(query, "goodbye"),
+                    Arrays.asList("/test/x/n3", "/test/x/n9"));
+        }
+        if (cacheSize > 0) {
+            assertTrue(LuceneFilterCache.getTotalHitCount() > hits);
+        } else {
+            assertEquals(hits, LuceneFilterCache.getTotalHitCount());
+        }
+    }
+
+    private String explain(String query) {
+        List<String> result = executeQuery("explain " + query, SQL2, false);
+        return result.get(0);
+    }
+
+}
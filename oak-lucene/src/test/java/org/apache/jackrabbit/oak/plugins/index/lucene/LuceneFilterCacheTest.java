@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.lucene;
+
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.CachingWrapperFilter;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.FilteredQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Test;
+
+import static org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexConstants.VERSION;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LuceneFilterCacheTest {
+
+    @Test
+    public void cacheFrequentlyUsedFilters() {
+        LuceneFilterCache cache = new LuceneFilterCache(10);
+
+        // first use: not cached
+        assertFalse(cache.getFilter(query("a")) instanceof CachingWrapperFilter);
+        assertEquals(0, cache.getFilterCount());
+
+        // second use: cached
+        Filter f = cache.getFilter(query("a"));
+        assertTrue(f instanceof CachingWrapperFilter);
+        assertSame(f, cache.getFilter(query("a")));
+        assertEquals(1, cache.getFilterCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void evictLeastRecentlyUsed() {
+        LuceneFilterCache cache = new LuceneFilterCache(2);
+        for (String v : new String[] {"a", "a", "b", "b", "a", "c", "c"}) {
+            cache.getFilter(query(v));
+        }
+        assertEquals(2, cache.getFilterCount());
+        long hits = cache.getHitCount();
+        // "a" was used more recently than "b"
+        cache.getFilter(query("a"));
+        assertEquals(hits + 1, cache.getHitCount());
+        cache.getFilter(query("b"));
+        assertEquals(hits + 1, cache.getHitCount());
+    }
+
+    @Test
+    public void filteredSearch() throws Exception {
+        Directory dir = new RAMDirectory();
+        try (IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(VERSION, new KeywordAnalyzer()))) {
+            for (int i = 0; i < 100; i++) {
+                Document doc = new Document();
+                doc.add(new StringField("type", i % 2 == 0 ? "even" : "odd", Field.Store.NO));
+                doc.add(new StringField("text", i % 3 == 0 ? "fizz" : "none", Field.Store.NO));
+                writer.addDocument(doc);
+            }
+        }
+        try (DirectoryReader reader = DirectoryReader.open(dir)) {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            LuceneFilterCache cache = new LuceneFilterCache(10);
+            for (int i = 0; i < 3; i++) {
+                Query q = new FilteredQuery(new TermQuery(new Term("text", "fizz")),
+                        cache.getFilter(new TermQuery(new Term("type", "even"))));
+                assertEquals(17, searcher.search(q, 100).totalHits);
+            }
+            assertEquals(1, cache.getHitCount());
+        }
+    }
+
+    private static Query query(String value) {
+        return new TermQuery(new Term("type", value));
+    }
+
+}
@@ -49,6 +49,7 @@ import org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexDefinition;
 import org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexEditorProvider;
 import org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexNode;
 import org.apache.jackrabbit.oak.plugins.index.lucene.directory.OakDirectory;
+import org.apache.jackrabbit.oak.plugins.index.lucene.writer.LuceneIndexWriterConfig;
 import org.apache.jackrabbit.oak.plugins.index.lucene.writer.MultiplexersLucene;
 import org.apache.jackrabbit.oak.plugins.index.property.PropertyIndexEditorProvider;
 import org.apache.jackrabbit.oak.plugins.index.search.ExtractedTextCache;
@@ -493,6 +494,65 @@ public class LuceneIndexEditorTest {
         assertEquals(1, numDocs(mip.getDefaultMount()));
     }
 
+    @Test
+    public void parallelReindex() throws Exception {
+        assumeFalse(CIHelper.windows());
+
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        IndexCopier copier = new IndexCopier(executorService, temporaryFolder.getRoot());
+        LuceneIndexEditorProvider provider = new LuceneIndexEditorProvider(copier);
+        // a small buffer, so that segments are flushed while documents are written
+        provider.setWriterConfig(new LuceneIndexWriterConfig(0.1));
+        EditorHook hook = new EditorHook(new IndexUpdateProvider(provider));
+
+        LuceneIndexEditorContext.setReindexThreads(4);
+        try {
+            NodeState before = builder.getNodeState();
+            newLucenePropertyIndex("lucene", "foo");
+            // keep the flushed segments
+            builder.child(INDEX_DEFINITIONS_NAME).child("lucene")
+                    .setProperty(LuceneIndexConstants.MERGE_POLICY_NAME, "no");
+            NodeBuilder content = builder.child("content");
+            int count = 5000;
+            for (int i = 0; i < count; i++) {
+                content.child("node-with-a-longer-name-" + i).setProperty("foo", "v" + (i % 10));
+            }
+            NodeState indexed = hook.processCommit(before, builder.getNodeState(), CommitInfo.EMPTY);
+            assertTrue(LuceneIndexEditorContext.getReindexTaskCount() > 0);
+            tracker.update(indexed);
+
+            assertTrue(getSearcher().getIndexReader().leaves().size() > 1);
+            assertEquals(count, getSearcher().getIndexReader().numDocs());
+            assertEquals(count / 10, getSearcher().search(new TermQuery(new Term("foo", "v3")), count).totalHits);
+            assertEquals(count, NodeStateUtils.getNode(indexed, "/oak:index/lucene/:status")
+                    .getLong("indexedNodes"));
+        } finally {
+            LuceneIndexEditorContext.setReindexThreads(0);
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    public void parallelReindexNeedsLocalDirectory() throws Exception {
+        LuceneIndexEditorContext.setReindexThreads(4);
+        try {
+            NodeState before = builder.getNodeState();
+            newLucenePropertyIndex("lucene", "foo");
+            NodeBuilder content = builder.child("content");
+            for (int i = 0; i < 100; i++) {
+                content.child("n" + i).setProperty("foo", "v" + (i % 10));
+            }
+            // without index copier, the index is written to the node store
+            NodeState indexed = HOOK.processCommit(before, builder.getNodeState(), CommitInfo.EMPTY);
+            assertEquals(0, LuceneIndexEditorContext.getReindexTaskCount());
+            tracker.update(indexed);
+
+            assertEquals(100, getSearcher().getIndexReader().numDocs());
+        } finally {
+            LuceneIndexEditorContext.setReindexThreads(0);
+        }
+    }
+
     private int numDocs(Mount m) throws IOException {
         String indexDirName = MultiplexersLucene.getIndexDirName(m);
         NodeBuilder defnBuilder = builder.child(INDEX_DEFINITIONS_NAME).child("lucene");
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.lucene.directory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jackrabbit.oak.plugins.memory.ArrayBasedBlob;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import static org.apache.jackrabbit.JcrConstants.JCR_DATA;
+import static org.apache.jackrabbit.oak.plugins.memory.EmptyNodeState.EMPTY_NODE;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BlockCacheTest {
+
+    private static final int BLOCK_SIZE = 1024;
+
+    @Test
+    public void getAndPut() {
+        BlockCache cache = new BlockCache(64 * BLOCK_SIZE, BLOCK_SIZE);
+        byte[] data = block(1, BLOCK_SIZE);
+        byte[] target = new byte[BLOCK_SIZE];
+
+        assertFalse(cache.get("a", 0, target, BLOCK_SIZE));
+        cache.put("a", 0, data, BLOCK_SIZE);
+        assertTrue(cache.get("a", 0, target, BLOCK_SIZE));
+        assertArrayEquals(data, target);
+
+        // other blob, other offset
+        assertFalse(cache.get("b", 0, target, BLOCK_SIZE));
+        assertFalse(cache.get("a", BLOCK_SIZE, target, BLOCK_SIZE));
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(3, cache.getMissCount());
+        assertEquals(0.25, cache.getHitRate(), 0.001);
+        assertEquals(1, cache.getBlockCount());
+    }
+
+    @Test
+    public void partialBlock() {
+        BlockCache cache = new BlockCache(64 * BLOCK_SIZE, BLOCK_SIZE);
+        byte[] data = block(2, 100);
+        cache.put("a", 0, data, 100);
+        byte[] target = new byte[BLOCK_SIZE];
+        assertTrue(cache.get("a", 0, target, 100));
+        assertArrayEquals(data, Arrays.copyOf(target, 100));
+        // more data than cached
+        assertFalse(cache.get("a", 0, target, 200));
+
+        // blocks larger than the slots are not cached
+        cache.put("b", 0, new byte[2 * BLOCK_SIZE], 2 * BLOCK_SIZE);
+        assertFalse(cache.get("b", 0, new byte[2 * BLOCK_SIZE], 2 * BLOCK_SIZE));
+    }
+
+    @Test
+    public void eviction() {
+        // 16 segments with one slot each
+        BlockCache cache = new BlockCache(16 * BLOCK_SIZE, BLOCK_SIZE);
+        for (int i = 0; i < 1000; i++) {
+            cache.put("blob" + i, 0, block(i, BLOCK_SIZE), BLOCK_SIZE);
+        }
+        assertTrue(cache.getBlockCount() <= 16);
+        assertTrue(cache.getEvictionCount() >= 1000 - 16);
+
+        // the most recently added block is still there, with the right content
+        byte[] target = new byte[BLOCK_SIZE];
+        assertTrue(cache.get("blob999", 0, target, BLOCK_SIZE));
+        assertArrayEquals(block(999, BLOCK_SIZE), target);
+        // remaining blocks have the right content
+        for (int i = 0; i < 1000; i++) {
+            if (cache.get("blob" + i, 0, target, BLOCK_SIZE)) {
+                assertArrayEquals(block(i, BLOCK_SIZE), target);
+            }
+        }
+    }
+
+    @Test
+    public void streamingIndexFile() throws IOException {
+        BlockCache old = BlockCache.getInstance();
+        BlockCache cache = new BlockCache(1024 * BLOCK_SIZE, BLOCK_SIZE);
+        BlockCache.setInstance(cache);
+        try {
+            byte[] data = block(3, 5 * BLOCK_SIZE + 100);
+            CountingBlob blob = new CountingBlob(data);
+            NodeBuilder file = EMPTY_NODE.builder();
+            file.setProperty(JCR_DATA, blob);
+
+            OakStreamingIndexFile f1 = new OakStreamingIndexFile("foo", file, "dirDetails",
+                    in -> { throw new UnsupportedOperationException(); });
+            byte[] target = new byte[data.length];
+            f1.readBytes(target, 0, target.length);
+            assertArrayEquals(data, target);
+            assertEquals(1, blob.streams.get());
+
+            // seeking back (in a clone) is served from the cache
+            OakIndexFile f2 = f1.clone();
+            f2.seek(BLOCK_SIZE - 10);
+            target = new byte[3 * BLOCK_SIZE];
+            f2.readBytes(target, 0, target.length);
+            assertArrayEquals(Arrays.copyOfRange(data, BLOCK_SIZE - 10, 4 * BLOCK_SIZE - 10), target);
+            assertEquals(BLOCK_SIZE - 10 + target.length, f2.position());
+
+            // other inputs of the same blob share the cache
+            OakStreamingIndexFile f3 = new OakStreamingIndexFile("foo", file, "dirDetails",
+                    in -> { throw new UnsupportedOperationException(); });
+            f3.seek(5 * BLOCK_SIZE);
+            target = new byte[100];
+            f3.readBytes(target, 0, target.length);
+            assertArrayEquals(Arrays.copyOfRange(data, 5 * BLOCK_SIZE, data.length), target);
+            assertEquals(1, blob.streams.get());
+            assertEquals(6, cache.getBlockCount());
+        } finally {
+            BlockCache.setInstance(old);
+        }
+    }
+
+    private static class CountingBlob extends ArrayBasedBlob {
+
+        final AtomicInteger streams = new AtomicInteger();
+
+        CountingBlob(byte[] value) {
+            super(value);
+        }
+
+        @Override
+        public String getContentIdentity() {
+            return "counting";
+        }
+
+        @NotNull
+        @Override
+        public InputStream getNewStream() {
+            streams.incrementAndGet();
+            return super.getNewStream();
+        }
+    }
+
+    private static byte[] block(int seed, int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (seed * 31 + i);
+        }
+        return data;
+    }
+
+}
@@ -177,6 +177,36 @@ abstract public class OakDirectoryTestBase {
         assertEquals(fileNames, files);
     }
 
+    @Test
+    public void saveNewFilesManifest() throws Exception{
+        builder.setProperty(LuceneIndexConstants.SAVE_NEW_FILES_MANIFEST, true);
+        OakDirectory dir = createDir(builder, false, "/foo");
+        for (int i = 0; i < 3; i++) {
+            createFile(dir, "foo" + i);
+        }
+        dir.close();
+        assertEquals(newHashSet("foo0", "foo1", "foo2"), createDir(builder, true, "/foo").getNewFiles());
+
+        dir = createDir(builder, false, "/foo");
+        createFile(dir, "foo3");
+        dir.deleteFile("foo0");
+        dir.close();
+        assertEquals(newHashSet("foo3"), createDir(builder, true, "/foo").getNewFiles());
+
+        //Unchanged directory: the manifest of the last commit is kept
+        dir = createDir(builder, false, "/foo");
+        dir.close();
+        assertEquals(newHashSet("foo3"), createDir(builder, true, "/foo").getNewFiles());
+    }
+
+    @Test
+    public void noNewFilesManifestByDefault() throws Exception{
+        OakDirectory dir = createDir(builder, false, "/foo");
+        createFile(dir, "foo0");
+        dir.close();
+        assertTrue(createDir(builder, true, "/foo").getNewFiles().isEmpty());
+    }
+
     // OAK-6562
     @Test
     public void createOutputReInitsFile() throws Exception {
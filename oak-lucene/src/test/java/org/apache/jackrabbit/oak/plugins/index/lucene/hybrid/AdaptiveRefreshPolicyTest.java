@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.plugins.index.lucene.hybrid;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.jackrabbit.oak.stats.Clock;
+import org.apache.jackrabbit.oak.stats.StatisticsProvider;
+import org.apache.jackrabbit.oak.stats.StatsOptions;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class AdaptiveRefreshPolicyTest {
+    private final Clock.Virtual clock = new Clock.Virtual();
+    private final AtomicInteger refreshCount = new AtomicInteger();
+    private long refreshTime;
+    private final Runnable refresh = () -> {
+        refreshCount.incrementAndGet();
+        clock.waitUntil(clock.getTime() + refreshTime);
+    };
+
+    private final AdaptiveRefreshPolicy policy = new AdaptiveRefreshPolicy(clock, 100, 1000, 5000,
+            StatisticsProvider.NOOP.getHistogram("NRT_STALENESS", StatsOptions.DEFAULT));
+
+    @Test
+    public void noRefreshWithoutUpdate() {
+        clock.waitUntil(10000);
+        policy.refreshOnReadIfRequired(refresh);
+        policy.refreshOnWriteIfRequired(refresh);
+        assertEquals(0, refreshCount.get());
+    }
+
+    @Test
+    public void batchUpdatesOfBurst() {
+        clock.waitUntil(10000);
+        policy.updated();
+        policy.refreshOnWriteIfRequired(refresh);
+        assertEquals(1, refreshCount.get());
+
+        //Updates keep arriving: wait for the refresh delta
+        for (int i = 0; i < 5; i++) {
+            clock.waitUntil(clock.getTime() + 50);
+            policy.updated();
+            policy.refreshOnWriteIfRequired(refresh);
+            policy.refreshOnReadIfRequired(refresh);
+        }
+        assertEquals(1, refreshCount.get());
+
+        //Updates stopped: refresh after the minimum interval
+        clock.waitUntil(clock.getTime() + 150);
+        policy.refreshOnReadIfRequired(refresh);
+        assertEquals(2, refreshCount.get());
+
+        policy.refreshOnReadIfRequired(refresh);
+        assertEquals(2, refreshCount.get());
+    }
+
+    @Test
+    public void expensiveRefresh() {
+        refreshTime = 300;
+        clock.waitUntil(10000);
+        policy.updated();
+        policy.refreshOnReadIfRequired(refresh);
+        assertEquals(1, refreshCount.get());
+
+        //The interval is at least 10 times the refresh time
+        long last = clock.getTime();
+        assertEquals(3000, policy.getRefreshInterval(last + 1000), 50);
+        policy.updated();
+        clock.waitUntil(last + 1000);
+        policy.refreshOnReadIfRequired(refresh);
+        assertEquals(1, refreshCount.get());
+
+        clock.waitUntil(last + 3100);
+        policy.refreshOnReadIfRequired(refresh);
+        assertEquals(2, refreshCount.get());
+
+        //But not more than the maximum interval
+        refreshTime = 2000;
+        for (int i = 0; i < 10; i++) {
+            clock.waitUntil(clock.getTime() + 6000);
+            policy.updated();
+            clock.waitUntil(clock.getTime() + 200);
+            policy.refreshOnReadIfRequired(refresh);
+        }
+        assertEquals(12, refreshCount.get());
+        assertEquals(5000, policy.getRefreshInterval(clock.getTime()));
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.lucene.util;
+
+import java.security.Principal;
+import java.util.Collections;
+import java.util.Set;
+
+import org.apache.jackrabbit.oak.plugins.index.lucene.util.SecureFacetAccessCache.AccessBits;
+import org.apache.jackrabbit.oak.spi.security.principal.PrincipalImpl;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.Test;
+
+import static org.apache.jackrabbit.oak.plugins.index.lucene.LuceneIndexConstants.VERSION;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class SecureFacetAccessCacheTest {
+
+    private static final Set<Principal> ALICE = Collections.singleton(new PrincipalImpl("alice"));
+
+    private static final Set<Principal> BOB = Collections.singleton(new PrincipalImpl("bob"));
+
+    @Test
+    public void accessBits() {
+        AccessBits bits = new AccessBits(130, 0);
+        assertNull(bits.isReadable(0));
+        bits.setReadable(0, true);
+        bits.setReadable(64, false);
+        bits.setReadable(129, true);
+        assertEquals(true, bits.isReadable(0));
+        assertEquals(false, bits.isReadable(64));
+        assertEquals(true, bits.isReadable(129));
+        assertNull(bits.isReadable(1));
+        assertNull(bits.isReadable(65));
+    }
+
+    @Test
+    public void bitsPerPrincipalsAndDimension() throws Exception {
+        Directory dir = new RAMDirectory();
+        try (IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig(VERSION, new KeywordAnalyzer()))) {
+            for (int i = 0; i < 10; i++) {
+                writer.addDocument(new Document());
+            }
+        }
+        try (DirectoryReader reader = DirectoryReader.open(dir)) {
+            AtomicReader segment = reader.leaves().get(0).reader();
+            SecureFacetAccessCache cache = new SecureFacetAccessCache(60_000, 10);
+            AccessBits bits = cache.getAccessBits(segment, ALICE, "foo");
+            assertSame(bits, cache.getAccessBits(segment, Collections.singleton(new PrincipalImpl("alice")), "foo"));
+            assertNotSame(bits, cache.getAccessBits(segment, BOB, "foo"));
+            assertNotSame(bits, cache.getAccessBits(segment, ALICE, "bar"));
+
+            // expired
+            cache = new SecureFacetAccessCache(-1, 10);
+            bits = cache.getAccessBits(segment, ALICE, "foo");
+            assertNotSame(bits, cache.getAccessBits(segment, ALICE, "foo"));
+        }
+    }
+
+}
@@ -18,6 +18,7 @@
  */
 package org.apache.jackrabbit.oak.spi.query;
 
+import java.security.Principal;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -179,6 +180,31 @@ public interface Filter {
      */
     boolean isAlwaysFalse();
 
+    /**
+     * The number of rows the query reads from the cursor if all of them
+     * match (the limit plus the offset of the query). This is only a hint:
+     * if rows are filtered out later on (for example because they are not
+     * accessible), more rows are read, so a cursor must not stop returning
+     * rows, but can use the value to size the batches it fetches.
+     *
+     * @return the number of rows, or Long.MAX_VALUE if unknown
+     */
+    default long getLimitHint() {
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * The principals of the user associated with the query session. Access
+     * checks (see {@link #isAccessible(String)}) of sessions with the same
+     * principals have the same result, so an index may cache them.
+     *
+     * @return the principals, or null if unknown
+     */
+    @Nullable
+    default Set<Principal> getPrincipals() {
+        return null;
+    }
+
     /**
      * A restriction for a property.
      */
@@ -19,6 +19,7 @@ package org.apache.jackrabbit.oak.fixture;
 import java.io.File;
 import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -100,6 +101,16 @@ public abstract class OakFixture {
 
     public abstract void tearDownCluster();
 
+    /**
+     * Get the DocumentNodeStores of the cluster that was set up.
+     *
+     * @return the node stores, or an empty list if this fixture is not based
+     *         on a DocumentNodeStore
+     */
+    public List<DocumentNodeStore> getDocumentNodeStores() {
+        return emptyList();
+    }
+
     @Override
     public String toString() {
         return name;
@@ -260,6 +271,11 @@ public abstract class OakFixture {
                 return cluster;
             }
 
+            @Override
+            public List<DocumentNodeStore> getDocumentNodeStores() {
+                return nodeStores == null ? emptyList() : Arrays.asList(nodeStores);
+            }
+
             @Override
             public void tearDownCluster() {
                 String dropped = "";
@@ -492,6 +508,11 @@ public abstract class OakFixture {
             return setUpCluster(builders, statsProvider);
         }
 
+        @Override
+        public List<DocumentNodeStore> getDocumentNodeStores() {
+            return Collections.unmodifiableList(nodeStores);
+        }
+
         @Override
         public void tearDownCluster() {
             for (DocumentNodeStore ns : nodeStores) {
@@ -31,6 +31,7 @@ public final class AvailableModes {
     public static final Modes MODES = new Modes(
         ImmutableMap.<String, Command>builder()
             .put("backup", new BackupCommand())
+            .put(BundlingRecommendationsCommand.NAME, new BundlingRecommendationsCommand())
             .put("check", new CheckCommand())
             .put("checkpoints", new CheckpointsCommand())
             .put("clusternodes", new ClusterNodesCommand())
@@ -0,0 +1,197 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.run;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.jackrabbit.oak.plugins.document.DocumentNodeState;
+import org.apache.jackrabbit.oak.plugins.document.DocumentNodeStore;
+import org.apache.jackrabbit.oak.plugins.document.DocumentNodeStoreBuilder;
+import org.apache.jackrabbit.oak.plugins.document.Path;
+import org.apache.jackrabbit.oak.plugins.document.bundlor.BundlingAnalyzer;
+import org.apache.jackrabbit.oak.plugins.document.bundlor.BundlingAnalyzer.Recommendation;
+import org.apache.jackrabbit.oak.run.commons.Command;
+import org.apache.jackrabbit.oak.spi.blob.MemoryBlobStore;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.spi.state.NodeStateUtils;
+
+import org.apache.jackrabbit.guava.common.io.Closer;
+
+import joptsimple.OptionSpec;
+
+import static org.apache.jackrabbit.JcrConstants.JCR_PRIMARYTYPE;
+
+/**
+ * Traverses a DocumentNodeStore and recommends bundling patterns for node
+ * types, based on how often descendant nodes are stored in their own
+ * document below nodes of a given type. The estimated saving is the number of
+ * documents that would be bundled into the document of the ancestor.
+ */
+class BundlingRecommendationsCommand implements Command {
+
+    static final String NAME = "bundling-recommendations";
+
+    @Override
+    public void execute(String... args) throws Exception {
+        Closer closer = Utils.createCloserWithShutdownHook();
+        try {
+            String h = NAME + " mongodb://host:port/database|jdbc:...";
+            BundlingOptions options = new BundlingOptions(h).parse(args);
+            if (options.isHelp()) {
+                options.printHelpOn(System.out);
+                System.exit(0);
+            }
+
+            DocumentNodeStoreBuilder<?> builder = Utils.createDocumentMKBuilder(options, closer);
+            if (builder == null) {
+                System.err.println("Bundling recommendations only available for DocumentNodeStore " +
+                        "backed by MongoDB or RDB persistence");
+                System.exit(1);
+            }
+            // binaries are not read
+            builder.setBlobStore(new MemoryBlobStore());
+            builder.setReadOnlyMode();
+            DocumentNodeStore dns = builder.build();
+            closer.register(Utils.asCloseable(dns));
+
+            String path = options.getPath();
+            NodeState start = NodeStateUtils.getNode(dns.getRoot(), path);
+            if (!start.exists()) {
+                System.err.println("Path does not exist: " + path);
+                System.exit(1);
+            }
+
+            BundlingAnalyzer analyzer = new BundlingAnalyzer(1, options.getMaxDepth(),
+                    options.getMaxChildNames());
+            Traverser traverser = new Traverser(analyzer);
+            traverser.traverse(Path.fromString(path), (DocumentNodeState) start);
+
+            List<Recommendation> recommendations = analyzer.getRecommendations(
+                    options.getMinRatio(), options.getMinCount());
+            System.out.println("Traversed " + traverser.count + " nodes below " + path);
+            if (recommendations.isEmpty()) {
+                System.out.println("No bundling recommendations");
+            }
+            String type = null;
+            for (Recommendation r : recommendations) {
+                if (!r.getNodeType().equals(type)) {
+                    type = r.getNodeType();
+                    System.out.println(type + " (" + r.getTypeReads() + " nodes)");
+                }
+                System.out.println(String.format("  %s: %d documents saved (%.2f per node)",
+                        r.getPattern(), r.getSavedReads(), r.getRatio()));
+            }
+        } catch (Throwable e) {
+            throw closer.rethrow(e);
+        } finally {
+            closer.close();
+        }
+    }
+
+    private static final class Traverser {
+
+        private final BundlingAnalyzer analyzer;
+
+        private final Map<Path, String> ancestorTypes = new HashMap<>();
+
+        long count;
+
+        Traverser(BundlingAnalyzer analyzer) {
+            this.analyzer = analyzer;
+        }
+
+        void traverse(Path path, DocumentNodeState state) {
+            String type = state.getName(JCR_PRIMARYTYPE);
+            if (type != null) {
+                ancestorTypes.put(path, type);
+            }
+            Set<String> bundled = state.getBundledChildNodeNames();
+            for (ChildNodeEntry entry : state.getChildNodeEntries()) {
+                DocumentNodeState child = (DocumentNodeState) entry.getNodeState();
+                Path childPath = new Path(path, entry.getName());
+                if (!bundled.contains(entry.getName())) {
+                    // the child is stored in its own document
+                    analyzer.documentRead(childPath, child.getName(JCR_PRIMARYTYPE), ancestorTypes::get);
+                }
+                if (++count % 100000 == 0) {
+                    System.out.println("Traversed " + count + " nodes");
+                }
+                traverse(childPath, child);
+            }
+            ancestorTypes.remove(path);
+        }
+    }
+
+    private static final class BundlingOptions extends Utils.NodeStoreOptions {
+
+        final OptionSpec<String> path;
+        final OptionSpec<Double> minRatio;
+        final OptionSpec<Long> minCount;
+        final OptionSpec<Integer> maxDepth;
+        final OptionSpec<Integer> maxChildNames;
+
+        BundlingOptions(String usage) {
+            super(usage);
+            path = parser.accepts("path", "The path to traverse")
+                    .withRequiredArg().defaultsTo("/");
+            minRatio = parser.accepts("minRatio", "Minimum number of descendant " +
+                    "documents per node of a type to recommend a pattern")
+                    .withRequiredArg().ofType(Double.class).defaultsTo(BundlingAnalyzer.DEFAULT_MIN_RATIO);
+            minCount = parser.accepts("minCount", "Minimum number of nodes of a type")
+                    .withRequiredArg().ofType(Long.class).defaultsTo(BundlingAnalyzer.DEFAULT_MIN_READS);
+            maxDepth = parser.accepts("maxDepth", "Maximum depth of a pattern")
+                    .withRequiredArg().ofType(Integer.class).defaultsTo(BundlingAnalyzer.DEFAULT_MAX_DEPTH);
+            maxChildNames = parser.accepts("maxChildNames", "Maximum number of distinct " +
+                    "child names to still recommend a pattern")
+                    .withRequiredArg().ofType(Integer.class).defaultsTo(BundlingAnalyzer.DEFAULT_MAX_CHILD_NAMES);
+        }
+
+        @Override
+        public BundlingOptions parse(String[] args) {
+            super.parse(args);
+            return this;
+        }
+
+        String getPath() {
+            return path.value(options);
+        }
+
+        double getMinRatio() {
+            return minRatio.value(options);
+        }
+
+        long getMinCount() {
+            return minCount.value(options);
+        }
+
+        int getMaxDepth() {
+            return maxDepth.value(options);
+        }
+
+        int getMaxChildNames() {
+            return maxChildNames.value(options);
+        }
+
+        boolean isHelp() {
+            return options.has(help);
+        }
+    }
+}
@@ -65,6 +65,12 @@ public class ElasticIndexDefinition extends IndexDefinition {
     public static final String TRACK_TOTAL_HITS = "trackTotalHits";
     public static final Integer TRACK_TOTAL_HITS_DEFAULT = 10000;
 
+    // when true, each query opens a point in time search context before its first request (one additional request
+    // per query, even if the result fits in one chunk), all chunks are read from it, and the next chunk is fetched
+    // while the current one is consumed
+    public static final String QUERY_POINT_IN_TIME = "queryPointInTime";
+    public static final boolean QUERY_POINT_IN_TIME_DEFAULT = false;
+
     /**
      * Hidden property for storing the index mapping version.
      */
@@ -152,6 +158,7 @@ public class ElasticIndexDefinition extends IndexDefinition {
     public final int[] queryFetchSizes;
     public final long queryTimeoutMs;
     public final Integer trackTotalHits;
+    public final boolean queryPointInTime;
     public final String dynamicMapping;
     public final boolean failOnError;
     public final long indexNameSeed;
@@ -177,6 +184,9 @@ public class ElasticIndexDefinition extends IndexDefinition {
                 .mapToInt(Long::intValue).toArray();
         this.queryTimeoutMs = getOptionalValue(defn, QUERY_TIMEOUT_MS, QUERY_TIMEOUT_MS_DEFAULT);
         this.trackTotalHits = getOptionalValue(defn, TRACK_TOTAL_HITS, TRACK_TOTAL_HITS_DEFAULT);
+        this.queryPointInTime = getOptionalValue(defn, QUERY_POINT_IN_TIME,
+                Boolean.parseBoolean(System.getProperty(TYPE_ELASTICSEARCH + "." + QUERY_POINT_IN_TIME, Boolean.toString(QUERY_POINT_IN_TIME_DEFAULT)))
+        );
         this.dynamicMapping = getOptionalValue(defn, DYNAMIC_MAPPING, DYNAMIC_MAPPING_DEFAULT);
         this.failOnError = getOptionalValue(defn, FAIL_ON_ERROR,
                 Boolean.parseBoolean(System.getProperty(TYPE_ELASTICSEARCH + "." + FAIL_ON_ERROR, Boolean.toString(FAIL_ON_ERROR_DEFAULT)))
@@ -44,10 +44,22 @@ public class ElasticMetricHandler {
     private static final String QUERY_TIMED_OUT_RATE = "ELASTIC_QUERY_TIMED_OUT_RATE";
     private static final String QUERY_FAILED_RATE = "ELASTIC_QUERY_FAILED_RATE";
 
+    private static final String QUERY_REQUESTS = "ELASTIC_QUERY_REQUESTS";
+    private static final String QUERY_SCAN_TIME = "ELASTIC_QUERY_SCAN_TIME";
+    private static final String QUERY_WAIT_TIME = "ELASTIC_QUERY_WAIT_TIME";
+
     private static final String INDEX_DOCUMENTS = "ELASTIC_INDEX_DOCUMENTS";
     private static final String INDEX_SIZE = "ELASTIC_INDEX_SIZE";
     private static final String INDEX_WITH_REPLICAS_SIZE = "ELASTIC_INDEX_WITH_REPLICAS_SIZE";
 
+    private static final String BULK_TIME = "ELASTIC_BULK_TIME";
+    private static final String BULK_OPERATIONS = "ELASTIC_BULK_OPERATIONS";
+    private static final String BULK_REJECTED_RATE = "ELASTIC_BULK_REJECTED_RATE";
+    private static final String BULK_FAILED_RATE = "ELASTIC_BULK_FAILED_RATE";
+    private static final String BULK_MAX_OPERATIONS = "ELASTIC_BULK_MAX_OPERATIONS";
+    private static final String BULK_MAX_SIZE = "ELASTIC_BULK_MAX_SIZE";
+    private static final String BULK_CONCURRENCY = "ELASTIC_BULK_CONCURRENCY";
+
     private final BiFunction<String, Map<String, String>, MeterStats> meter;
     private final BiFunction<String, Map<String, String>, HistogramStats> histogram;
     private final BiFunction<String, Map<String, String>, TimerStats> timer;
@@ -109,6 +121,21 @@ public class ElasticMetricHandler {
         timer.apply(QUERY_TOTAL_TIME, labels).update(totalTimeMs, TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * Measures the scan of the result set of a query, once it is completely read or the iterator is closed
+     *
+     * @param index the index passed as metric label
+     * @param requests the number of search requests sent to Elastic
+     * @param scanTimeMs the time from the start of the query until the end of the scan
+     * @param waitTimeMs the time the consumer waited for results
+     */
+    public void measureQueryScan(String index, int requests, long scanTimeMs, long waitTimeMs) {
+        Map<String, String> labels = Collections.singletonMap("index", index);
+        histogram.apply(QUERY_REQUESTS, labels).update(requests);
+        timer.apply(QUERY_SCAN_TIME, labels).update(scanTimeMs, TimeUnit.MILLISECONDS);
+        timer.apply(QUERY_WAIT_TIME, labels).update(waitTimeMs, TimeUnit.MILLISECONDS);
+    }
+
     /**
      * Tracks the number of document in an index
      *
@@ -132,4 +159,52 @@ public class ElasticMetricHandler {
         histogram.apply(INDEX_SIZE, labels).update(primarySize);
         histogram.apply(INDEX_WITH_REPLICAS_SIZE, labels).update(storeSize);
     }
+
+    /**
+     * Measures a bulk request execution
+     *
+     * @param index the index passed as metric label
+     * @param totalTimeMs the time from sending the request until the response was received
+     * @param operations the number of operations in the bulk
+     * @param rejected the number of operations rejected by Elastic because it is overloaded (status {@code 429})
+     */
+    public void measureBulk(String index, long totalTimeMs, int operations, int rejected) {
+        Map<String, String> labels = Collections.singletonMap("index", index);
+        timer.apply(BULK_TIME, labels).update(totalTimeMs, TimeUnit.MILLISECONDS);
+        histogram.apply(BULK_OPERATIONS, labels).update(operations);
+        if (rejected > 0) {
+            meter.apply(BULK_REJECTED_RATE, labels).mark(rejected);
+        }
+    }
+
+    /**
+     * Measures a bulk request that failed as a whole
+     *
+     * @param index the index passed as metric label
+     * @param totalTimeMs the time from sending the request until the failure
+     * @param rejected {@code true} if the request was rejected by Elastic because it is overloaded
+     */
+    public void measureFailedBulk(String index, long totalTimeMs, boolean rejected) {
+        Map<String, String> labels = Collections.singletonMap("index", index);
+        meter.apply(BULK_FAILED_RATE, labels).mark();
+        timer.apply(BULK_TIME, labels).update(totalTimeMs, TimeUnit.MILLISECONDS);
+        if (rejected) {
+            meter.apply(BULK_REJECTED_RATE, labels).mark();
+        }
+    }
+
+    /**
+     * Tracks the settings used to send bulk requests
+     *
+     * @param index the index passed as metric label
+     * @param maxOperations the maximum number of operations of a bulk
+     * @param maxSizeBytes the maximum size of a bulk in bytes
+     * @param concurrency the maximum number of concurrent bulk requests
+     */
+    public void markBulkSettings(String index, int maxOperations, long maxSizeBytes, int concurrency) {
+        Map<String, String> labels = Collections.singletonMap("index", index);
+        histogram.apply(BULK_MAX_OPERATIONS, labels).update(maxOperations);
+        histogram.apply(BULK_MAX_SIZE, labels).update(maxSizeBytes);
+        histogram.apply(BULK_CONCURRENCY, labels).update(concurrency);
+    }
 }
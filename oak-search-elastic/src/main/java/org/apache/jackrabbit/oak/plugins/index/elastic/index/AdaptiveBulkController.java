@@ -0,0 +1,227 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.elastic.index;
+
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tunes the size and the concurrency of the bulk requests sent to Elastic, based on the observed latency and
+ * rejections (additive increase, multiplicative decrease).
+ * <ul>
+ *     <li>When Elastic rejects operations (status {@code 429}), the concurrency is halved, or the bulk size once
+ *     the concurrency is 1.</li>
+ *     <li>When the average latency of the last {@link #SAMPLE_SIZE} bulks is above the target, the bulk size is
+ *     reduced.</li>
+ *     <li>When it is below half the target, the bulk size is increased up to 10 times the configured value, and
+ *     then the concurrency is increased by one, up to {@link #MAX_CONCURRENCY}.</li>
+ * </ul>
+ * The bulk size is never reduced below a tenth of the configured value. A limit that is not configured (0 or less)
+ * is not managed. The settings are kept per index, so that the next indexing cycle starts with what was learned.
+ * Feedback of bulks that were sent with older settings is ignored, so that a single overload doesn't reduce the
+ * settings more than once.
+ */
+class AdaptiveBulkController {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveBulkController.class);
+
+    /**
+     * Whether the bulk size and concurrency are adapted (the configured values are used otherwise).
+     */
+    static final boolean ENABLED = Boolean.getBoolean("oak.indexer.elastic.adaptiveBulk");
+
+    /**
+     * The maximum number of concurrent bulk requests.
+     */
+    static final int MAX_CONCURRENCY = Integer.getInteger("oak.indexer.elastic.adaptiveBulk.maxConcurrency", 8);
+
+    /**
+     * The target latency of a bulk request, in milliseconds.
+     */
+    static final long TARGET_LATENCY_MS = Long.getLong("oak.indexer.elastic.adaptiveBulk.targetLatencyMs", 1000);
+
+    /**
+     * The number of bulks after which the latency is evaluated.
+     */
+    static final int SAMPLE_SIZE = 5;
+
+    private static final int RANGE_FACTOR = 10;
+
+    private static final ConcurrentHashMap<String, AdaptiveBulkController> CONTROLLERS = new ConcurrentHashMap<>();
+
+    private final int initialOperations;
+    private final long initialSizeBytes;
+    private final int initialConcurrency;
+    private final int maxConcurrency;
+    private final long targetLatencyMs;
+
+    private volatile Settings settings;
+
+    private int samples;
+    private long totalLatencyMs;
+
+    AdaptiveBulkController(int maxOperations, long maxSizeBytes, int concurrency,
+                           int maxConcurrency, long targetLatencyMs) {
+        this.initialOperations = maxOperations;
+        this.initialSizeBytes = maxSizeBytes;
+        this.initialConcurrency = Math.max(1, concurrency);
+        this.maxConcurrency = Math.max(this.initialConcurrency, maxConcurrency);
+        this.targetLatencyMs = targetLatencyMs;
+        this.settings = new Settings(0, maxOperations, maxSizeBytes, this.initialConcurrency);
+    }
+
+    /**
+     * Get the controller of an index. A new controller is created if there is none yet, or if the configured
+     * values changed.
+     *
+     * @param indexPath the index path
+     * @param maxOperations the configured maximum number of operations of a bulk
+     * @param maxSizeBytes the configured maximum size of a bulk in bytes
+     * @param concurrency the configured number of concurrent requests
+     * @return the controller
+     */
+    @NotNull
+    static AdaptiveBulkController getController(String indexPath, int maxOperations, long maxSizeBytes, int concurrency) {
+        return CONTROLLERS.compute(indexPath, (k, c) ->
+                c != null && c.initialOperations == maxOperations && c.initialSizeBytes == maxSizeBytes
+                        && c.initialConcurrency == Math.max(1, concurrency) ? c :
+                        new AdaptiveBulkController(maxOperations, maxSizeBytes, concurrency,
+                                MAX_CONCURRENCY, TARGET_LATENCY_MS));
+    }
+
+    @NotNull
+    Settings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Records the result of a bulk request.
+     *
+     * @param settings the settings the bulk was sent with
+     * @param latencyMs the time until the response was received
+     * @param rejected the number of rejected operations
+     */
+    synchronized void onBulk(Settings settings, long latencyMs, int rejected) {
+        if (settings != this.settings) {
+            return;
+        }
+        if (rejected > 0) {
+            decrease();
+            return;
+        }
+        samples++;
+        totalLatencyMs += latencyMs;
+        if (samples < SAMPLE_SIZE) {
+            return;
+        }
+        long averageLatencyMs = totalLatencyMs / samples;
+        if (averageLatencyMs > targetLatencyMs) {
+            Settings s = this.settings;
+            if (!update(resize(s.maxOperations, initialOperations, 0.75),
+                    resize(s.maxSizeBytes, initialSizeBytes, 0.75), s.concurrency)) {
+                update(s.maxOperations, s.maxSizeBytes, Math.max(1, s.concurrency - 1));
+            }
+        } else if (averageLatencyMs < targetLatencyMs / 2) {
+            Settings s = this.settings;
+            if (!update(resize(s.maxOperations, initialOperations, 1.5),
+                    resize(s.maxSizeBytes, initialSizeBytes, 1.5), s.concurrency)) {
+                update(s.maxOperations, s.maxSizeBytes, Math.min(maxConcurrency, s.concurrency + 1));
+            }
+        } else {
+            resetSamples();
+        }
+    }
+
+    /**
+     * Records a bulk request that failed as a whole.
+     *
+     * @param settings the settings the bulk was sent with
+     * @param rejected whether the request was rejected because Elastic is overloaded
+     */
+    synchronized void onFailure(Settings settings, boolean rejected) {
+        if (rejected && settings == this.settings) {
+            decrease();
+        }
+    }
+
+    private void decrease() {
+        Settings s = this.settings;
+        if (s.concurrency > 1) {
+            update(s.maxOperations, s.maxSizeBytes, s.concurrency / 2);
+        } else {
+            update(resize(s.maxOperations, initialOperations, 0.5),
+                    resize(s.maxSizeBytes, initialSizeBytes, 0.5), s.concurrency);
+        }
+    }
+
+    private boolean update(int maxOperations, long maxSizeBytes, int concurrency) {
+        resetSamples();
+        Settings s = this.settings;
+        if (maxOperations == s.maxOperations && maxSizeBytes == s.maxSizeBytes && concurrency == s.concurrency) {
+            return false;
+        }
+        settings = new Settings(s.version + 1, maxOperations, maxSizeBytes, concurrency);
+        LOG.debug("Bulk settings changed to {}", settings);
+        return true;
+    }
+
+    private void resetSamples() {
+        samples = 0;
+        totalLatencyMs = 0;
+    }
+
+    private static int resize(int value, int initial, double factor) {
+        return (int) resize((long) value, initial, factor);
+    }
+
+    private static long resize(long value, long initial, double factor) {
+        if (initial <= 0) {
+            return value;
+        }
+        long min = Math.max(1, initial / RANGE_FACTOR);
+        long max = initial * RANGE_FACTOR;
+        return Math.max(min, Math.min(max, (long) (value * factor)));
+    }
+
+    /**
+     * The settings of the bulk ingester. A new instance (with a new version) is created each time the settings
+     * change.
+     */
+    static final class Settings {
+
+        final long version;
+        final int maxOperations;
+        final long maxSizeBytes;
+        final int concurrency;
+
+        Settings(long version, int maxOperations, long maxSizeBytes, int concurrency) {
+            this.version = version;
+            this.maxOperations = maxOperations;
+            this.maxSizeBytes = maxSizeBytes;
+            this.concurrency = concurrency;
+        }
+
+        @Override
+        public String toString() {
+            return "Settings{version=" + version + ", maxOperations=" + maxOperations +
+                    ", maxSizeBytes=" + maxSizeBytes + ", concurrency=" + concurrency + "}";
+        }
+    }
+}
@@ -18,6 +18,7 @@ package org.apache.jackrabbit.oak.plugins.index.elastic.index;
 
 import co.elastic.clients.elasticsearch._helpers.bulk.BulkIngester;
 import co.elastic.clients.elasticsearch._helpers.bulk.BulkListener;
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
 import co.elastic.clients.elasticsearch._types.ErrorCause;
 import co.elastic.clients.elasticsearch.core.BulkRequest;
 import co.elastic.clients.elasticsearch.core.BulkResponse;
@@ -27,10 +28,15 @@ import org.apache.jackrabbit.oak.api.PropertyState;
 import org.apache.jackrabbit.oak.api.Type;
 import org.apache.jackrabbit.oak.plugins.index.elastic.ElasticConnection;
 import org.apache.jackrabbit.oak.plugins.index.elastic.ElasticIndexDefinition;
+import org.apache.jackrabbit.oak.plugins.index.elastic.ElasticMetricHandler;
 import org.apache.jackrabbit.oak.plugins.index.search.IndexDefinition;
 import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
 import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.stats.StatisticsProvider;
+import org.elasticsearch.client.ResponseException;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -54,16 +60,33 @@ class ElasticBulkProcessorHandler {
 
     private static final int BULK_PROCESSOR_CONCURRENCY =
         Integer.getInteger("oak.indexer.elastic.bulkProcessorConcurrency", 1);
+    /**
+     * The minimum time between two changes of the bulk settings. Changing the settings closes the bulk ingester,
+     * which waits for the in-flight requests, so it should not happen after every few bulks.
+     */
+    private static final long MIN_RECONFIGURE_INTERVAL_MS =
+        Long.getLong("oak.indexer.elastic.adaptiveBulk.minReconfigureIntervalMs", 10000);
     private static final String SYNC_MODE_PROPERTY = "sync-mode";
     private static final String SYNC_RT_MODE = "rt";
+    private static final int TOO_MANY_REQUESTS = 429;
 
     protected final ElasticConnection elasticConnection;
     protected final String indexName;
     protected final ElasticIndexDefinition indexDefinition;
     private final NodeBuilder definitionBuilder;
-    protected final BulkIngester<String> bulkIngester;
+    private final ElasticMetricHandler metricHandler;
     private final boolean waitForESAcknowledgement;
 
+    /**
+     * Adapts the bulk settings to the latency and rejections, or {@code null} if the configured settings are used
+     */
+    private final AdaptiveBulkController bulkController;
+    private AdaptiveBulkController.Settings bulkSettings;
+    private int ingesterGeneration;
+    private long lastReconfigureNanos;
+    private boolean reconfigured;
+    protected BulkIngester<String> bulkIngester;
+
     /**
      * Coordinates communication between bulk processes. It has a main controller registered at creation time and
      * de-registered on {@link ElasticIndexWriter#close(long)}. Each bulk request register a new party in
@@ -89,12 +112,28 @@ class ElasticBulkProcessorHandler {
                                         @NotNull String indexName,
                                         @NotNull ElasticIndexDefinition indexDefinition,
                                         @NotNull NodeBuilder definitionBuilder,
+                                        @NotNull ElasticMetricHandler metricHandler,
                                         boolean waitForESAcknowledgement) {
+        this(elasticConnection, indexName, indexDefinition, definitionBuilder, metricHandler, waitForESAcknowledgement,
+                AdaptiveBulkController.ENABLED ? AdaptiveBulkController.getController(indexDefinition.getIndexPath(),
+                        indexDefinition.bulkActions, indexDefinition.bulkSizeBytes, BULK_PROCESSOR_CONCURRENCY) : null);
+    }
+
+    @TestOnly
+    ElasticBulkProcessorHandler(@NotNull ElasticConnection elasticConnection,
+                                @NotNull String indexName,
+                                @NotNull ElasticIndexDefinition indexDefinition,
+                                @NotNull NodeBuilder definitionBuilder,
+                                @NotNull ElasticMetricHandler metricHandler,
+                                boolean waitForESAcknowledgement,
+                                @Nullable AdaptiveBulkController bulkController) {
         this.elasticConnection = elasticConnection;
         this.indexName = indexName;
         this.indexDefinition = indexDefinition;
         this.definitionBuilder = definitionBuilder;
+        this.metricHandler = metricHandler;
         this.waitForESAcknowledgement = waitForESAcknowledgement;
+        this.bulkController = bulkController;
         this.bulkIngester = initBulkIngester();
     }
 
@@ -109,10 +148,26 @@ class ElasticBulkProcessorHandler {
                                                                       @NotNull ElasticIndexDefinition indexDefinition,
                                                                       @NotNull NodeBuilder definitionBuilder, CommitInfo commitInfo,
                                                                       boolean waitForESAcknowledgement) {
+        return getBulkProcessorHandler(elasticConnection, indexName, indexDefinition, definitionBuilder, commitInfo,
+                waitForESAcknowledgement, new ElasticMetricHandler(StatisticsProvider.NOOP));
+    }
+
+    /**
+     * Returns an ElasticBulkProcessorHandler instance based on the index definition configuration, that tracks
+     * the bulk requests with the given metric handler.
+     *
+     * @see #getBulkProcessorHandler(ElasticConnection, String, ElasticIndexDefinition, NodeBuilder, CommitInfo, boolean)
+     */
+    public static ElasticBulkProcessorHandler getBulkProcessorHandler(@NotNull ElasticConnection elasticConnection,
+                                                                      @NotNull String indexName,
+                                                                      @NotNull ElasticIndexDefinition indexDefinition,
+                                                                      @NotNull NodeBuilder definitionBuilder, CommitInfo commitInfo,
+                                                                      boolean waitForESAcknowledgement,
+                                                                      @NotNull ElasticMetricHandler metricHandler) {
         PropertyState async = indexDefinition.getDefinitionNodeState().getProperty("async");
 
         if (async != null) {
-            return new ElasticBulkProcessorHandler(elasticConnection, indexName, indexDefinition, definitionBuilder, waitForESAcknowledgement);
+            return new ElasticBulkProcessorHandler(elasticConnection, indexName, indexDefinition, definitionBuilder, metricHandler, waitForESAcknowledgement);
         }
 
         // commit-info has priority over configuration in index definition
@@ -129,31 +184,64 @@ class ElasticBulkProcessorHandler {
         }
 
         if (SYNC_RT_MODE.equals(syncMode)) {
-            return new RealTimeBulkProcessorHandler(elasticConnection, indexName, indexDefinition, definitionBuilder, waitForESAcknowledgement);
+            return new RealTimeBulkProcessorHandler(elasticConnection, indexName, indexDefinition, definitionBuilder, metricHandler, waitForESAcknowledgement);
         }
 
-        return new ElasticBulkProcessorHandler(elasticConnection, indexName, indexDefinition, definitionBuilder, waitForESAcknowledgement);
+        return new ElasticBulkProcessorHandler(elasticConnection, indexName, indexDefinition, definitionBuilder, metricHandler, waitForESAcknowledgement);
     }
 
     private BulkIngester<String> initBulkIngester() {
+        AdaptiveBulkController.Settings settings = bulkController == null ?
+                new AdaptiveBulkController.Settings(0, indexDefinition.bulkActions, indexDefinition.bulkSizeBytes,
+                        BULK_PROCESSOR_CONCURRENCY) :
+                bulkController.getSettings();
+        bulkSettings = settings;
+        metricHandler.markBulkSettings(indexName, settings.maxOperations, settings.maxSizeBytes, settings.concurrency);
+        OakBulkListener listener = new OakBulkListener(ingesterGeneration++, settings);
         // BulkIngester does not support retry policies. Some retries though are already implemented in the transport layer.
         // More details here: https://github.com/elastic/elasticsearch-java/issues/478
         return BulkIngester.of(b -> {
             b = b.client(elasticConnection.getAsyncClient())
-                    .listener(new OakBulkListener());
-            if (indexDefinition.bulkActions > 0) {
-                b = b.maxOperations(indexDefinition.bulkActions);
+                    .listener(listener);
+            if (settings.maxOperations > 0) {
+                b = b.maxOperations(settings.maxOperations);
             }
-            if (indexDefinition.bulkSizeBytes > 0) {
-                b = b.maxSize(indexDefinition.bulkSizeBytes);
+            if (settings.maxSizeBytes > 0) {
+                b = b.maxSize(settings.maxSizeBytes);
             }
             if (indexDefinition.bulkFlushIntervalMs > 0) {
                 b = b.flushInterval(indexDefinition.bulkFlushIntervalMs, TimeUnit.MILLISECONDS);
             }
-            return b.maxConcurrentRequests(BULK_PROCESSOR_CONCURRENCY);
+            return b.maxConcurrentRequests(settings.concurrency);
         });
     }
 
+    /**
+     * The settings of a BulkIngester can't be changed once it is created. If the bulk controller changed the
+     * settings, the current ingester is closed (which sends the pending operations and waits for the in-flight
+     * requests) and a new one is created. This is done at most once every {@link #MIN_RECONFIGURE_INTERVAL_MS};
+     * in the meantime, the current settings are kept.
+     */
+    private void adaptBulkIngester() {
+        if (bulkController == null || bulkController.getSettings() == bulkSettings) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (reconfigured && TimeUnit.NANOSECONDS.toMillis(now - lastReconfigureNanos) < MIN_RECONFIGURE_INTERVAL_MS) {
+            return;
+        }
+        LOG.debug("Bulk settings of {} changed from {} to {}", indexName, bulkSettings, bulkController.getSettings());
+        bulkIngester.close();
+        bulkIngester = initBulkIngester();
+        lastReconfigureNanos = now;
+        reconfigured = true;
+    }
+
+    @TestOnly
+    int getIngesterGeneration() {
+        return ingesterGeneration;
+    }
+
     private void checkFailures() throws IOException {
         if (!suppressedErrorCauses.isEmpty()) {
             IOException ioe = new IOException("Exception while indexing. See suppressed for details");
@@ -173,6 +261,7 @@ class ElasticBulkProcessorHandler {
     private void add(BulkOperation operation, String context) throws IOException {
         // fail fast: we don't want to wait until the processor gets closed to fail
         checkFailures();
+        adaptBulkIngester();
         bulkIngester.add(operation, context);
         totalOperations++;
     }
@@ -214,15 +303,56 @@ class ElasticBulkProcessorHandler {
         return updatesMap.containsValue(Boolean.TRUE);
     }
 
+    private static boolean isRejected(Throwable failure) {
+        for (Throwable t = failure; t != null; t = t.getCause()) {
+            if (t instanceof ElasticsearchException && ((ElasticsearchException) t).status() == TOO_MANY_REQUESTS) {
+                return true;
+            }
+            if (t instanceof ResponseException &&
+                    ((ResponseException) t).getResponse().getStatusLine().getStatusCode() == TOO_MANY_REQUESTS) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private class OakBulkListener implements BulkListener<String> {
 
+        private final int generation;
+
+        private final AdaptiveBulkController.Settings settings;
+
+        /**
+         * The start times of the in-flight bulk requests, keyed by execution id
+         */
+        private final ConcurrentHashMap<Long, Long> startTimes = new ConcurrentHashMap<>();
+
+        OakBulkListener(int generation, AdaptiveBulkController.Settings settings) {
+            this.generation = generation;
+            this.settings = settings;
+        }
+
+        /**
+         * Execution ids start from 1 for each BulkIngester: the generation of the ingester makes the keys of the
+         * updates map unique
+         */
+        private long updateKey(long executionId) {
+            return ((long) generation << 32) | executionId;
+        }
+
+        private long elapsedMillis(long executionId) {
+            Long start = startTimes.remove(executionId);
+            return start == null ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+
         @Override
         public void beforeBulk(long executionId, BulkRequest request, List<String> contexts) {
             // register new bulk party
             phaser.register();
 
             // init update status
-            updatesMap.put(executionId, Boolean.FALSE);
+            updatesMap.put(updateKey(executionId), Boolean.FALSE);
+            startTimes.put(executionId, System.nanoTime());
 
             LOG.debug("Sending bulk with id {} -> {}", executionId, contexts);
             if (LOG.isTraceEnabled()) {
@@ -237,7 +367,13 @@ class ElasticBulkProcessorHandler {
         @Override
         public void afterBulk(long executionId, BulkRequest request, List<String> contexts, BulkResponse response) {
             try {
-                LOG.debug("Bulk with id {} processed in {} ms", executionId, response.took());
+                long latencyMs = elapsedMillis(executionId);
+                int rejected = (int) response.items().stream().filter(i -> i.status() == TOO_MANY_REQUESTS).count();
+                metricHandler.measureBulk(indexName, latencyMs, contexts.size(), rejected);
+                if (bulkController != null) {
+                    bulkController.onBulk(settings, latencyMs, rejected);
+                }
+                LOG.debug("Bulk with id {} processed in {} ms ({} ms including transport)", executionId, response.took(), latencyMs);
                 if (LOG.isTraceEnabled()) {
                     LOG.trace(response.toString());
                 }
@@ -272,7 +408,7 @@ class ElasticBulkProcessorHandler {
                                     item.id(), item.index(), item.error());
                         } else if (!hasSuccesses) {
                             // Set indexUpdated to true even if 1 item was updated successfully
-                            updatesMap.put(executionId, Boolean.TRUE);
+                            updatesMap.put(updateKey(executionId), Boolean.TRUE);
                             hasSuccesses = true;
                         }
                     }
@@ -284,7 +420,7 @@ class ElasticBulkProcessorHandler {
                         status.setProperty(IndexDefinition.FAILED_DOC_PATHS, failedDocSet, Type.STRINGS);
                     }
                 } else {
-                    updatesMap.put(executionId, Boolean.TRUE);
+                    updatesMap.put(updateKey(executionId), Boolean.TRUE);
                 }
             } finally {
                 phaser.arriveAndDeregister();
@@ -294,6 +430,11 @@ class ElasticBulkProcessorHandler {
         @Override
         public void afterBulk(long executionId, BulkRequest request, List<String> contexts, Throwable failure) {
             try {
+                boolean rejected = isRejected(failure);
+                metricHandler.measureFailedBulk(indexName, elapsedMillis(executionId), rejected);
+                if (bulkController != null) {
+                    bulkController.onFailure(settings, rejected);
+                }
                 LOG.error("ElasticIndex Update Bulk Failure : Bulk with id {} threw an error", executionId, failure);
                 suppressedErrorCauses.add(ErrorCause.of(ec -> {
                     StringWriter sw = new StringWriter();
@@ -323,8 +464,9 @@ class ElasticBulkProcessorHandler {
                                              @NotNull String indexName,
                                              @NotNull ElasticIndexDefinition indexDefinition,
                                              @NotNull NodeBuilder definitionBuilder,
+                                             @NotNull ElasticMetricHandler metricHandler,
                                              boolean waitForESAcknowledgement) {
-            super(elasticConnection, indexName, indexDefinition, definitionBuilder, waitForESAcknowledgement);
+            super(elasticConnection, indexName, indexDefinition, definitionBuilder, metricHandler, waitForESAcknowledgement);
         }
 
         @Override
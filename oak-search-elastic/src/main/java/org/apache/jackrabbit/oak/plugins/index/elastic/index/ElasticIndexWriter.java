@@ -105,7 +105,8 @@ class ElasticIndexWriter implements FulltextIndexWriter<ElasticDocument> {
         }
 
         this.bulkProcessorHandler = ElasticBulkProcessorHandler
-                .getBulkProcessorHandler(elasticConnection, indexName, indexDefinition, definitionBuilder, commitInfo, waitForESAcknowledgement);
+                .getBulkProcessorHandler(elasticConnection, indexName, indexDefinition, definitionBuilder, commitInfo,
+                        waitForESAcknowledgement, indexTracker.getElasticMetricHandler());
     }
 
     @TestOnly
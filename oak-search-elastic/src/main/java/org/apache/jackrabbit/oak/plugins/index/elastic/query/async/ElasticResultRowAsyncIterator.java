@@ -29,6 +29,7 @@ import co.elastic.clients.elasticsearch.core.search.TotalHitsRelation;
 import co.elastic.clients.json.JsonpUtils;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.apache.jackrabbit.oak.plugins.index.elastic.ElasticMetricHandler;
+import org.apache.jackrabbit.oak.plugins.index.elastic.ElasticIndexDefinition;
 import org.apache.jackrabbit.oak.plugins.index.elastic.ElasticIndexNode;
 import org.apache.jackrabbit.oak.plugins.index.elastic.query.ElasticQueryIterator;
 import org.apache.jackrabbit.oak.plugins.index.elastic.query.ElasticRequestHandler;
@@ -61,6 +62,11 @@ import java.util.function.Predicate;
  * The results are produced asynchronously into an internal unbounded {@link BlockingQueue}. To avoid too many calls to
  * Elastic the results are loaded in chunks (using search_after strategy) and loaded only when needed.
  * <p>
+ * When {@link ElasticIndexDefinition#queryPointInTime} is enabled, the chunks are read from a point in time search
+ * context, so that the pages are consistent even if the index is updated concurrently. In this mode the next chunk
+ * is requested when half of the current one is consumed, and the chunk size is doubled (up to
+ * {@link #MAX_FETCH_SIZE}) each time the consumer had to wait for results.
+ * <p>
  * The resources held by this class are automatically released when the iterator is exhausted. In case the iterator is not
  * exhausted, it is recommended for the caller to invoke {@link #close()} to release the resources.
  * </p
@@ -72,6 +78,12 @@ public class ElasticResultRowAsyncIterator implements ElasticQueryIterator, Elas
     private static final FulltextResultRow POISON_PILL =
             new FulltextResultRow("___OAK_POISON_PILL___", 0d, Collections.emptyMap(), null, null);
 
+    // the time a point in time search context is kept alive after each request
+    private static final long POINT_IN_TIME_KEEP_ALIVE_SECONDS = Long.getLong("oak.elastic.pointInTimeKeepAliveSeconds", 60);
+
+    // the maximum chunk size when the chunk size grows with the consumption rate
+    static final int MAX_FETCH_SIZE = 10000;
+
     private final BlockingQueue<FulltextResultRow> queue;
 
     private final ElasticIndexNode indexNode;
@@ -83,9 +95,14 @@ public class ElasticResultRowAsyncIterator implements ElasticQueryIterator, Elas
     private final ElasticResponseHandler elasticResponseHandler;
     private final ElasticFacetProvider elasticFacetProvider;
     private final AtomicReference<Throwable> errorRef = new AtomicReference<>();
+    private final AtomicBoolean scanMeasured = new AtomicBoolean();
+    private final long startTime = System.currentTimeMillis();
 
     private FulltextResultRow nextRow;
 
+    // the time the consumer waited for results
+    private long waitTimeNanos;
+
     public ElasticResultRowAsyncIterator(@NotNull ElasticIndexNode indexNode,
                                          @NotNull ElasticRequestHandler elasticRequestHandler,
                                          @NotNull ElasticResponseHandler elasticResponseHandler,
@@ -110,14 +127,21 @@ public class ElasticResultRowAsyncIterator implements ElasticQueryIterator, Elas
         // if nextRow is not null it means the caller invoked hasNext() before without calling next()
         if (nextRow == null) {
             if (queue.isEmpty()) {
+                elasticQueryScanner.consumerWaiting();
                 // this triggers, when needed, the scan of the next results chunk
                 elasticQueryScanner.scan();
+            } else if (elasticQueryScanner.pointInTime && queue.size() <= elasticQueryScanner.lastFetchSize / 2) {
+                // prefetch the next chunk while the rest of the current one is consumed
+                elasticQueryScanner.scan();
             }
+            long start = System.nanoTime();
             try {
                 nextRow = queue.poll(indexNode.getDefinition().queryTimeoutMs, TimeUnit.MILLISECONDS);
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();  // restore interrupt status
                 throw new IllegalStateException("Error reading next result from Elastic", e);
+            } finally {
+                waitTimeNanos += System.nanoTime() - start;
             }
         }
 
@@ -131,7 +155,11 @@ public class ElasticResultRowAsyncIterator implements ElasticQueryIterator, Elas
             error.fillInStackTrace();
             LOG.error("Error while fetching results from Elastic for [{}]", indexPlan.getFilter(), error);
         }
-        return !POISON_PILL.path.equals(nextRow.path);
+        boolean hasNext = !POISON_PILL.path.equals(nextRow.path);
+        if (!hasNext) {
+            measureScan();
+        }
+        return hasNext;
     }
 
     @Override
@@ -205,6 +233,14 @@ public class ElasticResultRowAsyncIterator implements ElasticQueryIterator, Elas
     @Override
     public void close() {
         elasticQueryScanner.close();
+        measureScan();
+    }
+
+    private void measureScan() {
+        if (scanMeasured.compareAndSet(false, true)) {
+            metricHandler.measureQueryScan(indexNode.getDefinition().getIndexPath(), elasticQueryScanner.requests,
+                    System.currentTimeMillis() - startTime, TimeUnit.NANOSECONDS.toMillis(waitTimeNanos));
+        }
     }
 
     /**
@@ -223,12 +259,20 @@ public class ElasticResultRowAsyncIterator implements ElasticQueryIterator, Elas
         private final @NotNull List<SortOptions> sorts;
         private final Highlight highlight;
         private final SourceConfig sourceConfig;
+        private final boolean needsAggregations;
+        private final boolean pointInTime;
 
         // concurrent data structures to coordinate chunks loading
         private final AtomicBoolean anyDataLeft = new AtomicBoolean(false);
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+        private final AtomicBoolean consumerWaited = new AtomicBoolean(false);
+
+        // the id of the point in time search context, null if not used or already closed
+        private final AtomicReference<String> pointInTimeId = new AtomicReference<>();
 
         private int scannedRows;
-        private int requests;
+        private volatile int requests;
+        private volatile int lastFetchSize;
         private boolean fullScan;
         private long searchStartTime;
 
@@ -262,10 +306,48 @@ public class ElasticResultRowAsyncIterator implements ElasticQueryIterator, Elas
             };
             listeners.forEach(register);
             this.sourceConfig = SourceConfig.of(fn -> fn.filter(f -> f.includes(new ArrayList<>(sourceFieldsSet))));
+            this.needsAggregations = needsAggregations.get();
+            this.pointInTime = indexNode.getDefinition().queryPointInTime;
 
-            searchRequest = SearchRequest.of(builder -> {
-                        builder
+            searchRequest = initialSearchRequest();
+
+            semaphore.tryAcquire();
+
+            searchStartTime = System.currentTimeMillis();
+            requests++;
+
+            if (pointInTime) {
+                // the point in time is opened before the first request, so that all the chunks are read from it
+                // (the sort values of the hits then contain the implicit tiebreaker of point in time searches)
+                indexNode.getConnection().getAsyncClient()
+                        .openPointInTime(o -> o
                                 .index(indexNode.getDefinition().getIndexAlias())
+                                .keepAlive(k -> k.time(POINT_IN_TIME_KEEP_ALIVE_SECONDS + "s")))
+                        .whenComplete((response, throwable) -> {
+                            if (throwable != null) {
+                                LOG.warn("Could not open a point in time on {}, reading the results without it",
+                                        indexNode.getDefinition().getIndexAlias(), throwable);
+                                search(searchRequest);
+                            } else {
+                                pointInTimeId.set(response.id());
+                                if (closed.get()) {
+                                    // closed in the meantime
+                                    closePointInTime();
+                                    return;
+                                }
+                                search(initialSearchRequest());
+                            }
+                        });
+            } else {
+                search(searchRequest);
+            }
+            metricHandler.markQuery(indexNode.getDefinition().getIndexPath(), true);
+        }
+
+        private SearchRequest initialSearchRequest() {
+            lastFetchSize = getFetchSize(0);
+            return SearchRequest.of(builder -> {
+                        target(builder)
                                 .trackTotalHits(thb -> thb.count(indexNode.getDefinition().trackTotalHits))
                                 .sort(sorts)
                                 .source(sourceConfig)
@@ -273,30 +355,35 @@ public class ElasticResultRowAsyncIterator implements ElasticQueryIterator, Elas
                                 .highlight(highlight)
                                 // use a smaller size when the query contains aggregations. This improves performance
                                 // when the client is only interested in insecure facets
-                                .size(needsAggregations.get() ? Math.min(SMALL_RESULT_SET_SIZE, getFetchSize(requests)) : getFetchSize(requests));
+                                .size(needsAggregations ? Math.min(SMALL_RESULT_SET_SIZE, lastFetchSize) : lastFetchSize);
 
-                        if (needsAggregations.get()) {
+                        if (needsAggregations) {
                             builder.aggregations(elasticRequestHandler.aggregations());
                         }
 
                         return builder;
                     }
             );
+        }
 
-            LOG.trace("Kicking initial search for query {}", searchRequest);
-            semaphore.tryAcquire();
-
-            searchStartTime = System.currentTimeMillis();
-            requests++;
+        /**
+         * Sets the target of a search request: the point in time if there is one, the index otherwise.
+         */
+        private SearchRequest.Builder target(SearchRequest.Builder builder) {
+            String id = pointInTimeId.get();
+            return id == null ? builder.index(indexNode.getDefinition().getIndexAlias()) :
+                    builder.pit(p -> p.id(id).keepAlive(k -> k.time(POINT_IN_TIME_KEEP_ALIVE_SECONDS + "s")));
+        }
 
+        private void search(SearchRequest request) {
+            LOG.trace("Kicking search for query {}", request);
             indexNode.getConnection().getAsyncClient()
-                    .search(searchRequest, ObjectNode.class)
+                    .search(request, ObjectNode.class)
                     .whenComplete(((searchResponse, throwable) -> {
                         if (throwable != null) {
                             onFailure(throwable);
                         } else onSuccess(searchResponse);
                     }));
-            metricHandler.markQuery(indexNode.getDefinition().getIndexPath(), true);
         }
 
         /**
@@ -304,15 +391,21 @@ public class ElasticResultRowAsyncIterator implements ElasticQueryIterator, Elas
          * it could keep loading chunks or wait for a {@code #scan} call to resume scanning.
          * <p>
          * Some code in this method relies on structure that are not thread safe. We need to make sure
-         * these data structures are modified before releasing the semaphore.
+         * these data structures are modified, and the hits are emitted, before releasing the semaphore.
          */
         public void onSuccess(SearchResponse<ObjectNode> searchResponse) {
             long searchTotalTime = System.currentTimeMillis() - searchStartTime;
 
+            // the semaphore is held until the hits are emitted, so no other request was sent yet
+            boolean isFirstResponse = requests == 1;
             List<Hit<ObjectNode>> searchHits = searchResponse.hits().hits();
             int hitsSize = searchHits != null ? searchHits.size() : 0;
             metricHandler.measureQuery(indexNode.getDefinition().getIndexPath(), hitsSize, searchResponse.took(),
                     searchTotalTime, searchResponse.timedOut());
+            if (searchResponse.pitId() != null) {
+                // the id of a point in time can change between requests; it is not set again once closed
+                pointInTimeId.getAndUpdate(id -> id == null ? null : searchResponse.pitId());
+            }
             if (hitsSize > 0) {
                 long totalHits = searchResponse.hits().total().value();
                 LOG.debug("Processing search response that took {} to read {}/{} docs", searchResponse.took(), hitsSize, totalHits);
@@ -324,10 +417,7 @@ public class ElasticResultRowAsyncIterator implements ElasticQueryIterator, Elas
                     anyDataLeft.set(true);
                 }
 
-                // now that we got the last hit we can release the semaphore to potentially unlock other requests
-                semaphore.release();
-
-                if (requests == 1) {
+                if (isFirstResponse) {
                     for (SearchHitListener l : searchHitListeners) {
                         l.startData(totalHits);
                     }
@@ -356,6 +446,10 @@ public class ElasticResultRowAsyncIterator implements ElasticQueryIterator, Elas
                 // listeners waiting for some results before triggering a new scan
                 boolean areAllListenersProcessed = listenersWithHits.cardinality() == searchHitListeners.size();
 
+                // the hits are emitted: release the semaphore to unlock other requests. It must not be released
+                // earlier, as the response of a prefetched chunk could otherwise be emitted concurrently
+                semaphore.release();
+
                 if (!anyDataLeft.get()) {
                     LOG.trace("No data left: closing scanner, notifying listeners");
                     close();
@@ -369,6 +463,10 @@ public class ElasticResultRowAsyncIterator implements ElasticQueryIterator, Elas
         }
 
         public void onFailure(Throwable t) {
+            if (closed.get()) {
+                LOG.debug("Ignoring the failure of a request of a closed scanner", t);
+                return;
+            }
             metricHandler.measureFailedQuery(indexNode.getDefinition().getIndexPath(),
                     System.currentTimeMillis() - searchStartTime);
             // Check in case errorRef is already set - this seems unlikely since we close the scanner once we hit failure.
@@ -394,32 +492,51 @@ public class ElasticResultRowAsyncIterator implements ElasticQueryIterator, Elas
          */
         private void scan() {
             if (semaphore.tryAcquire() && anyDataLeft.get()) {
-                final SearchRequest searchReq = SearchRequest.of(s -> s
-                        .index(indexNode.getDefinition().getIndexAlias())
+                int fetchSize = nextFetchSize();
+                final SearchRequest searchReq = SearchRequest.of(s -> target(s)
                         .trackTotalHits(thb -> thb.count(indexNode.getDefinition().trackTotalHits))
                         .sort(sorts)
                         .source(sourceConfig)
                         .searchAfter(lastHitSortValues)
                         .query(query)
                         .highlight(highlight)
-                        .size(getFetchSize(requests++))
+                        .size(fetchSize)
                 );
-                LOG.trace("Kicking new search after query {}", searchReq);
 
                 searchStartTime = System.currentTimeMillis();
-                indexNode.getConnection().getAsyncClient()
-                        .search(searchReq, ObjectNode.class)
-                        .whenComplete(((searchResponse, throwable) -> {
-                            if (throwable != null) {
-                                onFailure(throwable);
-                            } else onSuccess(searchResponse);
-                        }));
+                search(searchReq);
                 metricHandler.markQuery(indexNode.getDefinition().getIndexPath(), false);
             } else {
                 LOG.trace("Scanner is closing or still processing data from the previous scan");
             }
         }
 
+        /**
+         * Notifies the scanner that the consumer is waiting for results, because the previous chunk is consumed.
+         */
+        private void consumerWaiting() {
+            if (anyDataLeft.get()) {
+                consumerWaited.set(true);
+            }
+        }
+
+        /*
+         * picks the size in the fetch array at index=requests or the last if out of bound. With a point in time,
+         * the size doubles each time the consumer had to wait for the previous chunk
+         */
+        private int nextFetchSize() {
+            int size = getFetchSize(requests++);
+            if (pointInTime) {
+                if (consumerWaited.getAndSet(false)) {
+                    size = Math.max(size, (int) Math.min(MAX_FETCH_SIZE, lastFetchSize * 2L));
+                } else {
+                    size = Math.max(size, lastFetchSize);
+                }
+            }
+            lastFetchSize = size;
+            return size;
+        }
+
         /* picks the size in the fetch array at index=requests or the last if out of bound */
         private int getFetchSize(int requestId) {
             int[] queryFetchSizes = indexNode.getDefinition().queryFetchSizes;
@@ -429,10 +546,30 @@ public class ElasticResultRowAsyncIterator implements ElasticQueryIterator, Elas
 
         // close all listeners
         private void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            anyDataLeft.set(false);
             semaphore.release();
+            closePointInTime();
             for (ElasticResponseListener l : allListeners) {
                 l.endData();
             }
         }
+
+        private void closePointInTime() {
+            String id = pointInTimeId.getAndSet(null);
+            if (id != null) {
+                LOG.trace("Closing point in time {}", id);
+                indexNode.getConnection().getAsyncClient()
+                        .closePointInTime(c -> c.id(id))
+                        .whenComplete((response, throwable) -> {
+                            if (throwable != null) {
+                                LOG.debug("Could not close point in time {}, it expires after {} seconds", id,
+                                        POINT_IN_TIME_KEEP_ALIVE_SECONDS, throwable);
+                            }
+                        });
+            }
+        }
     }
 }
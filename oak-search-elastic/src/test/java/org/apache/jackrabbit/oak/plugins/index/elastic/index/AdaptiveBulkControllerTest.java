@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.elastic.index;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class AdaptiveBulkControllerTest {
+
+    @Test
+    public void rejectionsHalveConcurrencyThenSize() {
+        AdaptiveBulkController controller = new AdaptiveBulkController(100, 1000, 4, 8, 1000);
+        AdaptiveBulkController.Settings initial = controller.getSettings();
+
+        controller.onBulk(initial, 10, 5);
+        assertSettings(controller, 100, 1000, 2);
+
+        // feedback of bulks sent with the previous settings is ignored
+        controller.onBulk(initial, 10, 5);
+        controller.onFailure(initial, true);
+        assertSettings(controller, 100, 1000, 2);
+
+        controller.onBulk(controller.getSettings(), 10, 1);
+        assertSettings(controller, 100, 1000, 1);
+
+        controller.onFailure(controller.getSettings(), true);
+        assertSettings(controller, 50, 500, 1);
+
+        // failures that are not rejections don't change the settings
+        controller.onFailure(controller.getSettings(), false);
+        assertSettings(controller, 50, 500, 1);
+        assertEquals(3, controller.getSettings().version);
+    }
+
+    @Test
+    public void lowLatencyIncreasesSizeThenConcurrency() {
+        AdaptiveBulkController controller = new AdaptiveBulkController(100, 0, 1, 2, 1000);
+
+        sample(controller, 100);
+        assertSettings(controller, 150, 0, 1);
+
+        for (int i = 0; i < 5; i++) {
+            sample(controller, 100);
+        }
+        assertSettings(controller, 1000, 0, 1);
+
+        sample(controller, 100);
+        assertSettings(controller, 1000, 0, 2);
+
+        long version = controller.getSettings().version;
+        sample(controller, 100);
+        assertSettings(controller, 1000, 0, 2);
+        assertEquals(version, controller.getSettings().version);
+
+        // latency within the target range: no change
+        sample(controller, 800);
+        assertEquals(version, controller.getSettings().version);
+    }
+
+    @Test
+    public void highLatencyDecreasesSizeThenConcurrency() {
+        AdaptiveBulkController controller = new AdaptiveBulkController(100, 1000, 2, 8, 1000);
+
+        sample(controller, 2000);
+        assertSettings(controller, 75, 750, 2);
+
+        for (int i = 0; i < 20; i++) {
+            sample(controller, 2000);
+        }
+        assertSettings(controller, 10, 100, 1);
+    }
+
+    @Test
+    public void controllerPerIndex() {
+        AdaptiveBulkController controller = AdaptiveBulkController.getController("/oak:index/a", 100, 1000, 1);
+        assertSame(controller, AdaptiveBulkController.getController("/oak:index/a", 100, 1000, 1));
+        assertNotSame(controller, AdaptiveBulkController.getController("/oak:index/b", 100, 1000, 1));
+
+        // the configuration changed
+        AdaptiveBulkController changed = AdaptiveBulkController.getController("/oak:index/a", 200, 1000, 1);
+        assertNotSame(controller, changed);
+        assertEquals(200, changed.getSettings().maxOperations);
+    }
+
+    private static void sample(AdaptiveBulkController controller, long latencyMs) {
+        for (int i = 0; i < AdaptiveBulkController.SAMPLE_SIZE; i++) {
+            controller.onBulk(controller.getSettings(), latencyMs, 0);
+        }
+    }
+
+    private static void assertSettings(AdaptiveBulkController controller, int maxOperations, long maxSizeBytes,
+                                       int concurrency) {
+        AdaptiveBulkController.Settings settings = controller.getSettings();
+        assertEquals(maxOperations, settings.maxOperations);
+        assertEquals(maxSizeBytes, settings.maxSizeBytes);
+        assertEquals(concurrency, settings.concurrency);
+    }
+}
@@ -17,24 +17,42 @@
 package org.apache.jackrabbit.oak.plugins.index.elastic.index;
 
 import co.elastic.clients.elasticsearch.ElasticsearchAsyncClient;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
 import org.apache.jackrabbit.oak.plugins.index.elastic.ElasticConnection;
 import org.apache.jackrabbit.oak.plugins.index.elastic.ElasticIndexDefinition;
+import org.apache.jackrabbit.oak.plugins.index.elastic.ElasticMetricHandler;
+import org.apache.jackrabbit.oak.plugins.index.elastic.util.ElasticIndexDefinitionBuilder;
 import org.apache.jackrabbit.oak.plugins.memory.MultiStringPropertyState;
 import org.apache.jackrabbit.oak.plugins.memory.StringPropertyState;
 import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
 import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
 import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.apache.jackrabbit.oak.stats.StatisticsProvider;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.when;
 
@@ -115,4 +133,92 @@ public class ElasticBulkProcessorHandlerTest {
 
         assertThat(bulkProcessorHandler, instanceOf(ElasticBulkProcessorHandler.RealTimeBulkProcessorHandler.class));
     }
+
+    @Test
+    public void adaptiveBulkOnRejections() throws Exception {
+        AtomicBoolean rejecting = new AtomicBoolean(true);
+        AtomicInteger bulks = new AtomicInteger();
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/_bulk", exchange -> {
+            bulks.incrementAndGet();
+            respondToBulk(exchange, rejecting.get());
+        });
+        server.start();
+        try (ElasticConnection connection = ElasticConnection.newBuilder()
+                .withIndexPrefix("test")
+                .withConnectionParameters("http", server.getAddress().getHostString(), server.getAddress().getPort())
+                .build()) {
+            NodeState defn = new ElasticIndexDefinitionBuilder().build().builder()
+                    .setProperty(ElasticIndexDefinition.FAIL_ON_ERROR, false)
+                    .getNodeState();
+            NodeBuilder defnBuilder = defn.builder();
+            ElasticIndexDefinition definition = new ElasticIndexDefinition(defn, defn, "/oak:index/test", "test");
+            AdaptiveBulkController controller = new AdaptiveBulkController(10, 0, 4, 8, 1000);
+            ElasticBulkProcessorHandler handler = new ElasticBulkProcessorHandler(connection, "test-index", definition,
+                    defnBuilder, new ElasticMetricHandler(StatisticsProvider.NOOP), true, controller);
+
+            // the first bulk is rejected: the concurrency is halved
+            for (int i = 0; i < 10; i++) {
+                handler.delete("/rejected-" + i);
+            }
+            long timeout = System.currentTimeMillis() + 10000;
+            while (controller.getSettings().version == 0 && System.currentTimeMillis() < timeout) {
+                Thread.sleep(10);
+            }
+            assertEquals(2, controller.getSettings().concurrency);
+
+            // the next operations are sent by a new ingester that uses the new settings
+            rejecting.set(false);
+            for (int i = 0; i < 15; i++) {
+                handler.delete("/accepted-" + i);
+            }
+            assertEquals(2, handler.getIngesterGeneration());
+
+            // the settings change again, but the ingester is not replaced that quickly
+            rejecting.set(true);
+            for (int i = 0; i < 5; i++) {
+                handler.delete("/rejected-again-" + i);
+            }
+            timeout = System.currentTimeMillis() + 10000;
+            while (controller.getSettings().version == 1 && System.currentTimeMillis() < timeout) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, controller.getSettings().concurrency);
+            handler.delete("/last");
+            assertEquals(2, handler.getIngesterGeneration());
+
+            assertTrue(handler.close());
+            assertEquals(4, bulks.get());
+            assertEquals(1, controller.getSettings().concurrency);
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static void respondToBulk(HttpExchange exchange, boolean reject) throws IOException {
+        List<String> ids = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("{\"delete\"")) {
+                    ids.add(line);
+                }
+            }
+        }
+        StringBuilder items = new StringBuilder();
+        for (int i = 0; i < ids.size(); i++) {
+            items.append(i == 0 ? "" : ",").append("{\"delete\":{\"_index\":\"test-index\",\"_id\":\"").append(i)
+                    .append(reject ?
+                            "\",\"status\":429,\"error\":{\"type\":\"es_rejected_execution_exception\",\"reason\":\"rejected\"}}}" :
+                            "\",\"status\":200,\"result\":\"deleted\"}}");
+        }
+        byte[] body = ("{\"took\":1,\"errors\":" + reject + ",\"items\":[" + items + "]}").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.getResponseHeaders().add("X-Elastic-Product", "Elasticsearch");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
 }
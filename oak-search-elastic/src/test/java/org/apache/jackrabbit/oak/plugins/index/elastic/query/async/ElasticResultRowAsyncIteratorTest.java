@@ -0,0 +1,255 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.elastic.query.async;
+
+import co.elastic.clients.elasticsearch._types.SortOptions;
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch.core.search.Hit;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.plugins.index.elastic.ElasticConnection;
+import org.apache.jackrabbit.oak.plugins.index.elastic.ElasticIndexDefinition;
+import org.apache.jackrabbit.oak.plugins.index.elastic.ElasticIndexNode;
+import org.apache.jackrabbit.oak.plugins.index.elastic.ElasticMetricHandler;
+import org.apache.jackrabbit.oak.plugins.index.elastic.query.ElasticRequestHandler;
+import org.apache.jackrabbit.oak.plugins.index.elastic.query.ElasticResponseHandler;
+import org.apache.jackrabbit.oak.plugins.index.elastic.util.ElasticIndexDefinitionBuilder;
+import org.apache.jackrabbit.oak.spi.query.Filter;
+import org.apache.jackrabbit.oak.spi.query.QueryIndex;
+import org.apache.jackrabbit.oak.spi.query.QueryLimits;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the paging of {@link ElasticResultRowAsyncIterator} against a local HTTP server that stands in for Elastic.
+ */
+public class ElasticResultRowAsyncIteratorTest {
+
+    private static final int DOCS = 25;
+
+    private static final String PIT_ID = "pit-1";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final AtomicInteger openedPits = new AtomicInteger();
+    private final AtomicInteger closedPits = new AtomicInteger();
+    private final AtomicInteger indexSearches = new AtomicInteger();
+    private final List<Integer> pitSearchSizes = new CopyOnWriteArrayList<>();
+
+    private volatile boolean pitAvailable = true;
+
+    @Mock
+    private ElasticIndexNode indexNode;
+
+    @Mock
+    private ElasticRequestHandler requestHandler;
+
+    @Mock
+    private ElasticResponseHandler responseHandler;
+
+    @Mock
+    private QueryIndex.IndexPlan indexPlan;
+
+    @Mock
+    private Filter filter;
+
+    @Mock
+    private QueryLimits queryLimits;
+
+    @Mock
+    private ElasticMetricHandler metricHandler;
+
+    private HttpServer server;
+
+    private ElasticConnection connection;
+
+    private AutoCloseable closeable;
+
+    @Before
+    public void setUp() throws IOException {
+        closeable = MockitoAnnotations.openMocks(this);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+        connection = ElasticConnection.newBuilder()
+                .withIndexPrefix("test")
+                .withConnectionParameters("http", server.getAddress().getHostString(), server.getAddress().getPort())
+                .build();
+
+        NodeState defn = new ElasticIndexDefinitionBuilder().build().builder()
+                .setProperty(ElasticIndexDefinition.QUERY_POINT_IN_TIME, true)
+                .setProperty(ElasticIndexDefinition.QUERY_FETCH_SIZES, Arrays.asList(2L, 5L), Type.LONGS)
+                .getNodeState();
+        when(indexNode.getDefinition()).thenReturn(new ElasticIndexDefinition(defn, defn, "/oak:index/test", "test"));
+        when(indexNode.getConnection()).thenReturn(connection);
+        when(requestHandler.baseQuery()).thenReturn(Query.of(q -> q.matchAll(m -> m)));
+        when(requestHandler.baseSorts()).thenReturn(Collections.singletonList(
+                SortOptions.of(s -> s.field(f -> f.field(":path")))));
+        when(responseHandler.getPath(any())).thenAnswer(invocation -> ((Hit<?>) invocation.getArgument(0)).id());
+        when(indexPlan.getFilter()).thenReturn(filter);
+        when(filter.getQueryLimits()).thenReturn(queryLimits);
+        when(queryLimits.getLimitReads()).thenReturn(1000L);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        connection.close();
+        server.stop(0);
+        closeable.close();
+    }
+
+    @Test
+    public void pointInTimePaging() throws Exception {
+        assertEquals(expectedPaths(), readAll());
+
+        assertEquals(1, openedPits.get());
+        assertEquals(0, indexSearches.get());
+        List<Integer> sizes = new ArrayList<>(pitSearchSizes);
+        assertEquals(Arrays.asList(2, 5), sizes.subList(0, 2));
+        // after the configured sizes, the chunk size stays the same, or doubles if the consumer had to wait
+        for (int i = 2; i < sizes.size(); i++) {
+            int previous = sizes.get(i - 1);
+            int size = sizes.get(i);
+            assertTrue(sizes.toString(), size == previous || size == previous * 2);
+        }
+        assertTrue(sizes.toString(), sizes.size() <= 6);
+        waitFor(closedPits, 1);
+        verify(metricHandler).measureQueryScan(eq("/oak:index/test"), eq(sizes.size()), anyLong(), anyLong());
+    }
+
+    @Test
+    public void pointInTimeUnavailable() throws Exception {
+        pitAvailable = false;
+
+        assertEquals(expectedPaths(), readAll());
+
+        assertEquals(1, openedPits.get());
+        assertEquals(0, closedPits.get());
+        assertEquals(Collections.emptyList(), pitSearchSizes);
+        assertEquals(4, indexSearches.get());
+    }
+
+    private List<String> readAll() {
+        ElasticResultRowAsyncIterator iterator = new ElasticResultRowAsyncIterator(indexNode, requestHandler,
+                responseHandler, indexPlan, null, metricHandler);
+        List<String> paths = new ArrayList<>();
+        while (iterator.hasNext()) {
+            paths.add(iterator.next().path);
+        }
+        return paths;
+    }
+
+    private static List<String> expectedPaths() {
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < DOCS; i++) {
+            paths.add("/doc-" + i);
+        }
+        return paths;
+    }
+
+    private static void waitFor(AtomicInteger counter, int expected) throws InterruptedException {
+        long timeout = System.currentTimeMillis() + 10000;
+        while (counter.get() != expected && System.currentTimeMillis() < timeout) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, counter.get());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        JsonNode body = mapper.readTree(exchange.getRequestBody());
+        if (path.endsWith("/_pit") && "DELETE".equals(exchange.getRequestMethod())) {
+            closedPits.incrementAndGet();
+            respond(exchange, 200, "{\"succeeded\":true,\"num_freed\":1}");
+        } else if (path.endsWith("/_pit")) {
+            openedPits.incrementAndGet();
+            if (pitAvailable) {
+                respond(exchange, 200, "{\"id\":\"" + PIT_ID + "\"}");
+            } else {
+                respond(exchange, 400, "{\"error\":{\"type\":\"illegal_argument_exception\",\"reason\":\"unsupported\"},\"status\":400}");
+            }
+        } else if (path.endsWith("/_search")) {
+            if (body.has("pit")) {
+                pitSearchSizes.add(body.get("size").asInt());
+            } else {
+                indexSearches.incrementAndGet();
+            }
+            try {
+                // slower than the consumer
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            respond(exchange, 200, searchResponse(body));
+        } else {
+            respond(exchange, 404, "{\"error\":{\"type\":\"not_found\",\"reason\":\"" + path + "\"},\"status\":404}");
+        }
+    }
+
+    private String searchResponse(JsonNode request) {
+        int from = request.has("search_after") ? request.get("search_after").get(0).asInt() + 1 : 0;
+        int to = Math.min(DOCS, from + request.get("size").asInt());
+        StringBuilder hits = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            hits.append(i == from ? "" : ",")
+                    .append("{\"_index\":\"test\",\"_id\":\"/doc-").append(i).append("\",\"_score\":null,")
+                    .append("\"_source\":{\":path\":\"/doc-").append(i).append("\"},")
+                    .append("\"sort\":[").append(i).append(",").append(i).append("]}");
+        }
+        return "{\"took\":1,\"timed_out\":false," +
+                (request.has("pit") ? "\"pit_id\":\"" + PIT_ID + "\"," : "") +
+                "\"_shards\":{\"total\":1,\"successful\":1,\"skipped\":0,\"failed\":0}," +
+                "\"hits\":{\"total\":{\"value\":" + DOCS + ",\"relation\":\"eq\"},\"max_score\":null,\"hits\":[" + hits + "]}}";
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.getResponseHeaders().add("X-Elastic-Product", "Elasticsearch");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -70,6 +70,8 @@ public class ExtractedTextCache {
             Boolean.getBoolean("oak.extraction.inCallerThread");
     private static final boolean EXTRACT_FORGET_TIMEOUT =
             Boolean.getBoolean("oak.extraction.forgetTimeout");
+    private static final long STORE_SIZE_MB =
+            Long.getLong("oak.extraction.storeSizeMB", 0);
 
     private static final String TIMEOUT_MAP = "textExtractionTimeout.properties";
     private static final String EMPTY_STRING = "";
@@ -87,6 +89,8 @@ public class ExtractedTextCache {
 
     private final ConcurrentHashMap<String, String> timeoutMap;
     private final File indexDir;
+    // the persistent store (in the index directory), or null if disabled
+    private final ExtractedTextStore store;
     private final CacheStats cacheStats;
     private final boolean alwaysUsePreExtractedCache;
     private volatile ExecutorService executorService;
@@ -104,6 +108,25 @@ public class ExtractedTextCache {
 
     public ExtractedTextCache(long maxWeight, long expiryTimeInSecs, boolean alwaysUsePreExtractedCache,
                               File indexDir, StatisticsProvider statisticsProvider) {
+        this(maxWeight, expiryTimeInSecs, alwaysUsePreExtractedCache, indexDir, statisticsProvider,
+                STORE_SIZE_MB * 1024 * 1024);
+    }
+
+    /**
+     * Create a cache.
+     *
+     * @param maxWeight the maximum weight of the in-memory cache (0 to disable)
+     * @param expiryTimeInSecs the expiry time of entries in the in-memory cache
+     * @param alwaysUsePreExtractedCache whether to use pre-extracted text also
+     *            when not reindexing
+     * @param indexDir the directory to persist the timeouts and extracted text
+     *            in, or null
+     * @param statisticsProvider the statistics provider, or null
+     * @param maxStoreSize the maximum size of the persistent store of extracted
+     *            text in the index directory (0 to disable)
+     */
+    public ExtractedTextCache(long maxWeight, long expiryTimeInSecs, boolean alwaysUsePreExtractedCache,
+                              File indexDir, StatisticsProvider statisticsProvider, long maxStoreSize) {
         if (maxWeight > 0) {
             cache = CacheBuilder.newBuilder()
                     .weigher(EmpiricalWeigher.INSTANCE)
@@ -122,6 +145,7 @@ public class ExtractedTextCache {
         this.indexDir = indexDir;
         loadTimeoutMap();
         this.statisticsProvider = statisticsProvider;
+        this.store = openStore(indexDir, maxStoreSize);
     }
 
     /**
@@ -152,6 +176,12 @@ public class ExtractedTextCache {
         if (cache != null && id != null && result == null) {
             result = cache.getIfPresent(id);
         }
+        if (store != null && id != null && result == null) {
+            result = store.get(id);
+            if (result != null && cache != null) {
+                cache.put(id, result);
+            }
+        }
         if (result == null && id != null) {
             result = timeoutMap.get(id);
         }
@@ -166,6 +196,11 @@ public class ExtractedTextCache {
                 cache.put(id, getText(extractedText));
             }
         }
+        // errors are not persisted, as they might be temporary
+        if (store != null && id != null
+                && extractedText.getExtractionResult() != ExtractionResult.ERROR) {
+            store.put(id, getText(extractedText));
+        }
     }
 
     public void putTimeout(@NotNull Blob blob, @NotNull ExtractedText extractedText) {
@@ -244,6 +279,26 @@ public class ExtractedTextCache {
             public int getTimeoutCount() {
                 return timeoutCount;
             }
+
+            @Override
+            public long getStoreHitCount() {
+                return store == null ? 0 : store.getHitCount();
+            }
+
+            @Override
+            public long getStoreMissCount() {
+                return store == null ? 0 : store.getMissCount();
+            }
+
+            @Override
+            public int getStoreEntryCount() {
+                return store == null ? 0 : store.getEntryCount();
+            }
+
+            @Override
+            public String getStoreSize() {
+                return IOUtils.humanReadableByteCount(store == null ? 0 : store.getSize());
+            }
         };
     }
 
@@ -300,6 +355,13 @@ public class ExtractedTextCache {
         // don't clean the persistent map on purpose, so we don't re-try
         // after restarting the service or so
         closeExecutorService();
+        if (store != null) {
+            try {
+                store.close();
+            } catch (IOException e) {
+                log.warn("Could not close the extracted text store", e);
+            }
+        }
     }
 
     public void process(String name, Callable<Void> callable) throws Throwable {
@@ -389,6 +451,19 @@ public class ExtractedTextCache {
         }
     }
 
+    @Nullable
+    private static ExtractedTextStore openStore(File indexDir, long maxStoreSize) {
+        if (indexDir == null || maxStoreSize <= 0) {
+            return null;
+        }
+        try {
+            return new ExtractedTextStore(new File(indexDir, ExtractedTextStore.DIR_NAME), maxStoreSize);
+        } catch (IOException e) {
+            log.warn("Could not open the extracted text store in {}", indexDir, e);
+            return null;
+        }
+    }
+
     private synchronized void loadTimeoutMap() {
         if (indexDir == null || !indexDir.exists()) {
             return;
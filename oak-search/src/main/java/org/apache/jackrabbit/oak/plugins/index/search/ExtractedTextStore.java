@@ -0,0 +1,544 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.search;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A persistent store of extracted text, keyed by the content identity of the
+ * binary. This allows to reuse the extracted text after a restart, and when
+ * reindexing.
+ * <p>
+ * The text is appended to a log file; the index (the position of each entry
+ * in the file) is kept in memory, and is rebuilt when opening the store. An
+ * incomplete entry at the end of the file (for example after a crash) is
+ * removed. If the file grows larger than the maximum size, the store is
+ * compacted: the most recently used entries, up to half the maximum size, are
+ * copied to a temporary file, which is then renamed to the next generation,
+ * so that a file of the latest generation is always complete. Temporary files
+ * left over from an interrupted compaction are removed when opening the store.
+ * <p>
+ * Compaction runs in the background: the entries are copied without holding
+ * the lock, so that reads and writes are not blocked. Only the entries that
+ * were added in the meantime are copied while holding the write lock, before
+ * switching to the new file.
+ */
+class ExtractedTextStore implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ExtractedTextStore.class);
+
+    static final String DIR_NAME = "extractedText";
+
+    private static final String FILE_PREFIX = "data-";
+
+    private static final String FILE_SUFFIX = ".log";
+
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    /**
+     * The record header: the length of the key, the length of the text, and
+     * the checksum of the key and text.
+     */
+    private static final int HEADER_LENGTH = 12;
+
+    /**
+     * The maximum length of an entry (including the header). Larger entries
+     * are not stored, so that an entry can be read into one buffer.
+     */
+    static final int MAX_ENTRY_LENGTH = Integer.MAX_VALUE - 8;
+
+    private final File dir;
+
+    private final long maxSize;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Executor compactionExecutor;
+
+    /**
+     * The executor that was created by this store, if any (it is shut down
+     * when closing the store).
+     */
+    @Nullable
+    private final ThreadPoolExecutor ownExecutor;
+
+    private final AtomicBoolean compactionPending = new AtomicBoolean();
+
+    private final Map<String, Entry> index = new ConcurrentHashMap<>();
+
+    private final AtomicLong accessCounter = new AtomicLong();
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private volatile long compactionCount;
+
+    private long generation;
+
+    private File file;
+
+    private FileChannel channel;
+
+    private volatile long size;
+
+    ExtractedTextStore(File dir, long maxSize) throws IOException {
+        this(dir, maxSize, null);
+    }
+
+    /**
+     * Open the store.
+     *
+     * @param dir the directory
+     * @param maxSize the maximum size of the file
+     * @param compactionExecutor the executor to compact the store, or null to
+     *            use a background thread
+     */
+    ExtractedTextStore(File dir, long maxSize, @Nullable Executor compactionExecutor) throws IOException {
+        this.dir = dir;
+        this.maxSize = maxSize;
+        if (compactionExecutor == null) {
+            ownExecutor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                Thread thread = new Thread(r, "oak extracted text store compaction");
+                thread.setDaemon(true);
+                return thread;
+            });
+            ownExecutor.allowCoreThreadTimeOut(true);
+            compactionExecutor = ownExecutor;
+        } else {
+            ownExecutor = null;
+        }
+        this.compactionExecutor = compactionExecutor;
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Could not create the directory " + dir);
+        }
+        open();
+    }
+
+    /**
+     * Get the extracted text of a binary.
+     *
+     * @param id the content identity
+     * @return the text, or null if not found
+     */
+    @Nullable
+    String get(String id) {
+        lock.readLock().lock();
+        try {
+            Entry e = index.get(id);
+            if (e == null || channel == null) {
+                missCount.increment();
+                return null;
+            }
+            ByteBuffer buff = ByteBuffer.allocate(e.textLength);
+            readFully(channel, buff, e.offset + HEADER_LENGTH + e.keyLength);
+            e.lastAccess = accessCounter.incrementAndGet();
+            hitCount.increment();
+            return new String(buff.array(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            log.warn("Could not read the extracted text of {} from {}", id, file, e);
+            missCount.increment();
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Add the extracted text of a binary, if not stored yet.
+     *
+     * @param id the content identity
+     * @param text the text
+     */
+    void put(String id, String text) {
+        if (index.containsKey(id)) {
+            return;
+        }
+        byte[] key = id.getBytes(StandardCharsets.UTF_8);
+        byte[] value = text.getBytes(StandardCharsets.UTF_8);
+        long length = (long) HEADER_LENGTH + key.length + value.length;
+        if (length > maxSize / 2 || length > MAX_ENTRY_LENGTH) {
+            // would be removed by the next compaction, or is too large
+            return;
+        }
+        boolean full;
+        lock.writeLock().lock();
+        try {
+            if (channel == null || index.containsKey(id)) {
+                return;
+            }
+            ByteBuffer buff = ByteBuffer.allocate((int) length);
+            buff.putInt(key.length).putInt(value.length).putInt(checksum(key, value));
+            buff.put(key).put(value);
+            buff.flip();
+            long offset = size;
+            writeFully(channel, buff, offset);
+            Entry e = new Entry(offset, key.length, value.length);
+            e.lastAccess = accessCounter.incrementAndGet();
+            index.put(id, e);
+            size = offset + length;
+            full = size > maxSize;
+        } catch (IOException e) {
+            log.warn("Could not write the extracted text of {} to {}", id, file, e);
+            return;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (full && compactionPending.compareAndSet(false, true)) {
+            try {
+                compactionExecutor.execute(this::compactQuietly);
+            } catch (RejectedExecutionException e) {
+                compactionPending.set(false);
+                log.debug("Could not schedule the compaction of {}", file, e);
+            }
+        }
+    }
+
+    long getHitCount() {
+        return hitCount.sum();
+    }
+
+    long getMissCount() {
+        return missCount.sum();
+    }
+
+    long getCompactionCount() {
+        return compactionCount;
+    }
+
+    long getSize() {
+        return size;
+    }
+
+    int getEntryCount() {
+        return index.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (ownExecutor != null) {
+            ownExecutor.shutdown();
+            try {
+                ownExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                log.warn("Interrupted while waiting for the compaction of {}", file);
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            if (channel != null) {
+                channel.force(false);
+                channel.close();
+                channel = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void open() throws IOException {
+        File[] tempFiles = dir.listFiles((d, name) -> name.startsWith(FILE_PREFIX) && name.endsWith(TEMP_FILE_SUFFIX));
+        if (tempFiles != null) {
+            for (File f : tempFiles) {
+                // left over from an interrupted compaction
+                log.info("Removing the incomplete file {}", f);
+                delete(f);
+            }
+        }
+        File[] files = dir.listFiles((d, name) -> name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX));
+        long latest = -1;
+        if (files != null) {
+            for (File f : files) {
+                latest = Math.max(latest, getGeneration(f));
+            }
+            for (File f : files) {
+                // left over from a compaction that was interrupted after
+                // the new generation was complete
+                if (getGeneration(f) != latest) {
+                    delete(f);
+                }
+            }
+        }
+        generation = Math.max(0, latest);
+        file = getFile(generation);
+        size = file.exists() ? readIndex(file) : 0;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() > size) {
+            log.info("Removing an incomplete entry at the end of {}", file);
+            channel.truncate(size);
+        }
+        log.info("Opened the extracted text store {} with {} entries, {} bytes", file, index.size(), size);
+    }
+
+    /**
+     * Read the index from the file.
+     *
+     * @return the length of the valid part of the file
+     */
+    private long readIndex(File f) throws IOException {
+        long offset = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)))) {
+            while (true) {
+                int keyLength = in.readInt();
+                int textLength = in.readInt();
+                int checksum = in.readInt();
+                long length = (long) HEADER_LENGTH + keyLength + textLength;
+                if (keyLength < 0 || textLength < 0 || length > MAX_ENTRY_LENGTH || offset + length > f.length()) {
+                    break;
+                }
+                byte[] key = new byte[keyLength];
+                byte[] value = new byte[textLength];
+                in.readFully(key);
+                in.readFully(value);
+                if (checksum(key, value) != checksum) {
+                    break;
+                }
+                index.put(new String(key, StandardCharsets.UTF_8), new Entry(offset, keyLength, textLength));
+                offset += length;
+            }
+        } catch (EOFException e) {
+            // end of the file, possibly an incomplete entry
+        }
+        return offset;
+    }
+
+    private void compactQuietly() {
+        try {
+            compact();
+        } catch (IOException e) {
+            log.warn("Could not compact the extracted text store {}", file, e);
+        } finally {
+            compactionPending.set(false);
+        }
+    }
+
+    /**
+     * Copy the most recently used entries (up to half the maximum size) to a
+     * new file. The entries are first written to a temporary file, which is
+     * renamed once it is complete. The lock is only held to copy the entries
+     * that were added while copying, and to switch to the new file.
+     */
+    private void compact() throws IOException {
+        FileChannel source;
+        long copiedSize;
+        List<Map.Entry<String, Entry>> entries;
+        File newFile;
+        lock.readLock().lock();
+        try {
+            if (channel == null) {
+                return;
+            }
+            source = channel;
+            copiedSize = size;
+            entries = new ArrayList<>(index.size());
+            for (Map.Entry<String, Entry> e : index.entrySet()) {
+                // the last access time may change while sorting
+                Entry old = e.getValue();
+                Entry copy = new Entry(old.offset, old.keyLength, old.textLength);
+                copy.lastAccess = old.lastAccess;
+                entries.add(new AbstractMap.SimpleImmutableEntry<>(e.getKey(), copy));
+            }
+            newFile = getFile(generation + 1);
+        } finally {
+            lock.readLock().unlock();
+        }
+        entries.sort(Comparator.comparingLong(
+                (Map.Entry<String, Entry> e) -> e.getValue().lastAccess).reversed());
+        File tempFile = new File(dir, newFile.getName() + TEMP_FILE_SUFFIX);
+        Map<String, Entry> newIndex = new HashMap<>();
+        try {
+            long newSize = copyEntries(source, entries, tempFile, 0, maxSize / 2, newIndex);
+            lock.writeLock().lock();
+            try {
+                if (channel != source) {
+                    // closed in the meantime
+                    delete(tempFile);
+                    return;
+                }
+                List<Map.Entry<String, Entry>> added = new ArrayList<>();
+                for (Map.Entry<String, Entry> e : index.entrySet()) {
+                    Entry n = newIndex.get(e.getKey());
+                    if (n != null) {
+                        n.lastAccess = e.getValue().lastAccess;
+                    } else if (e.getValue().offset >= copiedSize) {
+                        added.add(e);
+                    }
+                }
+                newSize = copyEntries(channel, added, tempFile, newSize, Long.MAX_VALUE, newIndex);
+                Files.move(tempFile.toPath(), newFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                // the rename needs to be durable before the old file is removed
+                syncDirectory();
+                channel.close();
+                delete(file);
+                generation++;
+                file = newFile;
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                log.info("Compacted the extracted text store from {} entries, {} bytes to {} entries, {} bytes",
+                        index.size(), size, newIndex.size(), newSize);
+                index.clear();
+                index.putAll(newIndex);
+                size = newSize;
+                compactionCount++;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (IOException e) {
+            if (tempFile.exists()) {
+                delete(tempFile);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Append entries to the target file, in the given order, until the limit
+     * is reached.
+     *
+     * @return the new length of the target file
+     */
+    private static long copyEntries(FileChannel source, List<Map.Entry<String, Entry>> entries, File target,
+                                    long position, long limit, Map<String, Entry> newIndex) throws IOException {
+        try (FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            out.truncate(position);
+            for (Map.Entry<String, Entry> e : entries) {
+                Entry old = e.getValue();
+                int length = HEADER_LENGTH + old.keyLength + old.textLength;
+                if (position + length > limit) {
+                    break;
+                }
+                ByteBuffer buff = ByteBuffer.allocate(length);
+                readFully(source, buff, old.offset);
+                buff.flip();
+                writeFully(out, buff, position);
+                Entry n = new Entry(position, old.keyLength, old.textLength);
+                n.lastAccess = old.lastAccess;
+                newIndex.put(e.getKey(), n);
+                position += length;
+            }
+            out.force(false);
+        }
+        return position;
+    }
+
+    private void syncDirectory() {
+        try (FileChannel c = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            c.force(true);
+        } catch (IOException e) {
+            // not supported on all platforms
+            log.debug("Could not sync the directory {}", dir, e);
+        }
+    }
+
+    private File getFile(long gen) {
+        return new File(dir, FILE_PREFIX + gen + FILE_SUFFIX);
+    }
+
+    private static long getGeneration(File f) {
+        String name = f.getName();
+        try {
+            return Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void delete(File f) {
+        if (!f.delete()) {
+            log.warn("Could not delete {}", f);
+        }
+    }
+
+    private static int checksum(byte[] key, byte[] value) {
+        CRC32 crc = new CRC32();
+        crc.update(key);
+        crc.update(value);
+        return (int) crc.getValue();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buff, long position) throws IOException {
+        while (buff.hasRemaining()) {
+            int len = channel.read(buff, position);
+            if (len < 0) {
+                throw new EOFException();
+            }
+            position += len;
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buff, long position) throws IOException {
+        while (buff.hasRemaining()) {
+            position += channel.write(buff, position);
+        }
+    }
+
+    private static final class Entry {
+
+        final long offset;
+
+        final int keyLength;
+
+        final int textLength;
+
+        volatile long lastAccess;
+
+        Entry(long offset, int keyLength, int textLength) {
+            this.offset = offset;
+            this.keyLength = keyLength;
+            this.textLength = textLength;
+        }
+    }
+
+}
@@ -346,6 +346,12 @@ public interface FulltextIndexConstants {
     String PROP_SECURE_FACETS_VALUE_INSECURE = "insecure";
     String PROP_SECURE_FACETS_VALUE_STATISTICAL = "statistical";
     String PROP_SECURE_FACETS_VALUE_SECURE = "secure";
+    /**
+     * Like "secure", but the results of the access checks are cached (per index
+     * segment and set of principals) for a limited time, so that they can be
+     * reused by later queries.
+     */
+    String PROP_SECURE_FACETS_VALUE_CACHED = "cached";
     String PROP_SECURE_FACETS_VALUE_JVM_PARAM = "oak.facets.secure";
 
     String STATISTICAL_FACET_SAMPLE_SIZE_JVM_PARAM = "oak.facet.statistical.sampleSize";
@@ -28,8 +28,10 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
@@ -52,6 +54,7 @@ import org.apache.jackrabbit.oak.api.Type;
 import org.apache.jackrabbit.oak.commons.PathUtils;
 import org.apache.jackrabbit.oak.namepath.NamePathMapper;
 import org.apache.jackrabbit.oak.plugins.index.IndexConstants;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyStatistics;
 import org.apache.jackrabbit.oak.plugins.index.search.util.ConfigUtil;
 import org.apache.jackrabbit.oak.plugins.index.search.util.FunctionIndexProcessor;
 import org.apache.jackrabbit.oak.plugins.memory.PropertyStates;
@@ -299,6 +302,11 @@ public class IndexDefinition implements Aggregate.AggregateMapper {
 
     private final String useIfExists;
 
+    /**
+     * The statistics of the property values, by property name, loaded lazily.
+     */
+    private final Map<String, Optional<PropertyStatistics>> propertyStatistics = new ConcurrentHashMap<>();
+
     private final boolean deprecated;
 
     private final boolean testMode;
@@ -607,6 +615,26 @@ public class IndexDefinition implements Aggregate.AggregateMapper {
         return costPerEntry;
     }
 
+    /**
+     * Get the statistics of the values of the given property, as maintained by
+     * the index editor.
+     *
+     * @param propertyName the property name
+     * @return the statistics, or null if not available
+     */
+    @Nullable
+    public PropertyStatistics getPropertyStatistics(String propertyName) {
+        if (root == null) {
+            return null;
+        }
+        return propertyStatistics.computeIfAbsent(propertyName, name -> {
+            NodeState node = NodeStateUtils.getNode(root, indexPath)
+                    .getChildNode(PropertyStatistics.STATISTICS_NODE_NAME)
+                    .getChildNode(name);
+            return Optional.ofNullable(PropertyStatistics.read(node));
+        }).orElse(null);
+    }
+
     protected double getDefaultCostPerEntry(IndexFormatVersion version) {
         return 1.0;
     }
@@ -1947,7 +1975,8 @@ public class IndexDefinition implements Aggregate.AggregateMapper {
         public enum MODE {
             SECURE,
             STATISTICAL,
-            INSECURE
+            INSECURE,
+            CACHED
         }
 
         private final long randomSeed;
@@ -2011,6 +2040,8 @@ public class IndexDefinition implements Aggregate.AggregateMapper {
                     return MODE.INSECURE;
                 case PROP_SECURE_FACETS_VALUE_STATISTICAL:
                     return MODE.STATISTICAL;
+                case PROP_SECURE_FACETS_VALUE_CACHED:
+                    return MODE.CACHED;
                 case PROP_SECURE_FACETS_VALUE_SECURE:
                 default:
                     return MODE.SECURE;
@@ -79,4 +79,28 @@ public interface TextExtractionStatsMBean {
      * @return timeout count
      */
     int getTimeoutCount();
+
+    /**
+     * Number of lookups that were found in the persistent extracted text store
+     * @return the hit count
+     */
+    long getStoreHitCount();
+
+    /**
+     * Number of lookups that were not found in the persistent extracted text store
+     * @return the miss count
+     */
+    long getStoreMissCount();
+
+    /**
+     * Number of entries in the persistent extracted text store
+     * @return the entry count
+     */
+    int getStoreEntryCount();
+
+    /**
+     * Size of the persistent extracted text store
+     * @return the size
+     */
+    String getStoreSize();
 }
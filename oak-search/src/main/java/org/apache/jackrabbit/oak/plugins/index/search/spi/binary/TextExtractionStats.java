@@ -38,7 +38,7 @@ class TextExtractionStats {
     private long totalTime;
     private long totalTextLength;
 
-    public void addStats(long timeInMillis, long bytesRead, int textLength) {
+    public synchronized void addStats(long timeInMillis, long bytesRead, int textLength) {
         count++;
         totalBytesRead += bytesRead;
         totalTime += timeInMillis;
@@ -53,7 +53,7 @@ class TextExtractionStats {
         }
     }
 
-    public void collectStats(ExtractedTextCache cache){
+    public synchronized void collectStats(ExtractedTextCache cache){
         cache.addStats(count, totalTime, totalBytesRead, totalTextLength);
     }
 
@@ -66,7 +66,7 @@ class TextExtractionStats {
     }
 
     @Override
-    public String toString() {
+    public synchronized String toString() {
         return String.format(" %d (Time Taken %s, Bytes Read %s, Extracted text size %s)",
                 count,
                 timeInWords(totalTime),
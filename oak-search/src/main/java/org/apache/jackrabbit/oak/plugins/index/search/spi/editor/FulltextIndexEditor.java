@@ -136,11 +136,11 @@ public class FulltextIndexEditor<D> implements IndexEditor, Aggregate.AggregateR
       throws CommitFailedException {
     if (propertiesChanged || !before.exists()) {
       String path = getPath();
-      if (addOrUpdate(path, after, before.exists())) {
-        long indexed = context.incIndexedNodes();
-        if (indexed % 1000 == 0) {
-          log.debug("[{}] => Indexed {} nodes...", getIndexName(), indexed);
-        }
+      ParallelDocumentWriter parallelWriter = context.getParallelWriter();
+      if (parallelWriter != null) {
+        addOrUpdateParallel(parallelWriter, path, after, before.exists());
+      } else if (addOrUpdate(path, after, before.exists())) {
+        incIndexedNodes();
       }
     }
 
@@ -223,6 +223,11 @@ public class FulltextIndexEditor<D> implements IndexEditor, Aggregate.AggregateR
       String path = concat(getPath(), name);
       try {
         FulltextIndexWriter<D> writer = context.getWriter();
+        ParallelDocumentWriter parallelWriter = context.getParallelWriter();
+        if (parallelWriter != null) {
+          // pending updates must not be applied after the delete
+          parallelWriter.flush();
+        }
         // Remove all index entries in the removed subtree
         writer.deleteDocuments(path);
         this.context.indexUpdate();
@@ -255,6 +260,7 @@ public class FulltextIndexEditor<D> implements IndexEditor, Aggregate.AggregateR
         }
         context.indexUpdate();
         context.getWriter().updateDocument(path, d);
+        context.updatePropertyStatistics(indexingRule, state);
         return true;
       }
     } catch (IOException e) {
@@ -269,6 +275,64 @@ public class FulltextIndexEditor<D> implements IndexEditor, Aggregate.AggregateR
     return false;
   }
 
+  /**
+   * Make and write the document in the executor of the parallel writer. The
+   * document maker and the writer are created in this thread, as the context
+   * is not thread-safe. As in the sequential path, the update callback is only
+   * called if a document was made.
+   */
+  private void addOrUpdateParallel(ParallelDocumentWriter parallelWriter, String path,
+                                   NodeState state, boolean isUpdate) throws CommitFailedException {
+    if (!isIndexable()) {
+      return;
+    }
+    IndexDefinition.IndexingRule rule = indexingRule;
+    List<PropertyState> modified = propertiesModified;
+    try {
+      DocumentMaker<D> maker = context.newDocumentMaker(rule, path);
+      FulltextIndexWriter<D> writer = context.getWriter();
+      parallelWriter.submit(() -> {
+        try {
+          D d = maker.makeDocument(state, isUpdate, modified);
+          if (d != null) {
+            if (log.isTraceEnabled()) {
+              log.trace("[{}] Indexed document for {} is {}", getIndexName(), path, d);
+            }
+            try {
+              context.indexUpdate();
+            } catch (CommitFailedException e) {
+              throw new IOException(e);
+            }
+            writer.updateDocument(path, d);
+            context.updatePropertyStatistics(rule, state);
+            incIndexedNodes();
+          }
+        } catch (IllegalArgumentException ie) {
+          log.warn("Failed to index the node [{}]", path, ie);
+        }
+      });
+    } catch (IOException e) {
+      if (e.getCause() instanceof CommitFailedException) {
+        // the update callback of a previous document failed
+        CommitFailedException ce = (CommitFailedException) e.getCause();
+        context.getIndexingContext().indexUpdateFailed(ce);
+        throw ce;
+      }
+      log.warn("Failed to index the node [{}] due to {}", path, e.getMessage());
+      CommitFailedException ce = new CommitFailedException("Fulltext", 3,
+          "Failed to index the node " + path, e);
+      context.getIndexingContext().indexUpdateFailed(ce);
+      throw ce;
+    }
+  }
+
+  private void incIndexedNodes() {
+    long indexed = context.incIndexedNodes();
+    if (indexed % 1000 == 0) {
+      log.debug("[{}] => Indexed {} nodes...", getIndexName(), indexed);
+    }
+  }
+
   private D makeDocument(String path, NodeState state, boolean isUpdate) throws IOException {
     if (!isIndexable()) {
       return null;
@@ -20,7 +20,12 @@ package org.apache.jackrabbit.oak.plugins.index.search.spi.editor;
 
 import java.io.IOException;
 import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Executor;
+
+import javax.jcr.PropertyType;
 
 import org.apache.jackrabbit.oak.api.CommitFailedException;
 import org.apache.jackrabbit.oak.api.PropertyState;
@@ -29,8 +34,10 @@ import org.apache.jackrabbit.oak.commons.PerfLogger;
 import org.apache.jackrabbit.oak.plugins.index.IndexConstants;
 import org.apache.jackrabbit.oak.plugins.index.IndexUpdateCallback;
 import org.apache.jackrabbit.oak.plugins.index.IndexingContext;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyStatistics;
 import org.apache.jackrabbit.oak.plugins.index.search.ExtractedTextCache;
 import org.apache.jackrabbit.oak.plugins.index.search.IndexDefinition;
+import org.apache.jackrabbit.oak.plugins.index.search.PropertyDefinition;
 import org.apache.jackrabbit.oak.plugins.index.search.PropertyUpdateCallback;
 import org.apache.jackrabbit.oak.plugins.index.search.ReindexOperations;
 import org.apache.jackrabbit.oak.plugins.index.search.spi.binary.FulltextBinaryTextExtractor;
@@ -93,6 +100,18 @@ public abstract class FulltextIndexEditorContext<D> {
 
   private PropertyUpdateCallback propertyUpdateCallback;
 
+  /**
+   * The statistics of the indexed property values, by property name. Loaded
+   * lazily; {@code null} if not maintained for this index.
+   */
+  private Map<String, PropertyStatistics> propertyStatistics;
+
+  private boolean propertyStatisticsLoaded;
+
+  private ParallelDocumentWriter parallelWriter;
+
+  private boolean parallelWriterLoaded;
+
   protected FulltextIndexEditorContext(NodeState root, NodeBuilder definition,
                                        @Nullable IndexDefinition indexDefinition,
                                        IndexUpdateCallback updateCallback,
@@ -121,6 +140,37 @@ public abstract class FulltextIndexEditorContext<D> {
 
   public abstract DocumentMaker<D> newDocumentMaker(IndexDefinition.IndexingRule rule, String path);
 
+  /**
+   * Get the executor that is used to make and write documents while
+   * reindexing. The document makers and the writer need to support concurrent
+   * use if an executor is returned.
+   *
+   * @return the executor, or null to make documents in the indexing thread
+   */
+  @Nullable
+  protected Executor getReindexExecutor() {
+    return null;
+  }
+
+  /**
+   * Get the writer that makes documents concurrently, if reindexing and
+   * supported.
+   *
+   * @return the writer, or null
+   */
+  @Nullable
+  ParallelDocumentWriter getParallelWriter() {
+    if (!parallelWriterLoaded && reindex) {
+      parallelWriterLoaded = true;
+      Executor executor = getReindexExecutor();
+      if (executor != null) {
+        parallelWriter = new ParallelDocumentWriter(executor);
+        log.info("[{}] Making documents concurrently while reindexing", definition.getIndexPath());
+      }
+    }
+    return parallelWriter;
+  }
+
   protected FulltextBinaryTextExtractor createBinaryTextExtractor(ExtractedTextCache extractedTextCache,
                                                                   IndexDefinition definition, boolean reindex) {
     return new FulltextBinaryTextExtractor(extractedTextCache, definition, reindex);
@@ -152,6 +202,9 @@ public abstract class FulltextIndexEditorContext<D> {
    * close writer if it's not null
    */
   public void closeWriter() throws IOException {
+    if (parallelWriter != null) {
+      parallelWriter.flush();
+    }
     Calendar currentTime = getCalendar();
     final long start = PERF_LOGGER.start();
     boolean indexUpdated = getWriter().close(currentTime.getTimeInMillis());
@@ -175,6 +228,69 @@ public abstract class FulltextIndexEditorContext<D> {
         textExtractor.done(reindex);
       }
     }
+    writePropertyStatistics();
+  }
+
+  /**
+   * Update the statistics of the indexed values of the simple property
+   * definitions of the given rule. The statistics are only maintained if the
+   * index was (re-)built after this feature was added.
+   *
+   * @param rule the indexing rule
+   * @param state the indexed node
+   */
+  public synchronized void updatePropertyStatistics(IndexDefinition.IndexingRule rule, NodeState state) {
+    if (!propertyStatisticsLoaded) {
+      propertyStatisticsLoaded = true;
+      if (reindex || definitionBuilder.hasChildNode(PropertyStatistics.STATISTICS_NODE_NAME)) {
+        propertyStatistics = new HashMap<>();
+      }
+    }
+    if (propertyStatistics == null) {
+      return;
+    }
+    for (PropertyDefinition pd : rule.getProperties()) {
+      if (!pd.propertyIndex || pd.isRegexp || pd.relative) {
+        continue;
+      }
+      PropertyState ps = state.getProperty(pd.name);
+      if (ps == null || ps.getType().tag() == PropertyType.BINARY) {
+        continue;
+      }
+      PropertyStatistics stats = propertyStatistics.computeIfAbsent(pd.name, this::loadPropertyStatistics);
+      for (String value : ps.getValue(Type.STRINGS)) {
+        stats.add(value);
+      }
+    }
+  }
+
+  private PropertyStatistics loadPropertyStatistics(String propertyName) {
+    if (!reindex) {
+      NodeState node = definitionBuilder.getChildNode(PropertyStatistics.STATISTICS_NODE_NAME)
+          .getChildNode(propertyName).getNodeState();
+      PropertyStatistics stats = PropertyStatistics.read(node);
+      if (stats != null) {
+        return stats;
+      }
+    }
+    // the histogram is only built when reindexing
+    return PropertyStatistics.create(reindex);
+  }
+
+  private void writePropertyStatistics() {
+    if (propertyStatistics == null) {
+      if (reindex) {
+        // so that the statistics are maintained from now on
+        definitionBuilder.child(PropertyStatistics.STATISTICS_NODE_NAME);
+      }
+      return;
+    }
+    NodeBuilder node = definitionBuilder.child(PropertyStatistics.STATISTICS_NODE_NAME);
+    for (Map.Entry<String, PropertyStatistics> e : propertyStatistics.entrySet()) {
+      if (e.getValue().isModified()) {
+        e.getValue().write(node.child(e.getKey()));
+      }
+    }
   }
 
   private String getUpdatedTime(Calendar currentTime) {
@@ -209,7 +325,7 @@ public abstract class FulltextIndexEditorContext<D> {
     return !IndexDefinition.isDisableStoredIndexDefinition();
   }
 
-  public long incIndexedNodes() {
+  public synchronized long incIndexedNodes() {
     indexedNodes++;
     return indexedNodes;
   }
@@ -218,11 +334,11 @@ public abstract class FulltextIndexEditorContext<D> {
     return asyncIndexing;
   }
 
-  public long getIndexedNodes() {
+  public synchronized long getIndexedNodes() {
     return indexedNodes;
   }
 
-  public void indexUpdate() throws CommitFailedException {
+  public synchronized void indexUpdate() throws CommitFailedException {
     updateCallback.indexUpdate();
   }
 
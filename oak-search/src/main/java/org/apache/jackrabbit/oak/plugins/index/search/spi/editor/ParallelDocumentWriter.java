@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.search.spi.editor;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Makes and writes documents in an executor, so that documents are made
+ * concurrently. This is used when reindexing, where making the documents
+ * (analyzing, extracting the text of binaries, reading aggregated nodes) is
+ * usually more expensive than traversing the repository.
+ * <p>
+ * The number of pending documents is limited, so that traversal does not
+ * run too far ahead. Before documents are deleted, all pending documents
+ * need to be written (see {@link #flush()}), so that updates and deletes of
+ * a path are applied in order.
+ */
+class ParallelDocumentWriter {
+
+    /**
+     * The maximum number of documents that are made or written concurrently.
+     */
+    static final int MAX_PENDING = Integer.getInteger("oak.search.reindexMaxPendingDocuments", 1000);
+
+    interface Task {
+        void run() throws IOException;
+    }
+
+    private final Executor executor;
+
+    private final Semaphore pending = new Semaphore(MAX_PENDING);
+
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    ParallelDocumentWriter(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Run the task in the executor. This blocks if too many tasks are pending.
+     *
+     * @param task the task that makes and writes the document
+     * @throws IOException if a previous task failed
+     */
+    void submit(Task task) throws IOException {
+        checkFailure();
+        try {
+            pending.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for pending documents");
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    pending.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.release();
+            throw new IOException("Could not make the document", e);
+        }
+    }
+
+    /**
+     * Wait until all submitted tasks are done.
+     *
+     * @throws IOException if a task failed
+     */
+    void flush() throws IOException {
+        pending.acquireUninterruptibly(MAX_PENDING);
+        pending.release(MAX_PENDING);
+        checkFailure();
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable t = failure.get();
+        if (t == null) {
+            return;
+        }
+        if (t instanceof IOException) {
+            throw (IOException) t;
+        }
+        throw new IOException("Could not make the document", t);
+    }
+
+}
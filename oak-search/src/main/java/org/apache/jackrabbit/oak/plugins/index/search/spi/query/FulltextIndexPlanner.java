@@ -39,6 +39,7 @@ import org.apache.jackrabbit.oak.api.Type;
 import org.apache.jackrabbit.oak.commons.PathUtils;
 import org.apache.jackrabbit.oak.plugins.index.IndexConstants;
 import org.apache.jackrabbit.oak.plugins.index.IndexSelectionPolicy;
+import org.apache.jackrabbit.oak.plugins.index.property.PropertyStatistics;
 import org.apache.jackrabbit.oak.plugins.index.property.ValuePatternUtil;
 import org.apache.jackrabbit.oak.plugins.index.search.IndexDefinition;
 import org.apache.jackrabbit.oak.plugins.index.search.IndexDefinition.IndexingRule;
@@ -863,6 +864,16 @@ public class FulltextIndexPlanner {
                 }
             }
 
+            double selectivity = getSelectivity(propDef.getValue(), pr);
+            if (selectivity >= 0) {
+                // the statistics of the property values are more accurate than the weight
+                double scaledDocCnt = Math.ceil(docCntForField * selectivity);
+                if (scaledDocCnt < minNumDocs) {
+                    minNumDocs = (int) scaledDocCnt;
+                }
+                continue;
+            }
+
             if (weight > 1) {
                 // use it to scale down the doc count - in broad strokes, we can think of weight
                 // as number of terms for the field with all terms getting equal share of
@@ -911,6 +922,34 @@ public class FulltextIndexPlanner {
         return minNumDocs;
     }
 
+    /**
+     * Estimate the fraction of the documents with the given property that
+     * match the restriction, using the statistics of the property values that
+     * are maintained by the index editor.
+     *
+     * @param pd the property definition
+     * @param pr the restriction, or null
+     * @return the selectivity, or -1 if unknown
+     */
+    private double getSelectivity(PropertyDefinition pd, PropertyRestriction pr) {
+        if (pr == null || pr.isNot || pr.isLike || pr.isNotNullRestriction() || pr.isNullRestriction()
+                || pd.isRegexp || pd.relative) {
+            return -1;
+        }
+        PropertyStatistics stats = definition.getPropertyStatistics(pd.name);
+        if (stats == null) {
+            return -1;
+        }
+        if (pr.list != null) {
+            return stats.getEqualitySelectivity(pr.list.size());
+        } else if (isEqualityRestriction(pr)) {
+            return stats.getEqualitySelectivity(1);
+        }
+        return stats.getRangeSelectivity(
+                pr.first == null ? null : pr.first.getValue(Type.STRING),
+                pr.last == null ? null : pr.last.getValue(Type.STRING));
+    }
+
     private static boolean isEqualityRestriction(PropertyRestriction pr) {
         return pr.first != null && pr.first == pr.last;
     }
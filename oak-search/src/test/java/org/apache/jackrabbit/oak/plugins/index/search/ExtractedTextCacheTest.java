@@ -27,8 +27,11 @@ import org.apache.jackrabbit.oak.plugins.index.fulltext.PreExtractedTextProvider
 import org.apache.jackrabbit.oak.plugins.index.search.ExtractedTextCache;
 import org.apache.jackrabbit.oak.plugins.index.search.spi.editor.FulltextIndexEditor;
 import org.apache.jackrabbit.oak.plugins.memory.ArrayBasedBlob;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeoutException;
 
@@ -45,6 +48,9 @@ import static org.mockito.Mockito.when;
 
 public class ExtractedTextCacheTest {
 
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder(new File("target"));
+
     @Test
     public void cacheDisabling() throws Exception {
         ExtractedTextCache cache = new ExtractedTextCache(0, 0);
@@ -198,6 +204,26 @@ public class ExtractedTextCacheTest {
             cache.get("/a", "foo", b, false));
     }
 
+    @Test
+    public void persistentStore() throws Exception {
+        File dir = temporaryFolder.newFolder();
+        ExtractedTextCache cache = new ExtractedTextCache(FileUtils.ONE_MB, 100, false, dir, null, FileUtils.ONE_MB);
+        IdBlob b = new IdBlob("hello", "a");
+        IdBlob b2 = new IdBlob("hello", "b");
+        cache.put(b, new ExtractedText(ExtractionResult.SUCCESS, "test hello"));
+        cache.put(b2, new ExtractedText(ExtractionResult.ERROR));
+        cache.close();
+
+        // a new cache (after a restart) still has the text, but not the error
+        cache = new ExtractedTextCache(FileUtils.ONE_MB, 100, false, dir, null, FileUtils.ONE_MB);
+        assertEquals("test hello", cache.get("/a", "foo", b, false));
+        assertNull(cache.get("/b", "foo", b2, false));
+        assertEquals(1, cache.getStatsMBean().getStoreHitCount());
+        assertEquals(1, cache.getStatsMBean().getStoreMissCount());
+        assertEquals(1, cache.getStatsMBean().getStoreEntryCount());
+        cache.close();
+    }
+
     private static class IdBlob extends ArrayBasedBlob {
         final String id;
 
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.index.search;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ExtractedTextStoreTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder(new File("target"));
+
+    @Test
+    public void persistence() throws Exception {
+        File dir = temporaryFolder.newFolder();
+        ExtractedTextStore store = new ExtractedTextStore(dir, FileUtils.ONE_MB);
+        assertNull(store.get("a"));
+        store.put("a", "hello");
+        store.put("b", "");
+        store.put("c", "w\u00f6rld");
+        assertEquals("hello", store.get("a"));
+        assertEquals(1, store.getMissCount());
+        assertEquals(1, store.getHitCount());
+        store.close();
+
+        store = new ExtractedTextStore(dir, FileUtils.ONE_MB);
+        assertEquals(3, store.getEntryCount());
+        assertEquals("hello", store.get("a"));
+        assertEquals("", store.get("b"));
+        assertEquals("w\u00f6rld", store.get("c"));
+        store.close();
+    }
+
+    @Test
+    public void incompleteEntry() throws Exception {
+        File dir = temporaryFolder.newFolder();
+        ExtractedTextStore store = new ExtractedTextStore(dir, FileUtils.ONE_MB);
+        store.put("a", "hello");
+        store.put("b", "world");
+        long size = store.getSize();
+        store.close();
+
+        // cut off the last entry
+        File[] files = dir.listFiles();
+        assertEquals(1, files.length);
+        try (RandomAccessFile f = new RandomAccessFile(files[0], "rw")) {
+            f.setLength(size - 2);
+        }
+        store = new ExtractedTextStore(dir, FileUtils.ONE_MB);
+        assertEquals("hello", store.get("a"));
+        assertNull(store.get("b"));
+        store.put("b", "again");
+        store.close();
+
+        store = new ExtractedTextStore(dir, FileUtils.ONE_MB);
+        assertEquals("again", store.get("b"));
+        store.close();
+    }
+
+    @Test
+    public void compaction() throws Exception {
+        File dir = temporaryFolder.newFolder();
+        // compact in the calling thread
+        ExtractedTextStore store = new ExtractedTextStore(dir, 10 * 1024, Runnable::run);
+        String text = new String(new char[100]).replace('\0', 'x');
+        for (int i = 0; i < 1000; i++) {
+            store.put("id" + i, text + i);
+            // keep the first entry in use
+            assertEquals(text + 0, store.get("id0"));
+        }
+        assertTrue(store.getCompactionCount() > 0);
+        assertTrue(store.getSize() <= 10 * 1024);
+        assertEquals(text + 999, store.get("id999"));
+        assertNull(store.get("id1"));
+        store.close();
+
+        assertEquals(1, dir.listFiles().length);
+        store = new ExtractedTextStore(dir, 10 * 1024);
+        assertEquals(text + 0, store.get("id0"));
+        assertEquals(text + 999, store.get("id999"));
+        store.close();
+    }
+
+    @Test
+    public void concurrentCompaction() throws Exception {
+        File dir = temporaryFolder.newFolder();
+        List<Runnable> tasks = new ArrayList<>();
+        ExtractedTextStore store = new ExtractedTextStore(dir, 10 * 1024, tasks::add);
+        String text = new String(new char[100]).replace('\0', 'x');
+        int i = 0;
+        while (tasks.isEmpty()) {
+            store.put("id" + i, text + i);
+            i++;
+        }
+        // entries are added and read while the compaction is pending
+        int added = i;
+        for (; i < added + 10; i++) {
+            store.put("id" + i, text + i);
+        }
+        assertEquals(1, tasks.size());
+        assertEquals(text + 0, store.get("id0"));
+        assertEquals(0, store.getCompactionCount());
+
+        tasks.get(0).run();
+        assertEquals(1, store.getCompactionCount());
+        assertTrue(store.getSize() <= 10 * 1024);
+        assertEquals(text + 0, store.get("id0"));
+        for (int j = added; j < i; j++) {
+            assertEquals(text + j, store.get("id" + j));
+        }
+        store.close();
+        assertEquals(1, dir.listFiles().length);
+    }
+
+    @Test
+    public void interruptedCompaction() throws Exception {
+        File dir = temporaryFolder.newFolder();
+        ExtractedTextStore store = new ExtractedTextStore(dir, FileUtils.ONE_MB);
+        store.put("a", "hello");
+        store.put("b", "world");
+        store.close();
+
+        // a crash while writing the next generation leaves a partial copy
+        File[] files = dir.listFiles();
+        assertEquals(1, files.length);
+        File partial = new File(dir, "data-1.log.tmp");
+        FileUtils.copyFile(files[0], partial);
+        try (RandomAccessFile f = new RandomAccessFile(partial, "rw")) {
+            f.setLength(f.length() - 2);
+        }
+        store = new ExtractedTextStore(dir, FileUtils.ONE_MB);
+        assertEquals(2, store.getEntryCount());
+        assertEquals("hello", store.get("a"));
+        assertEquals("world", store.get("b"));
+        store.close();
+        assertEquals(1, dir.listFiles().length);
+        assertTrue(files[0].exists());
+    }
+
+}
@@ -66,6 +66,11 @@ public class IndexDefinitionFacetConfigTest {
         builder.setProperty(PROP_SECURE_FACETS, "statistical");
         config = SecureFacetConfiguration.getInstance(RANDOM_SEED, builder.getNodeState());
         assertEquals(STATISTICAL_FACET_SAMPLE_SIZE_DEFAULT, config.getStatisticalFacetSampleSize());
+
+        builder.setProperty(PROP_SECURE_FACETS, "cached");
+        config = SecureFacetConfiguration.getInstance(RANDOM_SEED, builder.getNodeState());
+        assertEquals(MODE.CACHED, config.getMode());
+        assertEquals(-1, config.getStatisticalFacetSampleSize());
     }
 
     @Test
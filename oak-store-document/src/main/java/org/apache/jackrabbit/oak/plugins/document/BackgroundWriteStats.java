@@ -31,6 +31,45 @@ class BackgroundWriteStats {
     long calls;
     long totalWriteTime;
 
+    /**
+     * Time in milliseconds to copy the pending modifications while holding
+     * the lock.
+     */
+    long snapshot;
+
+    /**
+     * Time in milliseconds to write the _lastRev updates below the root.
+     */
+    long batchWrite;
+
+    /**
+     * Time in milliseconds to update the root document and cluster node info.
+     */
+    long rootWrite;
+
+    /**
+     * Number of depth levels written one after another with a parallel
+     * background write.
+     */
+    long levels;
+
+    /**
+     * Time in milliseconds of the slowest batch update.
+     */
+    long maxBatch;
+
+    /**
+     * Sum of the time in milliseconds of all batch updates. With a parallel
+     * background write this is larger than {@link #batchWrite}.
+     */
+    long totalBatchTime;
+
+    void batchDone(long time) {
+        calls++;
+        maxBatch = Math.max(maxBatch, time);
+        totalBatchTime += time;
+    }
+
     @Override
     public String toString() {
         return "clean:" + clean +
@@ -41,6 +80,12 @@ class BackgroundWriteStats {
                 ", write:" + write +
                 ", num:" + num +
                 ", calls:" + calls +
-                ", totalWriteTime:" + totalWriteTime;
+                ", totalWriteTime:" + totalWriteTime +
+                ", snapshot:" + snapshot +
+                ", batchWrite:" + batchWrite +
+                ", rootWrite:" + rootWrite +
+                ", levels:" + levels +
+                ", maxBatch:" + maxBatch +
+                ", totalBatchTime:" + totalBatchTime;
     }
 }
@@ -28,6 +28,7 @@ import static java.util.Objects.nonNull;
 import static java.util.concurrent.TimeUnit.MICROSECONDS;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.jackrabbit.JcrConstants.JCR_PRIMARYTYPE;
 import static org.apache.jackrabbit.oak.api.CommitFailedException.OAK;
 import static org.apache.jackrabbit.oak.plugins.document.Collection.JOURNAL;
 import static org.apache.jackrabbit.oak.plugins.document.Collection.NODES;
@@ -55,12 +56,15 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -77,6 +81,7 @@ import org.apache.jackrabbit.oak.api.CommitFailedException;
 import org.apache.jackrabbit.oak.api.PropertyState;
 import org.apache.jackrabbit.oak.cache.CacheStats;
 import org.apache.jackrabbit.oak.commons.PerfLogger;
+import org.apache.jackrabbit.oak.commons.concurrent.ExecutorCloser;
 import org.apache.jackrabbit.oak.commons.json.JsopStream;
 import org.apache.jackrabbit.oak.commons.json.JsopWriter;
 import org.apache.jackrabbit.oak.commons.properties.SystemPropertySupplier;
@@ -88,6 +93,7 @@ import org.apache.jackrabbit.oak.plugins.document.Branch.BranchCommit;
 import org.apache.jackrabbit.oak.plugins.document.UpdateOp.Key;
 import org.apache.jackrabbit.oak.plugins.document.UpdateOp.Operation;
 import org.apache.jackrabbit.oak.plugins.document.bundlor.BundledDocumentDiffer;
+import org.apache.jackrabbit.oak.plugins.document.bundlor.BundlingAnalyzer;
 import org.apache.jackrabbit.oak.plugins.document.bundlor.BundlingConfigHandler;
 import org.apache.jackrabbit.oak.plugins.document.bundlor.DocumentBundlor;
 import org.apache.jackrabbit.oak.plugins.document.persistentCache.PersistentCache;
@@ -135,6 +141,7 @@ import org.apache.jackrabbit.guava.common.base.Suppliers;
 import org.apache.jackrabbit.guava.common.collect.ImmutableList;
 import org.apache.jackrabbit.guava.common.collect.ImmutableMap;
 import org.apache.jackrabbit.guava.common.collect.Iterables;
+import org.apache.jackrabbit.guava.common.collect.Iterators;
 import org.apache.jackrabbit.guava.common.collect.Lists;
 import org.apache.jackrabbit.guava.common.collect.Maps;
 import org.apache.jackrabbit.guava.common.collect.Sets;
@@ -225,6 +232,40 @@ public final class DocumentNodeStore
     public static final String SYS_PROP_PREFETCH = "oak.documentstore.prefetch";
     private final boolean prefetchEnabled = SystemPropertySupplier.create(SYS_PROP_PREFETCH, false).loggingTo(LOG).get();
 
+    /**
+     * The number of child nodes to prefetch ahead while iterating over the
+     * children of a node. Only used when prefetch is enabled. A value of zero
+     * or less disables read-ahead of children.
+     */
+    public static final String SYS_PROP_CHILDREN_PREFETCH_SIZE = "oak.documentstore.childrenPrefetchSize";
+    private final int childrenPrefetchSize = SystemPropertySupplier.create(SYS_PROP_CHILDREN_PREFETCH_SIZE,
+            DocumentNodeState.INITIAL_FETCH_SIZE).loggingTo(LOG).get();
+
+    /**
+     * Records every n-th document read for the bundling analyzer, which
+     * recommends bundling patterns based on the nodes read together. A value
+     * of zero or less disables the analyzer.
+     */
+    public static final String SYS_PROP_BUNDLING_STATS_SAMPLE_INTERVAL = "oak.documentMK.bundlingStatsSampleInterval";
+    private final int bundlingStatsSampleInterval = SystemPropertySupplier.create(SYS_PROP_BUNDLING_STATS_SAMPLE_INTERVAL, 0)
+            .loggingTo(LOG).get();
+
+    /**
+     * The number of threads writing the _lastRev updates of nodes at the same
+     * depth concurrently in the background write. A value of one or less
+     * writes them sequentially.
+     */
+    public static final String SYS_PROP_BACKGROUND_WRITE_PARALLELISM = "oak.documentMK.backgroundWriteParallelism";
+    private final int backgroundWriteParallelism = SystemPropertySupplier.create(SYS_PROP_BACKGROUND_WRITE_PARALLELISM, 1)
+            .loggingTo(LOG).get();
+
+    /**
+     * The executor of the parallel background write, or {@code null} if the
+     * updates are written sequentially.
+     */
+    private final ExecutorService backgroundWriteExecutor = backgroundWriteParallelism > 1
+            ? newBackgroundWriteExecutor(backgroundWriteParallelism) : null;
+
     /**
      * The document store without potentially lease checking wrapper.
      */
@@ -539,6 +580,10 @@ public final class DocumentNodeStore
 
     private final BundledDocumentDiffer bundledDocDiffer = new BundledDocumentDiffer(this);
 
+    @Nullable
+    private final BundlingAnalyzer bundlingAnalyzer = bundlingStatsSampleInterval > 0
+            ? new BundlingAnalyzer(bundlingStatsSampleInterval) : null;
+
     private final JournalPropertyHandlerFactory journalPropertyHandlerFactory;
 
     private final int updateLimit;
@@ -950,6 +995,10 @@ public final class DocumentNodeStore
             }
         }
 
+        if (backgroundWriteExecutor != null) {
+            new ExecutorCloser(backgroundWriteExecutor).close();
+        }
+
         Utils.joinQuietly(clusterUpdateThread);
 
         // attempt diagnostics on lease update thread
@@ -1584,7 +1633,8 @@ public final class DocumentNodeStore
         }
 
         final RevisionVector readRevision = parent.getLastRevision();
-        return transform(getChildren(parent, name, limit).children, new Function<String, DocumentNodeState>() {
+        final List<String> names = getChildren(parent, name, limit).children;
+        final Function<String, DocumentNodeState> toNodeState = new Function<String, DocumentNodeState>() {
             @Override
             public DocumentNodeState apply(String input) {
                 Path p = new Path(parent.getPath(), input);
@@ -1627,7 +1677,80 @@ public final class DocumentNodeStore
                     return e.toString();
                 }
             }
-        });
+        };
+        if (childrenPrefetchSize <= 0 || !isPrefetchEnabled()) {
+            return transform(names, toNodeState);
+        }
+        return new Iterable<DocumentNodeState>() {
+            @Override
+            public Iterator<DocumentNodeState> iterator() {
+                return Iterators.transform(new ChildrenReadAheadIterator(
+                        parent.getPath(), readRevision, names), toNodeState);
+            }
+        };
+    }
+
+    /**
+     * Prefetches the documents of the given child nodes unless the node
+     * states are already cached. Bundled descendants of a child are stored
+     * in the child document and therefore come along with the same read.
+     *
+     * @param parent the path of the parent node.
+     * @param readRevision the read revision of the parent node.
+     * @param names the names of the child nodes to prefetch.
+     */
+    private void prefetchChildren(@NotNull Path parent,
+                                  @NotNull RevisionVector readRevision,
+                                  @NotNull List<String> names) {
+        List<String> ids = new ArrayList<>(names.size());
+        for (String n : names) {
+            Path p = new Path(parent, n);
+            if (nodeCache.getIfPresent(new PathRev(p, readRevision)) == null) {
+                ids.add(Utils.getIdFromPath(p));
+            }
+        }
+        if (!ids.isEmpty()) {
+            LOG.trace("Prefetching {} children of {}", ids.size(), parent);
+            store.prefetch(NODES, ids);
+        }
+    }
+
+    /**
+     * Iterator over child node names, which prefetches the documents of the
+     * next {@link #childrenPrefetchSize} children whenever iteration enters a
+     * new window of names.
+     */
+    private class ChildrenReadAheadIterator implements Iterator<String> {
+
+        private final Path parent;
+        private final RevisionVector readRevision;
+        private final List<String> names;
+        private int position;
+
+        ChildrenReadAheadIterator(Path parent,
+                                  RevisionVector readRevision,
+                                  List<String> names) {
+            this.parent = parent;
+            this.readRevision = readRevision;
+            this.names = names;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return position < names.size();
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (position % childrenPrefetchSize == 0) {
+                int end = Math.min(names.size(), position + childrenPrefetchSize);
+                prefetchChildren(parent, readRevision, names.subList(position, end));
+            }
+            return names.get(position++);
+        }
     }
 
     @Nullable
@@ -1643,6 +1766,9 @@ public final class DocumentNodeStore
             return null;
         }
         final DocumentNodeState result = doc.getNodeAtRevision(this, readRevision, lastRevision);
+        if (result != null && bundlingAnalyzer != null) {
+            bundlingAnalyzer.documentRead(path, result.getName(JCR_PRIMARYTYPE));
+        }
         PERFLOG.end(start, 1, "readNode: path={}, readRevision={}", path, readRevision);
         return result;
     }
@@ -1651,6 +1777,15 @@ public final class DocumentNodeStore
         return bundlingConfigHandler;
     }
 
+    /**
+     * @return the bundling analyzer or {@code null} if disabled.
+     * @see #SYS_PROP_BUNDLING_STATS_SAMPLE_INTERVAL
+     */
+    @Nullable
+    public BundlingAnalyzer getBundlingAnalyzer() {
+        return bundlingAnalyzer;
+    }
+
     /**
      * Apply the changes of a node to the cache.
      *
@@ -2794,7 +2929,16 @@ public final class DocumentNodeStore
                 pendingRollbackInvalidations.clear();
                 pushJournalEntry(mostRecent);
             }
-        }, backgroundOperationLock.writeLock());
+        }, backgroundOperationLock.writeLock(), backgroundWriteExecutor);
+    }
+
+    private static ExecutorService newBackgroundWriteExecutor(int parallelism) {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "DocumentNodeStore background write " + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
     }
 
     private void maybeRefreshHeadRevision() {
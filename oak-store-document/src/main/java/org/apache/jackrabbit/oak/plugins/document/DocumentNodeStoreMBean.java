@@ -100,4 +100,14 @@ public interface DocumentNodeStoreMBean {
                     "that are more recent than the revision checkpoint.")
             @Name("force")
             boolean force);
+
+    @Description("Returns recommended bundling patterns per node type, based on\n" +
+            "the documents read together with the document of an ancestor node.\n" +
+            "Each entry contains the node type, the pattern and the estimated number\n" +
+            "of document reads saved. Requires the system property\n" +
+            "oak.documentMK.bundlingStatsSampleInterval to be set.")
+    String[] getBundlingRecommendations();
+
+    @Description("Resets the statistics used for the bundling recommendations.")
+    void resetBundlingStatistics();
 }
@@ -31,6 +31,7 @@ import org.apache.jackrabbit.api.stats.RepositoryStatistics;
 import org.apache.jackrabbit.api.stats.TimeSeries;
 import org.apache.jackrabbit.oak.commons.PathUtils;
 import org.apache.jackrabbit.oak.commons.jmx.AnnotatedStandardMBean;
+import org.apache.jackrabbit.oak.plugins.document.bundlor.BundlingAnalyzer;
 import org.apache.jackrabbit.oak.plugins.document.util.Utils;
 import org.apache.jackrabbit.stats.TimeSeriesStatsUtil;
 import org.slf4j.Logger;
@@ -302,4 +303,20 @@ final class DocumentNodeStoreMBeanImpl extends AnnotatedStandardMBean implements
         }
     }
 
+    @Override
+    public String[] getBundlingRecommendations() {
+        BundlingAnalyzer analyzer = nodeStore.getBundlingAnalyzer();
+        if (analyzer == null) {
+            return new String[0];
+        }
+        return analyzer.getRecommendationsAsStrings();
+    }
+
+    @Override
+    public void resetBundlingStatistics() {
+        BundlingAnalyzer analyzer = nodeStore.getBundlingAnalyzer();
+        if (analyzer != null) {
+            analyzer.reset();
+        }
+    }
 }
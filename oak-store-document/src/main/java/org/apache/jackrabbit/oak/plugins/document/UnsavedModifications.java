@@ -21,6 +21,9 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 
@@ -146,6 +149,35 @@ class UnsavedModifications {
                                         @NotNull Supplier<Revision> sweepRevision,
                                         @NotNull Snapshot snapshot,
                                         @NotNull Lock lock) {
+        return persist(store, sweepRevision, snapshot, lock, null);
+    }
+
+    /**
+     * Persist the pending changes to _lastRev to the given store. This method
+     * will persist a snapshot of the pending revisions and current sweep
+     * revision by acquiring the passed lock for a short period of time.
+     * <p>
+     * If an executor is passed, the batches of updates for paths with the
+     * same depth are written concurrently with the executor. Paths are still
+     * written bottom-up: all updates for a given depth complete before the
+     * updates for the parent depth are started, and the root document is
+     * updated last.
+     *
+     * @param store the document store.
+     * @param sweepRevision supplier for the current sweep revision.
+     * @param snapshot callback when the snapshot of the pending changes is
+     *                 acquired.
+     * @param lock the lock to acquire to get a consistent snapshot of the
+     *             revisions to write back.
+     * @param executor the executor to write batches concurrently or
+     *                 {@code null} to write them sequentially.
+     * @return stats about the write operation.
+     */
+    public BackgroundWriteStats persist(@NotNull DocumentStore store,
+                                        @NotNull Supplier<Revision> sweepRevision,
+                                        @NotNull Snapshot snapshot,
+                                        @NotNull Lock lock,
+                                        @Nullable Executor executor) {
         BackgroundWriteStats stats = new BackgroundWriteStats();
         if (map.size() == 0) {
             return stats;
@@ -170,36 +202,18 @@ class UnsavedModifications {
         } finally {
             lock.unlock();
         }
+        stats.snapshot = sw.elapsed(TimeUnit.MILLISECONDS);
         stats.num = pending.size();
-        List<UpdateOp> updates = Lists.newArrayList();
-        Map<Path, Revision> pathToRevision = Maps.newHashMap();
-        for (Iterable<Map.Entry<Path, Revision>> batch : Iterables.partition(
-                pending.entrySet(), BACKGROUND_MULTI_UPDATE_LIMIT)) {
-            for (Map.Entry<Path, Revision> entry : batch) {
-                Path p = entry.getKey();
-                Revision r = entry.getValue();
-                if (p.isRoot()) {
-                    // update root individually at the end
-                    continue;
-                }
-                updates.add(newUpdateOp(p, r));
-                pathToRevision.put(entry.getKey(), r);
-            }
-            if (!updates.isEmpty()) {
-                store.createOrUpdate(NODES, updates);
-                stats.calls++;
-                for (Map.Entry<Path, Revision> entry : pathToRevision.entrySet()) {
-                    map.remove(entry.getKey(), entry.getValue());
-                    LOG.debug("Updated _lastRev to {} on {}", entry.getValue(), entry.getKey());
-                }
-                // clean up for next batch
-                updates.clear();
-                pathToRevision.clear();
-            }
+        if (executor == null) {
+            persistSequential(store, pending, stats);
+        } else {
+            persistParallel(store, pending, stats, executor);
         }
+        stats.batchWrite = sw.elapsed(TimeUnit.MILLISECONDS) - stats.snapshot;
         // finally update remaining root document
         Revision rootRev = pending.get(Path.ROOT);
         if (rootRev != null) {
+            Stopwatch rootWatch = Stopwatch.createStarted();
             UpdateOp rootUpdate = newUpdateOp(Path.ROOT, rootRev);
             // also update to most recent sweep revision
             if (sweepRev != null) {
@@ -223,12 +237,135 @@ class UnsavedModifications {
             UpdateOp update = new UpdateOp(String.valueOf(cid), false);
             update.set(ClusterNodeInfo.LAST_WRITTEN_ROOT_REV_KEY, rootRev.toString());
             store.findAndUpdate(CLUSTER_NODES, update);
+            stats.rootWrite = rootWatch.elapsed(TimeUnit.MILLISECONDS);
         }
 
         stats.write = sw.elapsed(TimeUnit.MILLISECONDS);
         return stats;
     }
 
+    private void persistSequential(DocumentStore store,
+                                   Map<Path, Revision> pending,
+                                   BackgroundWriteStats stats) {
+        List<Map.Entry<Path, Revision>> batch = Lists.newArrayList();
+        for (Map.Entry<Path, Revision> entry : pending.entrySet()) {
+            if (entry.getKey().isRoot()) {
+                // update root individually at the end
+                continue;
+            }
+            batch.add(entry);
+            if (batch.size() == BACKGROUND_MULTI_UPDATE_LIMIT) {
+                stats.batchDone(persistBatch(store, batch));
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            stats.batchDone(persistBatch(store, batch));
+        }
+    }
+
+    private void persistParallel(DocumentStore store,
+                                 Map<Path, Revision> pending,
+                                 BackgroundWriteStats stats,
+                                 Executor executor) {
+        // pending is sorted by depth (deepest first), collect
+        // batches per depth and write them depth by depth
+        List<List<Map.Entry<Path, Revision>>> batches = Lists.newArrayList();
+        List<Map.Entry<Path, Revision>> batch = Lists.newArrayList();
+        int depth = -1;
+        for (Map.Entry<Path, Revision> entry : pending.entrySet()) {
+            Path p = entry.getKey();
+            if (p.isRoot()) {
+                // update root individually at the end
+                continue;
+            }
+            if (p.getDepth() != depth) {
+                if (!batch.isEmpty()) {
+                    batches.add(batch);
+                    batch = Lists.newArrayList();
+                }
+                persistConcurrently(store, batches, stats, executor);
+                batches.clear();
+                depth = p.getDepth();
+            }
+            batch.add(entry);
+            if (batch.size() == BACKGROUND_MULTI_UPDATE_LIMIT) {
+                batches.add(batch);
+                batch = Lists.newArrayList();
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        persistConcurrently(store, batches, stats, executor);
+    }
+
+    /**
+     * Writes the given batches concurrently and waits until all of them
+     * completed.
+     */
+    private void persistConcurrently(DocumentStore store,
+                                     List<List<Map.Entry<Path, Revision>>> batches,
+                                     BackgroundWriteStats stats,
+                                     Executor executor) {
+        if (batches.isEmpty()) {
+            return;
+        }
+        stats.levels++;
+        if (batches.size() == 1) {
+            // no need to hand over a single batch
+            stats.batchDone(persistBatch(store, batches.get(0)));
+            return;
+        }
+        List<FutureTask<Long>> tasks = Lists.newArrayList();
+        for (List<Map.Entry<Path, Revision>> b : batches) {
+            FutureTask<Long> task = new FutureTask<>(() -> persistBatch(store, b));
+            tasks.add(task);
+            executor.execute(task);
+        }
+        // always wait for all tasks, even when one of them failed.
+        // a parent must not be written before all its children
+        RuntimeException failure = null;
+        for (FutureTask<Long> task : tasks) {
+            try {
+                stats.batchDone(task.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (failure == null) {
+                    failure = new DocumentStoreException("Interrupted while writing _lastRev", e);
+                }
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = DocumentStoreException.convert(e.getCause());
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Writes a batch of _lastRev updates and removes the entries from the
+     * map of pending modifications.
+     *
+     * @return the time in milliseconds it took to write the batch.
+     */
+    private long persistBatch(DocumentStore store,
+                              List<Map.Entry<Path, Revision>> batch) {
+        Stopwatch sw = Stopwatch.createStarted();
+        List<UpdateOp> updates = Lists.newArrayListWithCapacity(batch.size());
+        for (Map.Entry<Path, Revision> entry : batch) {
+            updates.add(newUpdateOp(entry.getKey(), entry.getValue()));
+        }
+        store.createOrUpdate(NODES, updates);
+        for (Map.Entry<Path, Revision> entry : batch) {
+            map.remove(entry.getKey(), entry.getValue());
+            LOG.debug("Updated _lastRev to {} on {}", entry.getValue(), entry.getKey());
+        }
+        return sw.elapsed(TimeUnit.MILLISECONDS);
+    }
+
     @Override
     public String toString() {
         return map.toString();
@@ -0,0 +1,353 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.plugins.document.bundlor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.apache.jackrabbit.guava.common.cache.Cache;
+import org.apache.jackrabbit.guava.common.cache.CacheBuilder;
+import org.apache.jackrabbit.oak.commons.PathUtils;
+import org.apache.jackrabbit.oak.plugins.document.Path;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import static org.apache.jackrabbit.guava.common.base.Preconditions.checkArgument;
+
+/**
+ * Collects statistics about which descendant documents are read together
+ * with the document of an ancestor node, per node type of the ancestor, and
+ * derives recommended bundling patterns ({@link Include}) from them.
+ * <p>
+ * For every recorded document read, the read is counted for the node type of
+ * the node and, for each ancestor up to {@link #getMaxDepth()} levels above
+ * with a known node type, for the relative path from that ancestor. A
+ * relative path read for a large fraction of the reads of the ancestor type
+ * is a candidate for bundling: bundling it would save one document read each
+ * time.
+ * <p>
+ * When used with {@link #documentRead(Path, String)}, the node types of the
+ * most recently read documents are remembered, and only ancestors read
+ * recently are considered to be read together with a descendant.
+ * <p>
+ * Relative paths are kept literally. If the children of a relative path have
+ * more than {@link #getMaxChildNames()} distinct names, they are considered
+ * an unbounded list (like the content of a folder) and not recommended.
+ */
+public class BundlingAnalyzer {
+
+    public static final int DEFAULT_MAX_DEPTH = 3;
+
+    public static final int DEFAULT_MAX_CHILD_NAMES = 10;
+
+    public static final double DEFAULT_MIN_RATIO = 0.5;
+
+    public static final long DEFAULT_MIN_READS = 100;
+
+    /**
+     * Limits the number of relative paths tracked per node type.
+     */
+    static final int MAX_PATHS_PER_TYPE = 1000;
+
+    /**
+     * Limits the number of node types tracked.
+     */
+    static final int MAX_TYPES = 1000;
+
+    /**
+     * The number of recently read paths for which the node type is kept.
+     */
+    static final int RECENT_TYPES_SIZE = 10000;
+
+    private final int maxDepth;
+
+    private final int maxChildNames;
+
+    private final int sampleInterval;
+
+    private final AtomicLong readCount = new AtomicLong();
+
+    private final Map<String, TypeStats> types = new ConcurrentHashMap<>();
+
+    private final Cache<Path, String> recentTypes = CacheBuilder.newBuilder()
+            .maximumSize(RECENT_TYPES_SIZE).build();
+
+    /**
+     * @param sampleInterval record every n-th read only (1 records all reads)
+     * @param maxDepth the maximum depth of a relative path
+     * @param maxChildNames the maximum number of distinct child names for
+     *                      a relative path to still be recommended
+     */
+    public BundlingAnalyzer(int sampleInterval, int maxDepth, int maxChildNames) {
+        checkArgument(sampleInterval > 0, "sampleInterval must be > 0: %s", sampleInterval);
+        checkArgument(maxDepth > 0, "maxDepth must be > 0: %s", maxDepth);
+        this.sampleInterval = sampleInterval;
+        this.maxDepth = maxDepth;
+        this.maxChildNames = maxChildNames;
+    }
+
+    public BundlingAnalyzer(int sampleInterval) {
+        this(sampleInterval, DEFAULT_MAX_DEPTH, DEFAULT_MAX_CHILD_NAMES);
+    }
+
+    public int getSampleInterval() {
+        return sampleInterval;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public int getMaxChildNames() {
+        return maxChildNames;
+    }
+
+    /**
+     * Records the read of the document for the node at the given path, if the
+     * read is sampled. The node types of ancestors are looked up in the
+     * recently read documents.
+     *
+     * @param path the path of the node read.
+     * @param type the node type of the node read, or {@code null} if unknown.
+     */
+    public void documentRead(@NotNull Path path, @Nullable String type) {
+        if (type != null) {
+            recentTypes.put(path, type);
+        }
+        if (readCount.incrementAndGet() % sampleInterval == 0) {
+            documentRead(path, type, recentTypes::getIfPresent);
+        }
+    }
+
+    /**
+     * Records the read of the document for the node at the given path.
+     *
+     * @param path the path of the node read.
+     * @param type the node type of the node read, or {@code null} if unknown.
+     * @param ancestorTypes returns the node type of an ancestor node, or
+     *                      {@code null} if not known.
+     */
+    public void documentRead(@NotNull Path path,
+                             @Nullable String type,
+                             @NotNull Function<Path, String> ancestorTypes) {
+        if (type != null) {
+            TypeStats stats = getTypeStats(type);
+            if (stats != null) {
+                stats.reads.increment();
+            }
+        }
+        String relPath = "";
+        Path p = path;
+        for (int depth = 1; depth <= maxDepth; depth++) {
+            Path parent = p.getParent();
+            if (parent == null || parent.isRoot()) {
+                break;
+            }
+            relPath = relPath.isEmpty() ? p.getName() : PathUtils.concat(p.getName(), relPath);
+            String ancestorType = ancestorTypes.apply(parent);
+            if (ancestorType != null) {
+                TypeStats stats = getTypeStats(ancestorType);
+                if (stats != null) {
+                    stats.recordRelativeRead(relPath);
+                }
+            }
+            p = parent;
+        }
+    }
+
+    /**
+     * Computes the recommended bundling patterns.
+     *
+     * @param minRatio the minimum number of reads of a relative path per read
+     *                 of the node type.
+     * @param minReads the minimum number of (sampled) reads of a node type.
+     * @return the recommendations, sorted by node type and pattern.
+     */
+    @NotNull
+    public List<Recommendation> getRecommendations(double minRatio, long minReads) {
+        List<Recommendation> result = new ArrayList<>();
+        for (Map.Entry<String, TypeStats> e : types.entrySet()) {
+            TypeStats stats = e.getValue();
+            long typeReads = stats.reads.sum();
+            if (typeReads == 0 || typeReads < minReads) {
+                continue;
+            }
+            Map<String, Long> counts = new HashMap<>();
+            Map<String, Set<String>> childNames = new HashMap<>();
+            for (Map.Entry<String, LongAdder> r : stats.relativeReads.entrySet()) {
+                String relPath = r.getKey();
+                counts.put(relPath, r.getValue().sum());
+                String parent = PathUtils.getParentPath(relPath);
+                childNames.computeIfAbsent(parent, k -> new HashSet<>()).add(PathUtils.getName(relPath));
+            }
+            List<String> paths = new ArrayList<>(counts.keySet());
+            // parents first
+            paths.sort(Comparator.comparingInt(PathUtils::getDepth).thenComparing(Comparator.naturalOrder()));
+            Set<String> included = new HashSet<>();
+            for (String relPath : paths) {
+                String parent = PathUtils.getParentPath(relPath);
+                if (!parent.isEmpty() && !included.contains(parent)) {
+                    // bundling requires the parent to be bundled as well
+                    continue;
+                }
+                if (childNames.get(parent).size() > maxChildNames) {
+                    continue;
+                }
+                long reads = counts.get(relPath);
+                double ratio = (double) reads / typeReads;
+                if (ratio >= minRatio) {
+                    included.add(relPath);
+                    result.add(new Recommendation(e.getKey(), relPath, typeReads * sampleInterval,
+                            reads * sampleInterval, ratio));
+                }
+            }
+        }
+        result.sort(Comparator.comparing(Recommendation::getNodeType)
+                .thenComparing(Recommendation::getPattern));
+        return result;
+    }
+
+    /**
+     * @return the recommendations with the default thresholds, formatted as
+     *          strings.
+     */
+    @NotNull
+    public String[] getRecommendationsAsStrings() {
+        List<String> list = new ArrayList<>();
+        for (Recommendation r : getRecommendations(DEFAULT_MIN_RATIO, DEFAULT_MIN_READS)) {
+            list.add(r.toString());
+        }
+        return list.toArray(new String[0]);
+    }
+
+    /**
+     * @return the node types with recorded reads.
+     */
+    @NotNull
+    public Set<String> getNodeTypes() {
+        return Collections.unmodifiableSet(types.keySet());
+    }
+
+    public void reset() {
+        types.clear();
+        recentTypes.invalidateAll();
+    }
+
+    @Nullable
+    private TypeStats getTypeStats(String type) {
+        TypeStats stats = types.get(type);
+        if (stats == null && types.size() < MAX_TYPES) {
+            stats = types.computeIfAbsent(type, k -> new TypeStats());
+        }
+        return stats;
+    }
+
+    private static final class TypeStats {
+
+        final LongAdder reads = new LongAdder();
+
+        final Map<String, LongAdder> relativeReads = new ConcurrentHashMap<>();
+
+        void recordRelativeRead(String relPath) {
+            LongAdder count = relativeReads.get(relPath);
+            if (count == null) {
+                if (relativeReads.size() >= MAX_PATHS_PER_TYPE) {
+                    return;
+                }
+                count = relativeReads.computeIfAbsent(relPath, k -> new LongAdder());
+            }
+            count.increment();
+        }
+    }
+
+    /**
+     * A recommended bundling pattern for a node type.
+     */
+    public static final class Recommendation {
+
+        private final String nodeType;
+
+        private final String pattern;
+
+        private final long typeReads;
+
+        private final long savedReads;
+
+        private final double ratio;
+
+        Recommendation(String nodeType, String pattern, long typeReads,
+                       long savedReads, double ratio) {
+            this.nodeType = nodeType;
+            this.pattern = pattern;
+            this.typeReads = typeReads;
+            this.savedReads = savedReads;
+            this.ratio = ratio;
+        }
+
+        public String getNodeType() {
+            return nodeType;
+        }
+
+        /**
+         * @return the pattern to use with {@link Include}.
+         */
+        public String getPattern() {
+            return pattern;
+        }
+
+        /**
+         * @return the estimated number of document reads for the node type.
+         */
+        public long getTypeReads() {
+            return typeReads;
+        }
+
+        /**
+         * @return the estimated number of document reads that would have been
+         *          saved if the pattern had been bundled.
+         */
+        public long getSavedReads() {
+            return savedReads;
+        }
+
+        /**
+         * @return the number of reads of the pattern per read of the type.
+         */
+        public double getRatio() {
+            return ratio;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %s (saved reads: %d, type reads: %d, ratio: %.2f)",
+                    nodeType, pattern, savedReads, typeReads, ratio);
+        }
+    }
+}
@@ -0,0 +1,1024 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.persistentCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import org.apache.jackrabbit.oak.plugins.document.persistentCache.LogStoreIndex.Location;
+import org.h2.mvstore.WriteBuffer;
+import org.h2.mvstore.type.DataType;
+import org.h2.mvstore.type.ObjectDataType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A log structured key-value store, as an alternative backend for the
+ * persistent cache.
+ * <p>
+ * All changes are appended to the current (head) segment file of the store
+ * directory. A new segment is started once the head segment exceeds the
+ * configured segment size. An off-heap index per map (see
+ * {@link LogStoreIndex}) points to the location of the latest record of each
+ * key, so that a read is a single positional read from a segment file, without
+ * any locking.
+ * <p>
+ * Writes are asynchronous: {@link Map#put(Object, Object)} and
+ * {@link Map#remove(Object)} only register the change as pending, which is
+ * immediately visible to readers, and a background thread serializes and
+ * appends the pending changes in batches. If the write queue is full, the
+ * caller writes the change itself, so that no change is lost. If a change can
+ * not be written, the entry is removed from the index, so that no outdated
+ * value is read.
+ * <p>
+ * The background thread also compacts the store: if the ratio of live data
+ * drops below the fill rate, the live records of the oldest segment are
+ * copied to the head segment and the oldest segment is removed. Because only
+ * the oldest segment is compacted, remove and clear records in it can be
+ * discarded.
+ * <p>
+ * Each record is protected by a checksum. When the store is opened, all
+ * segments are scanned to rebuild the index, and a partially written record
+ * at the end of a segment (for example after a crash) is truncated.
+ */
+class LogStore {
+
+    static final Logger LOG = LoggerFactory.getLogger(LogStore.class);
+
+    static final String SEGMENT_SUFFIX = ".log";
+
+    /**
+     * Default segment size: 32 MB.
+     */
+    static final int DEFAULT_SEGMENT_SIZE = 32 * 1024 * 1024;
+
+    /**
+     * Default fill rate in percent, below which the store is compacted.
+     */
+    static final int DEFAULT_FILL_RATE = 50;
+
+    /**
+     * The maximum number of pending changes.
+     */
+    static final int MAX_PENDING = 16 * 1024;
+
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_REMOVE = 2;
+    private static final byte TYPE_CLEAR = 3;
+
+    /**
+     * Length and checksum.
+     */
+    private static final int HEADER_LENGTH = 8;
+
+    private static final int MAX_READ_RETRIES = 3;
+
+    private static final int MAX_BATCH = 1024;
+
+    private static final int BATCH_BYTES = 1024 * 1024;
+
+    private final File directory;
+    private final int segmentSize;
+    private final int fillRate;
+    private final boolean readOnly;
+
+    private final ConcurrentSkipListMap<Integer, Segment> segments =
+            new ConcurrentSkipListMap<Integer, Segment>();
+    private final ConcurrentHashMap<String, LogMap<?, ?>> maps =
+            new ConcurrentHashMap<String, LogMap<?, ?>>();
+
+    private final BlockingQueue<WriteOp> queue = new LinkedBlockingQueue<WriteOp>(MAX_PENDING);
+
+    /**
+     * Held while appending to the head segment and updating the index.
+     */
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private final WriteBuffer writeBuffer = new WriteBuffer();
+    private final ThreadLocal<WriteBuffer> keyBuffer = new ThreadLocal<WriteBuffer>();
+
+    private final AtomicLong liveBytes = new AtomicLong();
+    private final AtomicLong failedWrites = new AtomicLong();
+    private final AtomicLong writtenBytes = new AtomicLong();
+    private volatile long compactionCount;
+    private volatile long compactedBytes;
+
+    private volatile boolean running;
+    private Thread writer;
+    private Segment head;
+
+    LogStore(File directory, int segmentSize, int fillRate, boolean readOnly) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.fillRate = fillRate;
+        this.readOnly = readOnly;
+        if (!readOnly && !directory.exists()) {
+            directory.mkdirs();
+        }
+        if (!directory.isDirectory()) {
+            if (readOnly) {
+                return;
+            }
+            throw new IOException("Not a directory: " + directory.getAbsolutePath());
+        }
+        recover();
+        if (!readOnly) {
+            Integer last = segments.isEmpty() ? null : segments.lastKey();
+            head = last == null ? createSegment(0) : segments.get(last);
+            running = true;
+            writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    writeLoop();
+                }
+            }, "Oak PersistentCache LogStore writer " + directory.getName());
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    /**
+     * Open or get the map with the given name.
+     *
+     * @param name the map name
+     * @param keyType the key type, or null for the default type
+     * @param valueType the value type, or null for the default type
+     * @return the map
+     */
+    @SuppressWarnings("unchecked")
+    <K, V> Map<K, V> openMap(String name, DataType<K> keyType, DataType<V> valueType) {
+        LogMap<K, V> m = (LogMap<K, V>) getOrCreateMap(name);
+        m.setTypes(keyType == null ? (DataType<K>) new ObjectDataType() : keyType,
+                valueType == null ? (DataType<V>) new ObjectDataType() : valueType);
+        return m;
+    }
+
+    /**
+     * @return the total size of all segment files in bytes.
+     */
+    long getFileSize() {
+        long size = 0;
+        for (Segment s : segments.values()) {
+            size += s.size;
+        }
+        return size;
+    }
+
+    long getLiveBytes() {
+        return liveBytes.get();
+    }
+
+    int getSegmentCount() {
+        return segments.size();
+    }
+
+    long getFailedWrites() {
+        return failedWrites.get();
+    }
+
+    long getWrittenBytes() {
+        return writtenBytes.get();
+    }
+
+    long getCompactionCount() {
+        return compactionCount;
+    }
+
+    long getCompactedBytes() {
+        return compactedBytes;
+    }
+
+    int getPendingCount() {
+        return queue.size();
+    }
+
+    /**
+     * Write all pending changes. Used on close and in tests.
+     */
+    void flush() {
+        writeLock.lock();
+        try {
+            writePending(Integer.MAX_VALUE);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Compact the oldest segment if the fill rate is below the threshold.
+     *
+     * @param force whether to compact even if the fill rate is above the
+     *          threshold
+     * @return whether a segment was compacted
+     */
+    boolean compactIfNeeded(boolean force) {
+        if (readOnly) {
+            return false;
+        }
+        writeLock.lock();
+        try {
+            if (segments.size() < 2) {
+                return false;
+            }
+            long size = getFileSize();
+            if (!force && (size < 2L * segmentSize || liveBytes.get() * 100 >= size * fillRate)) {
+                return false;
+            }
+            compactOldest();
+            return true;
+        } catch (IOException e) {
+            LOG.warn("Could not compact the persistent cache log store " + directory, e);
+            return false;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    void close() {
+        Thread w = writer;
+        if (w != null) {
+            running = false;
+            try {
+                w.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            writer = null;
+            flush();
+        }
+        for (Segment s : segments.values()) {
+            s.close();
+        }
+        keyBuffer.remove();
+    }
+
+    //----------------------------------------------------------< internal >
+
+    private LogMap<?, ?> getOrCreateMap(String name) {
+        LogMap<?, ?> m = maps.get(name);
+        if (m == null) {
+            LogMap<?, ?> m2 = new LogMap<Object, Object>(name);
+            m = maps.putIfAbsent(name, m2);
+            if (m == null) {
+                m = m2;
+            }
+        }
+        return m;
+    }
+
+    private void writeLoop() {
+        while (running) {
+            try {
+                WriteOp op = queue.poll(100, TimeUnit.MILLISECONDS);
+                writeLock.lock();
+                try {
+                    if (op != null) {
+                        writeOps(Collections.singletonList(op), MAX_BATCH);
+                    }
+                    writePending(MAX_BATCH);
+                } finally {
+                    writeLock.unlock();
+                }
+                if (queue.isEmpty()) {
+                    compactIfNeeded(false);
+                }
+            } catch (InterruptedException e) {
+                LOG.debug("Interrupted the queue.poll()", e);
+            } catch (Exception e) {
+                LOG.warn("Error writing to the persistent cache log store " + directory, e);
+            }
+        }
+    }
+
+    private void writePending(int max) {
+        List<WriteOp> batch = new ArrayList<WriteOp>();
+        while (queue.drainTo(batch, max) > 0) {
+            writeOps(batch, max);
+            batch.clear();
+        }
+    }
+
+    private void writeOps(List<WriteOp> ops, int max) {
+        if (readOnly) {
+            return;
+        }
+        List<WriteOp> batch = new ArrayList<WriteOp>(Math.min(ops.size(), max));
+        writeBuffer.clear();
+        for (WriteOp op : ops) {
+            if (op.map.pending.get(op.key) != op) {
+                // superseded by a newer change, or the map was cleared
+                continue;
+            }
+            op.offset = writeBuffer.position();
+            op.map.writeRecord(writeBuffer, op);
+            op.length = writeBuffer.position() - op.offset;
+            batch.add(op);
+            if (writeBuffer.position() > BATCH_BYTES) {
+                appendBatch(batch);
+                batch.clear();
+                writeBuffer.clear();
+            }
+        }
+        appendBatch(batch);
+    }
+
+    private void appendBatch(List<WriteOp> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        ByteBuffer buff = writeBuffer.getBuffer();
+        ((Buffer) buff).flip();
+        long start;
+        try {
+            start = append(buff);
+        } catch (IOException e) {
+            LOG.warn("Could not write to the persistent cache log store " + directory, e);
+            for (WriteOp op : batch) {
+                // the previous value is outdated
+                op.map.apply(op.key, null);
+                op.map.pending.remove(op.key, op);
+            }
+            failedWrites.addAndGet(batch.size());
+            return;
+        }
+        for (WriteOp op : batch) {
+            Location loc = new Location(head.id, (int) (start + op.offset), op.length);
+            op.map.apply(op.key, op.value == null ? null : loc);
+            op.map.pending.remove(op.key, op);
+        }
+        rollIfNeeded();
+    }
+
+    /**
+     * Append the buffer to the head segment.
+     *
+     * @return the offset within the head segment
+     */
+    private long append(ByteBuffer buff) throws IOException {
+        int len = buff.remaining();
+        long start = head.size;
+        head.write(buff, start);
+        head.size = start + len;
+        writtenBytes.addAndGet(len);
+        return start;
+    }
+
+    private void rollIfNeeded() {
+        if (head.size < segmentSize) {
+            return;
+        }
+        try {
+            head = createSegment(head.id + 1);
+        } catch (IOException e) {
+            LOG.warn("Could not create a new segment in " + directory, e);
+        }
+    }
+
+    private Segment createSegment(int id) throws IOException {
+        Segment s = new Segment(id, new File(directory, getSegmentFileName(id)), readOnly);
+        segments.put(id, s);
+        return s;
+    }
+
+    static String getSegmentFileName(int id) {
+        return String.format("%08d", id) + SEGMENT_SUFFIX;
+    }
+
+    private void clear(LogMap<?, ?> map) {
+        writeLock.lock();
+        try {
+            map.pending.clear();
+            if (!readOnly) {
+                writeBuffer.clear();
+                writeRecordHeader(writeBuffer, TYPE_CLEAR, map.nameBytes, null);
+                finishRecord(writeBuffer, 0);
+                ByteBuffer buff = writeBuffer.getBuffer();
+                ((Buffer) buff).flip();
+                try {
+                    append(buff);
+                } catch (IOException e) {
+                    LOG.warn("Could not write to the persistent cache log store " + directory, e);
+                }
+            }
+            map.removeAll();
+            rollIfNeeded();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void compactOldest() throws IOException {
+        Segment oldest = segments.firstEntry().getValue();
+        if (oldest == head) {
+            return;
+        }
+        long before = getFileSize();
+        long pos = 0;
+        while (pos < oldest.size) {
+            ByteBuffer record = oldest.readRecord(pos);
+            if (record == null) {
+                break;
+            }
+            int length = record.remaining();
+            Record r = parse(record);
+            if (r != null && r.type == TYPE_PUT) {
+                LogMap<?, ?> map = maps.get(r.name);
+                Location old = map == null ? null : map.index.get(LogStoreIndex.hash(r.key));
+                if (old != null && old.segmentId == oldest.id && old.offset == pos) {
+                    // live record: copy to the head segment
+                    ((Buffer) record).position(0);
+                    long start = append(record);
+                    Location loc = new Location(head.id, (int) start, length);
+                    map.apply(r.key, loc);
+                    rollIfNeeded();
+                }
+            }
+            pos += length;
+        }
+        segments.remove(oldest.id);
+        oldest.close();
+        if (!oldest.file.delete()) {
+            LOG.warn("Could not delete the compacted segment " + oldest.file.getAbsolutePath());
+        }
+        compactionCount++;
+        compactedBytes += Math.max(0, before - getFileSize());
+        LOG.debug("Compacted segment {}, size before {}, after {}", oldest.file, before, getFileSize());
+    }
+
+    private void recover() throws IOException {
+        File[] list = directory.listFiles();
+        if (list == null) {
+            return;
+        }
+        for (File f : list) {
+            String fn = f.getName();
+            if (!fn.endsWith(SEGMENT_SUFFIX)) {
+                continue;
+            }
+            int id;
+            try {
+                id = Integer.parseInt(fn.substring(0, fn.length() - SEGMENT_SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                // ignore this file
+                continue;
+            }
+            if (id < 0 || !fn.equals(getSegmentFileName(id))) {
+                continue;
+            }
+            segments.put(id, new Segment(id, f, readOnly));
+        }
+        for (Segment s : segments.values()) {
+            long pos = 0;
+            while (pos < s.size) {
+                ByteBuffer record = s.readRecord(pos);
+                Record r = record == null ? null : parse(record);
+                if (r == null) {
+                    LOG.info("Ignoring corrupt or incomplete data in {} at position {}", s.file, pos);
+                    if (!readOnly) {
+                        s.truncate(pos);
+                    }
+                    break;
+                }
+                LogMap<?, ?> map = getOrCreateMap(r.name);
+                int length = record.limit();
+                if (r.type == TYPE_PUT) {
+                    map.apply(r.key, new Location(s.id, (int) pos, length));
+                } else if (r.type == TYPE_REMOVE) {
+                    map.apply(r.key, null);
+                } else {
+                    map.removeAll();
+                }
+                pos += length;
+            }
+        }
+    }
+
+    private static void writeRecordHeader(WriteBuffer buff, byte type,
+                                          byte[] name, ByteBuffer key) {
+        // placeholder for length and checksum
+        buff.putInt(0);
+        buff.putInt(0);
+        buff.put(type);
+        buff.putVarInt(name.length);
+        buff.put(name);
+        if (key != null) {
+            buff.putVarInt(key.remaining());
+            buff.put(key.duplicate());
+        }
+    }
+
+    private static void finishRecord(WriteBuffer buff, int start) {
+        ByteBuffer b = buff.getBuffer();
+        int end = b.position();
+        int bodyLength = end - start - HEADER_LENGTH;
+        CRC32 crc = new CRC32();
+        crc.update(b.array(), b.arrayOffset() + start + HEADER_LENGTH, bodyLength);
+        b.putInt(start, bodyLength);
+        b.putInt(start + 4, (int) crc.getValue());
+    }
+
+    /**
+     * Parse a complete record.
+     *
+     * @param record the record, including the header
+     * @return the record, with the buffer positioned at the value, or null
+     *          if the record is corrupt
+     */
+    private static Record parse(ByteBuffer record) {
+        try {
+            int bodyLength = record.getInt(0);
+            int checksum = record.getInt(4);
+            CRC32 crc = new CRC32();
+            ByteBuffer body = record.duplicate();
+            ((Buffer) body).position(HEADER_LENGTH);
+            ((Buffer) body).limit(HEADER_LENGTH + bodyLength);
+            crc.update(body);
+            if ((int) crc.getValue() != checksum) {
+                return null;
+            }
+            ((Buffer) record).position(HEADER_LENGTH);
+            byte type = record.get();
+            if (type != TYPE_PUT && type != TYPE_REMOVE && type != TYPE_CLEAR) {
+                return null;
+            }
+            byte[] name = new byte[readVarInt(record)];
+            record.get(name);
+            ByteBuffer key = null;
+            if (type != TYPE_CLEAR) {
+                byte[] k = new byte[readVarInt(record)];
+                record.get(k);
+                key = ByteBuffer.wrap(k);
+            }
+            return new Record(type, new String(name, StandardCharsets.UTF_8), key);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static int readVarInt(ByteBuffer buff) {
+        int b = buff.get();
+        if (b >= 0) {
+            return b;
+        }
+        int x = b & 0x7f;
+        for (int shift = 7; shift < 32; shift += 7) {
+            b = buff.get();
+            x |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return x;
+            }
+        }
+        throw new IllegalArgumentException("Invalid variable size integer");
+    }
+
+    private static final class Record {
+
+        final byte type;
+        final String name;
+        final ByteBuffer key;
+
+        Record(byte type, String name, ByteBuffer key) {
+            this.type = type;
+            this.name = name;
+            this.key = key;
+        }
+    }
+
+    /**
+     * A pending change.
+     */
+    private static final class WriteOp {
+
+        final LogMap<?, ?> map;
+        final ByteBuffer key;
+        final Object value;
+
+        // position within the current batch
+        int offset;
+        int length;
+
+        WriteOp(LogMap<?, ?> map, ByteBuffer key, Object value) {
+            this.map = map;
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private static final class Segment {
+
+        final int id;
+        final File file;
+        private final boolean readOnly;
+        private volatile FileChannel channel;
+        volatile long size;
+        private volatile boolean closed;
+
+        Segment(int id, File file, boolean readOnly) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.readOnly = readOnly;
+            this.channel = open();
+            this.size = channel.size();
+        }
+
+        private FileChannel open() throws IOException {
+            return new RandomAccessFile(file, readOnly ? "r" : "rw").getChannel();
+        }
+
+        /**
+         * Re-open the channel if it was closed, for example because a reading
+         * thread was interrupted.
+         */
+        private synchronized FileChannel reopen(FileChannel old) throws IOException {
+            if (closed) {
+                throw new ClosedChannelException();
+            }
+            if (channel == old) {
+                // clear the interrupted flag, to avoid re-opening many times
+                Thread.interrupted();
+                channel = open();
+            }
+            return channel;
+        }
+
+        void write(ByteBuffer buff, long position) throws IOException {
+            FileChannel c = channel;
+            for (int i = 0;; i++) {
+                try {
+                    while (buff.hasRemaining()) {
+                        position += c.write(buff, position);
+                    }
+                    return;
+                } catch (ClosedChannelException e) {
+                    if (i > 0) {
+                        throw e;
+                    }
+                    c = reopen(c);
+                }
+            }
+        }
+
+        /**
+         * Read the record at the given position.
+         *
+         * @return the record, or null if it is incomplete
+         */
+        ByteBuffer readRecord(long position) throws IOException {
+            if (position + HEADER_LENGTH > size) {
+                return null;
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+            readFully(header, position);
+            int bodyLength = header.getInt(0);
+            if (bodyLength < 0 || position + HEADER_LENGTH + bodyLength > size) {
+                return null;
+            }
+            ByteBuffer record = ByteBuffer.allocate(HEADER_LENGTH + bodyLength);
+            record.put(header.array());
+            readFully(record, position + HEADER_LENGTH);
+            ((Buffer) record).flip();
+            return record;
+        }
+
+        ByteBuffer read(long position, int length) throws IOException {
+            ByteBuffer buff = ByteBuffer.allocate(length);
+            readFully(buff, position);
+            ((Buffer) buff).flip();
+            return buff;
+        }
+
+        private void readFully(ByteBuffer buff, long position) throws IOException {
+            FileChannel c = channel;
+            for (int i = 0;; i++) {
+                try {
+                    while (buff.hasRemaining()) {
+                        int n = c.read(buff, position);
+                        if (n < 0) {
+                            throw new IOException("Unexpected end of file " + file);
+                        }
+                        position += n;
+                    }
+                    return;
+                } catch (ClosedChannelException e) {
+                    if (i > 0) {
+                        throw e;
+                    }
+                    c = reopen(c);
+                }
+            }
+        }
+
+        void truncate(long position) throws IOException {
+            channel.truncate(position);
+            size = position;
+        }
+
+        synchronized void close() {
+            closed = true;
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.debug("Could not close " + file, e);
+            }
+        }
+    }
+
+    /**
+     * A map within the store.
+     */
+    private final class LogMap<K, V> extends AbstractMap<K, V> {
+
+        final String name;
+        final byte[] nameBytes;
+        final LogStoreIndex index = new LogStoreIndex();
+        final ConcurrentHashMap<ByteBuffer, WriteOp> pending =
+                new ConcurrentHashMap<ByteBuffer, WriteOp>();
+        private volatile DataType<K> keyType;
+        private volatile DataType<V> valueType;
+
+        LogMap(String name) {
+            this.name = name;
+            this.nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        }
+
+        void setTypes(DataType<K> keyType, DataType<V> valueType) {
+            this.keyType = keyType;
+            this.valueType = valueType;
+        }
+
+        /**
+         * Update the index (called with the write lock held).
+         *
+         * @param key the key
+         * @param loc the new location, or null if removed
+         */
+        void apply(ByteBuffer key, Location loc) {
+            long hash = LogStoreIndex.hash(key);
+            int old = loc == null ? index.remove(hash) : index.put(hash, loc);
+            if (old >= 0) {
+                liveBytes.addAndGet(-old);
+            }
+            if (loc != null) {
+                liveBytes.addAndGet(loc.length);
+            }
+        }
+
+        /**
+         * Remove all entries from the index (called with the write lock held).
+         */
+        void removeAll() {
+            for (Location loc : index.getLocations()) {
+                liveBytes.addAndGet(-loc.length);
+            }
+            index.clear();
+        }
+
+        @SuppressWarnings("unchecked")
+        void writeRecord(WriteBuffer buff, WriteOp op) {
+            int start = buff.position();
+            writeRecordHeader(buff, op.value == null ? TYPE_REMOVE : TYPE_PUT, nameBytes, op.key);
+            if (op.value != null) {
+                valueType.write(buff, (V) op.value);
+            }
+            finishRecord(buff, start);
+        }
+
+        @SuppressWarnings("unchecked")
+        private ByteBuffer toKey(Object key) {
+            WriteBuffer buff = keyBuffer.get();
+            if (buff == null) {
+                buff = new WriteBuffer();
+                keyBuffer.set(buff);
+            }
+            buff.clear();
+            keyType.write(buff, (K) key);
+            ByteBuffer b = buff.getBuffer();
+            byte[] k = new byte[b.position()];
+            System.arraycopy(b.array(), b.arrayOffset(), k, 0, k.length);
+            return ByteBuffer.wrap(k);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public V get(Object key) {
+            ByteBuffer k = toKey(key);
+            for (int i = 0; i < MAX_READ_RETRIES; i++) {
+                WriteOp op = pending.get(k);
+                if (op != null) {
+                    return (V) op.value;
+                }
+                Location loc = index.get(LogStoreIndex.hash(k));
+                if (loc == null) {
+                    return null;
+                }
+                Segment segment = segments.get(loc.segmentId);
+                if (segment == null) {
+                    // the segment was compacted concurrently: retry
+                    continue;
+                }
+                try {
+                    ByteBuffer record = segment.read(loc.offset, loc.length);
+                    Record r = parse(record);
+                    if (r == null) {
+                        LOG.warn("Corrupt record in {} at position {}", segment.file, loc.offset);
+                        return null;
+                    }
+                    // a different key with the same hash
+                    return r.key.equals(k) ? valueType.read(record) : null;
+                } catch (IOException e) {
+                    // the segment was compacted concurrently: retry
+                    LOG.debug("Could not read from " + segment.file, e);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            ByteBuffer k = toKey(key);
+            WriteOp op = pending.get(k);
+            if (op != null) {
+                return op.value != null;
+            }
+            return index.get(LogStoreIndex.hash(k)) != null;
+        }
+
+        @Override
+        public V put(K key, V value) {
+            if (readOnly) {
+                return null;
+            }
+            ByteBuffer k = toKey(key);
+            enqueue(new WriteOp(this, k, value));
+            // like the persistent cache, don't return the old value
+            return null;
+        }
+
+        @Override
+        public V remove(Object key) {
+            if (readOnly) {
+                return null;
+            }
+            ByteBuffer k = toKey(key);
+            if (!pending.containsKey(k) && index.get(LogStoreIndex.hash(k)) == null) {
+                return null;
+            }
+            enqueue(new WriteOp(this, k, null));
+            return null;
+        }
+
+        private void enqueue(WriteOp op) {
+            pending.put(op.key, op);
+            if (!queue.offer(op)) {
+                // the writer can't keep up: write synchronously, as a
+                // dropped change could replace a pending remove
+                writeLock.lock();
+                try {
+                    writeOps(Collections.singletonList(op), 1);
+                } finally {
+                    writeLock.unlock();
+                }
+            }
+        }
+
+        @Override
+        public void clear() {
+            LogStore.this.clear(this);
+        }
+
+        @Override
+        public int size() {
+            return index.size();
+        }
+
+        /**
+         * Get the entries. The returned set is not a live view: it contains
+         * the entries at the time this method is called, and the values are
+         * read while iterating. Entries that can no longer be read are
+         * skipped.
+         */
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            final List<Location> locations = index.getLocations();
+            final List<WriteOp> pendingOps = new ArrayList<WriteOp>(pending.values());
+            return new AbstractSet<Entry<K, V>>() {
+
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    return new EntryIterator(locations, pendingOps);
+                }
+
+                @Override
+                public int size() {
+                    int size = 0;
+                    for (Iterator<Entry<K, V>> it = iterator(); it.hasNext(); it.next()) {
+                        size++;
+                    }
+                    return size;
+                }
+            };
+        }
+
+        private final class EntryIterator implements Iterator<Entry<K, V>> {
+
+            private final Iterator<Location> locations;
+            private final Iterator<WriteOp> pendingOps;
+            private final Set<ByteBuffer> pendingKeys = new HashSet<ByteBuffer>();
+            private Entry<K, V> next;
+
+            EntryIterator(List<Location> locations, List<WriteOp> pendingOps) {
+                this.locations = locations.iterator();
+                this.pendingOps = pendingOps.iterator();
+                for (WriteOp op : pendingOps) {
+                    pendingKeys.add(op.key);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && pendingOps.hasNext()) {
+                    next = toEntry(pendingOps.next());
+                }
+                while (next == null && locations.hasNext()) {
+                    next = read(locations.next());
+                }
+                return next != null;
+            }
+
+            @Override
+            public Entry<K, V> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Entry<K, V> e = next;
+                next = null;
+                return e;
+            }
+
+            @SuppressWarnings("unchecked")
+            private Entry<K, V> toEntry(WriteOp op) {
+                if (op.value == null) {
+                    return null;
+                }
+                return new SimpleImmutableEntry<K, V>(keyType.read(op.key.duplicate()), (V) op.value);
+            }
+
+            private Entry<K, V> read(Location loc) {
+                Segment segment = segments.get(loc.segmentId);
+                if (segment == null) {
+                    return null;
+                }
+                try {
+                    ByteBuffer record = segment.read(loc.offset, loc.length);
+                    Record r = parse(record);
+                    if (r == null || pendingKeys.contains(r.key)) {
+                        return null;
+                    }
+                    V value = valueType.read(record);
+                    return new SimpleImmutableEntry<K, V>(keyType.read(r.key), value);
+                } catch (IOException e) {
+                    LOG.debug("Could not read from " + segment.file, e);
+                    return null;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.persistentCache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * The off-heap index of a {@link LogStore} map. It maps the 64 bit hash of a
+ * serialized key to the location of the latest record of the key: the
+ * segment id, the offset within the segment, and the length of the record.
+ * <p>
+ * The entries are kept in an open addressing hash table (linear probing) in a
+ * direct buffer, so that the index doesn't add to the heap usage, no matter
+ * how many entries the store contains. The keys themselves are not stored:
+ * the record contains the key, so readers need to verify it. Two keys with the
+ * same hash share an entry; for one of them, the entry then points to the
+ * record of the other key, which is treated as a cache miss.
+ * <p>
+ * Changes must be made by one thread at a time (the log store holds its
+ * write lock). Lookups don't block: they read optimistically, and only retry
+ * with a read lock if the table was changed concurrently.
+ */
+class LogStoreIndex {
+
+    /**
+     * Hash (8 bytes), segment id, offset and length (4 bytes each).
+     */
+    static final int ENTRY_LENGTH = 20;
+
+    static final int INITIAL_CAPACITY = 1024;
+
+    private final StampedLock lock = new StampedLock();
+
+    private volatile Table table = new Table(INITIAL_CAPACITY);
+
+    /**
+     * Get the hash of a serialized key. The value 0 is not used, as it marks
+     * empty slots.
+     *
+     * @param key the serialized key
+     * @return the hash
+     */
+    static long hash(ByteBuffer key) {
+        // FNV-1a, followed by the MurmurHash3 finalizer
+        long h = 0xcbf29ce484222325L;
+        for (int i = key.position(); i < key.limit(); i++) {
+            h ^= key.get(i) & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+
+    /**
+     * Get the location of the entry with the given hash.
+     *
+     * @param hash the hash
+     * @return the location, or null if there is no entry
+     */
+    Location get(long hash) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            Location loc = table.get(hash);
+            if (lock.validate(stamp)) {
+                return loc;
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return table.get(hash);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Add or replace an entry.
+     *
+     * @param hash the hash
+     * @param loc the location
+     * @return the length of the replaced record, or -1 if there was no entry
+     */
+    int put(long hash, Location loc) {
+        long stamp = lock.writeLock();
+        try {
+            Table t = table;
+            if ((t.size + 1) * 4L > t.capacity * 3L) {
+                t = t.resize(t.capacity * 2);
+                table = t;
+            }
+            return t.put(hash, loc.segmentId, loc.offset, loc.length);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Remove an entry.
+     *
+     * @param hash the hash
+     * @return the length of the removed record, or -1 if there was no entry
+     */
+    int remove(long hash) {
+        long stamp = lock.writeLock();
+        try {
+            return table.remove(hash);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Remove all entries.
+     */
+    void clear() {
+        long stamp = lock.writeLock();
+        try {
+            table = new Table(INITIAL_CAPACITY);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    int size() {
+        return table.size;
+    }
+
+    /**
+     * Get the locations of all entries.
+     *
+     * @return the list of locations
+     */
+    List<Location> getLocations() {
+        long stamp = lock.readLock();
+        try {
+            return table.getLocations();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * The location of a record.
+     */
+    static final class Location {
+
+        final int segmentId;
+        final int offset;
+        final int length;
+
+        Location(int segmentId, int offset, int length) {
+            this.segmentId = segmentId;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * The hash table. A larger table is a new instance.
+     */
+    private static final class Table {
+
+        final int capacity;
+        final int mask;
+        final ByteBuffer buffer;
+        int size;
+
+        Table(int capacity) {
+            this.capacity = capacity;
+            this.mask = capacity - 1;
+            this.buffer = ByteBuffer.allocateDirect(capacity * ENTRY_LENGTH);
+        }
+
+        private int home(long hash) {
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+
+        /**
+         * Find the slot of the given hash, or the empty slot where it would be
+         * inserted. The number of probes is bounded, so that an optimistic
+         * reader that sees a table that is being changed terminates.
+         *
+         * @return the slot, or -1 if none was found
+         */
+        private int find(long hash) {
+            int slot = home(hash);
+            for (int i = 0; i < capacity; i++) {
+                long h = buffer.getLong(slot * ENTRY_LENGTH);
+                if (h == hash || h == 0) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        Location get(long hash) {
+            int slot = find(hash);
+            if (slot < 0) {
+                return null;
+            }
+            int pos = slot * ENTRY_LENGTH;
+            if (buffer.getLong(pos) != hash) {
+                return null;
+            }
+            return new Location(buffer.getInt(pos + 8), buffer.getInt(pos + 12), buffer.getInt(pos + 16));
+        }
+
+        int put(long hash, int segmentId, int offset, int length) {
+            int pos = find(hash) * ENTRY_LENGTH;
+            int old = -1;
+            if (buffer.getLong(pos) == hash) {
+                old = buffer.getInt(pos + 16);
+            } else {
+                size++;
+            }
+            buffer.putInt(pos + 8, segmentId);
+            buffer.putInt(pos + 12, offset);
+            buffer.putInt(pos + 16, length);
+            buffer.putLong(pos, hash);
+            return old;
+        }
+
+        int remove(long hash) {
+            int slot = find(hash);
+            if (slot < 0 || buffer.getLong(slot * ENTRY_LENGTH) != hash) {
+                return -1;
+            }
+            int old = buffer.getInt(slot * ENTRY_LENGTH + 16);
+            size--;
+            // backward shift deletion, so that no tombstones are needed
+            int empty = slot;
+            int next = slot;
+            while (true) {
+                next = (next + 1) & mask;
+                long h = buffer.getLong(next * ENTRY_LENGTH);
+                if (h == 0) {
+                    break;
+                }
+                // move the entry unless its home slot is within (empty, next]
+                if (((next - home(h)) & mask) >= ((next - empty) & mask)) {
+                    copy(next, empty);
+                    empty = next;
+                }
+            }
+            buffer.putLong(empty * ENTRY_LENGTH, 0);
+            return old;
+        }
+
+        private void copy(int from, int to) {
+            int src = from * ENTRY_LENGTH;
+            int dst = to * ENTRY_LENGTH;
+            buffer.putInt(dst + 8, buffer.getInt(src + 8));
+            buffer.putInt(dst + 12, buffer.getInt(src + 12));
+            buffer.putInt(dst + 16, buffer.getInt(src + 16));
+            buffer.putLong(dst, buffer.getLong(src));
+        }
+
+        Table resize(int newCapacity) {
+            Table t = new Table(newCapacity);
+            for (int slot = 0; slot < capacity; slot++) {
+                int pos = slot * ENTRY_LENGTH;
+                long h = buffer.getLong(pos);
+                if (h != 0) {
+                    t.put(h, buffer.getInt(pos + 8), buffer.getInt(pos + 12), buffer.getInt(pos + 16));
+                }
+            }
+            return t;
+        }
+
+        List<Location> getLocations() {
+            List<Location> list = new ArrayList<Location>(size);
+            for (int slot = 0; slot < capacity; slot++) {
+                int pos = slot * ENTRY_LENGTH;
+                if (buffer.getLong(pos) != 0) {
+                    list.add(new Location(buffer.getInt(pos + 8), buffer.getInt(pos + 12), buffer.getInt(pos + 16)));
+                }
+            }
+            return list;
+        }
+    }
+}
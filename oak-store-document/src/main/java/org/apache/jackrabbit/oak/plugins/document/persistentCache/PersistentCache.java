@@ -17,6 +17,7 @@
 package org.apache.jackrabbit.oak.plugins.document.persistentCache;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
@@ -26,6 +27,7 @@ import java.util.TreeSet;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.jackrabbit.guava.common.cache.Cache;
 import org.apache.jackrabbit.oak.cache.CacheValue;
 import org.apache.jackrabbit.oak.plugins.document.DocumentNodeStore;
@@ -57,6 +59,7 @@ public class PersistentCache implements Broadcaster.Listener {
 
     private static final String FILE_PREFIX = "cache-";
     private static final String FILE_SUFFIX = ".data";
+    private static final String LOG_SUFFIX = ".log";
     private static final AtomicInteger COUNTER = new AtomicInteger();
     
     private boolean cacheNodes = true;
@@ -81,6 +84,8 @@ public class PersistentCache implements Broadcaster.Listener {
     private int autoCompact = 0;
     private boolean appendOnly;
     private boolean manualCommit;
+    private boolean logStore;
+    private int segmentSizeMB = LogStore.DEFAULT_SEGMENT_SIZE / 1024 / 1024;
     private Broadcaster broadcaster;
     private ThreadLocal<WriteBuffer> writeBuffer = new ThreadLocal<WriteBuffer>();
     private final byte[] broadcastId;
@@ -146,10 +151,21 @@ public class PersistentCache implements Broadcaster.Listener {
                 asyncCache = false;
             } else if (p.equals("+asyncDiff")) {
                 asyncDiffCache = true;
+            } else if (p.startsWith("store=")) {
+                String store = p.split("=")[1];
+                if (store.equals("log")) {
+                    logStore = true;
+                } else if (!store.equals("mvstore")) {
+                    throw new IllegalArgumentException("Unknown store type " + store);
+                }
+            } else if (p.startsWith("segmentSize=")) {
+                segmentSizeMB = Integer.parseInt(p.split("=")[1]);
             }
         }
         this.directory = dir;
         if (dir.length() == 0) {
+            // the log store needs a directory
+            logStore = false;
             readGeneration = -1;
             writeGeneration = 0;
             writeStore = createMapFactory(writeGeneration, false);
@@ -167,8 +183,9 @@ public class PersistentCache implements Broadcaster.Listener {
         if (list != null) {
             for (File f : list) {
                 String fn = f.getName();
-                if (fn.startsWith(FILE_PREFIX) && fn.endsWith(FILE_SUFFIX)) {
-                    String g = fn.substring(FILE_PREFIX.length(), fn.indexOf(FILE_SUFFIX));
+                String suffix = getFileSuffix();
+                if (fn.startsWith(FILE_PREFIX) && fn.endsWith(suffix)) {
+                    String g = fn.substring(FILE_PREFIX.length(), fn.indexOf(suffix));
                     try {
                         int gen = Integer.parseInt(g);
                         if (gen >= 0) {
@@ -191,7 +208,7 @@ public class PersistentCache implements Broadcaster.Listener {
                 LOG.info("Ignoring old, read-only generation " + oldFile.getAbsolutePath());
             } else {
                 LOG.info("Removing old generation " + oldFile.getAbsolutePath());
-                oldFile.delete();
+                FileUtils.deleteQuietly(oldFile);
             }
             generations.remove(oldest);
         }
@@ -245,10 +262,17 @@ public class PersistentCache implements Broadcaster.Listener {
         if (directory.length() == 0) {
             return null;
         }
-        return directory + "/" + FILE_PREFIX + generation + FILE_SUFFIX;
+        return directory + "/" + FILE_PREFIX + generation + getFileSuffix();
+    }
+
+    private String getFileSuffix() {
+        return logStore ? LOG_SUFFIX : FILE_SUFFIX;
     }
     
     private MapFactory createMapFactory(final int generation, final boolean readOnly) {
+        if (logStore) {
+            return createLogMapFactory(generation, readOnly);
+        }
         MapFactory f = new MapFactory() {
             
             final String fileName = getFileName(generation);
@@ -366,6 +390,68 @@ public class PersistentCache implements Broadcaster.Listener {
         f.openStore();
         return f;
     }
+
+    private MapFactory createLogMapFactory(final int generation, final boolean readOnly) {
+        MapFactory f = new MapFactory() {
+
+            final String fileName = getFileName(generation);
+            LogStore store;
+
+            @Override
+            void openStore() {
+                if (store != null) {
+                    return;
+                }
+                int fillRate = autoCompact > 0 ? autoCompact : LogStore.DEFAULT_FILL_RATE;
+                try {
+                    store = new LogStore(new File(fileName), segmentSizeMB * 1024 * 1024,
+                            fillRate, readOnly);
+                } catch (IOException e) {
+                    exceptionCount++;
+                    LOG.warn("Could not open the store " + fileName, e);
+                }
+            }
+
+            @Override
+            synchronized void closeStore() {
+                if (store == null) {
+                    return;
+                }
+                try {
+                    // clear the interrupted flag, if set
+                    Thread.interrupted();
+                    store.close();
+                } catch (Exception e) {
+                    exceptionCount++;
+                    LOG.debug("Could not close the store", e);
+                    LOG.warn("Could not close the store: " + e);
+                }
+                store = null;
+            }
+
+            @Override
+            <K, V> Map<K, V> openMap(String name, Builder<K, V> builder) {
+                try {
+                    if (builder == null) {
+                        return store.openMap(name, null, null);
+                    }
+                    return store.openMap(name, builder.getKeyType(), builder.getValueType());
+                } catch (Exception e) {
+                    exceptionCount++;
+                    LOG.warn("Could not open the map", e);
+                    return null;
+                }
+            }
+
+            @Override
+            long getFileSize() {
+                LogStore s = store;
+                return s == null ? 0 : s.getFileSize();
+            }
+        };
+        f.openStore();
+        return f;
+    }
     
     public void close() {
         writeDispatcher.stop();
@@ -482,7 +568,7 @@ public class PersistentCache implements Broadcaster.Listener {
             }
             if (oldRead != null) {
                 oldRead.closeStore();
-                new File(getFileName(oldReadGeneration)).delete();
+                FileUtils.deleteQuietly(new File(getFileName(oldReadGeneration)));
             }
         }
     }
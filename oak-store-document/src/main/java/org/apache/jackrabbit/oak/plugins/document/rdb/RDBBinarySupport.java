@@ -0,0 +1,335 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.rdb;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.jackrabbit.oak.plugins.document.Document;
+import org.apache.jackrabbit.oak.plugins.document.DocumentStoreException;
+import org.apache.jackrabbit.oak.plugins.document.Revision;
+import org.apache.jackrabbit.oak.plugins.document.StableRevisionComparator;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Compact binary encoding of documents for the BDATA column, as alternative to
+ * the JSON serialization.
+ * <p>
+ * The encoding starts with a header that can not be confused with JSON text or
+ * GZIP data: a zero byte, the characters "OB", a format version and a flags
+ * byte. If the {@link #FLAG_DEFLATE} flag is set, the remaining bytes are
+ * compressed using {@link Deflater}.
+ * <p>
+ * The body is a sequence of members (count first), each consisting of the
+ * member name and a typed value. Strings are stored as length prefixed UTF-8,
+ * numbers as variable length integers, and revision maps store their keys as
+ * revision components, so that no textual revision parsing is needed when
+ * reading.
+ * <p>
+ * The value types supported are the ones supported by {@link RDBJSONSupport}
+ * when serializing documents: {@code null}, {@link Boolean}, {@link Number},
+ * {@link String} and {@link Map}s (which are decoded into revision maps).
+ */
+public class RDBBinarySupport {
+
+    private static final byte[] MAGIC = { 0, 'O', 'B' };
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_LENGTH = MAGIC.length + 2;
+
+    /**
+     * Flag indicating that the body is compressed.
+     */
+    static final int FLAG_DEFLATE = 1;
+
+    private static final int TYPE_NULL = 0;
+    private static final int TYPE_FALSE = 1;
+    private static final int TYPE_TRUE = 2;
+    private static final int TYPE_LONG = 3;
+    private static final int TYPE_DOUBLE = 4;
+    private static final int TYPE_STRING = 5;
+    private static final int TYPE_MAP = 6;
+
+    private static final int KEY_REVISION = 0;
+    private static final int KEY_STRING = 1;
+
+    private RDBBinarySupport() {
+    }
+
+    /**
+     * @return whether the supplied data uses the binary encoding.
+     */
+    public static boolean isBinary(byte[] data) {
+        return data != null && data.length >= HEADER_LENGTH && data[0] == MAGIC[0] && data[1] == MAGIC[1] && data[2] == MAGIC[2];
+    }
+
+    /**
+     * Encodes all non-column properties of the {@link Document}.
+     *
+     * @param doc the document
+     * @param columnProperties names of properties stored in separate columns
+     * @param compress whether to compress the body
+     * @return the encoded document
+     */
+    @NotNull
+    public static byte[] encode(@NotNull Document doc, @NotNull Set<String> columnProperties, boolean compress) {
+        Output body = new Output(1024);
+        int count = 0;
+        for (String key : doc.keySet()) {
+            if (!columnProperties.contains(key)) {
+                count++;
+            }
+        }
+        body.writeVarLong(count);
+        for (Map.Entry<String, Object> entry : doc.entrySet()) {
+            if (!columnProperties.contains(entry.getKey())) {
+                body.writeString(entry.getKey());
+                writeValue(body, entry.getValue());
+            }
+        }
+
+        ByteArrayOutputStream result = new ByteArrayOutputStream(HEADER_LENGTH + (compress ? body.size() / 2 : body.size()));
+        result.write(MAGIC, 0, MAGIC.length);
+        result.write(VERSION);
+        result.write(compress ? FLAG_DEFLATE : 0);
+        if (compress) {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try (DeflaterOutputStream dos = new DeflaterOutputStream(result, deflater)) {
+                body.writeTo(dos);
+            } catch (IOException ex) {
+                throw new DocumentStoreException("Error while compressing document " + doc.getId(), ex);
+            } finally {
+                deflater.end();
+            }
+        } else {
+            result.write(body.toByteArray(), 0, body.size());
+        }
+        return result.toByteArray();
+    }
+
+    /**
+     * Decodes the supplied binary data into the {@link Document}.
+     *
+     * @param data the encoded document, see {@link #isBinary(byte[])}
+     * @param doc the document to put the members into
+     */
+    public static void decode(@NotNull byte[] data, @NotNull Document doc) {
+        if (!isBinary(data)) {
+            throw new DocumentStoreException("not a binary encoded document");
+        }
+        int version = data[MAGIC.length];
+        if (version != VERSION) {
+            throw new DocumentStoreException("unsupported binary document format version: " + version);
+        }
+        int flags = data[MAGIC.length + 1];
+        byte[] body;
+        int offset;
+        if ((flags & FLAG_DEFLATE) != 0) {
+            try (InflaterInputStream iis = new InflaterInputStream(
+                    new ByteArrayInputStream(data, HEADER_LENGTH, data.length - HEADER_LENGTH))) {
+                body = IOUtils.toByteArray(iis);
+                offset = 0;
+            } catch (IOException ex) {
+                throw new DocumentStoreException("Error while decompressing document data", ex);
+            }
+        } else {
+            body = data;
+            offset = HEADER_LENGTH;
+        }
+
+        Input in = new Input(body, offset);
+        long count = in.readVarLong();
+        for (long i = 0; i < count; i++) {
+            String key = in.readString();
+            doc.put(key, readValue(in));
+        }
+        if (in.position != body.length) {
+            throw new DocumentStoreException("unexpected trailing data in binary document: " + (body.length - in.position) + " bytes");
+        }
+    }
+
+    private static void writeValue(Output out, Object value) {
+        if (value == null) {
+            out.write(TYPE_NULL);
+        } else if (value instanceof Boolean) {
+            out.write(((Boolean) value) ? TYPE_TRUE : TYPE_FALSE);
+        } else if (value instanceof Double || value instanceof Float) {
+            out.write(TYPE_DOUBLE);
+            out.writeLong(Double.doubleToLongBits(((Number) value).doubleValue()));
+        } else if (value instanceof Number) {
+            out.write(TYPE_LONG);
+            out.writeVarLong(zigZag(((Number) value).longValue()));
+        } else if (value instanceof String) {
+            out.write(TYPE_STRING);
+            out.writeString((String) value);
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.write(TYPE_MAP);
+            out.writeVarLong(map.size());
+            for (Map.Entry<?, ?> e : map.entrySet()) {
+                Object key = e.getKey();
+                if (key instanceof Revision) {
+                    Revision r = (Revision) key;
+                    out.write(KEY_REVISION);
+                    out.writeVarLong(r.getTimestamp());
+                    out.writeVarLong(r.getCounter());
+                    out.writeVarLong(r.getClusterId());
+                    out.write(r.isBranch() ? 1 : 0);
+                } else {
+                    out.write(KEY_STRING);
+                    out.writeString(key.toString());
+                }
+                writeValue(out, e.getValue());
+            }
+        } else {
+            throw new IllegalArgumentException("unexpected type: " + value.getClass());
+        }
+    }
+
+    private static Object readValue(Input in) {
+        int type = in.read();
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_FALSE:
+                return Boolean.FALSE;
+            case TYPE_TRUE:
+                return Boolean.TRUE;
+            case TYPE_LONG:
+                return unZigZag(in.readVarLong());
+            case TYPE_DOUBLE:
+                return Double.longBitsToDouble(in.readLong());
+            case TYPE_STRING:
+                return in.readString();
+            case TYPE_MAP:
+                Map<Revision, Object> map = new TreeMap<Revision, Object>(StableRevisionComparator.REVERSE);
+                long size = in.readVarLong();
+                for (long i = 0; i < size; i++) {
+                    Revision r;
+                    int keyType = in.read();
+                    if (keyType == KEY_REVISION) {
+                        long timestamp = in.readVarLong();
+                        int counter = (int) in.readVarLong();
+                        int clusterId = (int) in.readVarLong();
+                        boolean branch = in.read() != 0;
+                        r = new Revision(timestamp, counter, clusterId, branch);
+                    } else if (keyType == KEY_STRING) {
+                        r = Revision.fromString(in.readString());
+                    } else {
+                        throw new DocumentStoreException("unexpected map key type: " + keyType);
+                    }
+                    map.put(r, readValue(in));
+                }
+                return map;
+            default:
+                throw new DocumentStoreException("unexpected value type: " + type);
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static class Output extends ByteArrayOutputStream {
+
+        Output(int size) {
+            super(size);
+        }
+
+        void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeLong(long value) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                write((int) (value >>> shift));
+            }
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+    }
+
+    private static class Input {
+
+        private final byte[] data;
+        private int position;
+
+        Input(byte[] data, int position) {
+            this.data = data;
+            this.position = position;
+        }
+
+        int read() {
+            if (position >= data.length) {
+                throw new DocumentStoreException("unexpected end of binary document data");
+            }
+            return data[position++] & 0xFF;
+        }
+
+        long readVarLong() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = read();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new DocumentStoreException("malformed variable length integer in binary document data");
+        }
+
+        long readLong() {
+            long result = 0;
+            for (int i = 0; i < 8; i++) {
+                result = (result << 8) | read();
+            }
+            return result;
+        }
+
+        String readString() {
+            long length = readVarLong();
+            if (length < 0 || length > data.length - position) {
+                throw new DocumentStoreException("invalid string length in binary document data: " + length);
+            }
+            String result = new String(data, position, (int) length, StandardCharsets.UTF_8);
+            position += (int) length;
+            return result;
+        }
+    }
+}
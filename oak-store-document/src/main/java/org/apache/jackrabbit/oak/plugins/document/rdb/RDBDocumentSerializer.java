@@ -96,6 +96,39 @@ public class RDBDocumentSerializer {
         return sb.toString();
     }
 
+    /**
+     * Computes the length of the JSON serialization of all non-column
+     * properties of the {@link Document} (see {@link #asString(Document, Set)})
+     * without building the complete string; used for the DSIZE of documents
+     * stored in the binary format.
+     */
+    public long getJsonLength(@NotNull Document doc, Set<String> columnProperties) {
+        StringBuilder sb = new StringBuilder();
+        long length = 2; // braces
+        boolean needComma = false;
+        for (Map.Entry<String, Object> entry : doc.entrySet()) {
+            String key = entry.getKey();
+            if (!columnProperties.contains(key)) {
+                if (needComma) {
+                    length++;
+                }
+                sb.setLength(0);
+                appendJsonMember(sb, key, entry.getValue());
+                length += sb.length();
+                needComma = true;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Serializes all non-column properties of the {@link Document} into the
+     * compact binary format defined by {@link RDBBinarySupport}.
+     */
+    public byte[] asBytes(@NotNull Document doc, Set<String> columnProperties, boolean compress) {
+        return RDBBinarySupport.encode(doc, columnProperties, compress);
+    }
+
     /**
      * Serializes the changes in the {@link UpdateOp} into a JSON array; each
      * entry is another JSON array holding operation, key, revision, and value.
@@ -181,17 +214,25 @@ public class RDBDocumentSerializer {
 
         // case #1: BDATA (blob) contains base data, DATA (string) contains
         // update operations
-        try {
-            if (bdata != null && bdata.length != 0) {
-                String s = fromBlobData(bdata);
-                json = new JsopTokenizer(s);
-                json.read('{');
-                readDocumentFromJson(json, doc);
-                json.read(JsopReader.END);
-                blobInUse = true;
+        if (bdata != null && bdata.length != 0) {
+            if (RDBBinarySupport.isBinary(bdata)) {
+                try {
+                    RDBBinarySupport.decode(bdata, doc);
+                } catch (Exception ex) {
+                    throw asDocumentStoreException(ex, "decoding binary blob data");
+                }
+            } else {
+                try {
+                    String s = fromBlobData(bdata);
+                    json = new JsopTokenizer(s);
+                    json.read('{');
+                    readDocumentFromJson(json, doc);
+                    json.read(JsopReader.END);
+                } catch (Exception ex) {
+                    throw asDocumentStoreException(ex, "parsing blob data as JSON");
+                }
             }
-        } catch (Exception ex) {
-            throw asDocumentStoreException(ex, "parsing blob data as JSON");
+            blobInUse = true;
         }
 
         json = new JsopTokenizer(charData);
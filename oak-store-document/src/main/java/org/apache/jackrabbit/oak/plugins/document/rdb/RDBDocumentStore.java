@@ -194,7 +194,8 @@ import org.apache.jackrabbit.guava.common.collect.Sets;
  * <th>BDATA</th>
  * <td>blob</td>
  * <td>The document's JSON serialization (usually GZIPped, only used for "large"
- * documents).</td>
+ * documents), or, when the binary format is enabled, the document's compact
+ * binary encoding (see {@link RDBBinarySupport}).</td>
  * </tr>
  * </tbody>
  * </table>
@@ -849,6 +850,54 @@ public class RDBDocumentStore implements DocumentStore {
         }
     }
 
+    @Override
+    public <T extends Document> void prefetch(Collection<T> collection, Iterable<String> keysToPrefetch) {
+        if (collection != Collection.NODES) {
+            // only NODES are cached, nothing to gain for other collections
+            return;
+        }
+
+        Set<String> keys = new HashSet<>();
+        for (String key : keysToPrefetch) {
+            if (nodesCache.getIfPresent(key) == null) {
+                keys.add(key);
+            }
+        }
+        if (keys.size() < MINPREFETCH) {
+            return;
+        }
+
+        final Stopwatch watch = startWatch();
+        List<String> resultKeys = new ArrayList<>(keys.size());
+        // keys set is modified later, the tracker gets its own copy
+        try (CacheChangesTracker tracker = obtainTracker(collection, new HashSet<>(keys))) {
+            Map<String, T> docs = readDocumentsUncached(collection, keys);
+            List<NodeDocument> docsToCache = new ArrayList<>(docs.size());
+            for (T doc : docs.values()) {
+                doc.seal();
+                docsToCache.add((NodeDocument) doc);
+                resultKeys.add(doc.getId());
+            }
+            nodesCache.putNonConflictingDocs(tracker, docsToCache);
+            keys.removeAll(docs.keySet());
+
+            // documents for remaining keys do not exist
+            for (String id : keys) {
+                try (CacheLock lock = acquireLockFor(id)) {
+                    // load NULL document into cache unless it may have
+                    // been affected by another concurrent operation
+                    if (!tracker.mightBeenAffected(id)) {
+                        nodesCache.get(id, () -> NodeDocument.NULL);
+                    }
+                }
+            }
+        } catch (ExecutionException ex) {
+            throw asDocumentStoreException(ex, "trying to prefetch: " + keys);
+        } finally {
+            stats.donePrefetch(watch.elapsed(TimeUnit.NANOSECONDS), collection, resultKeys);
+        }
+    }
+
     @Override
     public Iterable<CacheStats> getCacheStats() {
         return nodesCache.getCacheStats();
@@ -992,6 +1041,9 @@ public class RDBDocumentStore implements DocumentStore {
 
     private final RDBDocumentSerializer ser = new RDBDocumentSerializer(this);
 
+    // whether documents are written in the binary format (see RDBOptions#binaryData)
+    private boolean binaryData;
+
     private void initialize(DataSource ds, DocumentNodeStoreBuilder<?> builder, RDBOptions options) throws Exception {
         this.stats = builder.getDocumentStoreStatsCollector();
 
@@ -1037,7 +1089,8 @@ public class RDBDocumentStore implements DocumentStore {
         String dbUrl = md.getURL();
 
         this.dbInfo = RDBDocumentStoreDB.getValue(md.getDatabaseProductName());
-        this.db = new RDBDocumentStoreJDBC(this.dbInfo, this.ser, QUERYHITSLIMIT, QUERYTIMELIMIT);
+        this.binaryData = options.isBinaryData();
+        this.db = new RDBDocumentStoreJDBC(this.dbInfo, this.ser, QUERYHITSLIMIT, QUERYTIMELIMIT, this.binaryData);
         this.metadata = ImmutableMap.<String,String>builder()
                 .put("type", "rdb")
                 .put("db", md.getDatabaseProductName())
@@ -2102,11 +2155,19 @@ public class RDBDocumentStore implements DocumentStore {
                 }
             }
             if (!success && shouldRetry) {
-                data = ser.asString(document, tmd.getColumnOnlyProperties());
+                byte[] bdata = null;
+                long dataSize;
+                if (binaryData) {
+                    bdata = ser.asBytes(document, tmd.getColumnOnlyProperties(), !NOGZIP);
+                    dataSize = ser.getJsonLength(document, tmd.getColumnOnlyProperties());
+                } else {
+                    data = ser.asString(document, tmd.getColumnOnlyProperties());
+                    dataSize = data.length();
+                }
                 Object m = document.get(MODIFIED);
                 long modified = (m instanceof Long) ? ((Long)m).longValue() : 0;
                 success = db.update(connection, tmd, document.getId(), modified, hasBinary, deletedOnce, modcount, cmodcount,
-                        oldmodcount, data);
+                        oldmodcount, data, bdata, dataSize);
                 connection.commit();
             }
             return success;
@@ -2204,10 +2265,15 @@ public class RDBDocumentStore implements DocumentStore {
 
     // configuration
 
-    // Whether to use GZIP compression
-    private static final boolean NOGZIP = SystemPropertySupplier
+    // Whether to use GZIP compression (or Deflate compression for the binary format)
+    protected static final boolean NOGZIP = SystemPropertySupplier
             .create("org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore.NOGZIP", Boolean.FALSE).loggingTo(LOG).get();
 
+    // Default for whether to write documents to BDATA using the binary format (see RDBBinarySupport
+    // and RDBOptions#binaryData); documents in either format can always be read
+    protected static final boolean BINARYDATA = SystemPropertySupplier
+            .create("org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore.BINARYDATA", Boolean.FALSE).loggingTo(LOG).get();
+
     // Whether to use append operations (string concatenation) in the DATA column
     private static final boolean NOAPPEND = SystemPropertySupplier
             .create("org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore.NOAPPEND", Boolean.FALSE).loggingTo(LOG).get();
@@ -2217,6 +2283,11 @@ public class RDBDocumentStore implements DocumentStore {
             .create("org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore.CHUNKSIZE", 64).loggingTo(LOG)
             .validateWith(value -> value > 0).get();
 
+    // Minimal number of uncached documents for which a prefetch is worth a round-trip
+    private static final int MINPREFETCH = SystemPropertySupplier
+            .create("org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore.MINPREFETCH", 5).loggingTo(LOG)
+            .validateWith(value -> value > 0).get();
+
     // Number of query hits above which a diagnostic warning is generated
     private static final int QUERYHITSLIMIT = SystemPropertySupplier
             .create("org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore.QUERYHITSLIMIT", 4096).loggingTo(LOG)
@@ -84,14 +84,25 @@ public class RDBDocumentStoreJDBC {
     private final RDBDocumentStoreDB dbInfo;
     private final RDBDocumentSerializer ser;
     private final int queryHitsLimit, queryTimeLimit;
+    private final boolean binaryData;
 
     private static final Long INITIALMODCOUNT = Long.valueOf(1);
     
     public RDBDocumentStoreJDBC(RDBDocumentStoreDB dbInfo, RDBDocumentSerializer ser, int queryHitsLimit, int queryTimeLimit) {
+        this(dbInfo, ser, queryHitsLimit, queryTimeLimit, RDBDocumentStore.BINARYDATA);
+    }
+
+    /**
+     * @param binaryData whether documents are written in the binary format
+     *            (see {@link RDBBinarySupport})
+     */
+    public RDBDocumentStoreJDBC(RDBDocumentStoreDB dbInfo, RDBDocumentSerializer ser, int queryHitsLimit, int queryTimeLimit,
+            boolean binaryData) {
         this.dbInfo = dbInfo;
         this.ser = ser;
         this.queryHitsLimit = queryHitsLimit;
         this.queryTimeLimit = queryTimeLimit;
+        this.binaryData = binaryData;
     }
 
     public boolean appendingUpdate(Connection connection, RDBTableMetaData tmd, String id, Long modified,
@@ -264,7 +275,16 @@ public class RDBDocumentStoreJDBC {
         int[] results;
         try {
             for (T document : sortedDocs) {
-                String data = this.ser.asString(document, tmd.getColumnOnlyProperties());
+                String data = null;
+                byte[] bdata = null;
+                long dataSize;
+                if (this.binaryData) {
+                    bdata = this.ser.asBytes(document, tmd.getColumnOnlyProperties(), !RDBDocumentStore.NOGZIP);
+                    dataSize = this.ser.getJsonLength(document, tmd.getColumnOnlyProperties());
+                } else {
+                    data = this.ser.asString(document, tmd.getColumnOnlyProperties());
+                    dataSize = data.length();
+                }
                 String id = document.getId();
                 Number hasBinary = (Number) document.get(NodeDocument.HAS_BINARY_FLAG);
                 Boolean deletedOnce = (Boolean) document.get(NodeDocument.DELETED_ONCE);
@@ -277,19 +297,12 @@ public class RDBDocumentStoreJDBC {
                 stmt.setObject(si++, deletedOnceAsNullOrInteger(deletedOnce), Types.SMALLINT);
                 stmt.setObject(si++, document.get(MODCOUNT), Types.BIGINT);
                 stmt.setObject(si++, cmodcount == null ? Long.valueOf(0) : cmodcount, Types.BIGINT);
-                stmt.setObject(si++, data.length(), Types.BIGINT);
+                stmt.setObject(si++, dataSize, Types.BIGINT);
                 if (tmd.hasSplitDocs()) {
                     stmt.setObject(si++, document.get(NodeDocument.SD_TYPE));
                     stmt.setObject(si++, document.get(NodeDocument.SD_MAX_REV_TIME_IN_SECS));
                 }
-                if (data.length() < tmd.getDataLimitInOctets() / CHAR2OCTETRATIO) {
-                    setDataInStatement(tmd, stmt, si++, data);
-                    stmt.setBinaryStream(si++, null, 0);
-                } else {
-                    setDataInStatement(tmd, stmt, si++, "\"blob\"");
-                    byte[] bytes = asBytes(data);
-                    stmt.setBytes(si++, bytes);
-                }
+                si = setDataAndBdataInStatement(tmd, stmt, si, data, bdata);
                 stmt.addBatch();
             }
             results = stmt.executeBatch();
@@ -350,7 +363,16 @@ public class RDBDocumentStoreJDBC {
                     continue; // This is a new document. We'll deal with the inserts later.
                 }
 
-                String data = this.ser.asString(document, tmd.getColumnOnlyProperties());
+                String data = null;
+                byte[] bdata = null;
+                long dataSize;
+                if (this.binaryData) {
+                    bdata = this.ser.asBytes(document, tmd.getColumnOnlyProperties(), !RDBDocumentStore.NOGZIP);
+                    dataSize = this.ser.getJsonLength(document, tmd.getColumnOnlyProperties());
+                } else {
+                    data = this.ser.asString(document, tmd.getColumnOnlyProperties());
+                    dataSize = data.length();
+                }
                 Number hasBinary = (Number) document.get(NodeDocument.HAS_BINARY_FLAG);
                 Boolean deletedOnce = (Boolean) document.get(NodeDocument.DELETED_ONCE);
                 Long cmodcount = (Long) document.get(COLLISIONSMODCOUNT);
@@ -361,16 +383,8 @@ public class RDBDocumentStoreJDBC {
                 stmt.setObject(si++, deletedOnceAsNullOrInteger(deletedOnce), Types.SMALLINT);
                 stmt.setObject(si++, modcount, Types.BIGINT);
                 stmt.setObject(si++, cmodcount == null ? Long.valueOf(0) : cmodcount, Types.BIGINT);
-                stmt.setObject(si++, data.length(), Types.BIGINT);
-
-                if (data.length() < tmd.getDataLimitInOctets() / CHAR2OCTETRATIO) {
-                    setDataInStatement(tmd, stmt, si++, data);
-                    stmt.setBinaryStream(si++, null, 0);
-                } else {
-                    setDataInStatement(tmd, stmt, si++, "\"blob\"");
-                    byte[] bytes = asBytes(data);
-                    stmt.setBytes(si++, bytes);
-                }
+                stmt.setObject(si++, dataSize, Types.BIGINT);
+                si = setDataAndBdataInStatement(tmd, stmt, si, data, bdata);
 
                 setIdInStatement(tmd, stmt, si++, document.getId());
                 stmt.setObject(si++, modcount - 1, Types.BIGINT);
@@ -913,6 +927,19 @@ public class RDBDocumentStoreJDBC {
 
     public boolean update(Connection connection, RDBTableMetaData tmd, String id, Long modified, Number hasBinary,
             Boolean deletedOnce, Long modcount, Long cmodcount, Long oldmodcount, String data) throws SQLException {
+        return update(connection, tmd, id, modified, hasBinary, deletedOnce, modcount, cmodcount, oldmodcount, data, null,
+                data.length());
+    }
+
+    /**
+     * Updates the row for the document with the given id, using either the
+     * JSON serialization {@code data} or, when not {@code null}, the binary
+     * encoding {@code bdata} (see {@link RDBBinarySupport}). {@code dataSize}
+     * is the length of the JSON serialization in both cases.
+     */
+    public boolean update(Connection connection, RDBTableMetaData tmd, String id, Long modified, Number hasBinary,
+            Boolean deletedOnce, Long modcount, Long cmodcount, Long oldmodcount, String data, byte[] bdata, long dataSize)
+            throws SQLException {
 
         StringBuilder t = new StringBuilder();
         t.append("update " + tmd.getName() + " set ");
@@ -930,16 +957,8 @@ public class RDBDocumentStoreJDBC {
             stmt.setObject(si++, deletedOnceAsNullOrInteger(deletedOnce), Types.SMALLINT);
             stmt.setObject(si++, modcount, Types.BIGINT);
             stmt.setObject(si++, cmodcount == null ? Long.valueOf(0) : cmodcount, Types.BIGINT);
-            stmt.setObject(si++, data.length(), Types.BIGINT);
-
-            if (data.length() < tmd.getDataLimitInOctets() / CHAR2OCTETRATIO) {
-                setDataInStatement(tmd, stmt, si++, data);
-                stmt.setBinaryStream(si++, null, 0);
-            } else {
-                setDataInStatement(tmd, stmt, si++, "\"blob\"");
-                byte[] bytes = asBytes(data);
-                stmt.setBytes(si++, bytes);
-            }
+            stmt.setObject(si++, dataSize, Types.BIGINT);
+            si = setDataAndBdataInStatement(tmd, stmt, si, data, bdata);
 
             setIdInStatement(tmd, stmt, si++, id);
 
@@ -956,6 +975,28 @@ public class RDBDocumentStoreJDBC {
         }
     }
 
+    /**
+     * Sets DATA and BDATA: binary encoded documents always go into BDATA,
+     * JSON serializations into DATA unless they exceed its size limit.
+     *
+     * @return the next parameter index
+     */
+    private static int setDataAndBdataInStatement(RDBTableMetaData tmd, PreparedStatement stmt, int si, String data, byte[] bdata)
+            throws SQLException {
+        if (bdata != null) {
+            setDataInStatement(tmd, stmt, si++, "\"blob\"");
+            stmt.setBytes(si++, bdata);
+        } else if (data.length() < tmd.getDataLimitInOctets() / CHAR2OCTETRATIO) {
+            setDataInStatement(tmd, stmt, si++, data);
+            stmt.setBinaryStream(si++, null, 0);
+        } else {
+            setDataInStatement(tmd, stmt, si++, "\"blob\"");
+            byte[] bytes = asBytes(data);
+            stmt.setBytes(si++, bytes);
+        }
+        return si;
+    }
+
     private final static Map<String, String> INDEXED_PROP_MAPPING;
     static {
         Map<String, String> tmp = new HashMap<String, String>();
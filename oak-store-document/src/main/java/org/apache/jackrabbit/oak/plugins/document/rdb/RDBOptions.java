@@ -28,6 +28,7 @@ public class RDBOptions {
     private int initialSchema = Integer.getInteger("org.apache.jackrabbit.oak.plugins.document.rdb.RDBOptions.INITIALSCHEMA", 2);
     private int upgradeToSchema = Integer.getInteger("org.apache.jackrabbit.oak.plugins.document.rdb.RDBOptions.UPGRADETOSCHEMA",
             2);
+    private boolean binaryData = RDBDocumentStore.BINARYDATA;
 
     public RDBOptions() {
     }
@@ -79,4 +80,17 @@ public class RDBOptions {
     public int getUpgradeToSchema() {
         return this.upgradeToSchema;
     }
+
+    /**
+     * Whether to write documents in the binary format (see
+     * {@link RDBBinarySupport}); documents in either format can always be read
+     */
+    public RDBOptions binaryData(boolean binaryData) {
+        this.binaryData = binaryData;
+        return this;
+    }
+
+    public boolean isBinaryData() {
+        return this.binaryData;
+    }
 }
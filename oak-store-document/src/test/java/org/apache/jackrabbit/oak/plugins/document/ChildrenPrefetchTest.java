@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jackrabbit.oak.commons.junit.TemporarySystemProperty;
+import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.ChildNodeEntry;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.apache.jackrabbit.oak.plugins.document.DocumentNodeStore.SYS_PROP_CHILDREN_PREFETCH_SIZE;
+import static org.apache.jackrabbit.oak.plugins.document.DocumentNodeStore.SYS_PROP_PREFETCH;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ChildrenPrefetchTest {
+
+    private static final int NUM_CHILDREN = 250;
+
+    @Rule
+    public TemporarySystemProperty systemProperties = new TemporarySystemProperty();
+
+    @Rule
+    public DocumentMKBuilderProvider builderProvider = new DocumentMKBuilderProvider();
+
+    private final PrefetchRecordingStore store = new PrefetchRecordingStore(new MemoryDocumentStore());
+
+    @Test
+    public void readAhead() throws Exception {
+        System.setProperty(SYS_PROP_PREFETCH, "true");
+        System.setProperty(SYS_PROP_CHILDREN_PREFETCH_SIZE, "100");
+        DocumentNodeStore ns = createWithChildren();
+        // populate the children cache, then drop the node states
+        for (ChildNodeEntry entry : getParent(ns).getChildNodeEntries()) {
+            assertTrue(entry.getNodeState().exists());
+        }
+        ns.getNodeCache().invalidateAll();
+        store.prefetched.clear();
+
+        int count = 0;
+        for (ChildNodeEntry entry : getParent(ns).getChildNodeEntries()) {
+            assertTrue(entry.getNodeState().exists());
+            count++;
+        }
+        assertEquals(NUM_CHILDREN, count);
+        // one prefetch call per window of 100 children
+        // (children are read in batches of 100 and 200)
+        assertEquals(3, store.prefetched.size());
+        int numPrefetched = 0;
+        for (List<String> ids : store.prefetched) {
+            assertTrue(ids.size() <= 100);
+            numPrefetched += ids.size();
+        }
+        assertEquals(NUM_CHILDREN, numPrefetched);
+    }
+
+    @Test
+    public void cachedChildrenNotPrefetched() throws Exception {
+        System.setProperty(SYS_PROP_PREFETCH, "true");
+        DocumentNodeStore ns = createWithChildren();
+        for (ChildNodeEntry entry : getParent(ns).getChildNodeEntries()) {
+            assertTrue(entry.getNodeState().exists());
+        }
+        store.prefetched.clear();
+        // all children are now in the node cache
+        for (ChildNodeEntry entry : getParent(ns).getChildNodeEntries()) {
+            assertTrue(entry.getNodeState().exists());
+        }
+        assertTrue(store.prefetched.isEmpty());
+    }
+
+    @Test
+    public void prefetchDisabled() throws Exception {
+        DocumentNodeStore ns = createWithChildren();
+        for (ChildNodeEntry entry : getParent(ns).getChildNodeEntries()) {
+            assertTrue(entry.getNodeState().exists());
+        }
+        ns.getNodeCache().invalidateAll();
+        store.prefetched.clear();
+        for (ChildNodeEntry entry : getParent(ns).getChildNodeEntries()) {
+            assertTrue(entry.getNodeState().exists());
+        }
+        assertTrue(store.prefetched.isEmpty());
+    }
+
+    private DocumentNodeStore createWithChildren() throws Exception {
+        DocumentNodeStore ns = builderProvider.newBuilder().setAsyncDelay(0)
+                .setDocumentStore(store).getNodeStore();
+        NodeBuilder builder = ns.getRoot().builder();
+        NodeBuilder parent = builder.child("parent");
+        for (int i = 0; i < NUM_CHILDREN; i++) {
+            parent.child("c-" + i);
+        }
+        ns.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        ns.runBackgroundOperations();
+        return ns;
+    }
+
+    private static NodeState getParent(DocumentNodeStore ns) {
+        return ns.getRoot().getChildNode("parent");
+    }
+
+    private static final class PrefetchRecordingStore extends DocumentStoreWrapper {
+
+        final List<List<String>> prefetched = new ArrayList<>();
+
+        PrefetchRecordingStore(DocumentStore store) {
+            super(store);
+        }
+
+        @Override
+        public <T extends Document> void prefetch(Collection<T> collection,
+                                                  Iterable<String> keys) {
+            List<String> ids = new ArrayList<>();
+            keys.forEach(ids::add);
+            prefetched.add(ids);
+            store.prefetch(collection, keys);
+        }
+    }
+}
@@ -16,16 +16,32 @@
  */
 package org.apache.jackrabbit.oak.plugins.document;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.jackrabbit.oak.commons.concurrent.ExecutorCloser;
+import org.apache.jackrabbit.oak.commons.junit.TemporarySystemProperty;
 import org.apache.jackrabbit.oak.plugins.document.memory.MemoryDocumentStore;
+import org.apache.jackrabbit.oak.plugins.document.util.Utils;
 import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
 import org.junit.Rule;
 import org.junit.Test;
 
 import static org.apache.jackrabbit.oak.plugins.document.TestUtils.merge;
+import static org.apache.jackrabbit.oak.plugins.document.UnsavedModifications.BACKGROUND_MULTI_UPDATE_LIMIT;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 public class UnsavedModificationsTest {
 
+    @Rule
+    public TemporarySystemProperty systemProperties = new TemporarySystemProperty();
+
     @Rule
     public DocumentMKBuilderProvider builderProvider = new DocumentMKBuilderProvider();
 
@@ -41,4 +57,163 @@ public class UnsavedModificationsTest {
         ns.runBackgroundUpdateOperations();
         assertEquals(0, store.getNumFindCalls(Collection.CLUSTER_NODES));
     }
+
+    @Test
+    public void parallelPersist() throws Exception {
+        RecordingDocumentStore store = new RecordingDocumentStore(new MemoryDocumentStore());
+        DocumentNodeStore ns = builderProvider.newBuilder()
+                .setDocumentStore(store).setAsyncDelay(0).getNodeStore();
+        UnsavedModifications mods = new UnsavedModifications();
+        Revision r = createNodes(ns, mods);
+        int numPaths = mods.getPaths().size();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            store.batches.clear();
+            BackgroundWriteStats stats = mods.persist(store, () -> null,
+                    UnsavedModifications.Snapshot.IGNORE, new ReentrantLock(), executor);
+            assertEquals(numPaths, stats.num);
+            // depth 3, 2 and 1
+            assertEquals(3, stats.levels);
+            // 900, 450 and 3 paths plus the root
+            assertEquals(9 + 5 + 1 + 1, stats.calls);
+            assertTrue(stats.maxBatch <= stats.totalBatchTime);
+            assertTrue(stats.toString(), stats.toString().contains("levels:3"));
+        } finally {
+            new ExecutorCloser(executor).close();
+        }
+        assertTrue(mods.getPaths().isEmpty());
+        assertLastRev(store, r, "/a0/b0/c0", "/a2/b149/c1", "/a1/b7", "/a2", "/");
+
+        // a batch must only start when all batches
+        // for deeper paths completed
+        for (Batch b1 : store.batches) {
+            for (Batch b2 : store.batches) {
+                if (b1.depth > b2.depth) {
+                    assertTrue(b1.end < b2.start);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sequentialPersist() throws Exception {
+        RecordingDocumentStore store = new RecordingDocumentStore(new MemoryDocumentStore());
+        DocumentNodeStore ns = builderProvider.newBuilder()
+                .setDocumentStore(store).setAsyncDelay(0).getNodeStore();
+        UnsavedModifications mods = new UnsavedModifications();
+        Revision r = createNodes(ns, mods);
+        int numPaths = mods.getPaths().size();
+
+        BackgroundWriteStats stats = mods.persist(store, () -> null,
+                UnsavedModifications.Snapshot.IGNORE, new ReentrantLock());
+        assertEquals(numPaths, stats.num);
+        assertEquals(0, stats.levels);
+        // batches span multiple depths, plus the root
+        assertEquals((numPaths - 1 + BACKGROUND_MULTI_UPDATE_LIMIT - 1) / BACKGROUND_MULTI_UPDATE_LIMIT + 1,
+                stats.calls);
+        assertTrue(mods.getPaths().isEmpty());
+        assertLastRev(store, r, "/a0/b0/c0", "/a2/b149/c1", "/a1/b7", "/a2", "/");
+    }
+
+    @Test
+    public void parallelBackgroundWrite() throws Exception {
+        System.setProperty(DocumentNodeStore.SYS_PROP_BACKGROUND_WRITE_PARALLELISM, "4");
+        DocumentStore store = new MemoryDocumentStore();
+        DocumentNodeStore ns;
+        try {
+            ns = builderProvider.newBuilder()
+                    .setDocumentStore(store).setAsyncDelay(0).getNodeStore();
+        } finally {
+            System.clearProperty(DocumentNodeStore.SYS_PROP_BACKGROUND_WRITE_PARALLELISM);
+        }
+        NodeBuilder builder = ns.getRoot().builder();
+        for (int i = 0; i < 300; i++) {
+            builder.child("foo").child("n" + i).child("x");
+        }
+        merge(ns, builder);
+        ns.runBackgroundUpdateOperations();
+        assertTrue(ns.getPendingModifications().getPaths().isEmpty());
+        Revision head = ns.getHeadRevision().getRevision(ns.getClusterId());
+        NodeDocument root = Utils.getRootDocument(store);
+        assertEquals(head, root.getLastRev().get(ns.getClusterId()));
+    }
+
+    private static Revision createNodes(DocumentNodeStore ns,
+                                        UnsavedModifications mods)
+            throws Exception {
+        NodeBuilder builder = ns.getRoot().builder();
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 150; j++) {
+                for (int k = 0; k < 2; k++) {
+                    builder.child("a" + i).child("b" + j).child("c" + k);
+                }
+            }
+        }
+        merge(ns, builder);
+        ns.runBackgroundUpdateOperations();
+
+        Revision r = Revision.newRevision(ns.getClusterId());
+        mods.put(Path.ROOT, r);
+        for (int i = 0; i < 3; i++) {
+            Path a = new Path(Path.ROOT, "a" + i);
+            mods.put(a, r);
+            for (int j = 0; j < 150; j++) {
+                Path b = new Path(a, "b" + j);
+                mods.put(b, r);
+                for (int k = 0; k < 2; k++) {
+                    mods.put(new Path(b, "c" + k), r);
+                }
+            }
+        }
+        return r;
+    }
+
+    private static void assertLastRev(DocumentStore store, Revision r, String... paths) {
+        for (String p : paths) {
+            NodeDocument doc = store.find(Collection.NODES, Utils.getIdFromPath(p));
+            assertNotNull(p, doc);
+            assertEquals(p, r, doc.getLastRev().get(r.getClusterId()));
+        }
+    }
+
+    private static final class Batch {
+
+        final int depth;
+
+        final long start;
+
+        final long end;
+
+        Batch(int depth, long start, long end) {
+            this.depth = depth;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private static final class RecordingDocumentStore extends DocumentStoreWrapper {
+
+        final AtomicLong sequence = new AtomicLong();
+
+        final List<Batch> batches = new CopyOnWriteArrayList<>();
+
+        RecordingDocumentStore(DocumentStore store) {
+            super(store);
+        }
+
+        @Override
+        public <T extends Document> List<T> createOrUpdate(Collection<T> collection,
+                                                           List<UpdateOp> updateOps) {
+            long start = sequence.incrementAndGet();
+            try {
+                return super.createOrUpdate(collection, updateOps);
+            } finally {
+                if (collection == Collection.NODES && !updateOps.isEmpty()) {
+                    int depth = Utils.getDepthFromId(updateOps.get(0).getId());
+                    batches.add(new Batch(depth, start, sequence.incrementAndGet()));
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.jackrabbit.oak.plugins.document.bundlor;
+
+import java.util.List;
+
+import org.apache.jackrabbit.oak.api.Type;
+import org.apache.jackrabbit.oak.commons.junit.TemporarySystemProperty;
+import org.apache.jackrabbit.oak.plugins.document.DocumentMKBuilderProvider;
+import org.apache.jackrabbit.oak.plugins.document.DocumentNodeStore;
+import org.apache.jackrabbit.oak.plugins.document.Path;
+import org.apache.jackrabbit.oak.plugins.document.bundlor.BundlingAnalyzer.Recommendation;
+import org.apache.jackrabbit.oak.spi.commit.CommitInfo;
+import org.apache.jackrabbit.oak.spi.commit.EmptyHook;
+import org.apache.jackrabbit.oak.spi.state.NodeBuilder;
+import org.apache.jackrabbit.oak.spi.state.NodeState;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.apache.jackrabbit.JcrConstants.JCR_PRIMARYTYPE;
+import static org.apache.jackrabbit.oak.plugins.document.DocumentNodeStore.SYS_PROP_BUNDLING_STATS_SAMPLE_INTERVAL;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class BundlingAnalyzerTest {
+
+    @Rule
+    public TemporarySystemProperty systemProperties = new TemporarySystemProperty();
+
+    @Rule
+    public DocumentMKBuilderProvider builderProvider = new DocumentMKBuilderProvider();
+
+    @Test
+    public void recommendFrequentlyReadChildren() {
+        BundlingAnalyzer analyzer = new BundlingAnalyzer(1);
+        for (int i = 0; i < 10; i++) {
+            String asset = "/content/a" + i;
+            analyzer.documentRead(Path.fromString(asset), "app:Asset");
+            analyzer.documentRead(Path.fromString(asset + "/jcr:content"), "nt:unstructured");
+            analyzer.documentRead(Path.fromString(asset + "/jcr:content/metadata"), "nt:unstructured");
+            if (i % 5 == 0) {
+                // rarely read
+                analyzer.documentRead(Path.fromString(asset + "/jcr:content/comments"), "nt:unstructured");
+            }
+        }
+        List<Recommendation> recommendations = analyzer.getRecommendations(0.5, 5);
+        assertEquals(2, recommendations.size());
+        Recommendation r = recommendations.get(0);
+        assertEquals("app:Asset", r.getNodeType());
+        assertEquals("jcr:content", r.getPattern());
+        assertEquals(10, r.getSavedReads());
+        assertEquals(10, r.getTypeReads());
+        assertEquals(1.0, r.getRatio(), 0.001);
+        assertEquals("app:Asset", recommendations.get(1).getNodeType());
+        assertEquals("jcr:content/metadata", recommendations.get(1).getPattern());
+        // nt:unstructured is read more often than its metadata child
+        // and the comments are read rarely
+    }
+
+    @Test
+    public void parentMustBeRecommended() {
+        BundlingAnalyzer analyzer = new BundlingAnalyzer(1);
+        for (int i = 0; i < 10; i++) {
+            String asset = "/content/a" + i;
+            analyzer.documentRead(Path.fromString(asset), "app:Asset");
+            // jcr:content read rarely, but metadata always
+            if (i % 5 == 0) {
+                analyzer.documentRead(Path.fromString(asset + "/jcr:content"), "nt:unstructured");
+            }
+            analyzer.documentRead(Path.fromString(asset + "/jcr:content/metadata"), "nt:unstructured");
+        }
+        for (Recommendation r : analyzer.getRecommendations(0.5, 5)) {
+            assertTrue(r.toString(), !"app:Asset".equals(r.getNodeType()));
+        }
+    }
+
+    @Test
+    public void unboundedChildrenNotRecommended() {
+        BundlingAnalyzer analyzer = new BundlingAnalyzer(1, 2, 5);
+        for (int i = 0; i < 10; i++) {
+            String folder = "/content/f" + i;
+            analyzer.documentRead(Path.fromString(folder), "nt:folder");
+            for (int j = 0; j < 10; j++) {
+                analyzer.documentRead(Path.fromString(folder + "/c" + j), "nt:file");
+            }
+        }
+        assertTrue(analyzer.getRecommendations(0.01, 1).isEmpty());
+    }
+
+    @Test
+    public void sampling() {
+        BundlingAnalyzer analyzer = new BundlingAnalyzer(3);
+        for (int i = 0; i < 150; i++) {
+            String asset = "/content/a" + i;
+            analyzer.documentRead(Path.fromString(asset), "app:Asset");
+            analyzer.documentRead(Path.fromString(asset + "/jcr:content"), "nt:unstructured");
+        }
+        List<Recommendation> recommendations = analyzer.getRecommendations(0.5, 1);
+        assertEquals(1, recommendations.size());
+        // every third read is sampled, the estimate is extrapolated
+        assertEquals(150, recommendations.get(0).getSavedReads());
+        assertEquals(150, recommendations.get(0).getTypeReads());
+    }
+
+    @Test
+    public void documentNodeStoreReads() throws Exception {
+        System.setProperty(SYS_PROP_BUNDLING_STATS_SAMPLE_INTERVAL, "1");
+        DocumentNodeStore ns = builderProvider.newBuilder().setAsyncDelay(0).getNodeStore();
+        NodeBuilder builder = ns.getRoot().builder();
+        NodeBuilder content = builder.child("content");
+        for (int i = 0; i < 20; i++) {
+            NodeBuilder asset = content.child("a" + i);
+            asset.setProperty(JCR_PRIMARYTYPE, "app:Asset", Type.NAME);
+            asset.child("jcr:content").setProperty(JCR_PRIMARYTYPE, "nt:unstructured", Type.NAME);
+        }
+        ns.merge(builder, EmptyHook.INSTANCE, CommitInfo.EMPTY);
+        ns.getNodeCache().invalidateAll();
+
+        BundlingAnalyzer analyzer = ns.getBundlingAnalyzer();
+        assertNotNull(analyzer);
+        analyzer.reset();
+        NodeState root = ns.getRoot();
+        for (int i = 0; i < 20; i++) {
+            assertTrue(root.getChildNode("content").getChildNode("a" + i)
+                    .getChildNode("jcr:content").exists());
+        }
+        List<Recommendation> recommendations = analyzer.getRecommendations(0.5, 10);
+        assertEquals(1, recommendations.size());
+        assertEquals("app:Asset", recommendations.get(0).getNodeType());
+        assertEquals("jcr:content", recommendations.get(0).getPattern());
+
+        ns.getMBean().resetBundlingStatistics();
+        assertTrue(analyzer.getNodeTypes().isEmpty());
+    }
+}
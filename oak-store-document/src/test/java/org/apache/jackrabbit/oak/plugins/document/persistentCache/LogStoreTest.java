@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.jackrabbit.oak.plugins.document.persistentCache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.jackrabbit.guava.common.cache.Cache;
+import org.apache.jackrabbit.oak.cache.CacheLIRS;
+import org.apache.jackrabbit.oak.plugins.document.Path;
+import org.apache.jackrabbit.oak.plugins.document.PathRev;
+import org.apache.jackrabbit.oak.plugins.document.Revision;
+import org.apache.jackrabbit.oak.plugins.document.RevisionVector;
+import org.apache.jackrabbit.oak.plugins.document.util.StringValue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LogStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder(new File("target"));
+
+    @Test
+    public void putGetRemove() throws Exception {
+        LogStore store = newStore(1024 * 1024);
+        try {
+            Map<String, String> map = store.openMap("test", null, null);
+            map.put("a", "1");
+            map.put("b", "2");
+            // pending changes are visible immediately
+            assertEquals("1", map.get("a"));
+            store.flush();
+            assertEquals("1", map.get("a"));
+            assertEquals("2", map.get("b"));
+            map.remove("a");
+            assertNull(map.get("a"));
+            assertFalse(map.containsKey("a"));
+            store.flush();
+            assertNull(map.get("a"));
+            assertTrue(map.containsKey("b"));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void reopen() throws Exception {
+        LogStore store = newStore(1024 * 1024);
+        Map<String, String> m1 = store.openMap("m1", null, null);
+        Map<String, String> m2 = store.openMap("m2", null, null);
+        for (int i = 0; i < 100; i++) {
+            m1.put("k" + i, "v" + i);
+            m2.put("k" + i, "w" + i);
+        }
+        m1.remove("k1");
+        m2.clear();
+        m2.put("k2", "x");
+        store.close();
+
+        store = newStore(1024 * 1024);
+        try {
+            m1 = store.openMap("m1", null, null);
+            m2 = store.openMap("m2", null, null);
+            assertNull(m1.get("k1"));
+            assertEquals("v0", m1.get("k0"));
+            assertEquals("v99", m1.get("k99"));
+            assertNull(m2.get("k1"));
+            assertEquals("x", m2.get("k2"));
+            assertEquals(1, m2.size());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void entrySet() throws Exception {
+        LogStore store = newStore(1024 * 1024);
+        try {
+            Map<String, String> map = store.openMap("test", null, null);
+            map.put("a", "1");
+            map.put("b", "2");
+            map.put("c", "3");
+            store.flush();
+            map.put("b", "x");
+            map.remove("c");
+            map.put("d", "4");
+            Map<String, String> expected = new HashMap<String, String>();
+            expected.put("a", "1");
+            expected.put("b", "x");
+            expected.put("d", "4");
+            assertEquals(expected, new HashMap<String, String>(map));
+            store.flush();
+            assertEquals(expected, new HashMap<String, String>(map));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void fullQueueDoesNotLoseChanges() throws Exception {
+        LogStore store = newStore(1024 * 1024);
+        int count = LogStore.MAX_PENDING * 3;
+        try {
+            Map<String, String> map = store.openMap("test", null, null);
+            for (int i = 0; i < count; i++) {
+                map.put("k" + i, "v" + i);
+            }
+            store.flush();
+            // removes followed by puts of other keys, faster than the writer
+            for (int i = 0; i < count; i += 2) {
+                map.remove("k" + i);
+            }
+            for (int i = 0; i < count; i++) {
+                map.put("n" + i, "w" + i);
+            }
+            for (int i = 0; i < count; i++) {
+                assertEquals(i % 2 == 0 ? null : "v" + i, map.get("k" + i));
+            }
+            assertEquals(0, store.getFailedWrites());
+        } finally {
+            store.close();
+        }
+        store = newStore(1024 * 1024);
+        try {
+            Map<String, String> map = store.openMap("test", null, null);
+            for (int i = 0; i < count; i++) {
+                assertEquals(i % 2 == 0 ? null : "v" + i, map.get("k" + i));
+                assertEquals("w" + i, map.get("n" + i));
+            }
+            assertEquals(count + count / 2, map.size());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void index() {
+        LogStoreIndex index = new LogStoreIndex();
+        Map<Long, Integer> expected = new HashMap<Long, Integer>();
+        Random r = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            // few distinct hashes, many of them in the same slots
+            long hash = (r.nextInt(3000) + 1) << (i % 2 == 0 ? 0 : 12);
+            if (r.nextInt(3) == 0) {
+                Integer old = expected.remove(hash);
+                assertEquals(old == null ? -1 : old, index.remove(hash));
+            } else {
+                int length = r.nextInt(1000);
+                Integer old = expected.put(hash, length);
+                assertEquals(old == null ? -1 : old,
+                        index.put(hash, new LogStoreIndex.Location(0, i, length)));
+            }
+        }
+        assertEquals(expected.size(), index.size());
+        assertEquals(expected.size(), index.getLocations().size());
+        for (Map.Entry<Long, Integer> e : expected.entrySet()) {
+            assertEquals(e.getValue().intValue(), index.get(e.getKey()).length);
+        }
+        index.clear();
+        assertEquals(0, index.size());
+        assertNull(index.get(expected.keySet().iterator().next()));
+    }
+
+    @Test
+    public void truncatedRecordIgnored() throws Exception {
+        LogStore store = newStore(1024 * 1024);
+        Map<String, String> map = store.openMap("test", null, null);
+        map.put("a", "1");
+        map.put("b", "2");
+        store.close();
+
+        File segment = new File(getDirectory(), LogStore.getSegmentFileName(0));
+        try (RandomAccessFile f = new RandomAccessFile(segment, "rw")) {
+            f.setLength(f.length() - 1);
+        }
+
+        store = newStore(1024 * 1024);
+        try {
+            map = store.openMap("test", null, null);
+            assertEquals("1", map.get("a"));
+            assertNull(map.get("b"));
+            map.put("c", "3");
+            store.flush();
+            assertEquals("3", map.get("c"));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void compact() throws Exception {
+        LogStore store = newStore(16 * 1024);
+        try {
+            Map<String, String> map = store.openMap("test", null, null);
+            String value = new String(new char[1000]);
+            // overwrite the same keys many times
+            for (int i = 0; i < 200; i++) {
+                map.put("k" + (i % 10), value + i);
+                store.flush();
+            }
+            // the background thread may have compacted already
+            while (store.compactIfNeeded(false)) {
+                // compact until the fill rate is good
+            }
+            assertTrue(store.getCompactionCount() > 0);
+            assertTrue(store.getFileSize() < store.getWrittenBytes() / 2);
+            for (int i = 190; i < 200; i++) {
+                assertEquals(value + i, map.get("k" + (i % 10)));
+            }
+        } finally {
+            store.close();
+        }
+        // the compacted store can be re-opened
+        store = newStore(16 * 1024);
+        try {
+            Map<String, String> map = store.openMap("test", null, null);
+            assertEquals(10, map.size());
+            assertTrue(map.get("k0").endsWith("190"));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void removeNotResurrectedByCompaction() throws Exception {
+        LogStore store = newStore(1024);
+        try {
+            Map<String, String> map = store.openMap("test", null, null);
+            map.put("a", new String(new char[2000]));
+            store.flush();
+            map.remove("a");
+            store.flush();
+            while (store.compactIfNeeded(true)) {
+                // compact all segments
+            }
+        } finally {
+            store.close();
+        }
+        store = newStore(1024);
+        try {
+            Map<String, String> map = store.openMap("test", null, null);
+            assertNull(map.get("a"));
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void persistentCacheWithLogStore() throws Exception {
+        File dir = folder.newFolder("cache");
+        PersistentCache pCache = new PersistentCache(dir.getAbsolutePath() + ",store=log,-async");
+        CacheLIRS<PathRev, StringValue> cache = new CacheLIRS.Builder<PathRev, StringValue>().
+                maximumSize(1).build();
+        Cache<PathRev, StringValue> map = pCache.wrap(null, null, cache, CacheType.DIFF);
+        PathRev k = new PathRev(Path.fromString("/foo"), new RevisionVector(new Revision(1, 0, 1)));
+        map.put(k, new StringValue("bar"));
+        pCache.close();
+        assertTrue(new File(dir, "cache-0.log").isDirectory());
+
+        pCache = new PersistentCache(dir.getAbsolutePath() + ",store=log,-async");
+        try {
+            cache = new CacheLIRS.Builder<PathRev, StringValue>().maximumSize(1).build();
+            map = pCache.wrap(null, null, cache, CacheType.DIFF);
+            assertEquals("bar", map.getIfPresent(k).toString());
+        } finally {
+            pCache.close();
+        }
+    }
+
+    private File getDirectory() {
+        return new File(folder.getRoot(), "store");
+    }
+
+    private LogStore newStore(int segmentSize) throws Exception {
+        return new LogStore(getDirectory(), segmentSize, LogStore.DEFAULT_FILL_RATE, false);
+    }
+}
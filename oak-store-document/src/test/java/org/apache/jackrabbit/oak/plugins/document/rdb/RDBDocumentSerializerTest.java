@@ -26,8 +26,12 @@ import static org.junit.Assert.fail;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.zip.GZIPOutputStream;
 
 import org.apache.jackrabbit.oak.plugins.document.Collection;
@@ -35,6 +39,8 @@ import org.apache.jackrabbit.oak.plugins.document.DocumentStore;
 import org.apache.jackrabbit.oak.plugins.document.DocumentStoreException;
 import org.apache.jackrabbit.oak.plugins.document.DocumentStoreFixture;
 import org.apache.jackrabbit.oak.plugins.document.NodeDocument;
+import org.apache.jackrabbit.oak.plugins.document.Revision;
+import org.apache.jackrabbit.oak.plugins.document.StableRevisionComparator;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -231,4 +237,83 @@ public class RDBDocumentSerializerTest {
         } catch (DocumentStoreException expected) {
         }
     }
+
+    @Test
+    public void testBinaryRoundTrip() {
+        for (boolean compress : new boolean[] { false, true }) {
+            NodeDocument in = createDocumentWithRevisions();
+            byte[] bytes = this.ser.asBytes(in, Collections.emptySet(), compress);
+            assertTrue(RDBBinarySupport.isBinary(bytes));
+
+            NodeDocument out = Collection.NODES.newDocument(store);
+            RDBBinarySupport.decode(bytes, out);
+            assertEquals(in.keySet(), out.keySet());
+            assertEquals("bar", out.get("foo"));
+            assertEquals(-42L, out.get("neg"));
+            assertEquals(1.5, out.get("dbl"));
+            assertEquals(Boolean.TRUE, out.get("bool"));
+            assertTrue(out.keySet().contains("nul"));
+            assertNull(out.get("nul"));
+            assertEquals("\u20ac\uD834\uDD1E", out.get("nonascii"));
+            Map<Revision, Object> revs = (Map<Revision, Object>) out.get("revs");
+            assertEquals(in.get("revs"), revs);
+            assertEquals(Revision.fromString("r1-0-1"), revs.keySet().iterator().next());
+        }
+    }
+
+    @Test
+    public void testJsonLength() {
+        NodeDocument doc = createDocumentWithRevisions();
+        Set<String> columnProperties = Collections.singleton("foo");
+        assertEquals(this.ser.asString(doc, columnProperties).length(), this.ser.getJsonLength(doc, columnProperties));
+        assertEquals(2, this.ser.getJsonLength(Collection.NODES.newDocument(store), columnProperties));
+    }
+
+    @Test
+    public void testBinaryBlobAndDiff() {
+        NodeDocument in = createDocumentWithRevisions();
+        in.put("m1", 2L);
+        byte[] bytes = this.ser.asBytes(in, Collections.emptySet(), true);
+        RDBRow row = new RDBRow("_foo", 1L, false, 1l, 2l, 3l, 0L, 0L, 0L,
+                "\"blob\", [[\"=\", \"foo\", \"baz\"],[\"M\", \"m1\", 3],[\"=\", \"revs\", \"r3-0-1\", \"c\"]]", bytes);
+        NodeDocument doc = this.ser.fromRow(Collection.NODES, row);
+        assertEquals("_foo", doc.getId());
+        assertEquals("baz", doc.get("foo"));
+        assertEquals(3L, doc.get("m1"));
+        assertEquals(3, ((Map<?, ?>) doc.get("revs")).size());
+    }
+
+    @Test
+    public void testBinaryNotConfusedWithJson() throws UnsupportedEncodingException {
+        assertFalse(RDBBinarySupport.isBinary("{}".getBytes("UTF-8")));
+        assertFalse(RDBBinarySupport.isBinary(new byte[] { 31, -117, 1, 2, 3, 4 }));
+        assertFalse(RDBBinarySupport.isBinary(new byte[0]));
+    }
+
+    @Test
+    public void testInvalidBinary() {
+        byte[] bytes = this.ser.asBytes(createDocumentWithRevisions(), Collections.emptySet(), false);
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length - 3);
+        try {
+            RDBRow row = new RDBRow("_foo", 0L, false, 1l, 2l, 3l, 0L, 0L, 0L, "\"blob\"", truncated);
+            this.ser.fromRow(Collection.NODES, row);
+            fail("should fail");
+        } catch (DocumentStoreException expected) {
+        }
+    }
+
+    private NodeDocument createDocumentWithRevisions() {
+        NodeDocument doc = Collection.NODES.newDocument(store);
+        doc.put("foo", "bar");
+        doc.put("neg", -42L);
+        doc.put("dbl", 1.5);
+        doc.put("bool", Boolean.TRUE);
+        doc.put("nul", null);
+        doc.put("nonascii", "\u20ac\uD834\uDD1E");
+        Map<Revision, Object> revs = new TreeMap<Revision, Object>(StableRevisionComparator.REVERSE);
+        revs.put(Revision.fromString("r1-0-1"), "a");
+        revs.put(Revision.fromString("b2-1-1"), "b");
+        doc.put("revs", revs);
+        return doc;
+    }
 }
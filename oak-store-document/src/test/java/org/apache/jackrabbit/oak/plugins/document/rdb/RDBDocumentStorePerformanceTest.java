@@ -26,11 +26,22 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
 
 import org.apache.jackrabbit.oak.plugins.document.AbstractDocumentStoreTest;
+import org.apache.jackrabbit.oak.plugins.document.Collection;
 import org.apache.jackrabbit.oak.plugins.document.DocumentStoreException;
 import org.apache.jackrabbit.oak.plugins.document.DocumentStoreFixture;
+import org.apache.jackrabbit.oak.plugins.document.NodeDocument;
+import org.apache.jackrabbit.oak.plugins.document.Revision;
+import org.apache.jackrabbit.oak.plugins.document.StableRevisionComparator;
+import org.apache.jackrabbit.oak.plugins.document.UpdateOp;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -79,6 +90,67 @@ public class RDBDocumentStorePerformanceTest extends AbstractDocumentStoreTest {
         internalTestPerfUpdateLimit("testPerfUpdateGrowingDoc", "raw row update (string + blob)", 4);
     }
 
+    @Test
+    public void testPerfParseJsonVsBinary() {
+        RDBDocumentSerializer ser = new RDBDocumentSerializer(super.ds);
+        NodeDocument doc = Collection.NODES.newDocument(super.ds);
+        doc.put(NodeDocument.ID, "testPerfParseJsonVsBinary");
+        for (int p = 0; p < 20; p++) {
+            Map<Revision, Object> values = new TreeMap<Revision, Object>(StableRevisionComparator.REVERSE);
+            for (int r = 0; r < 50; r++) {
+                values.put(new Revision(System.currentTimeMillis() + r, r, 1), "\"" + generateString(32, true) + "\"");
+            }
+            doc.put("prop" + p, values);
+        }
+        Set<String> columns = Collections.emptySet();
+        String json = ser.asString(doc, columns);
+        byte[] gzipped = RDBDocumentStore.asBytes(json);
+        byte[] binary = ser.asBytes(doc, columns, false);
+        byte[] deflated = ser.asBytes(doc, columns, true);
+
+        measureParse("JSON", new RDBRow(doc.getId(), null, null, 1L, 1L, 0L, 2L, RDBRow.LONG_UNSET, RDBRow.LONG_UNSET, json, null), ser);
+        measureParse("JSON (gzip)", new RDBRow(doc.getId(), null, null, 1L, 1L, 0L, 2L, RDBRow.LONG_UNSET, RDBRow.LONG_UNSET, "\"blob\"", gzipped), ser);
+        measureParse("binary", new RDBRow(doc.getId(), null, null, 1L, 1L, 0L, 2L, RDBRow.LONG_UNSET, RDBRow.LONG_UNSET, "\"blob\"", binary), ser);
+        measureParse("binary (deflate)", new RDBRow(doc.getId(), null, null, 1L, 1L, 0L, 2L, RDBRow.LONG_UNSET, RDBRow.LONG_UNSET, "\"blob\"", deflated), ser);
+        LOG.info("document sizes: JSON " + json.length() + " chars, gzip " + gzipped.length + " bytes, binary " + binary.length + " bytes, binary deflated "
+                + deflated.length + " bytes");
+    }
+
+    private void measureParse(String desc, RDBRow row, RDBDocumentSerializer ser) {
+        long duration = 1000;
+        long end = System.currentTimeMillis() + duration;
+        long cnt = 0;
+        while (System.currentTimeMillis() < end) {
+            NodeDocument parsed = ser.fromRow(Collection.NODES, row);
+            assertEquals(row.getId(), parsed.getId());
+            cnt += 1;
+        }
+        LOG.info("parsing " + desc + " for " + super.dsname + " was " + cnt + " in " + duration + "ms (" + (cnt / (duration / 1000f)) + "/s)");
+    }
+
+    @Test
+    public void testPerfBulkCreate() {
+        int batch = 64;
+        long duration = 1000;
+        long end = System.currentTimeMillis() + duration;
+        long cnt = 0;
+        String base = this.getClass().getName() + ".testPerfBulkCreate-";
+        while (System.currentTimeMillis() < end) {
+            List<UpdateOp> ops = new ArrayList<UpdateOp>(batch);
+            for (int i = 0; i < batch; i++) {
+                String id = base + cnt++;
+                UpdateOp op = new UpdateOp(id, true);
+                op.set("prop", generateString(256, true));
+                op.set("counter", (long) i);
+                ops.add(op);
+                removeMe.add(id);
+            }
+            super.ds.createOrUpdate(Collection.NODES, ops);
+        }
+        LOG.info("bulk createOrUpdate (batches of " + batch + ", binary format: " + RDBDocumentStore.BINARYDATA + ") for " + super.dsname
+                + " was " + cnt + " in " + duration + "ms (" + (cnt / (duration / 1000f)) + "/s)");
+    }
+
     private void internalTestPerfUpdateLimit(String name, String desc, int mode) throws SQLException, UnsupportedEncodingException {
         String key = name;
         Connection connection = null;
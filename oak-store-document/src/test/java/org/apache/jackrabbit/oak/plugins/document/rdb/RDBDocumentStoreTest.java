@@ -21,10 +21,15 @@ import static org.apache.jackrabbit.oak.plugins.document.util.Utils.getIdFromPat
 import static org.hamcrest.Matchers.hasItem;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
 import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -35,13 +40,16 @@ import java.util.Set;
 import org.apache.jackrabbit.oak.commons.junit.LogCustomizer;
 import org.apache.jackrabbit.oak.plugins.document.AbstractDocumentStoreTest;
 import org.apache.jackrabbit.oak.plugins.document.Collection;
+import org.apache.jackrabbit.oak.plugins.document.DocumentMK;
 import org.apache.jackrabbit.oak.plugins.document.DocumentStoreFixture;
 import org.apache.jackrabbit.oak.plugins.document.MissingLastRevSeeker;
 import org.apache.jackrabbit.oak.plugins.document.NodeDocument;
 import org.apache.jackrabbit.oak.plugins.document.Path;
 import org.apache.jackrabbit.oak.plugins.document.Revision;
 import org.apache.jackrabbit.oak.plugins.document.UpdateOp;
+import org.apache.jackrabbit.oak.plugins.document.cache.NodeDocumentCache;
 import org.apache.jackrabbit.oak.plugins.document.rdb.RDBDocumentStore.QueryCondition;
+import org.apache.jackrabbit.oak.plugins.document.rdb.RDBJDBCTools.PreparedStatementComponent;
 import org.apache.jackrabbit.oak.plugins.document.util.Utils;
 import org.apache.jackrabbit.oak.stats.Clock;
 import org.junit.Test;
@@ -251,4 +259,102 @@ public class RDBDocumentStoreTest extends AbstractDocumentStoreTest {
             }
         }
     }
+
+    @Test
+    public void testPrefetch() {
+        if (ds instanceof RDBDocumentStore) {
+            List<String> ids = new ArrayList<String>();
+            List<UpdateOp> ops = new ArrayList<UpdateOp>();
+            for (int i = 0; i < 10; i++) {
+                String id = getIdFromPath("/prefetchNode-" + i);
+                ids.add(id);
+                UpdateOp up = new UpdateOp(id, true);
+                up.set("_test", (long) i);
+                ops.add(up);
+                removeMe.add(id);
+            }
+            assertTrue(ds.create(NODES, ops));
+            NodeDocumentCache cache = ((RDBDocumentStore) ds).getNodeDocumentCache();
+            for (String id : ids) {
+                cache.invalidate(id);
+                assertNull(ds.getIfCached(NODES, id));
+            }
+
+            String missing = getIdFromPath("/prefetchNode-missing");
+            List<String> keys = new ArrayList<String>(ids);
+            keys.add(missing);
+            ds.prefetch(NODES, keys);
+
+            for (String id : ids) {
+                assertNotNull(ds.getIfCached(NODES, id));
+            }
+            // non-existing document is cached as such
+            assertNull(ds.find(NODES, missing, Integer.MAX_VALUE));
+        }
+    }
+
+    @Test
+    public void testBinaryData() throws SQLException {
+        if (ds instanceof RDBDocumentStore) {
+            RDBDocumentStore binary = new RDBDocumentStore(rdbDataSource, new DocumentMK.Builder(),
+                    new RDBOptions().tablePrefix("TBIN").binaryData(true).dropTablesOnClose(true));
+            try {
+                List<String> ids = new ArrayList<String>();
+                Revision r1 = new Revision(1, 0, 1);
+                Revision r2 = new Revision(2, 0, 1);
+                for (int i = 0; i < 2; i++) {
+                    String id = getIdFromPath("/binaryDataNode-" + i);
+                    ids.add(id);
+                    removeMe.add(id);
+                    UpdateOp up = new UpdateOp(id, true);
+                    up.set("_test", "\u20ac" + i);
+                    NodeDocument.setRevision(up, r1, "c");
+                    assertTrue(binary.create(NODES, Collections.singletonList(up)));
+                    assertTrue(ds.create(NODES, Collections.singletonList(up.copy())));
+                }
+                List<UpdateOp> updates = new ArrayList<UpdateOp>();
+                for (String id : ids) {
+                    UpdateOp up = new UpdateOp(id, false);
+                    NodeDocument.setRevision(up, r2, "c");
+                    up.increment("_count", 1);
+                    updates.add(up);
+                }
+                binary.createOrUpdate(NODES, updates);
+                ds.createOrUpdate(NODES, Lists.transform(updates, UpdateOp::copy));
+
+                binary.invalidateCache();
+                for (int i = 0; i < ids.size(); i++) {
+                    String id = ids.get(i);
+                    NodeDocument doc = binary.find(NODES, id);
+                    assertNotNull(doc);
+                    assertEquals("\u20ac" + i, doc.get("_test"));
+                    assertEquals(1L, doc.get("_count"));
+                    assertEquals(2, doc.getValueMap("_revisions").size());
+
+                    // the size is the one of the JSON serialization, as for JSON rows
+                    Object[] binaryRow = readSizeAndBData(binary, id);
+                    Object[] jsonRow = readSizeAndBData((RDBDocumentStore) ds, id);
+                    assertTrue(RDBBinarySupport.isBinary((byte[]) binaryRow[1]));
+                    assertEquals(jsonRow[0], binaryRow[0]);
+                }
+            } finally {
+                binary.dispose();
+            }
+        }
+    }
+
+    private Object[] readSizeAndBData(RDBDocumentStore store, String id) throws SQLException {
+        RDBDocumentStore.RDBTableMetaData tmd = store.getTable(NODES);
+        PreparedStatementComponent inClause = RDBJDBCTools.createInStatement("ID", Collections.singletonList(id),
+                tmd.isIdBinary());
+        try (Connection con = rdbDataSource.getConnection();
+                PreparedStatement stmt = con.prepareStatement(
+                        "select DSIZE, BDATA from " + tmd.getName() + " where " + inClause.getStatementComponent())) {
+            inClause.setParameters(stmt, 1);
+            try (ResultSet rs = stmt.executeQuery()) {
+                assertTrue(rs.next());
+                return new Object[] { rs.getLong(1), rs.getBytes(2) };
+            }
+        }
+    }
 }